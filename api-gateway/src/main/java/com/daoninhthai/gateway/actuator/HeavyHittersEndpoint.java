@@ -0,0 +1,34 @@
+package com.daoninhthai.gateway.actuator;
+
+import com.daoninhthai.gateway.dto.HeavyHitter;
+import com.daoninhthai.gateway.ratelimit.HeavyHitterTracker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the top rate limit consumers per route at /actuator/heavyhitters.
+ */
+@Component
+@Endpoint(id = "heavyhitters")
+@RequiredArgsConstructor
+public class HeavyHittersEndpoint {
+
+    private final HeavyHitterTracker heavyHitterTracker;
+
+    @ReadOperation
+    public Map<String, List<HeavyHitter>> topConsumers() {
+        return heavyHitterTracker.getTopConsumers();
+    }
+
+    @ReadOperation
+    public List<HeavyHitter> topConsumersOfRoute(@Selector String routeId) {
+        return heavyHitterTracker.getTopConsumers(routeId);
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.daoninhthai.gateway.actuator;
+
+import com.daoninhthai.gateway.dto.OutlierStatus;
+import com.daoninhthai.gateway.loadbalancer.OutlierDetector;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the outlier detection state of the upstream instances at /actuator/outliers.
+ */
+@Component
+@Endpoint(id = "outliers")
+@RequiredArgsConstructor
+public class OutliersEndpoint {
+
+    private final OutlierDetector outlierDetector;
+
+    @ReadOperation
+    public Map<String, List<OutlierStatus>> outliers() {
+        return outlierDetector.getStatus();
+    }
+
+    @ReadOperation
+    public List<OutlierStatus> outliersOfService(@Selector String serviceId) {
+        return outlierDetector.getStatus(serviceId);
+    }
+
+}
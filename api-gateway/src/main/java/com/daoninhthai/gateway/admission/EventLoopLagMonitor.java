@@ -0,0 +1,98 @@
+package com.daoninhthai.gateway.admission;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how late the Netty event loops run scheduled tasks. Every loop runs a probe at
+ * a fixed interval; the lag is how much later than planned the probe ran. A loop that is
+ * blocked has its overdue probe counted as lag too, so a stuck loop shows up immediately.
+ */
+@Slf4j
+public class EventLoopLagMonitor {
+
+    private final EventLoopGroup eventLoopGroup;
+    private final long intervalNanos;
+    private final List<Probe> probes = new ArrayList<>();
+
+    private volatile boolean running;
+
+    public EventLoopLagMonitor(EventLoopGroup eventLoopGroup, Duration interval) {
+        this.eventLoopGroup = eventLoopGroup;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (EventExecutor executor : eventLoopGroup) {
+            Probe probe = new Probe(executor);
+            probes.add(probe);
+            probe.schedule();
+        }
+        log.info("Monitoring event loop lag on {} loops every {}ms",
+                probes.size(), TimeUnit.NANOSECONDS.toMillis(intervalNanos));
+    }
+
+    public synchronized void stop() {
+        running = false;
+        probes.clear();
+    }
+
+    /**
+     * Largest current lag across all event loops, in milliseconds.
+     */
+    public double getLagMillis() {
+        long now = System.nanoTime();
+        long max = 0;
+        for (Probe probe : probes) {
+            max = Math.max(max, probe.currentLag(now));
+        }
+        return max / 1_000_000.0;
+    }
+
+    private final class Probe implements Runnable {
+        private final EventExecutor executor;
+        private volatile long expectedAtNanos;
+        private volatile long lagNanos;
+
+        private Probe(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        private void schedule() {
+            expectedAtNanos = System.nanoTime() + intervalNanos;
+            try {
+                executor.schedule(this, intervalNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                // The loop is shutting down
+                lagNanos = 0;
+                expectedAtNanos = Long.MAX_VALUE;
+            }
+        }
+
+        @Override
+        public void run() {
+            lagNanos = Math.max(0, System.nanoTime() - expectedAtNanos);
+            if (running) {
+                schedule();
+            }
+        }
+
+        private long currentLag(long now) {
+            long expectedAt = expectedAtNanos;
+            long overdue = expectedAt == Long.MAX_VALUE ? 0 : now - expectedAt;
+            return Math.max(lagNanos, overdue);
+        }
+    }
+
+}
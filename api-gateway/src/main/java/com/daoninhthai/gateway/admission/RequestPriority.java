@@ -0,0 +1,25 @@
+package com.daoninhthai.gateway.admission;
+
+/**
+ * Priority classes for load shedding. Lower priorities are shed first.
+ */
+public enum RequestPriority {
+
+    /**
+     * Never shed, e.g. authentication.
+     */
+    CRITICAL,
+
+    /**
+     * Revenue-relevant traffic such as checkout and orders.
+     */
+    HIGH,
+
+    NORMAL,
+
+    /**
+     * Best-effort traffic such as catalog browsing.
+     */
+    LOW
+
+}
@@ -0,0 +1,16 @@
+package com.daoninhthai.gateway.canary;
+
+/**
+ * Upstream group a request of a canary route is sent to.
+ */
+public enum CanaryGroup {
+
+    BASELINE,
+
+    CANARY;
+
+    public String getTag() {
+        return name().toLowerCase();
+    }
+
+}
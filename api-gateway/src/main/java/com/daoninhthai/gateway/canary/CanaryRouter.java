@@ -0,0 +1,213 @@
+package com.daoninhthai.gateway.canary;
+
+import com.daoninhthai.gateway.config.CanaryConfig;
+import com.daoninhthai.gateway.util.RollingLatencyHistogram;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Splits the traffic of a route between its baseline service and a canary service.
+ * <p>
+ * Clients are assigned by hashing a sticky key (the user id, or a cookie) into 10000
+ * buckets, so a client stays in its group while the weight is unchanged and only the
+ * clients at the margin move when it changes. Latency and failures are kept per group
+ * over a sliding window; when the canary's error rate or p99 is worse than the baseline's
+ * by more than the configured margins, its weight is rolled back to 0. The rollback holds
+ * until a different weight is configured.
+ */
+@Slf4j
+public class CanaryRouter {
+
+    private static final int BUCKETS = 10_000;
+
+    private final CanaryConfig properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, RouteCanary> routes = new ConcurrentHashMap<>();
+
+    public CanaryRouter(CanaryConfig properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    CanaryRouter(CanaryConfig properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Canary settings of a route, or null if the route has no canary.
+     */
+    public CanaryConfig.Canary getCanary(String routeId) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        CanaryConfig.Canary canary = properties.getRoutes().get(routeId);
+        return canary != null && canary.getService() != null ? canary : null;
+    }
+
+    /**
+     * Group for a client of a canary route.
+     */
+    public CanaryGroup select(String routeId, String stickyKey) {
+        double weight = getWeight(routeId);
+        if (weight <= 0) {
+            return CanaryGroup.BASELINE;
+        }
+        return bucket(stickyKey) < weight * (BUCKETS / 100) ? CanaryGroup.CANARY : CanaryGroup.BASELINE;
+    }
+
+    /**
+     * Effective canary weight of a route in percent: the configured weight, or 0 after a rollback.
+     */
+    public double getWeight(String routeId) {
+        CanaryConfig.Canary canary = getCanary(routeId);
+        if (canary == null) {
+            return 0;
+        }
+        RouteCanary state = routes.get(routeId);
+        if (state != null && state.rolledBackWeight >= 0) {
+            if (state.rolledBackWeight == canary.getWeight()) {
+                return 0;
+            }
+            state.rolledBackWeight = -1;
+            log.info("Canary of route {} re-enabled at weight {}%", routeId, canary.getWeight());
+        }
+        return canary.getWeight();
+    }
+
+    /**
+     * Record the outcome of a request sent to a group.
+     */
+    public void record(String routeId, CanaryGroup group, long latencyNanos, boolean failed) {
+        RouteCanary state = routes.get(routeId);
+        if (state == null) {
+            state = routes.computeIfAbsent(routeId, RouteCanary::new);
+        }
+        state.histograms.get(group).record(latencyNanos, failed);
+        (failed ? state.failures : state.successes).get(group).increment();
+    }
+
+    /**
+     * Compare each canary with its baseline and roll back canaries that are worse.
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void evaluate() {
+        for (RouteCanary state : routes.values()) {
+            CanaryConfig.Canary canary = getCanary(state.routeId);
+            if (canary == null || !canary.isAutoRollback() || getWeight(state.routeId) <= 0) {
+                continue;
+            }
+            String reason = compare(state);
+            if (reason != null) {
+                state.rolledBackWeight = canary.getWeight();
+                state.rollbacks.increment();
+                log.warn("Rolling back canary {} of route {} from {}% to 0%: {}",
+                        canary.getService(), state.routeId, canary.getWeight(), reason);
+            }
+        }
+    }
+
+    /**
+     * Why the canary is worse than the baseline, or null if it is not (or there is not enough data yet).
+     */
+    String compare(RouteCanary state) {
+        RollingLatencyHistogram baseline = state.histograms.get(CanaryGroup.BASELINE);
+        RollingLatencyHistogram canary = state.histograms.get(CanaryGroup.CANARY);
+        if (baseline.getCount() < properties.getMinSamples() || canary.getCount() < properties.getMinSamples()) {
+            return null;
+        }
+
+        double baselineErrors = baseline.getFailureRate();
+        double canaryErrors = canary.getFailureRate();
+        if (canaryErrors > baselineErrors + properties.getMaxErrorRateIncrease()) {
+            return String.format("error rate %.3f vs baseline %.3f", canaryErrors, baselineErrors);
+        }
+
+        Duration baselineP99 = baseline.getPercentile(0.99);
+        Duration canaryP99 = canary.getPercentile(0.99);
+        if (canaryP99.toNanos() > baselineP99.toNanos() * properties.getMaxLatencyRatio()) {
+            return String.format("p99 %dms vs baseline %dms", canaryP99.toMillis(), baselineP99.toMillis());
+        }
+        return null;
+    }
+
+    RouteCanary getState(String routeId) {
+        return routes.get(routeId);
+    }
+
+    static int bucket(String stickyKey) {
+        long hash = stickyKey.hashCode() * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash ^= hash >>> 31;
+        return (int) Math.floorMod(hash, (long) BUCKETS);
+    }
+
+    final class RouteCanary {
+        private final String routeId;
+        private final Map<CanaryGroup, RollingLatencyHistogram> histograms = new EnumMap<>(CanaryGroup.class);
+        private final Map<CanaryGroup, Counter> successes = new EnumMap<>(CanaryGroup.class);
+        private final Map<CanaryGroup, Counter> failures = new EnumMap<>(CanaryGroup.class);
+        private final Counter rollbacks;
+
+        /**
+         * Weight that was rolled back, or -1 if the canary is active.
+         */
+        private volatile double rolledBackWeight = -1;
+
+        private RouteCanary(String routeId) {
+            this.routeId = routeId;
+            for (CanaryGroup group : CanaryGroup.values()) {
+                RollingLatencyHistogram histogram = new RollingLatencyHistogram(properties.getWindow(),
+                        properties.getWindowSlices(), nanoClock);
+                histograms.put(group, histogram);
+                successes.put(group, requestCounter(group, "success"));
+                failures.put(group, requestCounter(group, "failure"));
+
+                Gauge.builder("gateway_canary_p99_ms", histogram,
+                                h -> h.getPercentile(0.99).toNanos() / 1_000_000.0)
+                        .description("p99 latency of the group over the canary window")
+                        .tag("route", routeId)
+                        .tag("group", group.getTag())
+                        .register(meterRegistry);
+                Gauge.builder("gateway_canary_error_rate", histogram, RollingLatencyHistogram::getFailureRate)
+                        .description("Share of failed requests of the group over the canary window")
+                        .tag("route", routeId)
+                        .tag("group", group.getTag())
+                        .register(meterRegistry);
+            }
+            this.rollbacks = Counter.builder("gateway_canary_rollbacks_total")
+                    .description("Canaries rolled back for being worse than the baseline")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+            Gauge.builder("gateway_canary_weight", CanaryRouter.this, router -> router.getWeight(routeId))
+                    .description("Effective canary weight in percent")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+        }
+
+        private Counter requestCounter(CanaryGroup group, String outcome) {
+            return Counter.builder("gateway_canary_requests_total")
+                    .description("Requests of canary routes by group and outcome")
+                    .tag("route", routeId)
+                    .tag("group", group.getTag())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+
+        boolean isRolledBack() {
+            return rolledBackWeight >= 0;
+        }
+    }
+
+}
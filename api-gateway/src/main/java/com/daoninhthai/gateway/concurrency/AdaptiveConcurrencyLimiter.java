@@ -0,0 +1,73 @@
+package com.daoninhthai.gateway.concurrency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the requests in flight to one downstream service at its current adaptive limit.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final String name;
+    private final GradientLimit limit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdaptiveConcurrencyLimiter(String name, GradientLimit limit) {
+        this.name = name;
+        this.limit = limit;
+    }
+
+    /**
+     * Take a slot if the service is below its limit. Every successful acquire
+     * must be paired with one {@link #release} or {@link #cancel}.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit.getLimit()) {
+                rejected.increment();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a slot and feed the request's round trip time to the limit.
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int current = inflight.getAndDecrement();
+        limit.onSample(System.nanoTime(), rttNanos, current, dropped);
+    }
+
+    /**
+     * Release a slot without a sample, e.g. when the client went away.
+     */
+    public void cancel() {
+        inflight.decrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public GradientLimit getGradientLimit() {
+        return limit;
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.daoninhthai.gateway.concurrency;
+
+import com.daoninhthai.gateway.config.ConcurrencyLimitConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One adaptive concurrency limiter per downstream service, created on first use with the
+ * service's configuration and registered as metrics.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiterRegistry {
+
+    private final ConcurrencyLimitConfig properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyLimiterRegistry(ConcurrencyLimitConfig properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter(String serviceId) {
+        AdaptiveConcurrencyLimiter limiter = limiters.get(serviceId);
+        if (limiter != null) {
+            return limiter;
+        }
+        return limiters.computeIfAbsent(serviceId, this::create);
+    }
+
+    public Collection<AdaptiveConcurrencyLimiter> getLimiters() {
+        return limiters.values();
+    }
+
+    private AdaptiveConcurrencyLimiter create(String serviceId) {
+        ConcurrencyLimitConfig.Limit config = properties.resolveLimit(serviceId);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(serviceId, new GradientLimit(config));
+
+        Gauge.builder("gateway_concurrency_limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .tag("service", serviceId)
+                .register(meterRegistry);
+        Gauge.builder("gateway_concurrency_inflight", limiter, AdaptiveConcurrencyLimiter::getInflight)
+                .description("Requests in flight to the service")
+                .tag("service", serviceId)
+                .register(meterRegistry);
+        Gauge.builder("gateway_concurrency_rtt_no_load_ms", limiter.getGradientLimit(),
+                        GradientLimit::getRttNoLoadMillis)
+                .description("No-load round trip time baseline of the service")
+                .tag("service", serviceId)
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway_concurrency_rejected_total", limiter, AdaptiveConcurrencyLimiter::getRejected)
+                .description("Requests rejected because the service was at its concurrency limit")
+                .tag("service", serviceId)
+                .register(meterRegistry);
+
+        log.info("Created adaptive concurrency limiter for {} with initial limit {}", serviceId, config.getInitialLimit());
+        return limiter;
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.daoninhthai.gateway.concurrency;
+
+import com.daoninhthai.gateway.config.ConcurrencyLimitConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gradient concurrency limit. Compares the average round trip time of each sample
+ * window with the no-load baseline (the minimum observed RTT) and scales the limit by
+ * their ratio: the limit grows by about sqrt(limit) while latency stays at the baseline
+ * and shrinks as queueing inflates it. Dropped requests (timeouts, errors, 5xx) cut the
+ * limit multiplicatively.
+ * <p>
+ * The baseline is re-learned periodically so it can follow a downstream that got
+ * permanently slower or faster.
+ */
+public class GradientLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double backoffRatio;
+    private final long windowNanos;
+    private final int minSamples;
+    private final int probeInterval;
+
+    /**
+     * Kept fractional so that small increases accumulate.
+     */
+    private volatile double limit;
+
+    // Guarded by this
+    private long windowStartNanos = -1;
+    private int samples;
+    private long rttSumNanos;
+    private int maxInflight;
+    private boolean dropped;
+    private long rttNoLoadNanos;
+    private int updates;
+
+    public GradientLimit(ConcurrencyLimitConfig.Limit config) {
+        this.minLimit = config.getMinLimit();
+        this.maxLimit = config.getMaxLimit();
+        this.tolerance = config.getRttTolerance();
+        this.smoothing = config.getSmoothing();
+        this.backoffRatio = config.getBackoffRatio();
+        this.windowNanos = config.getSampleWindow().toNanos();
+        this.minSamples = config.getMinSamples();
+        this.probeInterval = config.getBaselineProbeInterval();
+        this.limit = config.getInitialLimit();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * No-load round trip time in milliseconds, 0 until the first sample window completes.
+     */
+    public synchronized double getRttNoLoadMillis() {
+        return rttNoLoadNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Record a completed request.
+     *
+     * @param nowNanos  completion time
+     * @param rttNanos  round trip time of the request
+     * @param inflight  requests in flight when the request completed, including it
+     * @param didDrop   whether the request timed out, failed or was rejected downstream
+     */
+    public synchronized void onSample(long nowNanos, long rttNanos, int inflight, boolean didDrop) {
+        if (windowStartNanos < 0) {
+            windowStartNanos = nowNanos;
+        }
+        samples++;
+        rttSumNanos += rttNanos;
+        maxInflight = Math.max(maxInflight, inflight);
+        dropped |= didDrop;
+
+        if (nowNanos - windowStartNanos < windowNanos || samples < minSamples) {
+            return;
+        }
+
+        update(rttSumNanos / samples, maxInflight, dropped);
+        windowStartNanos = nowNanos;
+        samples = 0;
+        rttSumNanos = 0;
+        maxInflight = 0;
+        dropped = false;
+    }
+
+    private void update(long rttNanos, int inflight, boolean didDrop) {
+        if (++updates % probeInterval == 0 || rttNoLoadNanos == 0 || rttNanos < rttNoLoadNanos) {
+            rttNoLoadNanos = rttNanos;
+        }
+
+        double newLimit;
+        if (didDrop) {
+            newLimit = limit * backoffRatio;
+        } else if (inflight < limit / 2) {
+            // The limit was not the bottleneck, so latency says nothing about it
+            return;
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * rttNoLoadNanos / rttNanos));
+            double queueSize = Math.sqrt(limit);
+            newLimit = limit * (1 - smoothing) + (limit * gradient + queueSize) * smoothing;
+        }
+
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+}
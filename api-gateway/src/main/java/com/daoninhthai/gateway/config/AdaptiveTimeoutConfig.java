@@ -0,0 +1,110 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.timeout.AdaptiveTimeouts;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upstream response timeouts per route, and optionally per path template, derived from the
+ * latencies observed for them.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.adaptive-timeout")
+@Data
+public class AdaptiveTimeoutConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Latency percentile the timeout is derived from
+     */
+    private double percentile = 0.999;
+
+    /**
+     * Multiple of the percentile used as the timeout
+     */
+    private double factor = 2.0;
+
+    /**
+     * Lower bound of the timeout
+     */
+    private Duration minTimeout = Duration.ofMillis(50);
+
+    /**
+     * Upper bound of the timeout; also the circuit breakers' time limit
+     */
+    private Duration maxTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Timeout until enough latencies have been observed
+     */
+    private Duration initialTimeout = Duration.ofSeconds(4);
+
+    /**
+     * Requests in the window before the timeout is derived from them
+     */
+    private long minSamples = 500;
+
+    /**
+     * Sliding window of the observed latencies
+     */
+    private Duration window = Duration.ofMinutes(5);
+
+    /**
+     * Number of slices the window rotates in
+     */
+    private int windowSlices = 10;
+
+    /**
+     * Bounds and path templates by route id
+     */
+    private Map<String, Route> routes = new HashMap<>();
+
+    @Bean
+    public AdaptiveTimeouts adaptiveTimeouts(MeterRegistry meterRegistry) {
+        return new AdaptiveTimeouts(this, meterRegistry);
+    }
+
+    /**
+     * Longest timeout any route can get, which the circuit breakers' time limiters must allow.
+     */
+    public Duration getTimeLimit() {
+        Duration limit = maxTimeout;
+        for (Route route : routes.values()) {
+            if (route.getMaxTimeout() != null && route.getMaxTimeout().compareTo(limit) > 0) {
+                limit = route.getMaxTimeout();
+            }
+        }
+        return limit;
+    }
+
+    @Data
+    public static class Route {
+
+        /**
+         * Lower bound for the route, instead of the global one
+         */
+        private Duration minTimeout;
+
+        /**
+         * Upper bound for the route, instead of the global one
+         */
+        private Duration maxTimeout;
+
+        /**
+         * Path patterns whose requests get a timeout of their own, e.g. /api/orders/{id}/report
+         */
+        private List<String> paths = new ArrayList<>();
+
+    }
+
+}
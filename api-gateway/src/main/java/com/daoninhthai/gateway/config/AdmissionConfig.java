@@ -0,0 +1,90 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.admission.AdmissionController;
+import com.daoninhthai.gateway.admission.EventLoopLagMonitor;
+import com.daoninhthai.gateway.admission.RequestPriority;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gateway-level load shedding by route priority class.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.admission")
+@Data
+public class AdmissionConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * How often each event loop is probed for scheduling lag
+     */
+    private Duration probeInterval = Duration.ofMillis(100);
+
+    /**
+     * Event loop lag that counts as full pressure
+     */
+    private Duration lagThreshold = Duration.ofMillis(50);
+
+    /**
+     * In-flight requests that count as full pressure
+     */
+    private int maxInflight = 2000;
+
+    /**
+     * Retry-After sent with shed requests
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    /**
+     * Priority of routes without an entry in routes
+     */
+    private RequestPriority defaultPriority = RequestPriority.NORMAL;
+
+    /**
+     * Priority class by route id
+     */
+    private Map<String, RequestPriority> routes = new HashMap<>();
+
+    /**
+     * Pressure at which each priority class starts being shed. Critical is never shed.
+     */
+    private Map<RequestPriority, Double> shedAt = new EnumMap<>(RequestPriority.class);
+
+    public AdmissionConfig() {
+        shedAt.put(RequestPriority.LOW, 0.7);
+        shedAt.put(RequestPriority.NORMAL, 1.0);
+        shedAt.put(RequestPriority.HIGH, 1.5);
+    }
+
+    /**
+     * Lag probes on the event loops of the Netty server
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public EventLoopLagMonitor eventLoopLagMonitor(ObjectProvider<ReactorResourceFactory> resourceFactory) {
+        ReactorResourceFactory factory = resourceFactory.getIfAvailable();
+        LoopResources loopResources = factory != null ? factory.getLoopResources() : HttpResources.get();
+        return new EventLoopLagMonitor(loopResources.onServer(LoopResources.DEFAULT_NATIVE), probeInterval);
+    }
+
+    @Bean
+    public AdmissionController admissionController(EventLoopLagMonitor eventLoopLagMonitor,
+                                                   MetricsConfig metricsConfig,
+                                                   MeterRegistry meterRegistry) {
+        return new AdmissionController(this, eventLoopLagMonitor::getLagMillis,
+                () -> metricsConfig.getActiveConnections().get(), meterRegistry);
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.canary.CanaryRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Weighted canary routing per route, with sticky assignment and automatic rollback.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.canary")
+@Data
+public class CanaryConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Cookie holding the sticky id of clients without a user id
+     */
+    private String cookieName = "GW-CANARY";
+
+    /**
+     * Lifetime of the sticky cookie
+     */
+    private Duration cookieMaxAge = Duration.ofDays(7);
+
+    /**
+     * Sliding window over which baseline and canary are compared
+     */
+    private Duration window = Duration.ofMinutes(2);
+
+    /**
+     * Number of slices the window rotates in
+     */
+    private int windowSlices = 12;
+
+    /**
+     * Requests each group needs in the window before the canary is judged
+     */
+    private long minSamples = 100;
+
+    /**
+     * Canary error rate allowed above the baseline's before rolling back, e.g. 0.05 = 5 points
+     */
+    private double maxErrorRateIncrease = 0.05;
+
+    /**
+     * Canary p99 allowed as a multiple of the baseline's p99 before rolling back
+     */
+    private double maxLatencyRatio = 1.5;
+
+    /**
+     * Canary settings by route id
+     */
+    private Map<String, Canary> routes = new HashMap<>();
+
+    @Bean
+    public CanaryRouter canaryRouter(MeterRegistry meterRegistry) {
+        return new CanaryRouter(this, meterRegistry);
+    }
+
+    @Data
+    public static class Canary {
+
+        /**
+         * Service id of the canary group; the baseline is the route's own service
+         */
+        private String service;
+
+        /**
+         * Percentage of clients sent to the canary, 0-100
+         */
+        private double weight = 0;
+
+        /**
+         * Set the weight to 0 when the canary is worse than the baseline
+         */
+        private boolean autoRollback = true;
+
+    }
+
+}
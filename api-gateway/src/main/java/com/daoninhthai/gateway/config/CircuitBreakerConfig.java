@@ -1,20 +1,32 @@
 package com.daoninhthai.gateway.config;
 
+import com.daoninhthai.gateway.exception.DeadlineExceededException;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.timelimiter.TimeLimiterConfig;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
 import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
 import org.springframework.cloud.client.circuitbreaker.Customizer;
+import org.springframework.cloud.gateway.support.NotFoundException;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 
 @Configuration
 public class CircuitBreakerConfig {
 
+    /**
+     * Upstream calls are cut off per attempt by the adaptive timeouts; the time limiters
+     * only cap the whole call, retries included, at the longest timeout a route can get.
+     * With per-instance breakers in the load balancer, the breakers of the lb:// routes
+     * listed in their route-breakers only count requests that found no instance to go to
+     * and timeouts, so one bad instance cannot open them but a hung service still does.
+     */
     @Bean
-    public Customizer<ReactiveResilience4JCircuitBreakerFactory> defaultCustomizer() {
+    public Customizer<ReactiveResilience4JCircuitBreakerFactory> defaultCustomizer(AdaptiveTimeoutConfig timeoutConfig,
+                                                                                   LoadBalancerConfig loadBalancerConfig) {
         return factory -> factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
                 .circuitBreakerConfig(io.github.resilience4j.circuitbreaker.CircuitBreakerConfig.custom()
                         .failureRateThreshold(50)
@@ -23,25 +35,76 @@ public class CircuitBreakerConfig {
                         .minimumNumberOfCalls(5)
                         .permittedNumberOfCallsInHalfOpenState(3)
                         .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                        .recordException(recordedFailures(loadBalancerConfig, id))
+                        .ignoreExceptions(DeadlineExceededException.class)
                         .build())
                 .timeLimiterConfig(TimeLimiterConfig.custom()
-                        .timeoutDuration(Duration.ofSeconds(4))
+                        .timeoutDuration(timeoutConfig.getTimeLimit())
                         .build())
                 .build());
     }
 
     @Bean
-    public Customizer<ReactiveResilience4JCircuitBreakerFactory> slowServiceCustomizer() {
+    public Customizer<ReactiveResilience4JCircuitBreakerFactory> slowServiceCustomizer(AdaptiveTimeoutConfig timeoutConfig,
+                                                                                       LoadBalancerConfig loadBalancerConfig) {
+        Predicate<Throwable> recorded = recordedFailures(loadBalancerConfig, "order-service-cb");
         return factory -> factory.configure(builder -> builder
                         .circuitBreakerConfig(io.github.resilience4j.circuitbreaker.CircuitBreakerConfig.custom()
                                 .failureRateThreshold(30)
                                 .waitDurationInOpenState(Duration.ofMillis(30000))
                                 .slidingWindowSize(20)
+                                .recordException(recorded)
+                                .ignoreExceptions(DeadlineExceededException.class)
                                 .build())
                         .timeLimiterConfig(TimeLimiterConfig.custom()
-                                .timeoutDuration(Duration.ofSeconds(10))
+                                .timeoutDuration(timeoutConfig.getTimeLimit())
                                 .build()),
-                "order-service");
+                "order-service-cb");
+    }
+
+    static Predicate<Throwable> recordedFailures(LoadBalancerConfig loadBalancerConfig, String circuitBreakerId) {
+        LoadBalancerConfig.InstanceCircuitBreaker instanceBreakers = loadBalancerConfig.getInstanceCircuitBreaker();
+        if (loadBalancerConfig.isEnabled() && instanceBreakers.isEnabled()
+                && instanceBreakers.getRouteBreakers().contains(circuitBreakerId)) {
+            return throwable -> throwable instanceof NotFoundException || isTimeout(throwable);
+        }
+        return throwable -> true;
+    }
+
+    /**
+     * Time limiter and adaptive timeouts, the latter wrapped in a 504 ResponseStatusException.
+     */
+    private static boolean isTimeout(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Token introspection gets a tighter breaker: a slow auth server should be cut off
+     * quickly instead of holding pooled connections for the full read timeout.
+     */
+    @Bean
+    public Customizer<ReactiveResilience4JCircuitBreakerFactory> oauth2IntrospectionCustomizer(OAuth2Config oauth2Config) {
+        Duration readTimeout = Duration.ofMillis(oauth2Config.getReadTimeout());
+        return factory -> factory.configure(builder -> builder
+                        .circuitBreakerConfig(io.github.resilience4j.circuitbreaker.CircuitBreakerConfig.custom()
+                                .failureRateThreshold(50)
+                                .slowCallRateThreshold(50)
+                                .slowCallDurationThreshold(readTimeout.dividedBy(2))
+                                .waitDurationInOpenState(Duration.ofMillis(5000))
+                                .slidingWindowSize(20)
+                                .minimumNumberOfCalls(10)
+                                .permittedNumberOfCallsInHalfOpenState(3)
+                                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                                .build())
+                        .timeLimiterConfig(TimeLimiterConfig.custom()
+                                .timeoutDuration(readTimeout.plusMillis(oauth2Config.getConnectTimeout()))
+                                .build()),
+                OAuth2Config.INTROSPECTION_CIRCUIT_BREAKER);
     }
 
 }
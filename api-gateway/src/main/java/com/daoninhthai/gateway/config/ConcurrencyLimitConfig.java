@@ -0,0 +1,130 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.concurrency.AdaptiveConcurrencyLimiterRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Adaptive concurrency limits per downstream service.
+ * Requests beyond a service's limit are rejected with 503 and Retry-After.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.concurrency-limit")
+@Data
+public class ConcurrencyLimitConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Retry-After sent with rejected requests
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    /**
+     * Limit settings for services without their own entry
+     */
+    private Limit defaults = new Limit();
+
+    /**
+     * Limit settings by service id, e.g. order-service
+     */
+    private Map<String, ServiceLimit> services = new HashMap<>();
+
+    @Bean
+    public AdaptiveConcurrencyLimiterRegistry adaptiveConcurrencyLimiterRegistry(MeterRegistry meterRegistry) {
+        return new AdaptiveConcurrencyLimiterRegistry(this, meterRegistry);
+    }
+
+    /**
+     * Settings for a service: its own entry merged over the defaults.
+     */
+    public Limit resolveLimit(String serviceId) {
+        ServiceLimit service = services.get(serviceId);
+        return service != null ? service.mergeOver(defaults) : defaults;
+    }
+
+    @Data
+    public static class Limit {
+
+        private int initialLimit = 20;
+
+        private int minLimit = 5;
+
+        private int maxLimit = 500;
+
+        /**
+         * How much the RTT may exceed the no-load baseline before the limit shrinks.
+         */
+        private double rttTolerance = 1.5;
+
+        /**
+         * Weight of a new limit estimate against the current limit.
+         */
+        private double smoothing = 0.2;
+
+        /**
+         * Factor the limit is multiplied by when requests time out or fail.
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * Samples are averaged over this window before the limit is updated.
+         */
+        private Duration sampleWindow = Duration.ofSeconds(1);
+
+        private int minSamples = 10;
+
+        /**
+         * Every this many updates the no-load baseline is re-learned.
+         */
+        private int baselineProbeInterval = 60;
+    }
+
+    @Data
+    public static class ServiceLimit {
+
+        /**
+         * Unset values are inherited from the defaults
+         */
+        private Integer initialLimit;
+
+        private Integer minLimit;
+
+        private Integer maxLimit;
+
+        private Double rttTolerance;
+
+        private Double smoothing;
+
+        private Double backoffRatio;
+
+        private Duration sampleWindow;
+
+        private Integer minSamples;
+
+        private Integer baselineProbeInterval;
+
+        Limit mergeOver(Limit defaults) {
+            Limit limit = new Limit();
+            limit.setInitialLimit(initialLimit != null ? initialLimit : defaults.getInitialLimit());
+            limit.setMinLimit(minLimit != null ? minLimit : defaults.getMinLimit());
+            limit.setMaxLimit(maxLimit != null ? maxLimit : defaults.getMaxLimit());
+            limit.setRttTolerance(rttTolerance != null ? rttTolerance : defaults.getRttTolerance());
+            limit.setSmoothing(smoothing != null ? smoothing : defaults.getSmoothing());
+            limit.setBackoffRatio(backoffRatio != null ? backoffRatio : defaults.getBackoffRatio());
+            limit.setSampleWindow(sampleWindow != null ? sampleWindow : defaults.getSampleWindow());
+            limit.setMinSamples(minSamples != null ? minSamples : defaults.getMinSamples());
+            limit.setBaselineProbeInterval(baselineProbeInterval != null
+                    ? baselineProbeInterval : defaults.getBaselineProbeInterval());
+            return limit;
+        }
+    }
+
+}
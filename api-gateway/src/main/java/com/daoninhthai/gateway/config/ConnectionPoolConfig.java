@@ -0,0 +1,127 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.pool.ServiceHttpClients;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import reactor.netty.http.HttpProtocol;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Separate upstream connection pools per downstream service, so a service that holds its
+ * connections cannot leave requests to other services waiting for one. Routes listed under
+ * http2 talk HTTP/2 to their service over a few multiplexed connections instead.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.connection-pools")
+@Data
+public class ConnectionPoolConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Pool of services without settings of their own
+     */
+    private ConnectionPoolProperties defaults = new ConnectionPoolProperties();
+
+    /**
+     * Pool settings by service id
+     */
+    private Map<String, ServicePool> services = new HashMap<>();
+
+    /**
+     * HTTP/2 upstream settings by route id; other routes use HTTP/1.1
+     */
+    private Map<String, Http2> http2 = new HashMap<>();
+
+    @Bean(destroyMethod = "dispose")
+    public ServiceHttpClients serviceHttpClients(HttpClientProperties httpClientProperties) {
+        return new ServiceHttpClients(this, httpClientProperties);
+    }
+
+    /**
+     * Pool settings of a service: its own entry merged over the defaults.
+     */
+    public ConnectionPoolProperties getPool(String serviceId) {
+        ServicePool service = services.get(serviceId);
+        return service != null ? service.mergeOver(defaults) : defaults;
+    }
+
+    @Data
+    public static class ServicePool {
+
+        /**
+         * Unset values are inherited from the defaults
+         */
+        private Integer maxConnections;
+
+        private Integer pendingAcquireMaxCount;
+
+        private Duration pendingAcquireTimeout;
+
+        private Duration maxIdleTime;
+
+        private Duration maxLifeTime;
+
+        private Duration evictionInterval;
+
+        private Boolean metricsEnabled;
+
+        ConnectionPoolProperties mergeOver(ConnectionPoolProperties defaults) {
+            ConnectionPoolProperties pool = new ConnectionPoolProperties();
+            pool.setMaxConnections(maxConnections != null ? maxConnections : defaults.getMaxConnections());
+            pool.setPendingAcquireMaxCount(pendingAcquireMaxCount != null
+                    ? pendingAcquireMaxCount : defaults.getPendingAcquireMaxCount());
+            pool.setPendingAcquireTimeout(pendingAcquireTimeout != null
+                    ? pendingAcquireTimeout : defaults.getPendingAcquireTimeout());
+            pool.setMaxIdleTime(maxIdleTime != null ? maxIdleTime : defaults.getMaxIdleTime());
+            pool.setMaxLifeTime(maxLifeTime != null ? maxLifeTime : defaults.getMaxLifeTime());
+            pool.setEvictionInterval(evictionInterval != null ? evictionInterval : defaults.getEvictionInterval());
+            pool.setMetricsEnabled(metricsEnabled != null ? metricsEnabled : defaults.isMetricsEnabled());
+            return pool;
+        }
+    }
+
+    @Data
+    public static class Http2 {
+
+        /**
+         * H2C for cleartext HTTP/2 with prior knowledge, H2 for HTTP/2 negotiated over TLS
+         * with ALPN, which needs instances registered as secure
+         */
+        private HttpProtocol protocol = HttpProtocol.H2C;
+
+        /**
+         * HTTP/2 connections per instance
+         */
+        private int maxConnections = 2;
+
+        /**
+         * Streams per connection, on top of the limit the instance announces
+         */
+        private int maxConcurrentStreams = 100;
+
+        /**
+         * Flow-control window of each stream
+         */
+        private DataSize initialWindowSize = DataSize.ofMegabytes(1);
+
+        /**
+         * Flow-control window of each connection, shared by its streams
+         */
+        private DataSize connectionWindowSize = DataSize.ofMegabytes(8);
+
+        /**
+         * Largest frame the instance may send
+         */
+        private DataSize maxFrameSize = DataSize.ofKilobytes(16);
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.daoninhthai.gateway.config;
+
+import lombok.Data;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Connection pool settings for an outbound Reactor Netty client.
+ * Used wherever the gateway needs a dedicated, bounded pool instead of
+ * sharing the default one.
+ */
+@Data
+public class ConnectionPoolProperties {
+
+    /**
+     * Maximum number of connections kept in the pool.
+     */
+    private int maxConnections = 50;
+
+    /**
+     * Maximum number of requests waiting for a connection. Further requests fail fast.
+     */
+    private int pendingAcquireMaxCount = 100;
+
+    /**
+     * Maximum time a request waits for a connection from the pool.
+     */
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+
+    /**
+     * Time after which an idle connection is closed.
+     */
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+
+    /**
+     * Maximum lifetime of a connection, regardless of activity.
+     */
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+
+    /**
+     * Interval of the background task evicting idle and expired connections.
+     */
+    private Duration evictionInterval = Duration.ofSeconds(30);
+
+    /**
+     * Whether to publish pool utilization metrics (reactor.netty.connection.provider.*).
+     */
+    private boolean metricsEnabled = true;
+
+    /**
+     * Build a named connection provider from these settings.
+     */
+    public ConnectionProvider toConnectionProvider(String name) {
+        return ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictionInterval)
+                .metrics(metricsEnabled)
+                .build();
+    }
+
+}
@@ -27,7 +27,8 @@ public class CorsConfig {
                 "Content-Type",
                 "Accept",
                 "Origin",
-                "X-Requested-With"
+                "X-Requested-With",
+                "X-Request-Timeout"
         ));
         corsConfig.setExposedHeaders(Collections.singletonList("Authorization"));
         corsConfig.setAllowCredentials(true);
@@ -0,0 +1,41 @@
+package com.daoninhthai.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Request deadlines accepted from clients or assigned by the gateway, and passed on to
+ * the downstream services as a remaining time budget.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.deadline")
+@Data
+public class DeadlineConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Header carrying the remaining time budget of a request in milliseconds, from clients
+     * and to the downstream services
+     */
+    private String header = "X-Request-Timeout";
+
+    /**
+     * Budget of requests that do not carry one
+     */
+    private Duration defaultTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Upper bound of the budget clients can ask for
+     */
+    private Duration maxTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Requests with less budget left when the upstream call would start are rejected
+     */
+    private Duration minBudget = Duration.ofMillis(5);
+
+}
@@ -0,0 +1,57 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.routing.DynamicRouteTable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.RoutePredicateFactory;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Routes loaded at runtime from a file of route definitions, next to the routes in RouteConfig.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.dynamic-routes")
+@Data
+public class DynamicRouteConfig {
+
+    private boolean enabled = false;
+
+    /**
+     * JSON file holding an array of route definitions
+     */
+    private String file = "routes.json";
+
+    /**
+     * How often the file is checked for changes, in milliseconds
+     */
+    private long pollIntervalMs = 2000;
+
+    /**
+     * Upper bound for compiling a new route table
+     */
+    private Duration compileTimeout = Duration.ofSeconds(10);
+
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public DynamicRouteTable dynamicRouteTable(List<RoutePredicateFactory> predicateFactories,
+                                               List<GatewayFilterFactory> filterFactories,
+                                               GatewayProperties gatewayProperties,
+                                               ConfigurationService configurationService,
+                                               ObjectMapper objectMapper,
+                                               ApplicationEventPublisher eventPublisher,
+                                               MeterRegistry meterRegistry) {
+        return new DynamicRouteTable(this, predicateFactories, filterFactories, gatewayProperties,
+                configurationService, objectMapper, eventPublisher, meterRegistry);
+    }
+
+}
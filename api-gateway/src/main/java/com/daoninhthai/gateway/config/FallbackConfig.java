@@ -0,0 +1,62 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.fallback.FallbackStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Last-known-good responses served by the fallback endpoints while a route's upstream is
+ * failing. Only routes whose GET responses are the same for every caller should be listed,
+ * since a stored response is served to anyone requesting the same URL.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.fallback")
+@Data
+public class FallbackConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Route ids whose successful GET responses are kept
+     */
+    private Set<String> routes = new HashSet<>();
+
+    /**
+     * How long a stored response may still be served
+     */
+    private Duration retention = Duration.ofHours(24);
+
+    /**
+     * Most responses kept at once
+     */
+    private int maxEntries = 10000;
+
+    /**
+     * Most memory the kept responses may take
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Responses with larger bodies are not kept
+     */
+    private DataSize maxBodySize = DataSize.ofKilobytes(256);
+
+    /**
+     * Header marking a stored response, with its age in seconds
+     */
+    private String staleHeader = "X-Gateway-Stale";
+
+    @Bean
+    public FallbackStore fallbackStore(MeterRegistry meterRegistry) {
+        return new FallbackStore(this, meterRegistry);
+    }
+
+}
@@ -1,19 +1,33 @@
 package com.daoninhthai.gateway.config;
 
+import com.daoninhthai.gateway.filter.AdmissionControlFilter;
+import com.daoninhthai.gateway.routing.DynamicRouteLocator;
+import com.daoninhthai.gateway.routing.DynamicRouteTable;
+import com.daoninhthai.gateway.routing.IndexedRoutePredicateHandlerMapping;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.CompositeRouteLocator;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.Ordered;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Configuration
 @Slf4j
 public class GatewayConfig {
 
     @Bean
-    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @Order(AdmissionControlFilter.ORDER + 1)
     public GlobalFilter globalLoggingFilter() {
         return (exchange, chain) -> {
             String method = exchange.getRequest().getMethod().name();
@@ -38,4 +52,32 @@ public class GatewayConfig {
         };
     }
 
+    /**
+     * Replaces the default primary route locator with one that also serves the routes of
+     * the dynamic route table, so they show up in route lookup and the gateway actuator
+     * endpoints as soon as a new table is swapped in.
+     */
+    @Bean
+    @Primary
+    public RouteLocator cachedCompositeRouteLocator(List<RouteLocator> routeLocators,
+                                                    DynamicRouteTable dynamicRouteTable) {
+        return new DynamicRouteLocator(new CompositeRouteLocator(Flux.fromIterable(routeLocators)),
+                dynamicRouteTable);
+    }
+
+    /**
+     * Replaces the default route lookup, which tests every route's predicates in turn,
+     * with a lookup through a path-segment trie over the routes, including the routes
+     * loaded from the dynamic route file.
+     */
+    @Bean
+    public RoutePredicateHandlerMapping indexedRoutePredicateHandlerMapping(FilteringWebHandler webHandler,
+                                                                          RouteLocator routeLocator,
+                                                                          RouteDefinitionLocator routeDefinitionLocator,
+                                                                          GlobalCorsProperties globalCorsProperties,
+                                                                          Environment environment) {
+        return new IndexedRoutePredicateHandlerMapping(webHandler, routeLocator, routeDefinitionLocator,
+                globalCorsProperties, environment);
+    }
+
 }
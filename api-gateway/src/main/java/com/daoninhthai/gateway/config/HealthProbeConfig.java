@@ -0,0 +1,60 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.health.HealthProber;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background health probing of the downstream service instances found in service discovery.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.health-probe")
+@Data
+public class HealthProbeConfig {
+
+    /**
+     * Service ids to probe; all discovered services if empty
+     */
+    private List<String> services = new ArrayList<>();
+
+    /**
+     * Delay between the end of a probe round and the start of the next
+     */
+    private long intervalMs = 10000;
+
+    /**
+     * Timeout of a single instance probe
+     */
+    private Duration timeout = Duration.ofSeconds(2);
+
+    /**
+     * Health path probed on each instance, on its management port if it registered one
+     */
+    private String path = "/actuator/health";
+
+    /**
+     * Instances probed at the same time
+     */
+    private int concurrency = 32;
+
+    /**
+     * Age after which a snapshot is reported as stale instead of up or down
+     */
+    private Duration maxAge = Duration.ofSeconds(60);
+
+    @Bean
+    public HealthProber healthProber(ReactiveDiscoveryClient discoveryClient, WebClient healthCheckWebClient,
+                                     MeterRegistry meterRegistry) {
+        return new HealthProber(this, discoveryClient, healthCheckWebClient, meterRegistry);
+    }
+
+}
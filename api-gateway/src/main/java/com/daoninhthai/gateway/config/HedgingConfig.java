@@ -0,0 +1,77 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.hedging.RequestHedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hedged requests: a second attempt to another instance when the first one is slower
+ * than the route usually is.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.hedging")
+@Data
+public class HedgingConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Ids of the routes whose requests are hedged
+     */
+    private Set<String> routes = new HashSet<>();
+
+    /**
+     * Methods safe to send twice
+     */
+    private Set<HttpMethod> methods = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    /**
+     * Latency percentile of the route after which the hedge is sent
+     */
+    private double percentile = 0.95;
+
+    /**
+     * Shortest delay before a hedge, so fast routes are not hedged on jitter
+     */
+    private Duration minDelay = Duration.ofMillis(5);
+
+    /**
+     * Hedges allowed per request over time, e.g. 0.05 = at most 5% extra load
+     */
+    private double budgetRatio = 0.05;
+
+    /**
+     * Hedges allowed in a burst once the budget has filled up
+     */
+    private int budgetCapacity = 10;
+
+    /**
+     * Sliding window of the latencies the delay is taken from
+     */
+    private Duration window = Duration.ofMinutes(1);
+
+    /**
+     * Number of slices the window rotates in
+     */
+    private int windowSlices = 6;
+
+    /**
+     * Requests a route needs in the window before it is hedged
+     */
+    private long minSamples = 100;
+
+    @Bean
+    public RequestHedger requestHedger(MeterRegistry meterRegistry) {
+        return new RequestHedger(this, meterRegistry);
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.loadbalancer.AffinityKeySource;
+import com.daoninhthai.gateway.loadbalancer.InstanceCircuitBreakers;
+import com.daoninhthai.gateway.loadbalancer.InstanceStatsRegistry;
+import com.daoninhthai.gateway.loadbalancer.OutlierDetector;
+import com.daoninhthai.gateway.loadbalancer.PeakEwmaLoadBalancerConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Latency-aware load balancing for lb:// routes: power of two choices over peak EWMA
+ * latency and outstanding requests. When disabled, services use round robin.
+ * Routes listed under consistent-hash.routes are instead balanced by a bounded-load
+ * consistent hash of a request key, for cache locality on the instances. Instances that
+ * fail or respond much slower than their peers are ejected from both for a while, and
+ * instances whose circuit breaker is open are skipped altogether.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.load-balancer")
+@LoadBalancerClients(defaultConfiguration = PeakEwmaLoadBalancerConfiguration.class)
+@Data
+public class LoadBalancerConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Time constant of the latency EWMA
+     */
+    private Duration decayTime = Duration.ofSeconds(10);
+
+    /**
+     * Latency recorded for failed requests, so erroring instances look slow
+     */
+    private Duration failurePenalty = Duration.ofSeconds(1);
+
+    private ConsistentHash consistentHash = new ConsistentHash();
+
+    private OutlierDetection outlierDetection = new OutlierDetection();
+
+    private InstanceCircuitBreaker instanceCircuitBreaker = new InstanceCircuitBreaker();
+
+    @Bean
+    public InstanceStatsRegistry instanceStatsRegistry(MeterRegistry meterRegistry) {
+        return new InstanceStatsRegistry(this, meterRegistry);
+    }
+
+    @Bean
+    public OutlierDetector outlierDetector(MeterRegistry meterRegistry) {
+        return new OutlierDetector(outlierDetection, meterRegistry);
+    }
+
+    @Bean
+    public InstanceCircuitBreakers instanceCircuitBreakers(MeterRegistry meterRegistry) {
+        return new InstanceCircuitBreakers(instanceCircuitBreaker, meterRegistry);
+    }
+
+    @Data
+    public static class ConsistentHash {
+
+        /**
+         * Points per instance on the hash ring
+         */
+        private int virtualNodes = 100;
+
+        /**
+         * Instances take at most this multiple of the average load before keys spill over
+         */
+        private double loadFactor = 1.25;
+
+        /**
+         * Affinity key by route id
+         */
+        private Map<String, Affinity> routes = new HashMap<>();
+
+    }
+
+    @Data
+    public static class Affinity {
+
+        private AffinityKeySource source = AffinityKeySource.PATH_SEGMENT;
+
+        /**
+         * Header name for the header source
+         */
+        private String header;
+
+        /**
+         * Zero-based path segment index for the path-segment source
+         */
+        private int segment = 2;
+
+    }
+
+    @Data
+    public static class OutlierDetection {
+
+        private boolean enabled = true;
+
+        /**
+         * Consecutive failed requests (5xx or errors) after which an instance is ejected
+         */
+        private int consecutiveErrors = 5;
+
+        /**
+         * Interval of the latency comparison, which also returns and forgets instances
+         */
+        private long intervalMs = 10000;
+
+        /**
+         * Mean latency over an interval, as a multiple of the service's median, at which an
+         * instance is ejected; 0 disables latency ejection
+         */
+        private double latencyFactor = 3.0;
+
+        /**
+         * Requests an instance needs in an interval for its latency to be compared
+         */
+        private int minRequests = 20;
+
+        /**
+         * Instances with enough requests a service needs for latency outliers to be detected
+         */
+        private int minInstances = 3;
+
+        /**
+         * Ejection time of the first ejection; doubles with each further ejection
+         */
+        private Duration baseEjectionTime = Duration.ofSeconds(30);
+
+        /**
+         * Upper bound of the ejection time
+         */
+        private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+        /**
+         * Largest share of a service's instances ejected at once, in percent
+         */
+        private int maxEjectionPercent = 50;
+
+    }
+
+    @Data
+    public static class InstanceCircuitBreaker {
+
+        private boolean enabled = true;
+
+        /**
+         * Failure rate in percent at which an instance's breaker opens
+         */
+        private float failureRateThreshold = 50;
+
+        /**
+         * Calls per instance the failure rate is computed over
+         */
+        private int slidingWindowSize = 20;
+
+        /**
+         * Calls an instance needs before its failure rate is evaluated
+         */
+        private int minimumNumberOfCalls = 10;
+
+        /**
+         * Time a breaker stays open before trial calls are let through
+         */
+        private Duration waitDurationInOpenState = Duration.ofSeconds(30);
+
+        /**
+         * Trial calls of a half-open breaker
+         */
+        private int permittedNumberOfCallsInHalfOpenState = 3;
+
+        /**
+         * Closed breakers of instances unused for this long are dropped
+         */
+        private Duration idleTime = Duration.ofMinutes(10);
+
+        /**
+         * Interval of the check for idle breakers
+         */
+        private long evictIntervalMs = 60000;
+
+        /**
+         * Most instances tracked at once
+         */
+        private int maxInstances = 1000;
+
+        /**
+         * Circuit breaker ids of lb:// routes that leave failing instances to these breakers:
+         * they only count requests that found no instance to go to, and timeouts
+         */
+        private Set<String> routeBreakers = new HashSet<>();
+
+    }
+
+}
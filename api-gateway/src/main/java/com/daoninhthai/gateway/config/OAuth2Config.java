@@ -1,16 +1,30 @@
 package com.daoninhthai.gateway.config;
 
+import io.netty.channel.ChannelOption;
 import lombok.Data;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 @ConfigurationProperties(prefix = "oauth2")
 @Data
 public class OAuth2Config {
 
+    /**
+     * Circuit breaker id guarding calls to the introspection endpoint.
+     */
+    public static final String INTROSPECTION_CIRCUIT_BREAKER = "oauth2-introspection";
+
     private String introspectionUri = "http://localhost:9000/oauth2/introspect";
 
     private String clientId = "api-gateway-client";
@@ -23,12 +37,90 @@ public class OAuth2Config {
 
     private int readTimeout = 5000;
 
+    /**
+     * Dedicated connection pool for introspection calls. Its max connections and
+     * pending-acquire limit act as the bulkhead towards the auth server.
+     */
+    private ConnectionPoolProperties pool = new ConnectionPoolProperties();
+
+    /**
+     * Hybrid validation: JWT access tokens from a trusted issuer are verified locally,
+     * only opaque tokens are sent to the introspection endpoint.
+     */
+    private Hybrid hybrid = new Hybrid();
+
+    /**
+     * Issuers whose JWT access tokens may be verified locally.
+     * Falls back to the configured issuer URI when none are listed.
+     */
+    public List<String> resolveTrustedIssuers() {
+        if (hybrid.getTrustedIssuers().isEmpty()) {
+            return List.of(issuerUri);
+        }
+        return hybrid.getTrustedIssuers();
+    }
+
+    /**
+     * JWK set location, defaulting to the Spring Authorization Server endpoint of the issuer.
+     */
+    public String resolveJwkSetUri() {
+        if (hybrid.getJwkSetUri() != null && !hybrid.getJwkSetUri().isEmpty()) {
+            return hybrid.getJwkSetUri();
+        }
+        return issuerUri + "/oauth2/jwks";
+    }
+
+    @Bean(name = "oauth2ConnectionProvider", destroyMethod = "dispose")
+    public ConnectionProvider oauth2ConnectionProvider() {
+        return pool.toConnectionProvider(INTROSPECTION_CIRCUIT_BREAKER);
+    }
+
     @Bean(name = "oauth2WebClient")
-    public WebClient oauth2WebClient() {
+    public WebClient oauth2WebClient(@Qualifier("oauth2ConnectionProvider") ConnectionProvider connectionProvider) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofMillis(readTimeout));
+
         return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .baseUrl(introspectionUri)
                 .defaultHeader("Content-Type", "application/x-www-form-urlencoded")
                 .build();
     }
 
+    @Data
+    public static class Hybrid {
+
+        /**
+         * Whether JWT-formatted access tokens are validated locally.
+         */
+        private boolean enabled = true;
+
+        /**
+         * JWK set endpoint of the issuer. Empty means {issuerUri}/oauth2/jwks.
+         */
+        private String jwkSetUri;
+
+        /**
+         * Issuers trusted for local validation. Empty means only issuerUri.
+         */
+        private List<String> trustedIssuers = new ArrayList<>();
+
+        /**
+         * Age after which cached issuer keys are refreshed in the background.
+         */
+        private Duration keyRefreshInterval = Duration.ofMinutes(10);
+
+        /**
+         * Minimum time between refreshes triggered by an unknown key id.
+         */
+        private Duration minRefreshInterval = Duration.ofSeconds(30);
+
+        /**
+         * Allowed clock skew when checking exp/nbf of locally validated tokens.
+         */
+        private Duration clockSkew = Duration.ofSeconds(30);
+    }
+
 }
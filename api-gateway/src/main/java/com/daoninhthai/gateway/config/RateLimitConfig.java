@@ -1,23 +1,162 @@
 package com.daoninhthai.gateway.config;
 
+import com.daoninhthai.gateway.ratelimit.DegradedModeLimiter;
+import com.daoninhthai.gateway.ratelimit.HeavyHitterTracker;
+import com.daoninhthai.gateway.ratelimit.HierarchicalRateLimiter;
+import com.daoninhthai.gateway.ratelimit.RateLimitAlgorithm;
+import com.daoninhthai.gateway.ratelimit.RateLimitPolicyResolver;
+import com.daoninhthai.gateway.ratelimit.RedisLeaseClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
-import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
+@ConfigurationProperties(prefix = "gateway.rate-limit")
+@Data
 public class RateLimitConfig {
 
     /**
-     * Configure Redis-based rate limiter
-     * replenishRate: how many requests per second to allow (without any dropped requests)
-     * burstCapacity: maximum number of requests a user is allowed in a single second
+     * Algorithm used when a policy does not name one
+     */
+    private RateLimitAlgorithm algorithm = RateLimitAlgorithm.GCRA;
+
+    /**
+     * How many requests per second to allow (without any dropped requests)
+     */
+    private int replenishRate = 10;
+
+    /**
+     * Maximum number of requests a user is allowed in a single second
+     */
+    private int burstCapacity = 20;
+
+    /**
+     * How many tokens a single request costs
+     */
+    private int requestedTokens = 1;
+
+    /**
+     * Window length of the sliding window counter
+     */
+    private Duration window = Duration.ofSeconds(1);
+
+    /**
+     * Client tiers in match order, each selected by JWT roles ("role:ROLE_PREMIUM")
+     * or plans ("plan:enterprise"). Clients matching no tier use the "default" tier.
+     */
+    private Map<String, List<String>> tiers = new LinkedHashMap<>();
+
+    /**
+     * Per-route and per-tier overrides of the defaults above
+     */
+    private List<Policy> policies = new ArrayList<>();
+
+    /**
+     * Request cost weights by path pattern. The first matching rule wins,
+     * other requests cost requestedTokens.
+     */
+    private List<Cost> costs = new ArrayList<>();
+
+    /**
+     * Node-local lease tier in front of Redis
+     */
+    private Local local = new Local();
+
+    /**
+     * Coalescing of concurrent Redis lease calls into one script evaluation
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * Node-local fallback limits used while Redis is unavailable
+     */
+    private Degraded degraded = new Degraded();
+
+    /**
+     * Top-K tracking of the keys consuming the most tokens, with optional penalties
+     */
+    private HeavyHitters heavyHitters = new HeavyHitters();
+
+    /**
+     * Redis script that leases tokens for one or more keys using GCRA or a sliding window counter
+     */
+    @Bean
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RedisScript<List<Long>> rateLimitLeaseScript() {
+        DefaultRedisScript redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(
+                new ClassPathResource("scripts/rate_limit_lease.lua")));
+        redisScript.setResultType(List.class);
+        return redisScript;
+    }
+
+    @Bean
+    public RedisLeaseClient redisLeaseClient(ReactiveStringRedisTemplate redisTemplate,
+                                             RedisScript<List<Long>> rateLimitLeaseScript) {
+        ReactiveRedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+        boolean cluster = connectionFactory instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) connectionFactory).isClusterAware();
+        return new RedisLeaseClient(redisTemplate, rateLimitLeaseScript, batch, cluster);
+    }
+
+    /**
+     * Compiled route and tier policies, reloaded on configuration refresh
+     */
+    @Bean
+    public RateLimitPolicyResolver rateLimitPolicyResolver(MeterRegistry meterRegistry) {
+        return new RateLimitPolicyResolver(this, meterRegistry);
+    }
+
+    /**
+     * Circuit breaker and node-local fallback in front of Redis, when enabled
+     */
+    @Bean
+    public DegradedModeLimiter degradedModeLimiter(ObjectProvider<DiscoveryClient> discoveryClient,
+                                                   ApplicationEventPublisher eventPublisher,
+                                                   MeterRegistry meterRegistry) {
+        return new DegradedModeLimiter(degraded, discoveryClient.getIfAvailable(), eventPublisher, meterRegistry);
+    }
+
+    @Bean
+    public HeavyHitterTracker heavyHitterTracker(MeterRegistry meterRegistry) {
+        return new HeavyHitterTracker(heavyHitters, meterRegistry);
+    }
+
+    /**
+     * Rate limiter used by the RateLimitFilter on all routes.
+     * Decisions are made against node-local token leases refilled in batches from Redis.
      */
     @Bean
-    public RedisRateLimiter redisRateLimiter() {
-        return new RedisRateLimiter(10, 20);
+    @Primary
+    public HierarchicalRateLimiter hierarchicalRateLimiter(RedisLeaseClient redisLeaseClient,
+                                                           RateLimitPolicyResolver rateLimitPolicyResolver,
+                                                           DegradedModeLimiter degradedModeLimiter,
+                                                           ConfigurationService configurationService,
+                                                           MeterRegistry meterRegistry) {
+        return new HierarchicalRateLimiter(redisLeaseClient, this, rateLimitPolicyResolver,
+                degraded.isEnabled() ? degradedModeLimiter : null, configurationService, meterRegistry);
     }
 
     /**
@@ -53,4 +192,179 @@ public class RateLimitConfig {
         };
     }
 
+    @Data
+    public static class Local {
+
+        /**
+         * Whether decisions are made against node-local leases. When disabled,
+         * every request is checked against Redis.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Fraction of the burst capacity a node leases from Redis in one call.
+         * Bounds the over-admission error to one batch per node and key.
+         */
+        private double batchFraction = 0.2;
+
+        /**
+         * Upper bound for the number of tokens leased in one call.
+         */
+        private int maxBatchSize = 50;
+
+        /**
+         * How long leased tokens stay valid locally before they expire unused.
+         */
+        private Duration leaseDuration = Duration.ofSeconds(1);
+
+        /**
+         * Maximum number of keys with a local lease. Keys beyond this limit are
+         * checked against Redis directly.
+         */
+        private int maxKeys = 100_000;
+    }
+
+    @Data
+    public static class Batch {
+
+        /**
+         * Whether concurrent lease calls are evaluated together in one script call.
+         * On Redis Cluster only the keys of one hash slot share a call.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of keys evaluated in one call. A full batch is sent immediately.
+         */
+        private int maxSize = 32;
+
+        /**
+         * How long the first lease of a batch waits for others to join.
+         */
+        private Duration window = Duration.ofNanos(200_000);
+    }
+
+    @Data
+    public static class Degraded {
+
+        /**
+         * Whether node-local limits are enforced while Redis is unavailable.
+         * When disabled, requests are allowed until Redis recovers.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How long a lease call may wait for Redis before the local limit is used.
+         */
+        private Duration timeout = Duration.ofMillis(100);
+
+        /**
+         * Failure rate in percent that opens the circuit breaker.
+         */
+        private float failureRateThreshold = 50;
+
+        private int slidingWindowSize = 20;
+
+        private int minimumNumberOfCalls = 10;
+
+        /**
+         * How long Redis is bypassed before it is probed again.
+         */
+        private Duration waitDurationInOpenState = Duration.ofSeconds(5);
+
+        private int permittedCallsInHalfOpenState = 3;
+
+        /**
+         * Number of gateway replicas the limits are divided by. 0 counts the
+         * instances of serviceId in service discovery.
+         */
+        private int replicas = 0;
+
+        private String serviceId = "api-gateway";
+    }
+
+    @Data
+    public static class HeavyHitters {
+
+        private boolean enabled = true;
+
+        /**
+         * Number of top consumers tracked per route.
+         */
+        private int topK = 10;
+
+        /**
+         * Length of one window. The sliding window spans window x windows.
+         */
+        private Duration window = Duration.ofSeconds(10);
+
+        private int windows = 6;
+
+        /**
+         * Count-min sketch counters per row. Over-counting is bounded by 2 x tokens / width.
+         */
+        private int sketchWidth = 1024;
+
+        private int sketchDepth = 4;
+
+        /**
+         * Tokens over the sliding window above which a key is penalized. 0 disables penalties.
+         */
+        private long penaltyThreshold = 0;
+
+        /**
+         * How long a penalized key is rejected.
+         */
+        private Duration penaltyDuration = Duration.ofMinutes(1);
+
+        /**
+         * Maximum number of keys penalized at the same time.
+         */
+        private int maxPenalties = 10_000;
+    }
+
+    @Data
+    public static class Policy {
+
+        /**
+         * Route id, or "*" for all routes
+         */
+        private String route = "*";
+
+        /**
+         * Client tier, or "*" for all tiers
+         */
+        private String tier = "*";
+
+        /**
+         * Unset values are inherited from the defaults
+         */
+        private RateLimitAlgorithm algorithm;
+
+        private Integer replenishRate;
+
+        private Integer burstCapacity;
+
+        private Duration window;
+    }
+
+    @Data
+    public static class Cost {
+
+        /**
+         * Path pattern, e.g. /api/orders/reports/**
+         */
+        private String path;
+
+        /**
+         * HTTP method, or unset for all methods
+         */
+        private String method;
+
+        /**
+         * Tokens charged for a matching request
+         */
+        private int tokens = 1;
+    }
+
 }
@@ -0,0 +1,92 @@
+package com.daoninhthai.gateway.config;
+
+import com.daoninhthai.gateway.retry.RequestRetrier;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Retries of failed upstream calls per route, limited by a retry budget.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.retry")
+@Data
+public class RetryConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Retries allowed per request over time, e.g. 0.1 = at most 10% extra load
+     */
+    private double budgetRatio = 0.1;
+
+    /**
+     * Retries allowed in a burst once the budget has filled up
+     */
+    private int budgetCapacity = 10;
+
+    /**
+     * Retry policies by route id; routes without one are not retried
+     */
+    private Map<String, Policy> routes = new HashMap<>();
+
+    @Bean
+    public RequestRetrier requestRetrier(MeterRegistry meterRegistry) {
+        return new RequestRetrier(this, meterRegistry);
+    }
+
+    @Data
+    public static class Policy {
+
+        /**
+         * Attempts per request, including the first one
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * Methods retried; only idempotent methods are ever retried
+         */
+        private Set<HttpMethod> methods = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+        /**
+         * Upstream response statuses that are retried
+         */
+        private Set<Integer> statuses = new HashSet<>(Arrays.asList(502, 503, 504));
+
+        /**
+         * Exceptions that are retried, matched against the error and its causes
+         */
+        private List<Class<? extends Throwable>> exceptions = new ArrayList<>(Arrays.asList(IOException.class));
+
+        /**
+         * Upper bound of the backoff before the first retry; doubles with every further retry
+         */
+        private Duration firstBackoff = Duration.ofMillis(25);
+
+        /**
+         * Upper bound of the backoff before any retry
+         */
+        private Duration maxBackoff = Duration.ofMillis(500);
+
+        /**
+         * Time for all attempts of a request together; no retry is started after it
+         */
+        private Duration timeout = Duration.ofSeconds(10);
+
+    }
+
+}
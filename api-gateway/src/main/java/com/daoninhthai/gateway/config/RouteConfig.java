@@ -3,6 +3,7 @@ package com.daoninhthai.gateway.config;
 import com.daoninhthai.gateway.filter.ApiVersionFilter;
 import com.daoninhthai.gateway.filter.JwtAuthenticationFilter;
 import com.daoninhthai.gateway.filter.OAuth2AuthenticationFilter;
+import com.daoninhthai.gateway.filter.RateLimitFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
@@ -21,6 +22,9 @@ public class RouteConfig {
     @Autowired
     private OAuth2AuthenticationFilter oauth2AuthenticationFilter;
 
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+
     @Bean
     public RouteLocator customRouteLocator(RouteLocatorBuilder builder) {
         return builder.routes()
@@ -28,6 +32,7 @@ public class RouteConfig {
                 .route("auth-service", r -> r
                         .path("/api/auth/**")
                         .filters(f -> f
+                                .filter(rateLimitFilter.apply(new RateLimitFilter.Config()))
                                 .circuitBreaker(config -> config
                                         .setName("auth-service-cb")
                                         .setFallbackUri("forward:/fallback/auth-service")))
@@ -38,6 +43,7 @@ public class RouteConfig {
                         .path("/api/oauth2/**")
                         .filters(f -> f
                                 .filter(oauth2AuthenticationFilter.apply(new OAuth2AuthenticationFilter.Config()))
+                                .filter(rateLimitFilter.apply(new RateLimitFilter.Config()))
                                 .circuitBreaker(config -> config
                                         .setName("oauth2-service-cb")
                                         .setFallbackUri("forward:/fallback/auth-service")))
@@ -49,6 +55,7 @@ public class RouteConfig {
                         .filters(f -> f
                                 .filter(apiVersionFilter.apply(new ApiVersionFilter.Config()))
                                 .filter(jwtAuthenticationFilter.apply(new JwtAuthenticationFilter.Config()))
+                                .filter(rateLimitFilter.apply(new RateLimitFilter.Config()))
                                 .circuitBreaker(config -> config
                                         .setName("user-service-cb")
                                         .setFallbackUri("forward:/fallback/user-service")))
@@ -60,6 +67,7 @@ public class RouteConfig {
                         .filters(f -> f
                                 .filter(apiVersionFilter.apply(new ApiVersionFilter.Config()))
                                 .filter(jwtAuthenticationFilter.apply(new JwtAuthenticationFilter.Config()))
+                                .filter(rateLimitFilter.apply(new RateLimitFilter.Config()))
                                 .circuitBreaker(config -> config
                                         .setName("user-service-cb")
                                         .setFallbackUri("forward:/fallback/user-service")))
@@ -70,6 +78,7 @@ public class RouteConfig {
                         .path("/api/users/**")
                         .filters(f -> f
                                 .filter(jwtAuthenticationFilter.apply(new JwtAuthenticationFilter.Config()))
+                                .filter(rateLimitFilter.apply(new RateLimitFilter.Config()))
                                 .circuitBreaker(config -> config
                                         .setName("user-service-cb")
                                         .setFallbackUri("forward:/fallback/user-service")))
@@ -80,6 +89,7 @@ public class RouteConfig {
                         .path("/api/products/**")
                         .filters(f -> f
                                 .filter(jwtAuthenticationFilter.apply(new JwtAuthenticationFilter.Config()))
+                                .filter(rateLimitFilter.apply(new RateLimitFilter.Config()))
                                 .circuitBreaker(config -> config
                                         .setName("product-service-cb")
                                         .setFallbackUri("forward:/fallback/product-service")))
@@ -90,6 +100,7 @@ public class RouteConfig {
                         .path("/api/orders/**")
                         .filters(f -> f
                                 .filter(jwtAuthenticationFilter.apply(new JwtAuthenticationFilter.Config()))
+                                .filter(rateLimitFilter.apply(new RateLimitFilter.Config()))
                                 .circuitBreaker(config -> config
                                         .setName("order-service-cb")
                                         .setFallbackUri("forward:/fallback/order-service")))
@@ -1,53 +1,120 @@
 package com.daoninhthai.gateway.controller;
 
+import com.daoninhthai.gateway.exception.DeadlineExceededException;
+import com.daoninhthai.gateway.fallback.FallbackStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 
-import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * Circuit breaker fallbacks of the routes. A GET request whose route keeps last-known-good
+ * responses gets the latest one from the {@link FallbackStore}, marked with the stale header
+ * and its Age; any other request gets the service's 503 body, serialized once at startup.
+ * <p>
+ * A request that failed because its deadline ran out is not a service failure: it bypasses
+ * the fallback and gets the {@link DeadlineExceededException}'s 504.
+ */
 @RestController
 @RequestMapping("/fallback")
 @Slf4j
 public class FallbackController {
 
-    @GetMapping("/user-service")
-    public ResponseEntity<Map<String, Object>> userServiceFallback() {
+    private final FallbackStore fallbackStore;
+    private final byte[] userServiceBody;
+    private final byte[] productServiceBody;
+    private final byte[] orderServiceBody;
+    private final byte[] authServiceBody;
+
+    public FallbackController(FallbackStore fallbackStore, ObjectMapper objectMapper) throws JsonProcessingException {
+        this.fallbackStore = fallbackStore;
+        this.userServiceBody = buildFallbackBody(objectMapper, "User Service",
+                "User service is currently unavailable. Please try again later.");
+        this.productServiceBody = buildFallbackBody(objectMapper, "Product Service",
+                "Product service is currently unavailable. Please try again later.");
+        this.orderServiceBody = buildFallbackBody(objectMapper, "Order Service",
+                "Order service is currently unavailable. Please try again later.");
+        this.authServiceBody = buildFallbackBody(objectMapper, "Auth Service",
+                "Authentication service is currently unavailable. Please try again later.");
+    }
+
+    @RequestMapping("/user-service")
+    public ResponseEntity<byte[]> userServiceFallback(ServerWebExchange exchange) {
         log.warn("User service is unavailable, returning fallback response");
-        return buildFallbackResponse("User Service", "User service is currently unavailable. Please try again later.");
+        return fallback(exchange, userServiceBody);
     }
 
-    @GetMapping("/product-service")
-    public ResponseEntity<Map<String, Object>> productServiceFallback() {
+    @RequestMapping("/product-service")
+    public ResponseEntity<byte[]> productServiceFallback(ServerWebExchange exchange) {
         log.warn("Product service is unavailable, returning fallback response");
-        return buildFallbackResponse("Product Service", "Product service is currently unavailable. Please try again later.");
+        return fallback(exchange, productServiceBody);
     }
 
-    @GetMapping("/order-service")
-    public ResponseEntity<Map<String, Object>> orderServiceFallback() {
+    @RequestMapping("/order-service")
+    public ResponseEntity<byte[]> orderServiceFallback(ServerWebExchange exchange) {
         log.warn("Order service is unavailable, returning fallback response");
-        return buildFallbackResponse("Order Service", "Order service is currently unavailable. Please try again later.");
+        return fallback(exchange, orderServiceBody);
     }
 
-    @GetMapping("/auth-service")
-    public ResponseEntity<Map<String, Object>> authServiceFallback() {
+    @RequestMapping("/auth-service")
+    public ResponseEntity<byte[]> authServiceFallback(ServerWebExchange exchange) {
         log.warn("Auth service is unavailable, returning fallback response");
-        return buildFallbackResponse("Auth Service", "Authentication service is currently unavailable. Please try again later.");
+        return fallback(exchange, authServiceBody);
+    }
+
+    private ResponseEntity<byte[]> fallback(ServerWebExchange exchange, byte[] unavailableBody) {
+        DeadlineExceededException deadlineExceeded = findDeadlineExceeded(
+                exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR));
+        if (deadlineExceeded != null) {
+            throw deadlineExceeded;
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String routeId = route != null ? route.getId() : "unknown";
+        FallbackStore.Entry entry = fallbackStore.get(exchange.getAttribute(FallbackStore.KEY_ATTR));
+        fallbackStore.recordServed(routeId, entry != null);
+        if (entry == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(unavailableBody);
+        }
+        long age = fallbackStore.getAgeSeconds(entry);
+        return ResponseEntity.status(entry.getStatus())
+                .headers(headers -> {
+                    headers.addAll(entry.getHeaders());
+                    headers.set(HttpHeaders.AGE, String.valueOf(age));
+                    headers.set(fallbackStore.getStaleHeader(), String.valueOf(age));
+                })
+                .body(entry.getBody());
+    }
+
+    private static DeadlineExceededException findDeadlineExceeded(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlineExceededException) {
+                return (DeadlineExceededException) cause;
+            }
+        }
+        return null;
     }
 
-    private ResponseEntity<Map<String, Object>> buildFallbackResponse(String serviceName, String message) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("timestamp", LocalDateTime.now().toString());
+    private static byte[] buildFallbackBody(ObjectMapper objectMapper, String serviceName, String message)
+            throws JsonProcessingException {
+        Map<String, Object> response = new LinkedHashMap<>();
         response.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
         response.put("error", "Service Unavailable");
         response.put("service", serviceName);
         response.put("message", message);
-        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        return objectMapper.writeValueAsBytes(response);
     }
 
 }
@@ -0,0 +1,26 @@
+package com.daoninhthai.gateway.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One of the top rate limit consumers of a route over the sliding window.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeavyHitter {
+
+    private String key;
+
+    /**
+     * Estimated tokens consumed over the sliding window. May over-count, never under-counts.
+     */
+    private long estimatedTokens;
+
+    private boolean penalized;
+
+}
@@ -0,0 +1,38 @@
+package com.daoninhthai.gateway.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outlier detection state of one upstream instance.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutlierStatus {
+
+    private String instance;
+
+    private boolean ejected;
+
+    /**
+     * Time until the instance returns to load balancing, 0 if it is not ejected
+     */
+    private long remainingEjectionMs;
+
+    /**
+     * Recent ejections, which multiply the next ejection time
+     */
+    private int ejections;
+
+    private int consecutiveErrors;
+
+    /**
+     * Reason of the last ejection, if any
+     */
+    private String reason;
+
+}
@@ -0,0 +1,17 @@
+package com.daoninhthai.gateway.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * The deadline of a request ran out in the gateway or while waiting for the upstream.
+ * Ignored by the circuit breakers, since a short client deadline says nothing about the
+ * health of the service.
+ */
+public class DeadlineExceededException extends ResponseStatusException {
+
+    public DeadlineExceededException(String message) {
+        super(HttpStatus.GATEWAY_TIMEOUT, message);
+    }
+
+}
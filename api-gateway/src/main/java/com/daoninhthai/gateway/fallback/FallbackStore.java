@@ -0,0 +1,228 @@
+package com.daoninhthai.gateway.fallback;
+
+import com.daoninhthai.gateway.config.FallbackConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Latest successful GET response per route and URL, for the fallback endpoints to serve
+ * while the route's upstream is failing.
+ * <p>
+ * Responses are kept for the retention time, which is meant to be long, and bounded by
+ * count and total size: once either bound is exceeded, the oldest responses are dropped
+ * until both are below 90% of it. Responses that ask not to be stored or set cookies are
+ * never kept.
+ */
+@Slf4j
+public class FallbackStore {
+
+    /**
+     * Exchange attribute with the key of a request whose response may be kept and served
+     */
+    public static final String KEY_ATTR = FallbackStore.class.getName() + ".key";
+
+    private static final int HEADER_OVERHEAD = 64;
+
+    private final FallbackConfig properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+
+    public FallbackStore(FallbackConfig properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    FallbackStore(FallbackConfig properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        Gauge.builder("gateway_fallback_store_entries", entries, Map::size)
+                .description("Responses kept for fallbacks")
+                .register(meterRegistry);
+        Gauge.builder("gateway_fallback_store_bytes", size, AtomicLong::get)
+                .description("Memory taken by the responses kept for fallbacks")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Key of a GET request on a route whose responses are kept, or null.
+     */
+    public String getKey(String routeId, String method, URI uri) {
+        if (!properties.isEnabled() || !"GET".equals(method) || !properties.getRoutes().contains(routeId)) {
+            return null;
+        }
+        String query = uri.getRawQuery();
+        return routeId + " " + uri.getRawPath() + (query != null ? "?" + query : "");
+    }
+
+    /**
+     * Whether a response with these headers may be kept and served to other callers. Stale
+     * responses served by a fallback are not kept again.
+     */
+    public boolean isStorable(HttpHeaders headers) {
+        if (headers.containsKey(properties.getStaleHeader())
+                || headers.containsKey(HttpHeaders.SET_COOKIE) || headers.getVary().contains("*")) {
+            return false;
+        }
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl == null) {
+            return true;
+        }
+        String directives = cacheControl.toLowerCase();
+        return !directives.contains("no-store") && !directives.contains("private");
+    }
+
+    public String getStaleHeader() {
+        return properties.getStaleHeader();
+    }
+
+    public long getMaxBodySize() {
+        return properties.getMaxBodySize().toBytes();
+    }
+
+    /**
+     * Keep the response as the latest one for its key.
+     */
+    public void put(String key, int status, HttpHeaders headers, byte[] body) {
+        HttpHeaders stored = new HttpHeaders();
+        headers.forEach((name, values) -> {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)
+                    && !HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(name)
+                    && !HttpHeaders.CONNECTION.equalsIgnoreCase(name)) {
+                stored.addAll(name, values);
+            }
+        });
+        Entry entry = new Entry(status, HttpHeaders.readOnlyHttpHeaders(stored), body, nanoClock.getAsLong(),
+                body.length + key.length() + HEADER_OVERHEAD * (stored.size() + 1));
+        Entry previous = entries.put(key, entry);
+        long total = size.addAndGet(entry.size - (previous != null ? previous.size : 0));
+        if (total > properties.getMaxSize().toBytes() || entries.size() > properties.getMaxEntries()) {
+            trim();
+        }
+    }
+
+    /**
+     * The latest response kept for the key, or null if there is none within the retention time.
+     */
+    public Entry get(String key) {
+        Entry entry = key != null ? entries.get(key) : null;
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry, nanoClock.getAsLong())) {
+            remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Age of a kept response in seconds.
+     */
+    public long getAgeSeconds(Entry entry) {
+        return TimeUnit.NANOSECONDS.toSeconds(nanoClock.getAsLong() - entry.storedAt);
+    }
+
+    /**
+     * Count a fallback response, stale or static, served for a route.
+     */
+    public void recordServed(String routeId, boolean stale) {
+        Counter.builder("gateway_fallback_responses_total")
+                .description("Fallback responses by route and whether a kept response was served")
+                .tag("route", routeId)
+                .tag("type", stale ? "stale" : "static")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Drop responses past the retention time.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = nanoClock.getAsLong();
+        entries.forEach((key, entry) -> {
+            if (isExpired(entry, now)) {
+                remove(key, entry);
+            }
+        });
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.storedAt > properties.getRetention().toNanos();
+    }
+
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            size.addAndGet(-entry.size);
+        }
+    }
+
+    /**
+     * Drop the oldest responses until the store is below 90% of both bounds.
+     */
+    private synchronized void trim() {
+        long maxSize = properties.getMaxSize().toBytes() * 9 / 10;
+        long maxEntries = properties.getMaxEntries() * 9L / 10;
+        if (size.get() <= maxSize && entries.size() <= maxEntries) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> oldestFirst = new ArrayList<>(entries.entrySet());
+        oldestFirst.sort(Comparator.comparingLong(e -> e.getValue().storedAt));
+        int dropped = 0;
+        for (Map.Entry<String, Entry> oldest : oldestFirst) {
+            if (size.get() <= maxSize && entries.size() <= maxEntries) {
+                break;
+            }
+            remove(oldest.getKey(), oldest.getValue());
+            dropped++;
+        }
+        log.debug("Dropped {} of the oldest fallback responses, {} kept in {} bytes", dropped, entries.size(),
+                size.get());
+    }
+
+    /**
+     * A kept response.
+     */
+    @Getter
+    public static final class Entry {
+        private final int status;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final long storedAt;
+        private final long size;
+
+        private Entry(int status, HttpHeaders headers, byte[] body, long storedAt, long size) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.storedAt = storedAt;
+            this.size = size;
+        }
+    }
+
+}
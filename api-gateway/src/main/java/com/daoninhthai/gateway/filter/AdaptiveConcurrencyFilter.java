@@ -0,0 +1,98 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.concurrency.AdaptiveConcurrencyLimiter;
+import com.daoninhthai.gateway.concurrency.AdaptiveConcurrencyLimiterRegistry;
+import com.daoninhthai.gateway.config.ConcurrencyLimitConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+
+/**
+ * Global filter that caps the requests in flight to each downstream service at an
+ * adaptive limit learned from its round trip times. Requests over the limit are
+ * rejected immediately with 503 and Retry-After instead of queueing.
+ * <p>
+ * Runs right before load balancing, inside the route's circuit breaker, so the measured
+ * round trip covers the downstream call only.
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 10;
+
+    private final AdaptiveConcurrencyLimiterRegistry limiterRegistry;
+    private final ConcurrencyLimitConfig properties;
+
+    public AdaptiveConcurrencyFilter(AdaptiveConcurrencyLimiterRegistry limiterRegistry,
+                                     ConcurrencyLimitConfig properties) {
+        this.limiterRegistry = limiterRegistry;
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null) {
+            return chain.filter(exchange);
+        }
+
+        AdaptiveConcurrencyLimiter limiter = limiterRegistry.getLimiter(getServiceId(exchange, route));
+        if (!limiter.tryAcquire()) {
+            log.debug("Rejecting request to {}: {} requests in flight at limit {}",
+                    limiter.getName(), limiter.getInflight(), limiter.getLimit());
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(Math.max(1, properties.getRetryAfter().getSeconds())));
+            return response.setComplete();
+        }
+
+        long startTime = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signalType -> {
+                    if (signalType == SignalType.CANCEL) {
+                        limiter.cancel();
+                        return;
+                    }
+                    boolean dropped = signalType == SignalType.ON_ERROR || isOverloadStatus(exchange);
+                    limiter.release(System.nanoTime() - startTime, dropped);
+                });
+    }
+
+    /**
+     * Service the request is sent to: the host of the request URL, which may differ from
+     * the route URI after versioned routing.
+     */
+    private String getServiceId(ServerWebExchange exchange, Route route) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        String host = url != null && url.getHost() != null ? url.getHost() : route.getUri().getHost();
+        return host != null ? host : route.getId();
+    }
+
+    private boolean isOverloadStatus(ServerWebExchange exchange) {
+        HttpStatus status = exchange.getResponse().getStatusCode();
+        return status == HttpStatus.BAD_GATEWAY
+                || status == HttpStatus.SERVICE_UNAVAILABLE
+                || status == HttpStatus.GATEWAY_TIMEOUT;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.DeadlineConfig;
+import com.daoninhthai.gateway.exception.DeadlineExceededException;
+import com.daoninhthai.gateway.timeout.AdaptiveTimeouts;
+import com.daoninhthai.gateway.util.RequestDeadline;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Global filter that cuts off each upstream call at the adaptive timeout of its route and
+ * path template, and feeds the observed latency back into it.
+ * <p>
+ * Runs after load balancing, so every retry or hedge attempt gets a timeout of its own.
+ * A call cut off fails with 504 and a {@link TimeoutException} cause, which the retry
+ * policies and circuit breakers see like any other upstream timeout.
+ * <p>
+ * The timeout is capped at the time left until the request's {@link RequestDeadline}, and
+ * becomes the deadline of the attempt that {@link DeadlineFilter} passes downstream. A
+ * request with too little time left is rejected without calling the upstream.
+ */
+@Component
+public class AdaptiveTimeoutFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = LoadBalancerStatsFilter.ORDER + 1;
+
+    private final AdaptiveTimeouts timeouts;
+    private final DeadlineConfig deadlineProperties;
+
+    public AdaptiveTimeoutFilter(AdaptiveTimeouts timeouts, DeadlineConfig deadlineProperties) {
+        this.timeouts = timeouts;
+        this.deadlineProperties = deadlineProperties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (route == null || url == null || !isHttp(url.getScheme())) {
+            return chain.filter(exchange);
+        }
+
+        String routeId = route.getId();
+        Duration remaining = RequestDeadline.getRemaining(exchange);
+        if (remaining != null && remaining.compareTo(deadlineProperties.getMinBudget()) < 0) {
+            timeouts.recordDeadlineExceeded(routeId);
+            return Mono.error(new DeadlineExceededException("Request deadline exceeded before calling "
+                    + url.getHost()));
+        }
+        if (!timeouts.isEnabled()) {
+            return remaining != null
+                    ? chain.filter(exchange).timeout(remaining, deadlineExceeded(url))
+                    : chain.filter(exchange);
+        }
+
+        String template = timeouts.getTemplate(routeId, exchange.getRequest().getPath().pathWithinApplication());
+        Duration timeout = timeouts.getTimeout(routeId, template);
+        if (remaining != null && remaining.compareTo(timeout) < 0) {
+            // Cut off by the deadline rather than the upstream's latency, so the call is not recorded
+            return chain.filter(exchange).timeout(remaining, deadlineExceeded(url));
+        }
+
+        RequestDeadline.tighten(exchange, timeout);
+        long startTime = System.nanoTime();
+        return chain.filter(exchange)
+                .doOnSuccess(v -> timeouts.record(routeId, template, System.nanoTime() - startTime))
+                .timeout(timeout, Mono.defer(() -> {
+                    timeouts.recordTimeout(routeId, template, timeout);
+                    String message = "No response from " + url.getHost() + " within " + timeout.toMillis() + "ms";
+                    return Mono.error(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, message,
+                            new TimeoutException(message)));
+                }));
+    }
+
+    private static Mono<Void> deadlineExceeded(URI url) {
+        return Mono.error(() -> new DeadlineExceededException("Request deadline exceeded waiting for "
+                + url.getHost()));
+    }
+
+    private static boolean isHttp(String scheme) {
+        return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
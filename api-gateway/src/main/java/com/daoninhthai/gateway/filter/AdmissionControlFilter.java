@@ -0,0 +1,68 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.admission.AdmissionController;
+import com.daoninhthai.gateway.admission.RequestPriority;
+import com.daoninhthai.gateway.config.AdmissionConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Earliest global filter: sheds requests by route priority class when the event loops
+ * fall behind or too many requests are in flight, before any other work is spent on them.
+ * The correlation, logging and metrics filters all run after it, so shed requests are only
+ * counted by the AdmissionController.
+ */
+@Component
+@Slf4j
+public class AdmissionControlFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE;
+
+    private final AdmissionController admissionController;
+    private final AdmissionConfig properties;
+
+    public AdmissionControlFilter(AdmissionController admissionController, AdmissionConfig properties) {
+        this.admissionController = admissionController;
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled()) {
+            return chain.filter(exchange);
+        }
+
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        RequestPriority priority = route != null
+                ? admissionController.resolvePriority(route.getId())
+                : properties.getDefaultPriority();
+
+        if (admissionController.admit(priority)) {
+            return chain.filter(exchange);
+        }
+
+        log.debug("Shedding {} priority request to {} at pressure {}",
+                priority, exchange.getRequest().getPath(), admissionController.getPressure());
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1, properties.getRetryAfter().getSeconds())));
+        return response.setComplete();
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import com.daoninhthai.gateway.loadbalancer.LoadBalancerHints;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Global filter that hands the affinity key of consistent-hash routes to the load balancer
+ * as a {@link LoadBalancerHints} header, set right before load balancing.
+ */
+@Component
+public class AffinityKeyFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 1;
+
+    private static final String USER_ID_HEADER = "X-Auth-UserId";
+
+    private final LoadBalancerConfig properties;
+
+    public AffinityKeyFilter(LoadBalancerConfig properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        LoadBalancerConfig.Affinity affinity = route != null
+                ? properties.getConsistentHash().getRoutes().get(route.getId())
+                : null;
+        String key = affinity != null ? resolveKey(request, affinity) : null;
+
+        if (key == null) {
+            return chain.filter(exchange);
+        }
+
+        ServerHttpRequest keyed = request.mutate()
+                .header(LoadBalancerHints.AFFINITY_KEY_HEADER, key)
+                .build();
+        return chain.filter(exchange.mutate().request(keyed).build());
+    }
+
+    /**
+     * Affinity key of a request, or null if the request has none.
+     */
+    static String resolveKey(ServerHttpRequest request, LoadBalancerConfig.Affinity affinity) {
+        String key;
+        switch (affinity.getSource()) {
+            case HEADER:
+                key = affinity.getHeader() != null ? request.getHeaders().getFirst(affinity.getHeader()) : null;
+                break;
+            case USER:
+                key = request.getHeaders().getFirst(USER_ID_HEADER);
+                break;
+            case PATH_SEGMENT:
+            default:
+                key = pathSegment(request.getPath().pathWithinApplication().value(), affinity.getSegment());
+                break;
+        }
+        return key == null || key.isEmpty() ? null : key;
+    }
+
+    /**
+     * Zero-based path segment, ignoring empty segments, or null if the path is shorter.
+     */
+    static String pathSegment(String path, int index) {
+        int segment = 0;
+        int start = 0;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                if (segment == index) {
+                    return path.substring(start, end);
+                }
+                segment++;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
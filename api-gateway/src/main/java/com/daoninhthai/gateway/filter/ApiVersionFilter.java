@@ -1,30 +1,42 @@
 package com.daoninhthai.gateway.filter;
 
+import com.daoninhthai.gateway.config.ApiVersionConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
-import org.springframework.web.util.UriComponentsBuilder;
-
-import java.net.URI;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
 
 /**
- * Filter that handles API versioning by rewriting paths.
+ * Filter that handles API versioning by rewriting paths and selecting the upstream service.
  * /api/v1/users/** -> /api/users/** with X-API-Version: v1
  * /api/v2/users/** -> /api/users/** with X-API-Version: v2
+ * <p>
+ * Versions missing from {@code gateway.api-version.supported-versions} are rejected with
+ * 400 before any upstream work. When {@code gateway.api-version.service-mapping} maps the
+ * route's service for the version, the target service is stored in the exchange and the
+ * VersionedServiceFilter sends the request to that service instead.
  */
 @Component
 @Slf4j
 public class ApiVersionFilter extends AbstractGatewayFilterFactory<ApiVersionFilter.Config> {
 
-    private static final Pattern VERSION_PATTERN = Pattern.compile("/api/(v\\d+)/(.+)");
+    public static final String TARGET_SERVICE_ATTR = ApiVersionFilter.class.getName() + ".targetService";
+
+    private static final String API_PREFIX = "/api/";
     private static final String API_VERSION_HEADER = "X-API-Version";
 
-    public ApiVersionFilter() {
+    private final ApiVersionConfig apiVersionConfig;
+
+    public ApiVersionFilter(ApiVersionConfig apiVersionConfig) {
         super(Config.class);
+        this.apiVersionConfig = apiVersionConfig;
     }
 
     @Override
@@ -33,33 +45,66 @@ public class ApiVersionFilter extends AbstractGatewayFilterFactory<ApiVersionFil
             ServerHttpRequest request = exchange.getRequest();
             String originalPath = request.getPath().value();
 
-            Matcher matcher = VERSION_PATTERN.matcher(originalPath);
-            if (matcher.matches()) {
-                String version = matcher.group(1);
-                String remainingPath = matcher.group(2);
+            int versionEnd = versionEnd(originalPath);
+            if (versionEnd < 0) {
+                return chain.filter(exchange);
+            }
 
-                // Rewrite path to remove version prefix
-                String newPath = "/api/" + remainingPath;
+            String version = originalPath.substring(API_PREFIX.length(), versionEnd);
+            if (!apiVersionConfig.isVersionSupported(version)) {
+                return onError(exchange, "Unsupported API version: " + version);
+            }
 
-                log.debug("API version rewrite: {} -> {} (version: {})", originalPath, newPath, version);
+            // Rewrite path to remove version prefix
+            String newPath = "/api" + originalPath.substring(versionEnd);
 
-                URI newUri = UriComponentsBuilder.fromUri(request.getURI())
-                        .replacePath(newPath)
-                        .build()
-                        .toUri();
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            if (route != null && route.getUri().getHost() != null) {
+                String serviceName = route.getUri().getHost();
+                String targetService = apiVersionConfig.getTargetService(version, serviceName);
+                if (!targetService.equals(serviceName)) {
+                    exchange.getAttributes().put(TARGET_SERVICE_ATTR, targetService);
+                }
+            }
 
-                ServerHttpRequest modifiedRequest = request.mutate()
-                        .uri(newUri)
-                        .header(API_VERSION_HEADER, version)
-                        .build();
+            log.debug("API version rewrite: {} -> {} (version: {})", originalPath, newPath, version);
 
-                return chain.filter(exchange.mutate().request(modifiedRequest).build());
-            }
+            ServerWebExchangeUtils.addOriginalRequestUrl(exchange, request.getURI());
+            ServerHttpRequest modifiedRequest = request.mutate()
+                    .path(newPath)
+                    .header(API_VERSION_HEADER, version)
+                    .build();
 
-            return chain.filter(exchange);
+            return chain.filter(exchange.mutate().request(modifiedRequest).build());
         };
     }
 
+    /**
+     * End index of the version segment in {@code /api/v<digits>/<rest>}, or -1 if the path
+     * has no version segment followed by a non-empty remainder.
+     */
+    static int versionEnd(String path) {
+        int start = API_PREFIX.length();
+        if (!path.startsWith(API_PREFIX) || path.length() <= start + 1 || path.charAt(start) != 'v') {
+            return -1;
+        }
+        int end = start + 1;
+        while (end < path.length() && Character.isDigit(path.charAt(end))) {
+            end++;
+        }
+        if (end == start + 1 || end >= path.length() - 1 || path.charAt(end) != '/') {
+            return -1;
+        }
+        return end;
+    }
+
+    private Mono<Void> onError(ServerWebExchange exchange, String message) {
+        log.debug("API version error: {}", message);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.BAD_REQUEST);
+        return response.setComplete();
+    }
+
     public static class Config {
         // Configuration properties for version filter
     }
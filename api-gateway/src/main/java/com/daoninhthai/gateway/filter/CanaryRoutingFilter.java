@@ -0,0 +1,118 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.canary.CanaryGroup;
+import com.daoninhthai.gateway.canary.CanaryRouter;
+import com.daoninhthai.gateway.config.CanaryConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * Global filter that sends a weighted share of a route's clients to its canary service.
+ * <p>
+ * Clients are identified by the authenticated user id, or else by a sticky cookie that is
+ * issued on their first request. Runs after the request URL has been resolved and before
+ * load balancing, and records latency and failures of both groups for the CanaryRouter.
+ */
+@Component
+@Slf4j
+public class CanaryRoutingFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = VersionedServiceFilter.ORDER + 1;
+
+    public static final String CANARY_GROUP_HEADER = "X-Canary-Group";
+
+    private static final String USER_ID_HEADER = "X-Auth-UserId";
+
+    private final CanaryRouter canaryRouter;
+    private final CanaryConfig properties;
+
+    public CanaryRoutingFilter(CanaryRouter canaryRouter, CanaryConfig properties) {
+        this.canaryRouter = canaryRouter;
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        CanaryConfig.Canary canary = route != null ? canaryRouter.getCanary(route.getId()) : null;
+        if (canary == null) {
+            return chain.filter(exchange);
+        }
+
+        String routeId = route.getId();
+        if (canaryRouter.getWeight(routeId) <= 0) {
+            return chain.filter(exchange);
+        }
+        CanaryGroup group = canaryRouter.select(routeId, resolveStickyKey(exchange));
+        if (group == CanaryGroup.CANARY) {
+            URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+            URI rewritten = url != null && url.getHost() != null
+                    ? VersionedServiceFilter.replaceHost(url, canary.getService())
+                    : null;
+            if (rewritten == null) {
+                group = CanaryGroup.BASELINE;
+            } else {
+                exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, rewritten);
+            }
+        }
+        exchange.getResponse().getHeaders().set(CANARY_GROUP_HEADER, group.getTag());
+
+        CanaryGroup selected = group;
+        long startTime = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signalType -> {
+                    if (signalType == SignalType.CANCEL) {
+                        return;
+                    }
+                    HttpStatus status = exchange.getResponse().getStatusCode();
+                    boolean failed = signalType == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+                    canaryRouter.record(routeId, selected, System.nanoTime() - startTime, failed);
+                });
+    }
+
+    /**
+     * The user id set by the authentication filters, else the sticky cookie, which is
+     * issued if the client has none.
+     */
+    private String resolveStickyKey(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        String userId = request.getHeaders().getFirst(USER_ID_HEADER);
+        if (userId != null && !userId.isEmpty()) {
+            return "user:" + userId;
+        }
+
+        HttpCookie cookie = request.getCookies().getFirst(properties.getCookieName());
+        if (cookie != null && !cookie.getValue().isEmpty()) {
+            return "cookie:" + cookie.getValue();
+        }
+
+        String id = UUID.randomUUID().toString();
+        exchange.getResponse().addCookie(ResponseCookie.from(properties.getCookieName(), id)
+                .path("/")
+                .httpOnly(true)
+                .maxAge(properties.getCookieMaxAge())
+                .build());
+        return "cookie:" + id;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
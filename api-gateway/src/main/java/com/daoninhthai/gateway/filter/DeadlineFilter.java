@@ -0,0 +1,85 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.DeadlineConfig;
+import com.daoninhthai.gateway.exception.DeadlineExceededException;
+import com.daoninhthai.gateway.util.RequestDeadline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Gives every request a deadline as soon as it enters the gateway: the time budget sent by
+ * the client in the deadline header, bounded by the configured maximum, or the default budget.
+ * Time spent in the gateway's own filters counts against it.
+ * <p>
+ * As an HttpHeadersFilter it replaces the header on each proxied request with the budget
+ * left at that moment, which {@link AdaptiveTimeoutFilter} may have narrowed to the timeout
+ * of the attempt, so downstream services can give up when the gateway does.
+ */
+@Component
+@Slf4j
+public class DeadlineFilter implements GlobalFilter, HttpHeadersFilter, Ordered {
+
+    public static final int ORDER = InternalHeadersFilter.ORDER + 1;
+
+    private final DeadlineConfig properties;
+
+    public DeadlineFilter(DeadlineConfig properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        Duration budget = getBudget(exchange.getRequest().getHeaders().getFirst(properties.getHeader()));
+        if (budget.isZero() || budget.isNegative()) {
+            return Mono.error(new DeadlineExceededException("Request deadline has already passed"));
+        }
+        RequestDeadline.tighten(exchange, budget);
+        return chain.filter(exchange);
+    }
+
+    /**
+     * Budget requested by the client, or the default budget if it sent none or an invalid one.
+     */
+    Duration getBudget(String header) {
+        if (header == null) {
+            return properties.getDefaultTimeout();
+        }
+        try {
+            Duration requested = Duration.ofMillis(Long.parseLong(header.trim()));
+            return requested.compareTo(properties.getMaxTimeout()) > 0 ? properties.getMaxTimeout() : requested;
+        } catch (NumberFormatException ex) {
+            log.debug("Ignoring invalid {} header: {}", properties.getHeader(), header);
+            return properties.getDefaultTimeout();
+        }
+    }
+
+    @Override
+    public HttpHeaders filter(HttpHeaders input, ServerWebExchange exchange) {
+        Duration remaining = RequestDeadline.getRemaining(exchange);
+        if (!properties.isEnabled() || remaining == null) {
+            return input;
+        }
+        HttpHeaders filtered = new HttpHeaders();
+        filtered.addAll(input);
+        filtered.set(properties.getHeader(), String.valueOf(Math.max(0, remaining.toMillis())));
+        return filtered;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.hedging.AttemptExchange;
+import com.daoninhthai.gateway.hedging.RequestHedger;
+import com.daoninhthai.gateway.loadbalancer.InstanceStatsRegistry;
+import com.daoninhthai.gateway.loadbalancer.LoadBalancerHints;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Global filter that hedges slow idempotent requests of the configured routes.
+ * <p>
+ * The request goes through the rest of the chain as a first attempt. If that has not
+ * received response headers after the route's hedge delay, a second attempt is sent to a
+ * different instance, as far as the budget allows. The first attempt to respond wins and
+ * is applied to the exchange; the other one is cancelled and its connection closed. Only
+ * load-balanced requests without a body are hedged.
+ * <p>
+ * Runs before the concurrency limiter and the load balancer, so each attempt takes its
+ * own concurrency permit and instance.
+ */
+@Component
+@Slf4j
+public class HedgingFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = AdaptiveConcurrencyFilter.ORDER - 20;
+
+    private final RequestHedger hedger;
+
+    public HedgingFilter(RequestHedger hedger) {
+        this.hedger = hedger;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null || !hedger.isHedged(route.getId(), exchange.getRequest().getMethod())
+                || !isHedgeable(exchange)) {
+            return chain.filter(exchange);
+        }
+
+        String routeId = route.getId();
+        Duration delay = hedger.onRequest(routeId);
+        if (delay == null) {
+            long startTime = System.nanoTime();
+            return chain.filter(exchange)
+                    .doOnSuccess(v -> hedger.recordLatency(routeId, System.nanoTime() - startTime));
+        }
+
+        AtomicReference<AttemptExchange> winner = new AtomicReference<>();
+        Sinks.One<Boolean> primaryFailed = Sinks.one();
+        AttemptExchange primary = new AttemptExchange(exchange, AttemptExchange.bodiless(exchange.getRequest()));
+
+        Mono<AttemptExchange> first = attempt(primary, chain, routeId, winner)
+                .doOnError(e -> primaryFailed.tryEmitValue(true));
+        Mono<AttemptExchange> second = Mono.delay(delay)
+                .takeUntilOther(primaryFailed.asMono())
+                .filter(tick -> winner.get() == null && hedger.tryHedge(routeId))
+                .flatMap(tick -> {
+                    log.debug("Hedging request {} of route {} after {}ms",
+                            exchange.getRequest().getId(), routeId, delay.toMillis());
+                    AttemptExchange hedge = new AttemptExchange(exchange, hedgeRequest(exchange, primary));
+                    return attempt(hedge, chain, routeId, winner)
+                            .doOnNext(won -> hedger.recordWon(routeId));
+                });
+
+        return Mono.firstWithValue(first, second)
+                .onErrorMap(HedgingFilter::unwrap)
+                .doOnNext(won -> won.applyTo(exchange))
+                .then();
+    }
+
+    /**
+     * Run one attempt through the rest of the chain. It emits itself only if it is the first
+     * attempt to complete; otherwise, or when it is cancelled, its upstream connection is closed.
+     */
+    private Mono<AttemptExchange> attempt(AttemptExchange attempt, GatewayFilterChain chain, String routeId,
+                                          AtomicReference<AttemptExchange> winner) {
+        return Mono.defer(() -> {
+            long startTime = System.nanoTime();
+            return chain.filter(attempt)
+                    .thenReturn(attempt)
+                    .doFinally(signalType -> {
+                        if (signalType != SignalType.ON_ERROR) {
+                            // A cancelled attempt took at least this long
+                            hedger.recordLatency(routeId, System.nanoTime() - startTime);
+                        }
+                        if (winner.get() != attempt) {
+                            attempt.close();
+                        }
+                    })
+                    .filter(completed -> winner.compareAndSet(null, completed));
+        });
+    }
+
+    private static boolean isHedgeable(ServerWebExchange exchange) {
+        URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        return url != null && "lb".equals(url.getScheme())
+                && headers.getContentLength() <= 0
+                && !headers.containsKey(HttpHeaders.TRANSFER_ENCODING)
+                && !headers.containsKey(HttpHeaders.UPGRADE);
+    }
+
+    /**
+     * Request of the hedge, excluding the instance the first attempt was sent to.
+     */
+    private static ServerHttpRequest hedgeRequest(ServerWebExchange exchange, AttemptExchange primary) {
+        Response<ServiceInstance> chosen = primary.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        if (chosen == null || !chosen.hasServer()) {
+            return AttemptExchange.bodiless(exchange.getRequest());
+        }
+        return AttemptExchange.bodiless(LoadBalancerHints.exclude(exchange.getRequest(),
+                Collections.singleton(InstanceStatsRegistry.instanceId(chosen.getServer()))));
+    }
+
+    /**
+     * The error of the first failed attempt instead of the error that no attempt succeeded,
+     * whose cause holds the error of every attempt, or that it completed empty.
+     */
+    static Throwable unwrap(Throwable error) {
+        if (!(error instanceof NoSuchElementException) || error.getCause() == null) {
+            return error;
+        }
+        for (Throwable attemptError : Exceptions.unwrapMultiple(error.getCause())) {
+            if (!(attemptError instanceof NoSuchElementException)) {
+                return attemptError;
+            }
+        }
+        return error;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
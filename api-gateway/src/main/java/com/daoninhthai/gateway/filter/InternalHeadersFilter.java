@@ -0,0 +1,80 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.loadbalancer.LoadBalancerHints;
+import com.daoninhthai.gateway.ratelimit.RateLimitPolicyResolver;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the internal {@link LoadBalancerHints} headers inside the gateway: drops values
+ * sent by clients, so they cannot steer instance selection, and, as an HttpHeadersFilter,
+ * removes them from the requests proxied to the services.
+ * <p>
+ * The plan and roles headers that pick the rate limit tier are dropped on arrival as well,
+ * so only the JwtAuthenticationFilter can set them. They are still passed on to the services.
+ */
+@Component
+public class InternalHeadersFilter implements GlobalFilter, HttpHeadersFilter, Ordered {
+
+    public static final int ORDER = AdmissionControlFilter.ORDER + 2;
+
+    /**
+     * Headers removed from client requests on arrival
+     */
+    static final List<String> CLIENT_HEADERS = clientHeaders();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!containsAny(exchange.getRequest().getHeaders(), CLIENT_HEADERS)) {
+            return chain.filter(exchange);
+        }
+        ServerHttpRequest stripped = exchange.getRequest().mutate()
+                .headers(headers -> CLIENT_HEADERS.forEach(headers::remove))
+                .build();
+        return chain.filter(exchange.mutate().request(stripped).build());
+    }
+
+    @Override
+    public HttpHeaders filter(HttpHeaders input, ServerWebExchange exchange) {
+        if (!containsAny(input, LoadBalancerHints.HEADERS)) {
+            return input;
+        }
+        HttpHeaders filtered = new HttpHeaders();
+        filtered.addAll(input);
+        LoadBalancerHints.HEADERS.forEach(filtered::remove);
+        return filtered;
+    }
+
+    private static boolean containsAny(HttpHeaders headers, List<String> names) {
+        for (String header : names) {
+            if (headers.containsKey(header)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> clientHeaders() {
+        List<String> headers = new ArrayList<>(LoadBalancerHints.HEADERS);
+        headers.add(RateLimitPolicyResolver.PLAN_HEADER);
+        headers.add(RateLimitPolicyResolver.ROLES_HEADER);
+        return Collections.unmodifiableList(headers);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
@@ -52,6 +52,7 @@ public class JwtAuthenticationFilter extends AbstractGatewayFilterFactory<JwtAut
                 Claims claims = jwtUtil.extractAllClaims(token);
                 String username = claims.getSubject();
                 String userId = claims.get("userId", String.class);
+                String plan = claims.get("plan", String.class);
                 @SuppressWarnings("unchecked")
                 List<String> roles = claims.get("roles", List.class);
 
@@ -60,6 +61,7 @@ public class JwtAuthenticationFilter extends AbstractGatewayFilterFactory<JwtAut
                         .header("X-Auth-User", username)
                         .header("X-Auth-UserId", userId != null ? userId : "")
                         .header("X-Auth-Roles", roles != null ? String.join(",", roles) : "")
+                        .header("X-Auth-Plan", plan != null ? plan : "")
                         .build();
 
                 log.debug("Authenticated user: {} with roles: {}", username, roles);
@@ -0,0 +1,120 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.fallback.FallbackStore;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Global filter that keeps the latest successful response of GET requests on the routes
+ * configured for last-known-good fallbacks in the {@link FallbackStore}.
+ * <p>
+ * The body is copied as it streams through to the client instead of being buffered first,
+ * and the copy is given up once it exceeds the maximum body size. The request's store key
+ * is left in an exchange attribute, where the fallback endpoint finds it after a forward.
+ */
+@Component
+public class LastKnownGoodFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private final FallbackStore fallbackStore;
+
+    public LastKnownGoodFilter(FallbackStore fallbackStore) {
+        this.fallbackStore = fallbackStore;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        ServerHttpRequest request = exchange.getRequest();
+        String key = route != null
+                ? fallbackStore.getKey(route.getId(), request.getMethodValue(), request.getURI())
+                : null;
+        if (key == null) {
+            return chain.filter(exchange);
+        }
+        exchange.getAttributes().put(FallbackStore.KEY_ATTR, key);
+        return chain.filter(exchange.mutate().response(new CapturingResponse(exchange.getResponse(), key)).build());
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private final class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final String key;
+
+        private CapturingResponse(ServerHttpResponse delegate, String key) {
+            super(delegate);
+            this.key = key;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            Integer status = getRawStatusCode();
+            long maxBodySize = fallbackStore.getMaxBodySize();
+            if (status == null || status != HttpStatus.OK.value()
+                    || getHeaders().getContentLength() > maxBodySize
+                    || !fallbackStore.isStorable(getHeaders())) {
+                return super.writeWith(body);
+            }
+            Capture capture = new Capture(maxBodySize);
+            return super.writeWith(Flux.from(body)
+                    .doOnNext(capture::append)
+                    .doOnComplete(() -> {
+                        if (!capture.overflowed) {
+                            fallbackStore.put(key, status, getHeaders(), capture.buffer.toByteArray());
+                        }
+                    }));
+        }
+    }
+
+    /**
+     * Copy of a response body, given up once it grows beyond the limit.
+     */
+    private static final class Capture {
+
+        private final long limit;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean overflowed;
+
+        private Capture(long limit) {
+            this.limit = limit;
+        }
+
+        private void append(DataBuffer dataBuffer) {
+            if (overflowed) {
+                return;
+            }
+            ByteBuffer bytes = dataBuffer.asByteBuffer();
+            if (buffer.size() + bytes.remaining() > limit) {
+                overflowed = true;
+                buffer.reset();
+                return;
+            }
+            byte[] chunk = new byte[bytes.remaining()];
+            bytes.get(chunk);
+            buffer.write(chunk, 0, chunk.length);
+        }
+    }
+
+}
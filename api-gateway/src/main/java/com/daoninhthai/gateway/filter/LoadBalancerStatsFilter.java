@@ -0,0 +1,82 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.loadbalancer.InstanceCircuitBreakers;
+import com.daoninhthai.gateway.loadbalancer.InstanceStats;
+import com.daoninhthai.gateway.loadbalancer.InstanceStatsRegistry;
+import com.daoninhthai.gateway.loadbalancer.OutlierDetector;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+
+/**
+ * Global filter that feeds the latency, outcome and outstanding requests of each
+ * load-balanced call into the InstanceStatsRegistry, OutlierDetector and
+ * InstanceCircuitBreakers used by the load balancer. Runs right after the load balancer
+ * has chosen the instance.
+ */
+@Component
+public class LoadBalancerStatsFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+
+    private final InstanceStatsRegistry statsRegistry;
+    private final OutlierDetector outlierDetector;
+    private final InstanceCircuitBreakers circuitBreakers;
+
+    public LoadBalancerStatsFilter(InstanceStatsRegistry statsRegistry, OutlierDetector outlierDetector,
+                                   InstanceCircuitBreakers circuitBreakers) {
+        this.statsRegistry = statsRegistry;
+        this.outlierDetector = outlierDetector;
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Response<ServiceInstance> response = exchange.getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        if (response == null || !response.hasServer()) {
+            return chain.filter(exchange);
+        }
+
+        InstanceStats stats = statsRegistry.getStats(response.getServer());
+        long startTime = statsRegistry.now();
+        stats.start(startTime);
+        Mono<Void> result = chain.filter(exchange);
+        CircuitBreaker breaker = circuitBreakers.getBreaker(response.getServer());
+        if (breaker != null && breaker.tryAcquirePermission()) {
+            result = result
+                    .doOnSuccess(v -> circuitBreakers.onResult(breaker, statsRegistry.now() - startTime,
+                            exchange.getResponse().getRawStatusCode()))
+                    .doOnError(ex -> circuitBreakers.onError(breaker, statsRegistry.now() - startTime, ex))
+                    .doOnCancel(breaker::releasePermission);
+        }
+        return result
+                .doFinally(signalType -> {
+                    if (signalType == SignalType.CANCEL) {
+                        stats.cancel();
+                        return;
+                    }
+                    HttpStatus status = exchange.getResponse().getStatusCode();
+                    boolean failed = signalType == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+                    long now = statsRegistry.now();
+                    stats.complete(now, now - startTime, failed);
+                    outlierDetector.record(response.getServer(), now - startTime, failed);
+                });
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
@@ -70,7 +70,7 @@ public class LoggingFilter implements GlobalFilter, Ordered {
 
     @Override
     public int getOrder() {
-        return Ordered.HIGHEST_PRECEDENCE + 1;
+        return AdmissionControlFilter.ORDER + 2;
     }
 
 }
@@ -88,7 +88,7 @@ public class MetricsFilter implements GlobalFilter, Ordered {
 
     @Override
     public int getOrder() {
-        return Ordered.HIGHEST_PRECEDENCE + 2;
+        return AdmissionControlFilter.ORDER + 3;
     }
 
 }
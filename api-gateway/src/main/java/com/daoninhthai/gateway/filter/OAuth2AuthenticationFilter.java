@@ -2,9 +2,14 @@ package com.daoninhthai.gateway.filter;
 
 import com.daoninhthai.gateway.config.OAuth2Config;
 import com.daoninhthai.gateway.dto.TokenIntrospectionResponse;
+import com.daoninhthai.gateway.service.LocalTokenValidator;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.http.HttpHeaders;
@@ -14,13 +19,22 @@ import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.util.concurrent.TimeoutException;
+
 /**
  * OAuth2 Authentication Filter that validates bearer tokens
  * by calling the OAuth2 token introspection endpoint.
  * Uses non-blocking WebClient for reactive token validation.
+ * Introspection calls run through a dedicated circuit breaker so an unhealthy
+ * auth server is answered with 503 instead of queueing requests.
+ * <p>
+ * In hybrid mode, JWT access tokens from a trusted issuer are verified locally
+ * against the issuer's signing keys; only opaque tokens are introspected.
  */
 @Component
 @Slf4j
@@ -33,6 +47,15 @@ public class OAuth2AuthenticationFilter extends AbstractGatewayFilterFactory<OAu
     @Autowired
     private OAuth2Config oauth2Config;
 
+    @Autowired
+    private ReactiveCircuitBreakerFactory<?, ?> circuitBreakerFactory;
+
+    @Autowired
+    private LocalTokenValidator localTokenValidator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     public OAuth2AuthenticationFilter() {
         super(Config.class);
     }
@@ -55,8 +78,8 @@ public class OAuth2AuthenticationFilter extends AbstractGatewayFilterFactory<OAu
 
             String token = authHeader.substring(7);
 
-            // Call introspection endpoint to validate token
-            return introspectToken(token)
+            // Validate locally when possible, otherwise call the introspection endpoint
+            return validateToken(token)
                     .flatMap(introspectionResponse -> {
                         if (!introspectionResponse.isActive()) {
                             log.warn("OAuth2 token is not active");
@@ -89,17 +112,48 @@ public class OAuth2AuthenticationFilter extends AbstractGatewayFilterFactory<OAu
                         return chain.filter(exchange.mutate().request(modifiedRequest).build());
                     })
                     .onErrorResume(ex -> {
+                        if (isIntrospectionUnavailable(ex)) {
+                            log.warn("OAuth2 token introspection unavailable: {}", ex.toString());
+                            return onError(exchange, "Token introspection is temporarily unavailable",
+                                    HttpStatus.SERVICE_UNAVAILABLE);
+                        }
                         log.error("Error during OAuth2 token introspection: {}", ex.getMessage());
                         return onError(exchange, "Token validation failed", HttpStatus.UNAUTHORIZED);
                     });
         };
     }
 
+    /**
+     * Validates the token locally in hybrid mode, falling back to remote introspection
+     * for opaque tokens and tokens that cannot be verified locally.
+     */
+    private Mono<TokenIntrospectionResponse> validateToken(String token) {
+        Mono<TokenIntrospectionResponse> remote = Mono.defer(() -> introspectToken(token))
+                .doOnNext(response -> validationCounter("remote", response.isActive()).increment());
+
+        if (!oauth2Config.getHybrid().isEnabled()) {
+            return remote;
+        }
+
+        return localTokenValidator.validate(token)
+                .doOnNext(response -> validationCounter("local", true).increment())
+                .doOnError(ex -> validationCounter("local", false).increment())
+                .switchIfEmpty(remote);
+    }
+
+    private Counter validationCounter(String mode, boolean active) {
+        return Counter.builder("gateway_oauth2_token_validations_total")
+                .description("OAuth2 token validations by mode (local JWT or remote introspection)")
+                .tag("mode", mode)
+                .tag("active", String.valueOf(active))
+                .register(meterRegistry);
+    }
+
     /**
      * Calls the OAuth2 token introspection endpoint using WebClient (non-blocking).
      */
     private Mono<TokenIntrospectionResponse> introspectToken(String token) {
-        return oauth2WebClient.post()
+        Mono<TokenIntrospectionResponse> introspection = oauth2WebClient.post()
                 .uri(oauth2Config.getIntrospectionUri())
                 .headers(headers -> headers.setBasicAuth(
                         oauth2Config.getClientId(),
@@ -108,6 +162,28 @@ public class OAuth2AuthenticationFilter extends AbstractGatewayFilterFactory<OAu
                 .retrieve()
                 .bodyToMono(TokenIntrospectionResponse.class)
                 .doOnError(e -> log.error("Token introspection request failed: {}", e.getMessage()));
+
+        return circuitBreakerFactory.create(OAuth2Config.INTROSPECTION_CIRCUIT_BREAKER)
+                .run(introspection, Mono::error);
+    }
+
+    /**
+     * Whether introspection failed without judging the token: the breaker is open, the
+     * connection pool is saturated (pending limit or acquire timeout), the call timed out
+     * or could not be sent, or the auth server answered with a 5xx.
+     */
+    static boolean isIntrospectionUnavailable(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CallNotPermittedException
+                    || cause instanceof TimeoutException
+                    || cause instanceof WebClientRequestException) {
+                return true;
+            }
+            if (cause instanceof WebClientResponseException) {
+                return ((WebClientResponseException) cause).getStatusCode().is5xxServerError();
+            }
+        }
+        return false;
     }
 
     private Mono<Void> onError(ServerWebExchange exchange, String message, HttpStatus status) {
@@ -0,0 +1,89 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.ratelimit.HeavyHitterTracker;
+import com.daoninhthai.gateway.ratelimit.HierarchicalRateLimiter;
+import com.daoninhthai.gateway.ratelimit.RateLimitPolicy;
+import com.daoninhthai.gateway.ratelimit.RateLimitPolicyResolver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Rate limits requests by the policy of their route and client tier, charging each
+ * request the cost configured for its path. Unlike the RequestRateLimiter filter it sees
+ * the whole request, so tiers can be taken from the authentication headers.
+ * Must run after the authentication filter of the route.
+ */
+@Component
+@Slf4j
+public class RateLimitFilter extends AbstractGatewayFilterFactory<RateLimitFilter.Config> {
+
+    public static final String TIER_HEADER = "X-RateLimit-Tier";
+    public static final String PENALIZED_HEADER = "X-RateLimit-Penalized";
+
+    @Autowired
+    private HierarchicalRateLimiter rateLimiter;
+
+    @Autowired
+    private RateLimitPolicyResolver policyResolver;
+
+    @Autowired
+    private RateLimitKeyResolver keyResolver;
+
+    @Autowired
+    private HeavyHitterTracker heavyHitterTracker;
+
+    public RateLimitFilter() {
+        super(Config.class);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return (exchange, chain) -> {
+            Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+            String routeId = route != null ? route.getId() : RateLimitPolicyResolver.ANY;
+            ServerHttpRequest request = exchange.getRequest();
+
+            String tier = policyResolver.resolveTier(request);
+            RateLimitPolicy policy = policyResolver.resolve(routeId, tier);
+            long cost = policyResolver.resolveCost(request);
+
+            return keyResolver.resolve(exchange).flatMap(key -> {
+                heavyHitterTracker.record(routeId, key, cost);
+                if (heavyHitterTracker.isPenalized(routeId, key)) {
+                    log.debug("Rejecting penalized key {} on route {}", key, routeId);
+                    exchange.getResponse().getHeaders().add(PENALIZED_HEADER, "true");
+                    exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                    return exchange.getResponse().setComplete();
+                }
+
+                return rateLimiter.isAllowed(routeId + ":" + key, policy, cost).flatMap(response -> {
+                    ServerHttpResponse httpResponse = exchange.getResponse();
+                    response.getHeaders().forEach(httpResponse.getHeaders()::add);
+                    httpResponse.getHeaders().add(TIER_HEADER, tier);
+
+                    if (response.isAllowed()) {
+                        return chain.filter(exchange);
+                    }
+
+                    log.debug("Rate limit exceeded on route {} for tier {} (cost {})", routeId, tier, cost);
+                    httpResponse.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                    return httpResponse.setComplete();
+                });
+            });
+        };
+    }
+
+    public static class Config {
+        // Put configuration properties here if needed
+    }
+
+}
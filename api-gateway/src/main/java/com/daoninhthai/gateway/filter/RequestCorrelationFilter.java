@@ -49,7 +49,7 @@ public class RequestCorrelationFilter implements GlobalFilter, Ordered {
 
     @Override
     public int getOrder() {
-        return Ordered.HIGHEST_PRECEDENCE;
+        return AdmissionControlFilter.ORDER + 1;
     }
 
 }
@@ -0,0 +1,124 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.RetryConfig;
+import com.daoninhthai.gateway.hedging.AttemptExchange;
+import com.daoninhthai.gateway.loadbalancer.InstanceStatsRegistry;
+import com.daoninhthai.gateway.loadbalancer.LoadBalancerHints;
+import com.daoninhthai.gateway.retry.RequestRetrier;
+import com.daoninhthai.gateway.util.RequestDeadline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Global filter that retries failed upstream calls of routes with a retry policy.
+ * <p>
+ * Each attempt runs through the rest of the chain on its own {@link AttemptExchange}. An
+ * attempt that fails with a retryable error, or gets a retryable status from the upstream,
+ * is retried after a jittered backoff on an instance none of the earlier attempts used, as
+ * long as the RequestRetrier allows it. Otherwise its outcome is passed on. Only requests
+ * without a body are retried, and never after the request's deadline.
+ * <p>
+ * Runs before hedging, so each attempt can be hedged, and inside the route's circuit breaker,
+ * which sees the outcome after retries.
+ */
+@Component
+@Slf4j
+public class RetryFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = HedgingFilter.ORDER - 10;
+
+    private final RequestRetrier retrier;
+
+    public RetryFilter(RequestRetrier retrier) {
+        this.retrier = retrier;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        RetryConfig.Policy policy = route != null
+                ? retrier.getPolicy(route.getId(), exchange.getRequest().getMethod())
+                : null;
+        if (policy == null || !isReplayable(exchange)) {
+            return chain.filter(exchange);
+        }
+
+        retrier.onRequest(route.getId());
+        RequestDeadline.tighten(exchange, policy.getTimeout());
+        return attempt(exchange, chain, route.getId(), policy, 1, Collections.emptyList());
+    }
+
+    private Mono<Void> attempt(ServerWebExchange exchange, GatewayFilterChain chain, String routeId,
+                               RetryConfig.Policy policy, int attempt, List<String> excluded) {
+        AttemptExchange current = new AttemptExchange(exchange,
+                AttemptExchange.bodiless(LoadBalancerHints.exclude(exchange.getRequest(), excluded)));
+        return chain.filter(current)
+                .materialize()
+                .flatMap(signal -> {
+                    Throwable error = signal.getThrowable();
+                    boolean retryable = error != null
+                            ? retrier.isRetryable(policy, error)
+                            : current.getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR) != null
+                                    && retrier.isRetryable(policy, current.getResponse().getRawStatusCode());
+                    if (retryable) {
+                        Duration backoff = retrier.backoff(policy, attempt);
+                        if (retrier.tryRetry(routeId, policy, attempt, backoff, RequestDeadline.getRemaining(exchange))) {
+                            log.debug("Retrying request {} of route {} after attempt {} failed with {}",
+                                    exchange.getRequest().getId(), routeId, attempt,
+                                    error != null ? error.toString() : current.getResponse().getRawStatusCode());
+                            current.close();
+                            List<String> next = withInstanceOf(current, excluded);
+                            return Mono.delay(backoff)
+                                    .then(Mono.defer(() -> attempt(exchange, chain, routeId, policy, attempt + 1, next)));
+                        }
+                    }
+                    if (error != null) {
+                        current.close();
+                        return Mono.error(error);
+                    }
+                    current.applyTo(exchange);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * The excluded instances plus the one the attempt was sent to.
+     */
+    private static List<String> withInstanceOf(AttemptExchange attempt, List<String> excluded) {
+        Response<ServiceInstance> chosen = attempt.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        if (chosen == null || !chosen.hasServer()) {
+            return excluded;
+        }
+        List<String> next = new ArrayList<>(excluded);
+        next.add(InstanceStatsRegistry.instanceId(chosen.getServer()));
+        return next;
+    }
+
+    private static boolean isReplayable(ServerWebExchange exchange) {
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        return headers.getContentLength() <= 0
+                && !headers.containsKey(HttpHeaders.TRANSFER_ENCODING)
+                && !headers.containsKey(HttpHeaders.UPGRADE);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
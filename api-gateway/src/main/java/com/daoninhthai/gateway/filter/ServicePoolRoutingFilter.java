@@ -0,0 +1,56 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.pool.ServiceHttpClients;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+
+/**
+ * The gateway's routing filter, in place of the default NettyRoutingFilter (disabled with
+ * spring.cloud.gateway.global-filter.netty-routing.enabled=false), sending each load-balanced
+ * request through the connection pool of its service from {@link ServiceHttpClients}, over
+ * HTTP/2 for routes configured for it. Requests to fixed URLs keep using the shared client.
+ */
+@Component
+public class ServicePoolRoutingFilter extends NettyRoutingFilter {
+
+    private final ServiceHttpClients serviceHttpClients;
+
+    public ServicePoolRoutingFilter(HttpClient httpClient,
+                                    ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+                                    HttpClientProperties properties,
+                                    ServiceHttpClients serviceHttpClients) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.serviceHttpClients = serviceHttpClients;
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        Response<ServiceInstance> response = exchange.getAttribute(
+                ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        if (!serviceHttpClients.isEnabled() || response == null || !response.hasServer()) {
+            return super.getHttpClient(route, exchange);
+        }
+        // Upgrades such as WebSocket need HTTP/1.1
+        String routeId = exchange.getRequest().getHeaders().containsKey(HttpHeaders.UPGRADE) ? null : route.getId();
+        HttpClient client = serviceHttpClients.getHttpClient(response.getServer().getServiceId(), routeId);
+        Object connectTimeout = route.getMetadata().get(RouteMetadataUtils.CONNECT_TIMEOUT_ATTR);
+        return connectTimeout != null
+                ? client.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.parseInt(connectTimeout.toString()))
+                : client;
+    }
+
+}
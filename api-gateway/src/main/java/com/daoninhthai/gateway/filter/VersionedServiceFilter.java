@@ -0,0 +1,63 @@
+package com.daoninhthai.gateway.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Global filter that sends versioned requests to the service selected by the
+ * ApiVersionFilter, e.g. lb://user-service -> lb://user-service-v2.
+ * <p>
+ * Runs right after the request URL is built from the route URI and before load balancing,
+ * and swaps the host with a string prefix replacement so the encoded path and query are
+ * kept as they are.
+ */
+@Component
+@Slf4j
+public class VersionedServiceFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        String targetService = exchange.getAttribute(ApiVersionFilter.TARGET_SERVICE_ATTR);
+        URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (targetService == null || url == null || url.getHost() == null) {
+            return chain.filter(exchange);
+        }
+
+        URI rewritten = replaceHost(url, targetService);
+        if (rewritten != null) {
+            log.debug("Versioned routing: {} -> {}", url.getHost(), targetService);
+            exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, rewritten);
+        }
+        return chain.filter(exchange);
+    }
+
+    /**
+     * The URL with its host replaced, or null if the URL has user info, which lb:// URLs do not.
+     */
+    static URI replaceHost(URI url, String host) {
+        String prefix = url.getScheme() + "://" + url.getHost();
+        String raw = url.toString();
+        if (!raw.startsWith(prefix)) {
+            return null;
+        }
+        return URI.create(url.getScheme() + "://" + host + raw.substring(prefix.length()));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+}
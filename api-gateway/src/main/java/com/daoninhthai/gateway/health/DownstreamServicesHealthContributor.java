@@ -0,0 +1,52 @@
+package com.daoninhthai.gateway.health;
+
+import org.springframework.boot.actuate.health.CompositeHealthContributor;
+import org.springframework.boot.actuate.health.HealthContributor;
+import org.springframework.boot.actuate.health.NamedContributor;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Health of all downstream services as one composite, with a member per service in the
+ * latest HealthProber snapshot, so services found in discovery later show up without a restart.
+ */
+public class DownstreamServicesHealthContributor implements CompositeHealthContributor {
+
+    private final HealthProber healthProber;
+    private final Duration maxAge;
+    private final ConcurrentHashMap<String, ServiceHealthIndicator> indicators = new ConcurrentHashMap<>();
+
+    public DownstreamServicesHealthContributor(HealthProber healthProber, Duration maxAge) {
+        this.healthProber = healthProber;
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public HealthContributor getContributor(String name) {
+        return healthProber.getSnapshot().getServices().containsKey(name) ? indicator(name) : null;
+    }
+
+    @Override
+    public Iterator<NamedContributor<HealthContributor>> iterator() {
+        Iterator<String> serviceIds = healthProber.getSnapshot().getServices().keySet().iterator();
+        return new Iterator<NamedContributor<HealthContributor>>() {
+            @Override
+            public boolean hasNext() {
+                return serviceIds.hasNext();
+            }
+
+            @Override
+            public NamedContributor<HealthContributor> next() {
+                String serviceId = serviceIds.next();
+                return NamedContributor.of(serviceId, indicator(serviceId));
+            }
+        };
+    }
+
+    private ServiceHealthIndicator indicator(String serviceId) {
+        return indicators.computeIfAbsent(serviceId, id -> new ServiceHealthIndicator(id, healthProber, maxAge));
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.daoninhthai.gateway.health;
+
+import com.daoninhthai.gateway.config.HealthProbeConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Probes the health endpoint of every instance of the downstream services in the
+ * background and keeps the result as an immutable {@link HealthSnapshot}.
+ * <p>
+ * Instances come from service discovery and are probed concurrently without blocking; a
+ * round that is still running when the next one is due is not overlapped. Health
+ * indicators only read the latest snapshot, so a health request never calls a service.
+ */
+@Slf4j
+public class HealthProber {
+
+    private static final String MANAGEMENT_PORT_METADATA = "management.port";
+
+    private final HealthProbeConfig properties;
+    private final ReactiveDiscoveryClient discoveryClient;
+    private final WebClient webClient;
+    private final MeterRegistry meterRegistry;
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final Set<String> gauged = ConcurrentHashMap.newKeySet();
+
+    private volatile HealthSnapshot snapshot = HealthSnapshot.EMPTY;
+
+    public HealthProber(HealthProbeConfig properties, ReactiveDiscoveryClient discoveryClient, WebClient webClient,
+                        MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.discoveryClient = discoveryClient;
+        this.webClient = webClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public HealthSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Start a probe round unless one is still running.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${gateway.health-probe.interval-ms:10000}")
+    public void refresh() {
+        if (!probing.compareAndSet(false, true)) {
+            log.debug("Skipping health probe round, the previous one is still running");
+            return;
+        }
+        probe()
+                .doFinally(signalType -> probing.set(false))
+                .subscribe(this::update, ex -> log.error("Health probe round failed", ex));
+    }
+
+    /**
+     * Probe all instances of the services once.
+     */
+    Mono<HealthSnapshot> probe() {
+        Flux<String> serviceIds = properties.getServices().isEmpty()
+                ? discoveryClient.getServices()
+                : Flux.fromIterable(properties.getServices());
+        return serviceIds
+                .flatMap(serviceId -> discoveryClient.getInstances(serviceId)
+                        .onErrorResume(ex -> {
+                            log.warn("Failed to look up instances of {}: {}", serviceId, ex.getMessage());
+                            return Flux.empty();
+                        })
+                        .flatMap(this::probe, properties.getConcurrency())
+                        .collectList()
+                        .map(instances -> new HealthSnapshot.ServiceHealth(serviceId, instances)))
+                .collectMap(HealthSnapshot.ServiceHealth::getServiceId, service -> service, TreeMap::new)
+                .map(services -> new HealthSnapshot(services, Instant.now()));
+    }
+
+    private Mono<HealthSnapshot.InstanceHealth> probe(ServiceInstance instance) {
+        String url = healthUrl(instance);
+        String instanceId = instance.getInstanceId() != null
+                ? instance.getInstanceId()
+                : instance.getHost() + ":" + instance.getPort();
+        long startTime = System.nanoTime();
+        return webClient.get()
+                .uri(url)
+                .exchangeToMono(response -> response.bodyToMono(ServiceHealthIndicator.ServiceHealthResponse.class)
+                        .map(ServiceHealthIndicator.ServiceHealthResponse::getStatus)
+                        .onErrorResume(ex -> Mono.empty())
+                        .defaultIfEmpty(isSuccessful(response) ? Status.UP.getCode() : Status.DOWN.getCode())
+                        .map(status -> instanceHealth(instanceId, url, response, status, startTime)))
+                .timeout(properties.getTimeout())
+                .onErrorResume(ex -> Mono.just(new HealthSnapshot.InstanceHealth(instanceId, url, Status.DOWN,
+                        elapsedMillis(startTime), ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName())));
+    }
+
+    private static HealthSnapshot.InstanceHealth instanceHealth(String instanceId, String url, ClientResponse response,
+                                                                String status, long startTime) {
+        boolean up = isSuccessful(response) && Status.UP.getCode().equalsIgnoreCase(status);
+        return new HealthSnapshot.InstanceHealth(instanceId, url, up ? Status.UP : new Status(status.toUpperCase()),
+                elapsedMillis(startTime), up ? null : "Reported " + status + " with HTTP " + response.rawStatusCode());
+    }
+
+    /**
+     * Health URL of an instance, on the management port it registered in its metadata, if any.
+     */
+    String healthUrl(ServiceInstance instance) {
+        return UriComponentsBuilder.newInstance()
+                .scheme(instance.isSecure() ? "https" : "http")
+                .host(instance.getHost())
+                .port(healthPort(instance))
+                .path(properties.getPath())
+                .toUriString();
+    }
+
+    /**
+     * Management port from the instance metadata, or the instance port if it registered none
+     * or one that is not a valid port.
+     */
+    private static int healthPort(ServiceInstance instance) {
+        String managementPort = instance.getMetadata() != null
+                ? instance.getMetadata().get(MANAGEMENT_PORT_METADATA)
+                : null;
+        if (managementPort == null) {
+            return instance.getPort();
+        }
+        try {
+            int port = Integer.parseInt(managementPort.trim());
+            if (port > 0 && port <= 65535) {
+                return port;
+            }
+        } catch (NumberFormatException ex) {
+            // fall through to the instance port
+        }
+        log.debug("Ignoring invalid {} '{}' of instance {}", MANAGEMENT_PORT_METADATA, managementPort,
+                instance.getInstanceId());
+        return instance.getPort();
+    }
+
+    private static boolean isSuccessful(ClientResponse response) {
+        return response.rawStatusCode() / 100 == 2;
+    }
+
+    private static long elapsedMillis(long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    void update(HealthSnapshot probed) {
+        snapshot = probed;
+        for (HealthSnapshot.ServiceHealth service : probed.getServices().values()) {
+            if (gauged.add(service.getServiceId())) {
+                String serviceId = service.getServiceId();
+                Gauge.builder("gateway_downstream_healthy_instances", this, prober -> {
+                            HealthSnapshot.ServiceHealth current = prober.snapshot.getService(serviceId);
+                            return current != null ? current.getUpCount() : 0;
+                        })
+                        .description("Instances of the downstream service that passed their last health probe")
+                        .tag("service", serviceId)
+                        .register(meterRegistry);
+            }
+        }
+        log.debug("Probed {} services", probed.getServices().size());
+    }
+
+}
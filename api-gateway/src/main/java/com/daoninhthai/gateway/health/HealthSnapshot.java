@@ -0,0 +1,108 @@
+package com.daoninhthai.gateway.health;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable result of one probe round over all downstream services, replaced as a whole
+ * by the HealthProber after each round.
+ */
+public final class HealthSnapshot {
+
+    static final HealthSnapshot EMPTY = new HealthSnapshot(Collections.emptyMap(), null);
+
+    private final Map<String, ServiceHealth> services;
+    private final Instant probedAt;
+
+    HealthSnapshot(Map<String, ServiceHealth> services, Instant probedAt) {
+        this.services = Collections.unmodifiableMap(services);
+        this.probedAt = probedAt;
+    }
+
+    /**
+     * Health of the services by service id.
+     */
+    public Map<String, ServiceHealth> getServices() {
+        return services;
+    }
+
+    public ServiceHealth getService(String serviceId) {
+        return services.get(serviceId);
+    }
+
+    /**
+     * End of the probe round, or null before the first round has completed.
+     */
+    public Instant getProbedAt() {
+        return probedAt;
+    }
+
+    /**
+     * Health of one service: UP while at least one instance is up.
+     */
+    public static final class ServiceHealth {
+
+        private final String serviceId;
+        private final List<InstanceHealth> instances;
+
+        ServiceHealth(String serviceId, List<InstanceHealth> instances) {
+            this.serviceId = serviceId;
+            this.instances = Collections.unmodifiableList(instances);
+        }
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public List<InstanceHealth> getInstances() {
+            return instances;
+        }
+
+        public Status getStatus() {
+            if (instances.isEmpty()) {
+                return Status.DOWN;
+            }
+            for (InstanceHealth instance : instances) {
+                if (Status.UP.equals(instance.getStatus())) {
+                    return Status.UP;
+                }
+            }
+            return Status.DOWN;
+        }
+
+        public long getUpCount() {
+            return instances.stream().filter(instance -> Status.UP.equals(instance.getStatus())).count();
+        }
+    }
+
+    /**
+     * Outcome of probing one instance.
+     */
+    @Getter
+    @ToString
+    @RequiredArgsConstructor
+    public static final class InstanceHealth {
+
+        private final String instanceId;
+
+        private final String url;
+
+        private final Status status;
+
+        private final long latencyMs;
+
+        /**
+         * Why the probe failed, null if it succeeded
+         */
+        private final String error;
+
+    }
+
+}
@@ -1,83 +1,73 @@
 package com.daoninhthai.gateway.health;
 
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.actuate.health.AbstractHealthIndicator;
 import org.springframework.boot.actuate.health.Health;
-import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Custom health indicator that checks the health of downstream microservices.
- * Uses WebClient to call the /actuator/health endpoint of each registered service.
+ * Health indicator of one downstream service, read from the latest HealthProber snapshot.
+ * The service is up while at least one of its instances passed its last probe; a snapshot
+ * older than the max age is reported as unknown.
  */
-@Slf4j
 public class ServiceHealthIndicator extends AbstractHealthIndicator {
 
     private final String serviceName;
-    private final String serviceUrl;
-    private final WebClient webClient;
-    private final Duration timeout;
+    private final HealthProber healthProber;
+    private final Duration maxAge;
 
-    public ServiceHealthIndicator(String serviceName, String serviceUrl, WebClient webClient) {
-        this(serviceName, serviceUrl, webClient, Duration.ofSeconds(5));
-    }
-
-    public ServiceHealthIndicator(String serviceName, String serviceUrl, WebClient webClient, Duration timeout) {
+    public ServiceHealthIndicator(String serviceName, HealthProber healthProber, Duration maxAge) {
         super("Health check failed for service: " + serviceName);
         this.serviceName = serviceName;
-        this.serviceUrl = serviceUrl;
-        this.webClient = webClient;
-        this.timeout = timeout;
+        this.healthProber = healthProber;
+        this.maxAge = maxAge;
     }
 
     @Override
     protected void doHealthCheck(Health.Builder builder) {
-        try {
-            String healthUrl = serviceUrl + "/actuator/health";
-            log.debug("Checking health of service '{}' at: {}", serviceName, healthUrl);
-
-            ServiceHealthResponse response = webClient.get()
-                    .uri(healthUrl)
-                    .retrieve()
-                    .bodyToMono(ServiceHealthResponse.class)
-                    .timeout(timeout)
-                    .onErrorResume(ex -> {
-                        log.warn("Health check failed for service '{}': {}", serviceName, ex.getMessage());
-                        return Mono.just(new ServiceHealthResponse("DOWN"));
-                    })
-                    .block();
+        HealthSnapshot snapshot = healthProber.getSnapshot();
+        builder.withDetail("service", serviceName);
+        if (snapshot.getProbedAt() == null) {
+            builder.unknown().withDetail("error", "Service has not been probed yet");
+            return;
+        }
+        builder.withDetail("probedAt", snapshot.getProbedAt().toString());
+        if (snapshot.getProbedAt().plus(maxAge).isBefore(Instant.now())) {
+            builder.unknown().withDetail("error", "Last health probe is older than " + maxAge);
+            return;
+        }
 
-            if (response != null && "UP".equalsIgnoreCase(response.getStatus())) {
-                builder.up()
-                        .withDetail("service", serviceName)
-                        .withDetail("url", serviceUrl)
-                        .withDetail("status", response.getStatus());
-            } else {
-                builder.down()
-                        .withDetail("service", serviceName)
-                        .withDetail("url", serviceUrl)
-                        .withDetail("status", response != null ? response.getStatus() : "UNKNOWN")
-                        .withDetail("error", "Service is not responding or reported DOWN status");
+        HealthSnapshot.ServiceHealth service = snapshot.getService(serviceName);
+        if (service == null || service.getInstances().isEmpty()) {
+            builder.down().withDetail("error", "No instances found in service discovery");
+            return;
+        }
+        List<Map<String, Object>> instances = new ArrayList<>();
+        for (HealthSnapshot.InstanceHealth instance : service.getInstances()) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("instance", instance.getInstanceId());
+            details.put("url", instance.getUrl());
+            details.put("status", instance.getStatus().getCode());
+            details.put("latencyMs", instance.getLatencyMs());
+            if (instance.getError() != null) {
+                details.put("error", instance.getError());
             }
-        } catch (Exception e) {
-            log.error("Error checking health of service '{}': {}", serviceName, e.getMessage());
-            builder.down()
-                    .withDetail("service", serviceName)
-                    .withDetail("url", serviceUrl)
-                    .withDetail("error", e.getMessage());
+            instances.add(details);
         }
+        builder.status(service.getStatus())
+                .withDetail("up", service.getUpCount())
+                .withDetail("instances", instances);
     }
 
     public String getServiceName() {
         return serviceName;
     }
 
-    public String getServiceUrl() {
-        return serviceUrl;
-    }
-
     /**
      * Simple POJO to deserialize the health response from downstream services.
      */
@@ -0,0 +1,158 @@
+package com.daoninhthai.gateway.hedging;
+
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One of several attempts of an exchange through the rest of the filter chain, e.g. a hedge
+ * or a retry.
+ * <p>
+ * Each attempt has its own attributes, request and response status and headers, so the
+ * load balancer and routing filters of one attempt do not see those of another. Once an
+ * attempt's response is chosen, {@link #applyTo(ServerWebExchange)} copies its state to the
+ * real exchange, whose response body is then written from that attempt's upstream
+ * connection as usual.
+ * Attempts never commit the real response themselves.
+ */
+public class AttemptExchange extends ServerWebExchangeDecorator {
+
+    private final Map<String, Object> attributes;
+    private final ServerHttpRequest request;
+    private final AttemptResponse response;
+
+    public AttemptExchange(ServerWebExchange delegate, ServerHttpRequest request) {
+        super(delegate);
+        this.attributes = new ConcurrentHashMap<>(delegate.getAttributes());
+        Set<?> originalUrls = delegate.getAttribute(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR);
+        if (originalUrls != null) {
+            attributes.put(ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR, new LinkedHashSet<>(originalUrls));
+        }
+        this.request = request;
+        this.response = new AttemptResponse(delegate.getResponse());
+    }
+
+    @Override
+    public ServerHttpRequest getRequest() {
+        return request;
+    }
+
+    @Override
+    public ServerHttpResponse getResponse() {
+        return response;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(String name) {
+        return (T) attributes.get(name);
+    }
+
+    /**
+     * Copy the attributes, status and headers of this attempt to the exchange it was made for.
+     */
+    public void applyTo(ServerWebExchange exchange) {
+        exchange.getAttributes().putAll(attributes);
+        ServerHttpResponse target = exchange.getResponse();
+        if (response.status != null) {
+            target.setRawStatusCode(response.status);
+        }
+        target.getHeaders().clear();
+        target.getHeaders().addAll(response.headers);
+    }
+
+    /**
+     * Close the upstream connection of this attempt, if it has one, when its response is not used.
+     */
+    public void close() {
+        Connection connection = getAttribute(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        if (connection != null) {
+            connection.dispose();
+        }
+    }
+
+    /**
+     * The request without its body, for requests that have none: the body of the original
+     * request can only be read once, even when it is empty.
+     */
+    public static ServerHttpRequest bodiless(ServerHttpRequest request) {
+        return new ServerHttpRequestDecorator(request) {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return Flux.empty();
+            }
+        };
+    }
+
+    private static final class AttemptResponse extends ServerHttpResponseDecorator {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private volatile Integer status;
+
+        private AttemptResponse(ServerHttpResponse delegate) {
+            super(delegate);
+            headers.addAll(delegate.getHeaders());
+            this.status = delegate.getRawStatusCode();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public boolean setStatusCode(HttpStatus status) {
+            this.status = status != null ? status.value() : null;
+            return true;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() {
+            return status != null ? HttpStatus.resolve(status) : null;
+        }
+
+        @Override
+        public boolean setRawStatusCode(Integer value) {
+            this.status = value;
+            return true;
+        }
+
+        @Override
+        public Integer getRawStatusCode() {
+            return status;
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            // Committed through the real exchange once this attempt has won
+            return Mono.empty();
+        }
+
+    }
+
+}
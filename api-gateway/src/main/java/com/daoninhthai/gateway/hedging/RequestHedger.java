@@ -0,0 +1,153 @@
+package com.daoninhthai.gateway.hedging;
+
+import com.daoninhthai.gateway.config.HedgingConfig;
+import com.daoninhthai.gateway.util.RequestBudget;
+import com.daoninhthai.gateway.util.RollingLatencyHistogram;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpMethod;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides when the requests of a route are hedged and keeps the hedge budget of each route.
+ * <p>
+ * The hedge delay is the configured percentile of the route's recent upstream latency, time
+ * to response headers, so roughly that share of the requests complete without a hedge. A
+ * route is not hedged until it has enough samples in the window. Hedges are paid from a
+ * {@link RequestBudget} that every request of the route contributes to.
+ */
+public class RequestHedger {
+
+    /**
+     * How long a computed hedge delay is reused before the percentile is taken again
+     */
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final HedgingConfig properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, RouteHedging> routes = new ConcurrentHashMap<>();
+
+    public RequestHedger(HedgingConfig properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    RequestHedger(HedgingConfig properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Whether requests with this method on this route may be hedged.
+     */
+    public boolean isHedged(String routeId, HttpMethod method) {
+        return properties.isEnabled()
+                && method != null
+                && properties.getMethods().contains(method)
+                && properties.getRoutes().contains(routeId);
+    }
+
+    /**
+     * Start a request of a route: credits the route's budget and returns the delay after
+     * which it should be hedged, or null if the route has too few samples yet.
+     */
+    public Duration onRequest(String routeId) {
+        RouteHedging state = getState(routeId);
+        state.budget.deposit();
+        return state.getDelay();
+    }
+
+    /**
+     * Take a hedge from the route's budget. Returns false, and counts it, if the budget is exhausted.
+     */
+    public boolean tryHedge(String routeId) {
+        RouteHedging state = getState(routeId);
+        if (state.budget.tryWithdraw()) {
+            state.sent.increment();
+            return true;
+        }
+        state.budgetExhausted.increment();
+        return false;
+    }
+
+    /**
+     * Record the upstream latency of an attempt, or the time it ran before being cancelled.
+     */
+    public void recordLatency(String routeId, long latencyNanos) {
+        getState(routeId).histogram.record(latencyNanos, false);
+    }
+
+    /**
+     * Record that a hedge responded before the attempt it was hedging.
+     */
+    public void recordWon(String routeId) {
+        getState(routeId).won.increment();
+    }
+
+    RouteHedging getState(String routeId) {
+        RouteHedging state = routes.get(routeId);
+        return state != null ? state : routes.computeIfAbsent(routeId, RouteHedging::new);
+    }
+
+    final class RouteHedging {
+        private final RollingLatencyHistogram histogram;
+        private final RequestBudget budget;
+        private final Counter sent;
+        private final Counter won;
+        private final Counter budgetExhausted;
+        private volatile long delayComputedAt;
+        private volatile Duration delay;
+
+        private RouteHedging(String routeId) {
+            this.delayComputedAt = nanoClock.getAsLong() - DELAY_REFRESH_NANOS;
+            this.histogram = new RollingLatencyHistogram(properties.getWindow(), properties.getWindowSlices(),
+                    nanoClock);
+            this.budget = new RequestBudget(properties.getBudgetRatio(), properties.getBudgetCapacity());
+            this.sent = Counter.builder("gateway_hedges_sent_total")
+                    .description("Hedged attempts sent")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+            this.won = Counter.builder("gateway_hedges_won_total")
+                    .description("Hedged attempts that responded first")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+            this.budgetExhausted = Counter.builder("gateway_hedges_budget_exhausted_total")
+                    .description("Hedges not sent because the hedge budget was exhausted")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+            Gauge.builder("gateway_hedge_delay_ms", this, state -> {
+                        Duration delay = state.getDelay();
+                        return delay != null ? delay.toNanos() / 1_000_000.0 : Double.NaN;
+                    })
+                    .description("Delay after which requests of the route are hedged")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+        }
+
+        Duration getDelay() {
+            long now = nanoClock.getAsLong();
+            if (now - delayComputedAt < DELAY_REFRESH_NANOS) {
+                return delay;
+            }
+            Duration computed = null;
+            if (histogram.getCount() >= properties.getMinSamples()) {
+                Duration percentile = histogram.getPercentile(properties.getPercentile());
+                computed = percentile.compareTo(properties.getMinDelay()) > 0 ? percentile : properties.getMinDelay();
+            }
+            delay = computed;
+            delayComputedAt = now;
+            return computed;
+        }
+
+        double getBudget() {
+            return budget.getBalance();
+        }
+    }
+
+}
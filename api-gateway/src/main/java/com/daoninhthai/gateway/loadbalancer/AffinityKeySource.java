@@ -0,0 +1,23 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+/**
+ * Where the consistent-hash affinity key of a request is taken from.
+ */
+public enum AffinityKeySource {
+
+    /**
+     * A segment of the request path, by index, e.g. 2 for the id in /api/products/42
+     */
+    PATH_SEGMENT,
+
+    /**
+     * A request header, by name
+     */
+    HEADER,
+
+    /**
+     * The authenticated user id
+     */
+    USER
+
+}
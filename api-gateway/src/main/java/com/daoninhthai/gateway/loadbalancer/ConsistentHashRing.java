@@ -0,0 +1,127 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Consistent hash ring over service instances with bounded loads.
+ * <p>
+ * Each instance is placed on the ring at a number of virtual node points. A key maps to
+ * the first point clockwise from its hash, so when an instance joins or leaves only the
+ * keys of its arcs move. To keep a hot key from overloading its instance, an instance whose
+ * load is at the bound {@code ceil(loadFactor * (totalLoad + 1) / instances)} is skipped and
+ * the walk continues to the next instance on the ring.
+ */
+public final class ConsistentHashRing {
+
+    private final List<ServiceInstance> instances;
+    private final long fingerprint;
+    private final long[] points;
+    private final int[] owners;
+
+    public ConsistentHashRing(List<ServiceInstance> instances, int virtualNodes) {
+        this.instances = instances;
+        this.fingerprint = fingerprint(instances);
+        int size = instances.size() * virtualNodes;
+        long[][] entries = new long[size][];
+        int entry = 0;
+        for (int owner = 0; owner < instances.size(); owner++) {
+            String id = InstanceStatsRegistry.instanceId(instances.get(owner));
+            for (int node = 0; node < virtualNodes; node++) {
+                entries[entry++] = new long[]{hash(id + "#" + node), owner};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    /**
+     * Instance for a key, skipping instances whose load is at the bound.
+     *
+     * @param load current load of an instance, e.g. its outstanding requests
+     */
+    public ServiceInstance choose(String key, double loadFactor, ToIntFunction<ServiceInstance> load) {
+        return choose(key, loadFactor, load, Collections.emptySet());
+    }
+
+    /**
+     * Instance for a key, skipping excluded instances and instances whose load is at the
+     * bound. Falls back to the key's home instance if every instance is skipped.
+     */
+    public ServiceInstance choose(String key, double loadFactor, ToIntFunction<ServiceInstance> load,
+                                  Set<String> excluded) {
+        if (instances.isEmpty()) {
+            return null;
+        }
+        int[] loads = new int[instances.size()];
+        long totalLoad = 0;
+        for (int i = 0; i < loads.length; i++) {
+            loads[i] = Math.max(0, load.applyAsInt(instances.get(i)));
+            totalLoad += loads[i];
+        }
+        long bound = (long) Math.ceil(loadFactor * (totalLoad + 1) / instances.size());
+
+        int start = Arrays.binarySearch(points, hash(key));
+        if (start < 0) {
+            start = -start - 1;
+        }
+        boolean[] visited = new boolean[instances.size()];
+        int remaining = instances.size();
+        for (int step = 0; step < points.length && remaining > 0; step++) {
+            int owner = owners[(start + step) % points.length];
+            if (visited[owner]) {
+                continue;
+            }
+            if (loads[owner] < bound
+                    && !excluded.contains(InstanceStatsRegistry.instanceId(instances.get(owner)))) {
+                return instances.get(owner);
+            }
+            visited[owner] = true;
+            remaining--;
+        }
+        // Every instance is excluded or at the bound, which needs a load factor below 1
+        return instances.get(owners[start % points.length]);
+    }
+
+    /**
+     * Whether the ring was built over the same instances, in any order.
+     */
+    boolean isFor(List<ServiceInstance> candidates) {
+        return candidates.size() == instances.size() && fingerprint(candidates) == fingerprint;
+    }
+
+    private static long fingerprint(List<ServiceInstance> instances) {
+        long fingerprint = 0;
+        for (ServiceInstance instance : instances) {
+            fingerprint += hash(InstanceStatsRegistry.instanceId(instance));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with the SplitMix64 mixer.
+     */
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+}
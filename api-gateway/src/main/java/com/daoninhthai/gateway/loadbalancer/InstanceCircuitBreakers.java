@@ -0,0 +1,203 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import com.daoninhthai.gateway.exception.DeadlineExceededException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Resilience4j circuit breakers per upstream instance, fed by the LoadBalancerStatsFilter
+ * and consulted by the load balancer, which never sends requests to an instance whose
+ * breaker is open. A service only runs out of instances, and its routes fall back, once
+ * every instance's breaker is open.
+ * <p>
+ * Breakers are created on an instance's first request and dropped once they have been
+ * closed and unused for the idle time, so instances that come and go do not accumulate.
+ * Beyond the configured maximum, new instances are not tracked until others are dropped.
+ */
+@Slf4j
+public class InstanceCircuitBreakers {
+
+    private final LoadBalancerConfig.InstanceCircuitBreaker properties;
+    private final CircuitBreakerConfig breakerConfig;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, Entry> breakers = new ConcurrentHashMap<>();
+    private final Counter untracked;
+
+    public InstanceCircuitBreakers(LoadBalancerConfig.InstanceCircuitBreaker properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    InstanceCircuitBreakers(LoadBalancerConfig.InstanceCircuitBreaker properties, MeterRegistry meterRegistry,
+                            LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        this.breakerConfig = CircuitBreakerConfig.custom()
+                .failureRateThreshold(properties.getFailureRateThreshold())
+                .slidingWindowSize(properties.getSlidingWindowSize())
+                .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(properties.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(properties.getPermittedNumberOfCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .ignoreExceptions(DeadlineExceededException.class)
+                .build();
+        this.untracked = Counter.builder("gateway_instance_circuit_breakers_untracked_total")
+                .description("Instances not given a circuit breaker because the most breakers were tracked")
+                .register(meterRegistry);
+        Gauge.builder("gateway_instance_circuit_breakers_open", this, InstanceCircuitBreakers::getOpenCount)
+                .description("Upstream instances whose circuit breaker is open")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Breaker of an instance, created on first use, or null if disabled or at the maximum.
+     */
+    public CircuitBreaker getBreaker(ServiceInstance instance) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        String key = key(instance);
+        Entry entry = breakers.get(key);
+        if (entry == null) {
+            if (breakers.size() >= properties.getMaxInstances()) {
+                untracked.increment();
+                return null;
+            }
+            entry = breakers.computeIfAbsent(key, k -> create(instance));
+        }
+        entry.lastUsed = nanoClock.getAsLong();
+        return entry.breaker;
+    }
+
+    /**
+     * The instances whose breaker is not open, or the given list itself if none is.
+     */
+    public List<ServiceInstance> getAvailable(List<ServiceInstance> instances) {
+        if (!properties.isEnabled() || breakers.isEmpty()) {
+            return instances;
+        }
+        List<ServiceInstance> available = null;
+        for (int i = 0; i < instances.size(); i++) {
+            ServiceInstance instance = instances.get(i);
+            if (isOpen(instance)) {
+                if (available == null) {
+                    available = new ArrayList<>(instances.subList(0, i));
+                }
+            } else if (available != null) {
+                available.add(instance);
+            }
+        }
+        return available != null ? available : instances;
+    }
+
+    public boolean isOpen(ServiceInstance instance) {
+        Entry entry = breakers.get(key(instance));
+        if (entry == null) {
+            return false;
+        }
+        CircuitBreaker.State state = entry.breaker.getState();
+        return state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    /**
+     * Record a completed call: an error or a 5xx status counts as a failure.
+     */
+    public void onResult(CircuitBreaker breaker, long durationNanos, Integer status) {
+        if (status != null && status >= 500) {
+            breaker.onError(durationNanos, TimeUnit.NANOSECONDS,
+                    new ResponseStatusException(status, "Upstream responded with " + status, null));
+        } else {
+            breaker.onSuccess(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void onError(CircuitBreaker breaker, long durationNanos, Throwable error) {
+        breaker.onError(durationNanos, TimeUnit.NANOSECONDS, error);
+    }
+
+    int getOpenCount() {
+        int open = 0;
+        for (Entry entry : breakers.values()) {
+            CircuitBreaker.State state = entry.breaker.getState();
+            if (state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    int size() {
+        return breakers.size();
+    }
+
+    /**
+     * Drop the closed breakers of instances without requests for the idle time.
+     */
+    @Scheduled(fixedDelayString = "${gateway.load-balancer.instance-circuit-breaker.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long now = nanoClock.getAsLong();
+        long idleNanos = properties.getIdleTime().toNanos();
+        Iterator<Map.Entry<String, Entry>> iterator = breakers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getValue().breaker.getState() == CircuitBreaker.State.CLOSED
+                    && now - entry.getValue().lastUsed > idleNanos) {
+                iterator.remove();
+                log.debug("Dropped circuit breaker of idle instance {}", entry.getKey());
+            }
+        }
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getServiceId() + "/" + InstanceStatsRegistry.instanceId(instance);
+    }
+
+    private Entry create(ServiceInstance instance) {
+        String serviceId = instance.getServiceId();
+        String instanceId = InstanceStatsRegistry.instanceId(instance);
+        CircuitBreaker breaker = CircuitBreaker.of(serviceId + "/" + instanceId, breakerConfig);
+        breaker.getEventPublisher().onStateTransition(event -> {
+            CircuitBreaker.State state = event.getStateTransition().getToState();
+            log.warn("Circuit breaker of instance {} of {} is now {}", instanceId, serviceId, state);
+            Counter.builder("gateway_instance_circuit_breaker_transitions_total")
+                    .description("State transitions of the instances' circuit breakers")
+                    .tag("service", serviceId)
+                    .tag("state", state.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        });
+        return new Entry(breaker, nanoClock.getAsLong());
+    }
+
+    private static final class Entry {
+        private final CircuitBreaker breaker;
+        private volatile long lastUsed;
+
+        private Entry(CircuitBreaker breaker, long lastUsed) {
+            this.breaker = breaker;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load statistics of one service instance: a peak-sensitive EWMA of its latency and the
+ * number of requests outstanding to it.
+ * <p>
+ * A sample above the average replaces it immediately, so a pausing instance is avoided at
+ * once, while lower samples decay it towards the new value with time constant
+ * {@code decayNanos}. Failed requests are recorded with at least the failure penalty as
+ * latency, so erroring instances look slow.
+ */
+public class InstanceStats {
+
+    /**
+     * Cost of an instance with requests outstanding but no latency sample yet.
+     */
+    private static final double UNKNOWN_LATENCY_PENALTY = TimeUnit.SECONDS.toNanos(10);
+
+    private final String serviceId;
+    private final String instanceId;
+    private final long decayNanos;
+    private final long failurePenaltyNanos;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private double ewmaNanos;
+    private long lastSampleNanos;
+    private volatile long lastUsedNanos;
+
+    InstanceStats(String serviceId, String instanceId, long decayNanos, long failurePenaltyNanos, long now) {
+        this.serviceId = serviceId;
+        this.instanceId = instanceId;
+        this.decayNanos = decayNanos;
+        this.failurePenaltyNanos = failurePenaltyNanos;
+        this.lastSampleNanos = now;
+        this.lastUsedNanos = now;
+    }
+
+    /**
+     * A request was sent to the instance.
+     */
+    public void start(long now) {
+        outstanding.incrementAndGet();
+        lastUsedNanos = now;
+    }
+
+    /**
+     * A request to the instance completed.
+     */
+    public void complete(long now, long latencyNanos, boolean failed) {
+        outstanding.decrementAndGet();
+        record(now, failed ? Math.max(latencyNanos, failurePenaltyNanos) : latencyNanos);
+    }
+
+    /**
+     * A request to the instance was cancelled before it completed.
+     */
+    public void cancel() {
+        outstanding.decrementAndGet();
+    }
+
+    private synchronized void record(long now, long latencyNanos) {
+        if (ewmaNanos == 0 || latencyNanos > ewmaNanos) {
+            ewmaNanos = latencyNanos;
+        } else {
+            double weight = Math.exp(-(double) Math.max(0, now - lastSampleNanos) / decayNanos);
+            ewmaNanos = ewmaNanos * weight + latencyNanos * (1 - weight);
+        }
+        lastSampleNanos = now;
+        lastUsedNanos = now;
+    }
+
+    /**
+     * Expected cost of sending one more request: the latency average scaled by the
+     * requests that would be in flight. Lower is better.
+     */
+    public double getScore() {
+        double latency = getEwmaNanos();
+        int pending = Math.max(0, outstanding.get());
+        if (latency == 0) {
+            return pending == 0 ? 0 : UNKNOWN_LATENCY_PENALTY + pending;
+        }
+        return latency * (pending + 1);
+    }
+
+    public synchronized double getEwmaNanos() {
+        return ewmaNanos;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+}
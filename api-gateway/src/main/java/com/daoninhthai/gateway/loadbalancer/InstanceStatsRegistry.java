@@ -0,0 +1,132 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Load statistics per service instance, shared by the load balancers of all services and
+ * fed by the LoadBalancerStatsFilter. Statistics of instances that have not been used for
+ * a while are dropped together with their metrics.
+ */
+@Slf4j
+public class InstanceStatsRegistry {
+
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final LoadBalancerConfig properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, Entry> stats = new ConcurrentHashMap<>();
+
+    public InstanceStatsRegistry(LoadBalancerConfig properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    InstanceStatsRegistry(LoadBalancerConfig properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    public InstanceStats getStats(ServiceInstance instance) {
+        String key = key(instance);
+        Entry entry = stats.get(key);
+        if (entry == null) {
+            entry = stats.computeIfAbsent(key, k -> create(instance));
+        }
+        return entry.stats;
+    }
+
+    public Collection<InstanceStats> getAll() {
+        List<InstanceStats> all = new ArrayList<>(stats.size());
+        for (Entry entry : stats.values()) {
+            all.add(entry.stats);
+        }
+        return all;
+    }
+
+    public long now() {
+        return nanoClock.getAsLong();
+    }
+
+    /**
+     * Instance id of a service instance, falling back to host:port.
+     */
+    public static String instanceId(ServiceInstance instance) {
+        return instance.getInstanceId() != null
+                ? instance.getInstanceId()
+                : instance.getHost() + ":" + instance.getPort();
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getServiceId() + "/" + instanceId(instance);
+    }
+
+    private Entry create(ServiceInstance instance) {
+        String serviceId = instance.getServiceId();
+        String instanceId = instanceId(instance);
+        InstanceStats instanceStats = new InstanceStats(serviceId, instanceId,
+                properties.getDecayTime().toNanos(), properties.getFailurePenalty().toNanos(), now());
+
+        List<Meter> meters = new ArrayList<>();
+        meters.add(Gauge.builder("gateway_lb_instance_score", instanceStats, InstanceStats::getScore)
+                .description("Load balancer cost of the instance, lower is preferred")
+                .tag("service", serviceId)
+                .tag("instance", instanceId)
+                .register(meterRegistry));
+        meters.add(Gauge.builder("gateway_lb_instance_latency_ms", instanceStats, s -> s.getEwmaNanos() / 1_000_000.0)
+                .description("Peak EWMA latency of the instance")
+                .tag("service", serviceId)
+                .tag("instance", instanceId)
+                .register(meterRegistry));
+        meters.add(Gauge.builder("gateway_lb_instance_outstanding", instanceStats, InstanceStats::getOutstanding)
+                .description("Requests outstanding to the instance")
+                .tag("service", serviceId)
+                .tag("instance", instanceId)
+                .register(meterRegistry));
+        return new Entry(instanceStats, meters);
+    }
+
+    /**
+     * Drop statistics of instances without requests for a while.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long now = now();
+        Iterator<Map.Entry<String, Entry>> iterator = stats.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.stats.getOutstanding() <= 0 && now - entry.stats.getLastUsedNanos() > IDLE_NANOS) {
+                iterator.remove();
+                entry.meters.forEach(meterRegistry::remove);
+                log.debug("Dropped load statistics of idle instance {} of {}",
+                        entry.stats.getInstanceId(), entry.stats.getServiceId());
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final InstanceStats stats;
+        private final List<Meter> meters;
+
+        private Entry(InstanceStats stats, List<Meter> meters) {
+            this.stats = stats;
+            this.meters = meters;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-request hints from the gateway filters to the load balancer.
+ * <p>
+ * The load balancer only sees the request data, so hints travel as internal request
+ * headers. They are removed from client requests on arrival and from proxied requests
+ * by the InternalHeadersFilter.
+ */
+public final class LoadBalancerHints {
+
+    /**
+     * Consistent-hash key of the request
+     */
+    public static final String AFFINITY_KEY_HEADER = "X-Gateway-Affinity-Key";
+
+    /**
+     * Comma separated ids of instances the request must not be sent to, e.g. the instances
+     * of earlier attempts of a hedged or retried request
+     */
+    public static final String EXCLUDED_INSTANCES_HEADER = "X-Gateway-Excluded-Instances";
+
+    public static final List<String> HEADERS = Collections.unmodifiableList(
+            Arrays.asList(AFFINITY_KEY_HEADER, EXCLUDED_INSTANCES_HEADER));
+
+    private LoadBalancerHints() {
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static String getAffinityKey(Request request) {
+        HttpHeaders headers = headers(request);
+        return headers != null ? headers.getFirst(AFFINITY_KEY_HEADER) : null;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static Set<String> getExcludedInstances(Request request) {
+        HttpHeaders headers = headers(request);
+        String value = headers != null ? headers.getFirst(EXCLUDED_INSTANCES_HEADER) : null;
+        if (value == null || value.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(Arrays.asList(value.split(",")));
+    }
+
+    /**
+     * The request with the given instances added to the ones it already excludes. The headers
+     * are copied: {@code request.mutate()} writes through to the headers of the original
+     * request, which other attempts of the same request still use.
+     */
+    public static ServerHttpRequest exclude(ServerHttpRequest request, Collection<String> instanceIds) {
+        if (instanceIds.isEmpty()) {
+            return request;
+        }
+        String current = request.getHeaders().getFirst(EXCLUDED_INSTANCES_HEADER);
+        String added = String.join(",", instanceIds);
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(request.getHeaders());
+        headers.set(EXCLUDED_INSTANCES_HEADER, current == null || current.isEmpty() ? added : current + "," + added);
+        HttpHeaders readOnlyHeaders = HttpHeaders.readOnlyHttpHeaders(headers);
+        return new ServerHttpRequestDecorator(request) {
+            @Override
+            public HttpHeaders getHeaders() {
+                return readOnlyHeaders;
+            }
+        };
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static HttpHeaders headers(Request request) {
+        if (request != null && request.getContext() instanceof RequestDataContext) {
+            RequestData clientRequest = ((RequestDataContext) request.getContext()).getClientRequest();
+            return clientRequest != null ? clientRequest.getHeaders() : null;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,329 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import com.daoninhthai.gateway.dto.OutlierStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Passive outlier detection: ejects upstream instances from load balancing based on the
+ * outcome of the requests proxied to them.
+ * <p>
+ * An instance is ejected when it fails a number of requests in a row, or when its mean
+ * latency over an interval is a multiple of the median of its service's instances. The
+ * ejection time doubles with every ejection and the count decays by one for every interval
+ * the instance stays in, so a flapping instance is kept out longer. No more than the
+ * configured share of a service's instances is ejected at once, so a service-wide problem
+ * does not empty the pool.
+ */
+@Slf4j
+public class OutlierDetector {
+
+    public static final String REASON_CONSECUTIVE_ERRORS = "consecutive_errors";
+    public static final String REASON_LATENCY = "latency";
+
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final LoadBalancerConfig.OutlierDetection properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, ServiceOutliers> services = new ConcurrentHashMap<>();
+
+    public OutlierDetector(LoadBalancerConfig.OutlierDetection properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    OutlierDetector(LoadBalancerConfig.OutlierDetection properties, MeterRegistry meterRegistry,
+                    LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Record the outcome of a request to an instance.
+     */
+    public void record(ServiceInstance instance, long latencyNanos, boolean failed) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        ServiceOutliers service = getService(instance.getServiceId());
+        InstanceOutlier outlier = service.getInstance(InstanceStatsRegistry.instanceId(instance));
+        if (outlier.record(now, latencyNanos, failed, properties.getConsecutiveErrors())) {
+            service.tryEject(outlier, now, REASON_CONSECUTIVE_ERRORS);
+        }
+    }
+
+    /**
+     * Ids of the currently ejected instances of a service.
+     *
+     * @param instanceCount instances the service currently has, which bounds the ejections
+     */
+    public Set<String> getEjected(String serviceId, int instanceCount) {
+        if (!properties.isEnabled()) {
+            return Collections.emptySet();
+        }
+        ServiceOutliers service = getService(serviceId);
+        service.instanceCount = instanceCount;
+        if (service.ejectedCount == 0) {
+            return Collections.emptySet();
+        }
+        long now = nanoClock.getAsLong();
+        Set<String> ejected = new HashSet<>();
+        for (InstanceOutlier outlier : service.instances.values()) {
+            if (outlier.isEjected(now)) {
+                ejected.add(outlier.instanceId);
+            }
+        }
+        return ejected;
+    }
+
+    /**
+     * Compare latencies over the past interval, return instances whose ejection is over
+     * and drop instances that have not been used for a while.
+     */
+    @Scheduled(fixedDelayString = "${gateway.load-balancer.outlier-detection.interval-ms:10000}")
+    public void evaluate() {
+        long now = nanoClock.getAsLong();
+        for (ServiceOutliers service : services.values()) {
+            service.evaluate(now);
+        }
+    }
+
+    /**
+     * Outlier state of all instances by service, ejected instances first.
+     */
+    public Map<String, List<OutlierStatus>> getStatus() {
+        Map<String, List<OutlierStatus>> result = new TreeMap<>();
+        for (String serviceId : services.keySet()) {
+            result.put(serviceId, getStatus(serviceId));
+        }
+        return result;
+    }
+
+    public List<OutlierStatus> getStatus(String serviceId) {
+        ServiceOutliers service = services.get(serviceId);
+        if (service == null) {
+            return new ArrayList<>();
+        }
+        long now = nanoClock.getAsLong();
+        List<OutlierStatus> statuses = new ArrayList<>();
+        for (InstanceOutlier outlier : service.instances.values()) {
+            statuses.add(outlier.getStatus(now));
+        }
+        statuses.sort(Comparator.comparing(OutlierStatus::isEjected).reversed()
+                .thenComparing(OutlierStatus::getInstance));
+        return statuses;
+    }
+
+    private ServiceOutliers getService(String serviceId) {
+        ServiceOutliers service = services.get(serviceId);
+        return service != null ? service : services.computeIfAbsent(serviceId, ServiceOutliers::new);
+    }
+
+    /**
+     * Median of the values, which must not be empty.
+     */
+    static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private final class ServiceOutliers {
+        private final String serviceId;
+        private final ConcurrentHashMap<String, InstanceOutlier> instances = new ConcurrentHashMap<>();
+        private final Counter capped;
+        private volatile int instanceCount;
+        private volatile int ejectedCount;
+
+        private ServiceOutliers(String serviceId) {
+            this.serviceId = serviceId;
+            this.capped = Counter.builder("gateway_outlier_ejections_capped_total")
+                    .description("Ejections skipped because the service had the most instances ejected it may")
+                    .tag("service", serviceId)
+                    .register(meterRegistry);
+            Gauge.builder("gateway_outlier_ejected_instances", this, service -> service.ejectedCount)
+                    .description("Instances of the service currently ejected from load balancing")
+                    .tag("service", serviceId)
+                    .register(meterRegistry);
+        }
+
+        private InstanceOutlier getInstance(String instanceId) {
+            InstanceOutlier outlier = instances.get(instanceId);
+            return outlier != null ? outlier : instances.computeIfAbsent(instanceId, InstanceOutlier::new);
+        }
+
+        private synchronized boolean tryEject(InstanceOutlier outlier, long now, String reason) {
+            if (outlier.isEjected(now)) {
+                return false;
+            }
+            int ejected = 0;
+            for (InstanceOutlier other : instances.values()) {
+                if (other.isEjected(now)) {
+                    ejected++;
+                }
+            }
+            int size = Math.max(instanceCount, instances.size());
+            if ((ejected + 1) * 100L > (long) properties.getMaxEjectionPercent() * size) {
+                capped.increment();
+                log.debug("Not ejecting instance {} of {} ({}): {} of {} instances already ejected",
+                        outlier.instanceId, serviceId, reason, ejected, size);
+                return false;
+            }
+            long ejectionNanos = outlier.eject(now, reason, properties.getBaseEjectionTime().toNanos(),
+                    properties.getMaxEjectionTime().toNanos());
+            ejectedCount = ejected + 1;
+            Counter.builder("gateway_outlier_ejections_total")
+                    .description("Instances ejected from load balancing by reason")
+                    .tag("service", serviceId)
+                    .tag("reason", reason)
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("Ejected instance {} of {} for {}s: {}", outlier.instanceId, serviceId,
+                    TimeUnit.NANOSECONDS.toSeconds(ejectionNanos), reason);
+            return true;
+        }
+
+        private void evaluate(long now) {
+            List<InstanceOutlier> sampled = new ArrayList<>();
+            List<Double> means = new ArrayList<>();
+            for (InstanceOutlier outlier : instances.values()) {
+                double mean = outlier.endInterval(now);
+                if (outlier.intervalRequests >= properties.getMinRequests()) {
+                    sampled.add(outlier);
+                    means.add(mean);
+                }
+            }
+            if (properties.getLatencyFactor() > 0 && sampled.size() >= Math.max(2, properties.getMinInstances())) {
+                double[] values = new double[means.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = means.get(i);
+                }
+                double threshold = median(values) * properties.getLatencyFactor();
+                for (int i = 0; i < sampled.size(); i++) {
+                    if (values[i] > threshold) {
+                        tryEject(sampled.get(i), now, REASON_LATENCY);
+                    }
+                }
+            }
+
+            int ejected = 0;
+            for (InstanceOutlier outlier : instances.values()) {
+                if (outlier.isEjected(now)) {
+                    ejected++;
+                } else if (outlier.ejectedUntil != 0 || outlier.ejections > 0) {
+                    outlier.returned(now);
+                }
+            }
+            ejectedCount = ejected;
+            instances.values().removeIf(outlier -> !outlier.isEjected(now) && outlier.ejections == 0
+                    && now - outlier.lastUsed > IDLE_NANOS);
+        }
+    }
+
+    private final class InstanceOutlier {
+        private final String instanceId;
+        private int consecutiveErrors;
+        private volatile int ejections;
+        private String reason;
+        private long requests;
+        private long latencyNanos;
+        private long intervalRequests;
+        private volatile long lastUsed;
+
+        /**
+         * End of the current ejection, or 0 if the instance is not ejected
+         */
+        private volatile long ejectedUntil;
+
+        private InstanceOutlier(String instanceId) {
+            this.instanceId = instanceId;
+            this.lastUsed = nanoClock.getAsLong();
+        }
+
+        /**
+         * Record a request, returning true if it reached the consecutive error threshold.
+         */
+        private synchronized boolean record(long now, long latency, boolean failed, int threshold) {
+            requests++;
+            latencyNanos += latency;
+            lastUsed = now;
+            if (!failed) {
+                consecutiveErrors = 0;
+                return false;
+            }
+            consecutiveErrors++;
+            return consecutiveErrors >= threshold && !isEjected(now);
+        }
+
+        private boolean isEjected(long now) {
+            long until = ejectedUntil;
+            return until != 0 && now - until < 0;
+        }
+
+        private synchronized long eject(long now, String reason, long baseNanos, long maxNanos) {
+            long ejectionNanos = baseNanos;
+            for (int i = 0; i < ejections && ejectionNanos < maxNanos; i++) {
+                ejectionNanos *= 2;
+            }
+            ejectionNanos = Math.min(ejectionNanos, maxNanos);
+            ejections++;
+            consecutiveErrors = 0;
+            this.reason = reason;
+            ejectedUntil = now + ejectionNanos;
+            return ejectionNanos;
+        }
+
+        /**
+         * Called each interval while the instance is not ejected: ends a finished ejection
+         * and lets the ejection count decay.
+         */
+        private synchronized void returned(long now) {
+            if (ejectedUntil != 0) {
+                ejectedUntil = 0;
+                log.info("Instance {} returned to load balancing", instanceId);
+            } else if (ejections > 0) {
+                ejections--;
+            }
+        }
+
+        /**
+         * Mean latency of the interval that just ended, 0 without requests. Starts a new interval.
+         */
+        private synchronized double endInterval(long now) {
+            double mean = requests > 0 ? (double) latencyNanos / requests : 0;
+            intervalRequests = requests;
+            requests = 0;
+            latencyNanos = 0;
+            return mean;
+        }
+
+        private synchronized OutlierStatus getStatus(long now) {
+            boolean ejected = isEjected(now);
+            return new OutlierStatus(instanceId, ejected,
+                    ejected ? TimeUnit.NANOSECONDS.toMillis(ejectedUntil - now) : 0,
+                    ejections, consecutiveErrors, reason);
+        }
+    }
+
+}
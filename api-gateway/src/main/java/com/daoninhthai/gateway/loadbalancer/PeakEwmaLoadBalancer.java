@@ -0,0 +1,155 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power-of-two-choices load balancer: picks two distinct instances at random and sends the
+ * request to the one with the lower {@link InstanceStats#getScore() score}, i.e. peak EWMA
+ * latency times outstanding requests. Slow, pausing or erroring instances get fewer
+ * requests without a global ordering of all instances on every request.
+ * <p>
+ * Requests that carry an affinity key, set by the AffinityKeyFilter for consistent-hash
+ * routes, are instead sent to the key's instance on a {@link ConsistentHashRing} bounded
+ * by the outstanding requests. The ring is rebuilt only when the instance list changes.
+ * In both cases instances ejected by the {@link OutlierDetector} and instances excluded by
+ * the request's {@link LoadBalancerHints}, e.g. the instance a hedged request was first
+ * sent to, are skipped unless no other is left. Instances whose breaker in the
+ * {@link InstanceCircuitBreakers} is open are always skipped; with none left the request
+ * gets no instance and the route falls back.
+ */
+@Slf4j
+public class PeakEwmaLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    private final String serviceId;
+    private final ObjectProvider<ServiceInstanceListSupplier> supplierProvider;
+    private final InstanceStatsRegistry statsRegistry;
+    private final LoadBalancerConfig.ConsistentHash consistentHash;
+    private final OutlierDetector outlierDetector;
+    private final InstanceCircuitBreakers instanceCircuitBreakers;
+
+    private volatile ConsistentHashRing ring;
+
+    public PeakEwmaLoadBalancer(String serviceId,
+                                ObjectProvider<ServiceInstanceListSupplier> supplierProvider,
+                                InstanceStatsRegistry statsRegistry,
+                                LoadBalancerConfig.ConsistentHash consistentHash,
+                                OutlierDetector outlierDetector,
+                                InstanceCircuitBreakers instanceCircuitBreakers) {
+        this.serviceId = serviceId;
+        this.supplierProvider = supplierProvider;
+        this.statsRegistry = statsRegistry;
+        this.consistentHash = consistentHash;
+        this.outlierDetector = outlierDetector;
+        this.instanceCircuitBreakers = instanceCircuitBreakers;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = supplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        String affinityKey = LoadBalancerHints.getAffinityKey(request);
+        Set<String> requested = LoadBalancerHints.getExcludedInstances(request);
+        return supplier.get(request).next()
+                .map(instances -> {
+                    List<ServiceInstance> available = instanceCircuitBreakers.getAvailable(instances);
+                    if (available.isEmpty() && !instances.isEmpty()) {
+                        log.warn("All {} instances of service {} have an open circuit breaker", instances.size(),
+                                serviceId);
+                        return new EmptyResponse();
+                    }
+                    Set<String> excluded = excluded(available, requested);
+                    return affinityKey != null
+                            ? chooseByKey(available, affinityKey, excluded)
+                            : choose(available, excluded);
+                });
+    }
+
+    /**
+     * Instances excluded by the request plus those ejected by the outlier detector.
+     */
+    private Set<String> excluded(List<ServiceInstance> instances, Set<String> requested) {
+        Set<String> ejected = outlierDetector.getEjected(serviceId, instances.size());
+        if (ejected.isEmpty()) {
+            return requested;
+        }
+        if (requested.isEmpty()) {
+            return ejected;
+        }
+        Set<String> excluded = new HashSet<>(requested);
+        excluded.addAll(ejected);
+        return excluded;
+    }
+
+    Response<ServiceInstance> chooseByKey(List<ServiceInstance> instances, String key, Set<String> excluded) {
+        if (instances.isEmpty()) {
+            log.warn("No servers available for service: {}", serviceId);
+            return new EmptyResponse();
+        }
+        ConsistentHashRing current = ring;
+        if (current == null || !current.isFor(instances)) {
+            current = new ConsistentHashRing(instances, consistentHash.getVirtualNodes());
+            ring = current;
+        }
+        return new DefaultResponse(current.choose(key, consistentHash.getLoadFactor(),
+                instance -> statsRegistry.getStats(instance).getOutstanding(), excluded));
+    }
+
+    Response<ServiceInstance> choose(List<ServiceInstance> instances) {
+        return choose(instances, Collections.emptySet());
+    }
+
+    /**
+     * Power of two choices among the instances that are not excluded, or among all
+     * instances if every one of them is excluded.
+     */
+    Response<ServiceInstance> choose(List<ServiceInstance> instances, Set<String> excluded) {
+        if (instances.isEmpty()) {
+            log.warn("No servers available for service: {}", serviceId);
+            return new EmptyResponse();
+        }
+        List<ServiceInstance> candidates = instances;
+        if (!excluded.isEmpty()) {
+            candidates = new ArrayList<>(instances.size());
+            for (ServiceInstance instance : instances) {
+                if (!excluded.contains(InstanceStatsRegistry.instanceId(instance))) {
+                    candidates.add(instance);
+                }
+            }
+            if (candidates.isEmpty()) {
+                candidates = instances;
+            }
+        }
+        if (candidates.size() == 1) {
+            return new DefaultResponse(candidates.get(0));
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceInstance a = candidates.get(first);
+        ServiceInstance b = candidates.get(second);
+        return new DefaultResponse(statsRegistry.getStats(a).getScore() <= statsRegistry.getStats(b).getScore() ? a : b);
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.RoundRobinLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Load balancer for every lb:// service, registered through
+ * {@code @LoadBalancerClients(defaultConfiguration = ...)} in LoadBalancerConfig.
+ * Created in each service's child context, so it is deliberately not a @Configuration
+ * class picked up by component scanning.
+ */
+public class PeakEwmaLoadBalancerConfiguration {
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> reactorServiceInstanceLoadBalancer(
+            Environment environment,
+            LoadBalancerClientFactory loadBalancerClientFactory,
+            LoadBalancerConfig properties,
+            InstanceStatsRegistry instanceStatsRegistry,
+            OutlierDetector outlierDetector,
+            InstanceCircuitBreakers instanceCircuitBreakers) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        if (!properties.isEnabled()) {
+            return new RoundRobinLoadBalancer(
+                    loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class), serviceId);
+        }
+        return new PeakEwmaLoadBalancer(serviceId,
+                loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                instanceStatsRegistry, properties.getConsistentHash(), outlierDetector, instanceCircuitBreakers);
+    }
+
+}
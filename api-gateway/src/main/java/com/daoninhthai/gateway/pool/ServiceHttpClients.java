@@ -0,0 +1,173 @@
+package com.daoninhthai.gateway.pool;
+
+import com.daoninhthai.gateway.config.ConnectionPoolConfig;
+import com.daoninhthai.gateway.config.ConnectionPoolProperties;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Upstream HTTP clients per downstream service, each on a connection pool of its own named
+ * after the service. Reactor Netty keeps a pool per remote address within each provider, so
+ * the limits apply to every instance of the service, and its pool metrics
+ * (reactor.netty.connection.provider.*) carry the service id as their name tag.
+ * <p>
+ * Routes configured for HTTP/2 get a client of their own, named service/route/protocol,
+ * that multiplexes requests as streams over a few connections per instance. Its pool is
+ * bounded by connections and streams per connection rather than by connections alone, and
+ * the connection's flow-control window is raised to its configured size with a
+ * WINDOW_UPDATE once it is up.
+ * <p>
+ * Clients are created on first use and keep the connect timeout, compression and wiretap
+ * settings of the gateway's shared client.
+ */
+@Slf4j
+public class ServiceHttpClients {
+
+    private static final AttributeKey<Boolean> CONNECTION_WINDOW_RAISED =
+            AttributeKey.valueOf(ServiceHttpClients.class.getName() + ".connectionWindowRaised");
+
+    private final ConnectionPoolConfig properties;
+    private final HttpClientProperties httpClientProperties;
+    private final ConcurrentHashMap<String, Client> clients = new ConcurrentHashMap<>();
+
+    public ServiceHttpClients(ConnectionPoolConfig properties, HttpClientProperties httpClientProperties) {
+        this.properties = properties;
+        this.httpClientProperties = httpClientProperties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * HTTP/1.1 client of a service, created with its pool on first use.
+     */
+    public HttpClient getHttpClient(String serviceId) {
+        return getHttpClient(serviceId, null);
+    }
+
+    /**
+     * Client of a service for a route: HTTP/2 if the route is configured for it, otherwise
+     * the service's HTTP/1.1 client.
+     */
+    public HttpClient getHttpClient(String serviceId, String routeId) {
+        ConnectionPoolConfig.Http2 http2 = routeId != null ? properties.getHttp2().get(routeId) : null;
+        String name = http2 != null
+                ? serviceId + "/" + routeId + "/" + http2.getProtocol().name().toLowerCase()
+                : serviceId;
+        Client client = clients.get(name);
+        if (client == null) {
+            client = clients.computeIfAbsent(name, key -> http2 != null
+                    ? createHttp2(key, serviceId, http2)
+                    : create(serviceId));
+        }
+        return client.httpClient;
+    }
+
+    private Client create(String serviceId) {
+        ConnectionProvider provider = properties.getPool(serviceId).toConnectionProvider(serviceId);
+        log.info("Created connection pool for service {} with at most {} connections per instance", serviceId,
+                properties.getPool(serviceId).getMaxConnections());
+        return new Client(configure(HttpClient.create(provider)), provider);
+    }
+
+    private Client createHttp2(String name, String serviceId, ConnectionPoolConfig.Http2 http2) {
+        if (http2.getProtocol() != HttpProtocol.H2C && http2.getProtocol() != HttpProtocol.H2) {
+            throw new IllegalArgumentException("Unsupported HTTP/2 protocol for " + name + ": " + http2.getProtocol());
+        }
+        ConnectionPoolProperties pool = properties.getPool(serviceId);
+        ConnectionProvider provider = ConnectionProvider.builder(name)
+                .allocationStrategy(Http2AllocationStrategy.builder()
+                        .maxConnections(http2.getMaxConnections())
+                        .maxConcurrentStreams(http2.getMaxConcurrentStreams())
+                        .build())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictionInterval())
+                .metrics(pool.isMetricsEnabled())
+                .build();
+
+        HttpClient httpClient = configure(HttpClient.create(provider))
+                .http2Settings(settings -> settings
+                        .initialWindowSize((int) http2.getInitialWindowSize().toBytes())
+                        .maxFrameSize((int) http2.getMaxFrameSize().toBytes()));
+        httpClient = http2.getProtocol() == HttpProtocol.H2
+                ? httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure()
+                : httpClient.protocol(HttpProtocol.H2C);
+
+        int connectionWindow = (int) http2.getConnectionWindowSize().toBytes();
+        if (connectionWindow > Http2CodecUtil.DEFAULT_WINDOW_SIZE) {
+            httpClient = httpClient.doOnConnected(connection -> raiseConnectionWindow(connection.channel(),
+                    connectionWindow));
+        }
+        log.info("Created {} connection pool {} with at most {} connections of {} streams per instance",
+                http2.getProtocol(), name, http2.getMaxConnections(), http2.getMaxConcurrentStreams());
+        return new Client(httpClient, provider);
+    }
+
+    private HttpClient configure(HttpClient httpClient) {
+        httpClient = httpClient
+                .compress(httpClientProperties.isCompression())
+                .wiretap(httpClientProperties.isWiretap());
+        if (httpClientProperties.getConnectTimeout() != null) {
+            httpClient = httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                    httpClientProperties.getConnectTimeout());
+        }
+        return httpClient;
+    }
+
+    /**
+     * Raise the flow-control window of an HTTP/2 connection to the given size, once, when
+     * it is connected. Connections that negotiated HTTP/1.1 have no HTTP/2 codec and are
+     * left alone.
+     */
+    private static void raiseConnectionWindow(Channel connection, int windowSize) {
+        Http2FrameCodec codec = connection.pipeline().get(Http2FrameCodec.class);
+        if (codec == null || connection.attr(CONNECTION_WINDOW_RAISED).setIfAbsent(Boolean.TRUE) != null) {
+            return;
+        }
+        Http2Connection http2 = codec.connection();
+        int increment = windowSize - http2.local().flowController().windowSize(http2.connectionStream());
+        if (increment > 0) {
+            connection.writeAndFlush(new DefaultHttp2WindowUpdateFrame(increment));
+        }
+    }
+
+    int size() {
+        return clients.size();
+    }
+
+    /**
+     * Close the pools of all services.
+     */
+    public void dispose() {
+        clients.values().forEach(client -> client.provider.dispose());
+        clients.clear();
+    }
+
+    private static final class Client {
+        private final HttpClient httpClient;
+        private final ConnectionProvider provider;
+
+        private Client(HttpClient httpClient, ConnectionProvider provider) {
+            this.httpClient = httpClient;
+            this.provider = provider;
+        }
+    }
+
+}
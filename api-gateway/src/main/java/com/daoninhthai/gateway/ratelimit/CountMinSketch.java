@@ -0,0 +1,63 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.loadbalancer.ConsistentHashRing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch over string keys. Estimates never under-count; with width w and
+ * depth d they over-count by at most 2N/w with probability 1 - 2^-d, where N is the
+ * total added. Memory is fixed at w x d counters. Thread-safe.
+ */
+class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final AtomicLongArray counters;
+
+    CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    /**
+     * Add {@code count} to a key and return its new estimate.
+     */
+    long add(String key, long count) {
+        long hash = ConsistentHashRing.hash(key);
+        long h1 = hash & 0xffffffffL;
+        long h2 = (hash >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long value = counters.addAndGet(index(row, h1, h2), count);
+            estimate = Math.min(estimate, value);
+        }
+        return estimate;
+    }
+
+    long estimate(String key) {
+        long hash = ConsistentHashRing.hash(key);
+        long h1 = hash & 0xffffffffL;
+        long h2 = (hash >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, h1, h2)));
+        }
+        return estimate;
+    }
+
+    void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    private int index(int row, long h1, long h2) {
+        // Kirsch-Mitzenmacher: derive the row hashes from the two halves of a 64-bit hash of
+        // the key bytes, so keys with the same String.hashCode still get independent rows
+        long hash = h1 + row * h2;
+        return row * width + (int) ((hash & Long.MAX_VALUE) % width);
+    }
+
+}
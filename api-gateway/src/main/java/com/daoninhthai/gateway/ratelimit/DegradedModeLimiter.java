@@ -0,0 +1,211 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Mono;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Guards Redis lease calls with a short timeout and a circuit breaker. While the breaker
+ * is not closed, leases are granted from node-local token buckets whose rate and capacity
+ * are the policy's divided by the number of gateway replicas, so the cluster as a whole
+ * stays close to the configured limits without Redis.
+ * <p>
+ * Switching into and out of degraded mode publishes a {@link RateLimitModeChangedEvent}.
+ */
+@Slf4j
+public class DegradedModeLimiter {
+
+    public static final String CIRCUIT_BREAKER_NAME = "rate-limit-redis";
+
+    private static final long IDLE_BUCKET_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final RateLimitConfig.Degraded properties;
+    private final DiscoveryClient discoveryClient;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CircuitBreaker circuitBreaker;
+    private final ConcurrentHashMap<String, LocalBucket> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder degradedLeases = new LongAdder();
+    private final Counter enteredDegraded;
+    private final Counter enteredNormal;
+
+    private volatile boolean degraded;
+    private volatile int replicas = 1;
+
+    public DegradedModeLimiter(RateLimitConfig.Degraded properties,
+                               DiscoveryClient discoveryClient,
+                               ApplicationEventPublisher eventPublisher,
+                               MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.discoveryClient = discoveryClient;
+        this.eventPublisher = eventPublisher;
+        this.circuitBreaker = CircuitBreaker.of(CIRCUIT_BREAKER_NAME, CircuitBreakerConfig.custom()
+                .failureRateThreshold(properties.getFailureRateThreshold())
+                .slidingWindowSize(properties.getSlidingWindowSize())
+                .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(properties.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(properties.getPermittedCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .build());
+        this.circuitBreaker.getEventPublisher().onStateTransition(event ->
+                onModeChange(event.getStateTransition().getToState() != CircuitBreaker.State.CLOSED,
+                        event.getStateTransition().toString()));
+
+        this.enteredDegraded = Counter.builder("gateway_rate_limit_mode_transitions_total")
+                .description("Switches between Redis-backed and node-local rate limiting")
+                .tag("mode", "degraded")
+                .register(meterRegistry);
+        this.enteredNormal = Counter.builder("gateway_rate_limit_mode_transitions_total")
+                .description("Switches between Redis-backed and node-local rate limiting")
+                .tag("mode", "normal")
+                .register(meterRegistry);
+        Gauge.builder("gateway_rate_limit_degraded", this, limiter -> limiter.isDegraded() ? 1 : 0)
+                .description("1 while rate limits are enforced node-locally because Redis is unavailable")
+                .register(meterRegistry);
+        Gauge.builder("gateway_rate_limit_replicas", this, DegradedModeLimiter::getReplicas)
+                .description("Gateway replicas the node-local limits are scaled by")
+                .register(meterRegistry);
+        FunctionCounter.builder("gateway_rate_limit_degraded_leases_total", degradedLeases, LongAdder::sum)
+                .description("Leases granted from node-local buckets while Redis was unavailable")
+                .register(meterRegistry);
+
+        refreshReplicaCount();
+    }
+
+    /**
+     * Lease from Redis through the circuit breaker, or from the node-local bucket when
+     * the call fails, times out or is not permitted.
+     */
+    public Mono<Long> lease(LeaseRequest request, Supplier<Mono<Long>> redisLease) {
+        return Mono.defer(redisLease)
+                .timeout(properties.getTimeout())
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .onErrorResume(ex -> {
+                    log.debug("Redis lease for key {} failed, using the local limit: {}",
+                            request.getKey(), ex.toString());
+                    return Mono.just(leaseLocally(request));
+                });
+    }
+
+    long leaseLocally(LeaseRequest request) {
+        RateLimitPolicy policy = request.getPolicy();
+        int nodes = replicas;
+        double rate = (double) policy.getReplenishRate() / nodes;
+        double capacity = Math.max(request.getMinimum(), (double) policy.getCapacity() / nodes);
+
+        LocalBucket bucket = buckets.computeIfAbsent(request.getKey(), k -> new LocalBucket(capacity));
+        long granted;
+        synchronized (bucket) {
+            long now = System.nanoTime();
+            double refill = (now - bucket.updatedAtNanos) / 1e9 * rate;
+            bucket.tokens = Math.min(capacity, bucket.tokens + refill);
+            bucket.updatedAtNanos = now;
+
+            granted = Math.min((long) bucket.tokens, request.getWanted());
+            if (granted < request.getMinimum()) {
+                granted = 0;
+            }
+            bucket.tokens -= granted;
+        }
+        degradedLeases.increment();
+        return granted;
+    }
+
+    private void onModeChange(boolean nowDegraded, String transition) {
+        if (nowDegraded == degraded) {
+            return;
+        }
+        degraded = nowDegraded;
+        if (nowDegraded) {
+            enteredDegraded.increment();
+            log.warn("Redis rate limiting unavailable ({}), enforcing node-local limits scaled by {} replicas",
+                    transition, replicas);
+        } else {
+            enteredNormal.increment();
+            buckets.clear();
+            log.info("Redis rate limiting recovered ({}), leaving degraded mode", transition);
+        }
+        eventPublisher.publishEvent(new RateLimitModeChangedEvent(this, nowDegraded, transition));
+    }
+
+    /**
+     * Update the replica count from the configuration or the discovery client.
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void refreshReplicaCount() {
+        if (properties.getReplicas() > 0) {
+            replicas = properties.getReplicas();
+            return;
+        }
+        if (discoveryClient == null) {
+            return;
+        }
+        try {
+            int discovered = discoveryClient.getInstances(properties.getServiceId()).size();
+            replicas = Math.max(1, discovered);
+        } catch (RuntimeException ex) {
+            log.warn("Could not count {} replicas, keeping {}: {}",
+                    properties.getServiceId(), replicas, ex.getMessage());
+        }
+    }
+
+    /**
+     * Drop node-local buckets that have been idle long enough to be full again.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, LocalBucket>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            LocalBucket bucket = iterator.next().getValue();
+            synchronized (bucket) {
+                if (now - bucket.updatedAtNanos > IDLE_BUCKET_NANOS) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Node-local token bucket. Guarded by its own monitor.
+     */
+    private static final class LocalBucket {
+        private double tokens;
+        private long updatedAtNanos;
+
+        private LocalBucket(double tokens) {
+            this.tokens = tokens;
+            this.updatedAtNanos = System.nanoTime();
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import com.daoninhthai.gateway.dto.HeavyHitter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Streaming top-K tracker of the rate limit keys that consume the most tokens per route.
+ * <p>
+ * Each route keeps a ring of time windows. Every window holds a count-min sketch and a
+ * small min-heap of its top keys, so memory stays constant however many keys are seen.
+ * The top consumers over the sliding window are the union of the windows' heaps, ranked
+ * by their summed sketch estimates. Requests below the smallest heap entry never take
+ * the heap's lock.
+ * <p>
+ * Optionally, keys that consume more than a threshold over the sliding window are
+ * penalized (rejected) for a fixed duration.
+ */
+@Slf4j
+public class HeavyHitterTracker {
+
+    private final RateLimitConfig.HeavyHitters properties;
+    private final LongSupplier nanoClock;
+    private final long windowNanos;
+    private final ConcurrentHashMap<String, RouteHitters> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> penalties = new ConcurrentHashMap<>();
+
+    private final Counter penaltiesApplied;
+    private final MultiGauge topConsumerGauge;
+
+    public HeavyHitterTracker(RateLimitConfig.HeavyHitters properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    HeavyHitterTracker(RateLimitConfig.HeavyHitters properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.nanoClock = nanoClock;
+        this.windowNanos = properties.getWindow().toNanos();
+
+        this.penaltiesApplied = Counter.builder("gateway_rate_limit_penalties_total")
+                .description("Keys temporarily rejected for exceeding the heavy hitter threshold")
+                .register(meterRegistry);
+        Gauge.builder("gateway_rate_limit_penalized_keys", penalties, Map::size)
+                .description("Keys currently penalized")
+                .register(meterRegistry);
+        this.topConsumerGauge = MultiGauge.builder("gateway_rate_limit_heavy_hitter_tokens")
+                .description("Estimated tokens consumed by the top keys per route over the sliding window")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Count {@code cost} tokens against a key on a route.
+     */
+    public void record(String routeId, String key, long cost) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long windowIndex = Math.floorDiv(nanoClock.getAsLong(), windowNanos);
+        RouteHitters route = routes.computeIfAbsent(routeId, id -> new RouteHitters());
+        Window window = route.window(windowIndex);
+
+        long estimate = window.sketch.add(key, cost);
+        if (window.offer(key, estimate) && properties.getPenaltyThreshold() > 0
+                && route.estimate(key, windowIndex) >= properties.getPenaltyThreshold()) {
+            penalize(routeId, key);
+        }
+    }
+
+    /**
+     * Whether a key is currently penalized on a route.
+     */
+    public boolean isPenalized(String routeId, String key) {
+        if (penalties.isEmpty()) {
+            return false;
+        }
+        Long until = penalties.get(penaltyKey(routeId, key));
+        if (until == null) {
+            return false;
+        }
+        if (nanoClock.getAsLong() - until >= 0) {
+            penalties.remove(penaltyKey(routeId, key), until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Top consumers over the sliding window, by route.
+     */
+    public Map<String, List<HeavyHitter>> getTopConsumers() {
+        Map<String, List<HeavyHitter>> result = new TreeMap<>();
+        for (String routeId : routes.keySet()) {
+            result.put(routeId, getTopConsumers(routeId));
+        }
+        return result;
+    }
+
+    /**
+     * Top consumers of one route over the sliding window, highest first.
+     */
+    public List<HeavyHitter> getTopConsumers(String routeId) {
+        RouteHitters route = routes.get(routeId);
+        if (route == null) {
+            return new ArrayList<>();
+        }
+        long windowIndex = Math.floorDiv(nanoClock.getAsLong(), windowNanos);
+
+        Set<String> candidates = new HashSet<>();
+        for (Window window : route.windows) {
+            if (route.isLive(window, windowIndex)) {
+                candidates.addAll(window.topKeys());
+            }
+        }
+
+        List<HeavyHitter> hitters = new ArrayList<>(candidates.size());
+        for (String key : candidates) {
+            hitters.add(new HeavyHitter(key, route.estimate(key, windowIndex), isPenalized(routeId, key)));
+        }
+        hitters.sort(Comparator.comparingLong(HeavyHitter::getEstimatedTokens).reversed());
+        return hitters.size() > properties.getTopK()
+                ? new ArrayList<>(hitters.subList(0, properties.getTopK()))
+                : hitters;
+    }
+
+    private void penalize(String routeId, String key) {
+        if (penalties.size() >= properties.getMaxPenalties()) {
+            return;
+        }
+        long until = nanoClock.getAsLong() + properties.getPenaltyDuration().toNanos();
+        if (penalties.put(penaltyKey(routeId, key), until) == null) {
+            penaltiesApplied.increment();
+            log.warn("Penalizing rate limit key {} on route {} for {}", key, routeId, properties.getPenaltyDuration());
+        }
+    }
+
+    private static String penaltyKey(String routeId, String key) {
+        return routeId + ":" + key;
+    }
+
+    /**
+     * Export the current top consumers as gauges and drop expired penalties.
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void publishMetrics() {
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        for (Map.Entry<String, List<HeavyHitter>> route : getTopConsumers().entrySet()) {
+            int rank = 1;
+            for (HeavyHitter hitter : route.getValue()) {
+                rows.add(MultiGauge.Row.of(Tags.of("route", route.getKey(), "key", hitter.getKey(),
+                        "rank", String.valueOf(rank++)), hitter.getEstimatedTokens()));
+            }
+        }
+        topConsumerGauge.register(rows, true);
+
+        long now = nanoClock.getAsLong();
+        penalties.values().removeIf(until -> now - until >= 0);
+    }
+
+    /**
+     * Ring of windows for one route.
+     */
+    private final class RouteHitters {
+        private final Window[] windows;
+
+        private RouteHitters() {
+            windows = new Window[properties.getWindows()];
+            for (int i = 0; i < windows.length; i++) {
+                windows[i] = new Window();
+            }
+        }
+
+        private Window window(long windowIndex) {
+            Window window = windows[Math.floorMod(windowIndex, windows.length)];
+            if (window.index != windowIndex) {
+                window.reset(windowIndex);
+            }
+            return window;
+        }
+
+        private boolean isLive(Window window, long windowIndex) {
+            long index = window.index;
+            return index <= windowIndex && index > windowIndex - windows.length;
+        }
+
+        private long estimate(String key, long windowIndex) {
+            long total = 0;
+            for (Window window : windows) {
+                if (isLive(window, windowIndex)) {
+                    total += window.sketch.estimate(key);
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * One time window: a sketch of all keys and a min-heap of the top ones.
+     */
+    private final class Window {
+        private final CountMinSketch sketch =
+                new CountMinSketch(properties.getSketchWidth(), properties.getSketchDepth());
+        private final PriorityQueue<Candidate> heap =
+                new PriorityQueue<>(Comparator.comparingLong(candidate -> candidate.count));
+        private final Map<String, Candidate> candidates = new HashMap<>();
+        private volatile long index = Long.MIN_VALUE;
+        private volatile long admissionThreshold;
+
+        private synchronized void reset(long windowIndex) {
+            if (index == windowIndex) {
+                return;
+            }
+            sketch.clear();
+            heap.clear();
+            candidates.clear();
+            admissionThreshold = 0;
+            index = windowIndex;
+        }
+
+        /**
+         * Offer a key's new estimate to the heap. Returns true if the key is among the top keys.
+         */
+        private boolean offer(String key, long estimate) {
+            if (estimate < admissionThreshold) {
+                return false;
+            }
+            synchronized (this) {
+                Candidate candidate = candidates.get(key);
+                if (candidate != null) {
+                    heap.remove(candidate);
+                    candidate.count = estimate;
+                    heap.add(candidate);
+                } else if (heap.size() < properties.getTopK()) {
+                    candidate = new Candidate(key, estimate);
+                    candidates.put(key, candidate);
+                    heap.add(candidate);
+                } else if (estimate > heap.peek().count) {
+                    candidates.remove(heap.poll().key);
+                    candidate = new Candidate(key, estimate);
+                    candidates.put(key, candidate);
+                    heap.add(candidate);
+                } else {
+                    return false;
+                }
+                admissionThreshold = heap.size() < properties.getTopK() ? 0 : heap.peek().count;
+                return true;
+            }
+        }
+
+        private synchronized List<String> topKeys() {
+            return new ArrayList<>(candidates.keySet());
+        }
+    }
+
+    private static final class Candidate {
+        private final String key;
+        private long count;
+
+        private Candidate(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+
+}
@@ -0,0 +1,342 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-tier rate limiter. Each gateway node leases batches of tokens per key from the
+ * global budget in Redis and spends them locally, so most decisions are made in
+ * memory without I/O; Redis only coordinates the global budget. The budget is kept with
+ * the algorithm of the request's {@link RateLimitPolicy}. While Redis is unavailable,
+ * leases are served by the {@link DegradedModeLimiter} when one is configured, and
+ * requests are allowed otherwise.
+ * <p>
+ * Accuracy: tokens are debited in Redis when they are leased, and a node holds at most
+ * one batch per key. A batch spent after the second in which it was leased can therefore
+ * over-admit by at most one batch per node and key, and tokens that expire unused
+ * under-admit by the same bound. The batch size is configured through
+ * {@code gateway.rate-limit.local.*}; a refill leases more when more requests are waiting
+ * for it, and those tokens are spent right away.
+ */
+@Slf4j
+public class HierarchicalRateLimiter extends AbstractRateLimiter<HierarchicalRateLimiter.Config> {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "hierarchical-rate-limiter";
+
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    public static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+    public static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+    public static final String REQUESTED_TOKENS_HEADER = "X-RateLimit-Requested-Tokens";
+
+    private static final String TIER_LOCAL = "local";
+    private static final String TIER_REMOTE = "remote";
+
+    private final RedisLeaseClient leaseClient;
+    private final RateLimitConfig properties;
+    private final RateLimitPolicyResolver policyResolver;
+    private final DegradedModeLimiter degradedModeLimiter;
+    private final ConcurrentHashMap<String, LocalLease> leases = new ConcurrentHashMap<>();
+
+    private final LongAdder localAllowed = new LongAdder();
+    private final LongAdder localDenied = new LongAdder();
+    private final LongAdder remoteAllowed = new LongAdder();
+    private final LongAdder remoteDenied = new LongAdder();
+    private final LongAdder grantedTokens = new LongAdder();
+    private final LongAdder expiredTokens = new LongAdder();
+    private final LongAdder overAdmittedTokens = new LongAdder();
+
+    public HierarchicalRateLimiter(RedisLeaseClient leaseClient,
+                                   RateLimitConfig properties,
+                                   RateLimitPolicyResolver policyResolver,
+                                   DegradedModeLimiter degradedModeLimiter,
+                                   ConfigurationService configurationService,
+                                   MeterRegistry meterRegistry) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.leaseClient = leaseClient;
+        this.properties = properties;
+        this.policyResolver = policyResolver;
+        this.degradedModeLimiter = degradedModeLimiter;
+        registerMetrics(meterRegistry);
+    }
+
+    /**
+     * Check a route's default-tier policy, or its {@code hierarchical-rate-limiter}
+     * route configuration when one is set. Used by the RequestRateLimiter filter.
+     */
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = getConfig().get(routeId);
+        if (config == null) {
+            return isAllowed(routeId + ":" + id,
+                    policyResolver.resolve(routeId, RateLimitPolicyResolver.DEFAULT_TIER),
+                    properties.getRequestedTokens());
+        }
+        RateLimitPolicy policy = new RateLimitPolicy(properties.getAlgorithm(),
+                config.getReplenishRate(), config.getBurstCapacity(), properties.getWindow());
+        return isAllowed(routeId + ":" + id, policy, config.getRequestedTokens());
+    }
+
+    /**
+     * Charge {@code cost} tokens to {@code key} under the given policy.
+     */
+    public Mono<Response> isAllowed(String key, RateLimitPolicy policy, long cost) {
+        RateLimitConfig.Local local = properties.getLocal();
+        if (!local.isEnabled() || (leases.size() >= local.getMaxKeys() && !leases.containsKey(key))) {
+            return acquireLease(new LeaseRequest(key, policy, cost, cost))
+                    .map(granted -> decide(TIER_REMOTE, granted >= cost, 0, policy, cost))
+                    .onErrorResume(ex -> failOpen(key, ex, policy, cost));
+        }
+
+        LocalLease lease = leases.computeIfAbsent(key, k -> new LocalLease());
+        return spendLease(key, lease, policy, cost, TIER_LOCAL)
+                .onErrorResume(ex -> failOpen(key, ex, policy, cost));
+    }
+
+    /**
+     * Spend from the local lease, refilling it from Redis when it is exhausted. One refill per
+     * key is in flight, sized to the demand of the requests waiting for it. A waiting request
+     * the refill could not cover tries again with the next refill, so requests are only denied
+     * once Redis has refused one.
+     */
+    private Mono<Response> spendLease(String key, LocalLease lease, RateLimitPolicy policy, long cost, String tier) {
+        Mono<Long> refill;
+        synchronized (lease) {
+            Response decision = tryLocal(lease, cost, policy, tier);
+            if (decision != null) {
+                return Mono.just(decision);
+            }
+
+            lease.waiting += cost;
+            if (lease.refill == null) {
+                LeaseRequest request = new LeaseRequest(key, policy,
+                        Math.max(batchSize(policy, cost), lease.waiting), cost);
+                // The refill is cleared before the waiting requests see its result, so the
+                // ones it cannot cover start the next refill instead of joining this one
+                lease.refill = acquireLease(request)
+                        .doOnSuccess(granted -> onGranted(lease, granted, cost, policy))
+                        .doOnError(ex -> {
+                            synchronized (lease) {
+                                lease.refill = null;
+                            }
+                        })
+                        .cache();
+            }
+            refill = lease.refill;
+        }
+
+        return refill
+                .doOnError(ex -> stopWaiting(lease, cost))
+                .doOnCancel(() -> stopWaiting(lease, cost))
+                .then(Mono.defer(() -> {
+                    stopWaiting(lease, cost);
+                    return spendLease(key, lease, policy, cost, TIER_REMOTE);
+                }));
+    }
+
+    private static void stopWaiting(LocalLease lease, long cost) {
+        synchronized (lease) {
+            lease.waiting -= cost;
+        }
+    }
+
+    private Mono<Long> acquireLease(LeaseRequest request) {
+        if (degradedModeLimiter == null) {
+            return leaseClient.acquire(request);
+        }
+        return degradedModeLimiter.lease(request, () -> leaseClient.acquire(request));
+    }
+
+    /**
+     * Decide against the local lease. Returns null when Redis has to be asked.
+     */
+    private Response tryLocal(LocalLease lease, long cost, RateLimitPolicy policy, String tier) {
+        long now = System.nanoTime();
+
+        if (lease.tokens > 0 && now >= lease.expiresAtNanos) {
+            expiredTokens.add(lease.tokens);
+            lease.tokens = 0;
+        }
+
+        if (lease.tokens >= cost) {
+            lease.tokens -= cost;
+            if (currentEpochSecond() > lease.grantedEpochSecond) {
+                overAdmittedTokens.add(cost);
+            }
+            return decide(tier, true, lease.tokens, policy, cost);
+        }
+
+        if (now < lease.deniedUntilNanos) {
+            return decide(tier, false, 0, policy, cost);
+        }
+        return null;
+    }
+
+    private void onGranted(LocalLease lease, Long granted, long cost, RateLimitPolicy policy) {
+        synchronized (lease) {
+            lease.refill = null;
+            long now = System.nanoTime();
+            if (granted != null && granted >= cost) {
+                grantedTokens.add(granted);
+                lease.tokens += granted;
+                lease.expiresAtNanos = now + properties.getLocal().getLeaseDuration().toNanos();
+                lease.grantedEpochSecond = currentEpochSecond();
+            } else {
+                // The global budget is spent: deny locally until it can cover one request's cost again
+                long refillNanos = TimeUnit.SECONDS.toNanos(cost) / Math.max(1, policy.getReplenishRate());
+                lease.deniedUntilNanos = now + refillNanos;
+            }
+        }
+    }
+
+    private long batchSize(RateLimitPolicy policy, long cost) {
+        RateLimitConfig.Local local = properties.getLocal();
+        long batch = (long) Math.ceil(policy.getCapacity() * local.getBatchFraction());
+        return Math.max(cost, Math.min(batch, local.getMaxBatchSize()));
+    }
+
+    private Response decide(String tier, boolean allowed, long remaining, RateLimitPolicy policy, long cost) {
+        if (TIER_LOCAL.equals(tier)) {
+            (allowed ? localAllowed : localDenied).increment();
+        } else {
+            (allowed ? remoteAllowed : remoteDenied).increment();
+        }
+        return new Response(allowed, getHeaders(policy, remaining, cost));
+    }
+
+    private Mono<Response> failOpen(String key, Throwable ex, RateLimitPolicy policy, long cost) {
+        log.error("Rate limit check against Redis failed for key {}: {}", key, ex.getMessage());
+        return Mono.just(new Response(true, getHeaders(policy, -1, cost)));
+    }
+
+    private Map<String, String> getHeaders(RateLimitPolicy policy, long remaining, long cost) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(REMAINING_HEADER, String.valueOf(remaining));
+        headers.put(REPLENISH_RATE_HEADER, String.valueOf(policy.getReplenishRate()));
+        headers.put(BURST_CAPACITY_HEADER, String.valueOf(policy.getCapacity()));
+        headers.put(REQUESTED_TOKENS_HEADER, String.valueOf(cost));
+        return headers;
+    }
+
+    private static long currentEpochSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Drop leases that have expired and have no refill or requests waiting for one.
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void evictExpiredLeases() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        Iterator<Map.Entry<String, LocalLease>> iterator = leases.entrySet().iterator();
+        while (iterator.hasNext()) {
+            LocalLease lease = iterator.next().getValue();
+            synchronized (lease) {
+                if (lease.refill == null && lease.waiting == 0 && now >= lease.expiresAtNanos && now >= lease.deniedUntilNanos) {
+                    expiredTokens.add(lease.tokens);
+                    iterator.remove();
+                    evicted++;
+                }
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} expired rate limit leases. Remaining: {}", evicted, leases.size());
+        }
+    }
+
+    /**
+     * Share of decisions made from local leases without waiting on Redis.
+     */
+    public double getLocalDecisionRatio() {
+        double local = localAllowed.sum() + localDenied.sum();
+        double total = local + remoteAllowed.sum() + remoteDenied.sum();
+        return total == 0 ? 0 : local / total;
+    }
+
+    private void registerMetrics(MeterRegistry registry) {
+        registerDecisionCounter(registry, localAllowed, TIER_LOCAL, true);
+        registerDecisionCounter(registry, localDenied, TIER_LOCAL, false);
+        registerDecisionCounter(registry, remoteAllowed, TIER_REMOTE, true);
+        registerDecisionCounter(registry, remoteDenied, TIER_REMOTE, false);
+
+        FunctionCounter.builder("gateway_rate_limit_lease_tokens_total", grantedTokens, LongAdder::sum)
+                .description("Tokens leased from the global Redis budget")
+                .tag("outcome", "granted")
+                .register(registry);
+        FunctionCounter.builder("gateway_rate_limit_lease_tokens_total", expiredTokens, LongAdder::sum)
+                .description("Leased tokens that expired unused (under-admission)")
+                .tag("outcome", "expired")
+                .register(registry);
+        FunctionCounter.builder("gateway_rate_limit_over_admission_tokens_total", overAdmittedTokens, LongAdder::sum)
+                .description("Tokens spent after the second they were leased in (over-admission error bound)")
+                .register(registry);
+
+        Gauge.builder("gateway_rate_limit_local_decision_ratio", this, HierarchicalRateLimiter::getLocalDecisionRatio)
+                .description("Share of rate limit decisions made without a Redis round trip")
+                .register(registry);
+        Gauge.builder("gateway_rate_limit_local_leases", leases, Map::size)
+                .description("Number of keys holding a local token lease")
+                .register(registry);
+    }
+
+    private void registerDecisionCounter(MeterRegistry registry, LongAdder adder, String tier, boolean allowed) {
+        FunctionCounter.builder("gateway_rate_limit_decisions_total", adder, LongAdder::sum)
+                .description("Rate limit decisions by tier")
+                .tag("tier", tier)
+                .tag("allowed", String.valueOf(allowed))
+                .register(registry);
+    }
+
+    /**
+     * Local token lease for one key. Guarded by its own monitor.
+     */
+    private static final class LocalLease {
+        private long tokens;
+        private long expiresAtNanos;
+        private long grantedEpochSecond;
+        private long deniedUntilNanos;
+        private long waiting;
+        private Mono<Long> refill;
+    }
+
+    @Data
+    public static class Config {
+
+        private int replenishRate;
+
+        private int burstCapacity;
+
+        private int requestedTokens = 1;
+
+        public Config setReplenishRate(int replenishRate) {
+            this.replenishRate = replenishRate;
+            return this;
+        }
+
+        public Config setBurstCapacity(int burstCapacity) {
+            this.burstCapacity = burstCapacity;
+            return this;
+        }
+
+        public Config setRequestedTokens(int requestedTokens) {
+            this.requestedTokens = requestedTokens;
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Coalesces lease requests that arrive within a short window (or until a batch is
+ * full) into one call of the batch executor, then hands each result back to the
+ * request that asked for it. Turns many small Redis round trips into one pipelined
+ * script evaluation.
+ * <p>
+ * Requests in different partitions, e.g. the hash slots of a Redis Cluster, are never
+ * evaluated together: a flushed batch is split into one executor call per partition.
+ */
+@Slf4j
+public class LeaseBatcher {
+
+    private final Function<List<LeaseRequest>, Mono<List<Long>>> batchExecutor;
+    private final ToIntFunction<LeaseRequest> partition;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final Scheduler scheduler;
+
+    private final Object lock = new Object();
+    private List<PendingLease> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param batchExecutor evaluates a batch and emits one granted count per request, in order
+     */
+    public LeaseBatcher(Function<List<LeaseRequest>, Mono<List<Long>>> batchExecutor,
+                        int maxBatchSize, Duration window, Scheduler scheduler) {
+        this(batchExecutor, request -> 0, maxBatchSize, window, scheduler);
+    }
+
+    /**
+     * @param batchExecutor evaluates a batch and emits one granted count per request, in order
+     * @param partition     partition of a request; only requests of the same partition share a call
+     */
+    public LeaseBatcher(Function<List<LeaseRequest>, Mono<List<Long>>> batchExecutor,
+                        ToIntFunction<LeaseRequest> partition,
+                        int maxBatchSize, Duration window, Scheduler scheduler) {
+        this.batchExecutor = batchExecutor;
+        this.partition = partition;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = window.toNanos();
+        this.scheduler = scheduler;
+    }
+
+    public Mono<Long> submit(LeaseRequest request) {
+        return Mono.create(sink -> {
+            List<PendingLease> full = null;
+            synchronized (lock) {
+                pending.add(new PendingLease(request, sink));
+                if (pending.size() >= maxBatchSize) {
+                    full = pending;
+                    pending = new ArrayList<>();
+                } else if (!flushScheduled) {
+                    flushScheduled = true;
+                    scheduler.schedule(this::flushPending, windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            if (full != null) {
+                execute(full);
+            }
+        });
+    }
+
+    private void flushPending() {
+        List<PendingLease> batch;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        execute(batch);
+    }
+
+    private void execute(List<PendingLease> batch) {
+        Map<Integer, List<PendingLease>> partitions = new LinkedHashMap<>();
+        for (PendingLease lease : batch) {
+            partitions.computeIfAbsent(partition.applyAsInt(lease.request), p -> new ArrayList<>()).add(lease);
+        }
+        partitions.values().forEach(this::evaluate);
+    }
+
+    private void evaluate(List<PendingLease> batch) {
+        List<LeaseRequest> requests = new ArrayList<>(batch.size());
+        for (PendingLease lease : batch) {
+            requests.add(lease.request);
+        }
+
+        batchExecutor.apply(requests)
+                .defaultIfEmpty(Collections.emptyList())
+                .subscribe(
+                        granted -> {
+                            for (int i = 0; i < batch.size(); i++) {
+                                batch.get(i).sink.success(i < granted.size() ? granted.get(i) : 0L);
+                            }
+                        },
+                        ex -> {
+                            log.debug("Batched lease of {} keys failed: {}", batch.size(), ex.getMessage());
+                            for (PendingLease lease : batch) {
+                                lease.sink.error(ex);
+                            }
+                        });
+    }
+
+    private static final class PendingLease {
+        private final LeaseRequest request;
+        private final MonoSink<Long> sink;
+
+        private PendingLease(LeaseRequest request, MonoSink<Long> sink) {
+            this.request = request;
+            this.sink = sink;
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A request to lease tokens for one rate limit key from the global Redis budget.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class LeaseRequest {
+
+    /**
+     * Rate limit key, already scoped to the route.
+     */
+    private final String key;
+
+    private final RateLimitPolicy policy;
+
+    /**
+     * Number of tokens the node would like to hold locally.
+     */
+    private final long wanted;
+
+    /**
+     * Smallest useful grant, i.e. the cost of the request that triggered the lease.
+     */
+    private final long minimum;
+
+}
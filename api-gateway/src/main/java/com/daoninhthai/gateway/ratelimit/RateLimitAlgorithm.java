@@ -0,0 +1,35 @@
+package com.daoninhthai.gateway.ratelimit;
+
+/**
+ * Rate limiting algorithms evaluated in Redis. Both keep their state in a single value under
+ * the lease's own key, so the script never touches keys it was not given.
+ */
+public enum RateLimitAlgorithm {
+
+    /**
+     * Generic cell rate algorithm: stores the theoretical arrival time of the next request.
+     * Allows bursts up to the burst capacity and a steady replenish rate.
+     */
+    GCRA(1),
+
+    /**
+     * Sliding window counter: weights the previous window's count by its overlap with the
+     * sliding window. Limits requests to replenish rate x window length per window. Stores the
+     * current window index with the counts of that window and the one before.
+     */
+    SLIDING_WINDOW(2);
+
+    private final int scriptCode;
+
+    RateLimitAlgorithm(int scriptCode) {
+        this.scriptCode = scriptCode;
+    }
+
+    /**
+     * Identifier of the algorithm understood by the lease script.
+     */
+    public int getScriptCode() {
+        return scriptCode;
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when rate limiting switches between the Redis-backed global limits and the
+ * node-local approximate limits used while Redis is unavailable.
+ */
+@Getter
+public class RateLimitModeChangedEvent extends ApplicationEvent {
+
+    private final boolean degraded;
+
+    private final String reason;
+
+    public RateLimitModeChangedEvent(Object source, boolean degraded, String reason) {
+        super(source);
+        this.degraded = degraded;
+        this.reason = reason;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Resolved, immutable rate limit for one route and client tier.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@RequiredArgsConstructor
+public class RateLimitPolicy {
+
+    private final RateLimitAlgorithm algorithm;
+
+    /**
+     * Tokens per second.
+     */
+    private final int replenishRate;
+
+    /**
+     * Maximum burst, used by GCRA.
+     */
+    private final int burstCapacity;
+
+    /**
+     * Window length, used by the sliding window counter.
+     */
+    private final Duration window;
+
+    /**
+     * Tokens that can be spent at once: the burst capacity for GCRA,
+     * the per-window limit for the sliding window counter.
+     */
+    public long getCapacity() {
+        if (algorithm == RateLimitAlgorithm.SLIDING_WINDOW) {
+            return Math.max(1, replenishRate * window.toMillis() / 1000);
+        }
+        return burstCapacity;
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the rate limit policy, client tier and request cost for a request.
+ * <p>
+ * The {@code gateway.rate-limit.*} properties are compiled into an immutable table that is
+ * swapped atomically, so lookups on the request path never see a half-applied change.
+ * The table is recompiled after {@code /actuator/refresh} (or a Spring Cloud Bus refresh)
+ * has rebound the properties. An invalid configuration is rejected and the previous table
+ * stays in effect.
+ * <p>
+ * Policies are looked up from most to least specific: route and tier, route, tier,
+ * then the global defaults.
+ */
+@Slf4j
+public class RateLimitPolicyResolver {
+
+    public static final String DEFAULT_TIER = "default";
+    public static final String ANY = "*";
+
+    public static final String ROLES_HEADER = "X-Auth-Roles";
+    public static final String PLAN_HEADER = "X-Auth-Plan";
+
+    private static final String ROLE_PREFIX = "role:";
+    private static final String PLAN_PREFIX = "plan:";
+
+    private final RateLimitConfig properties;
+    private final Counter reloadSuccess;
+    private final Counter reloadFailure;
+
+    private volatile PolicyTable table;
+
+    public RateLimitPolicyResolver(RateLimitConfig properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.table = compile(properties);
+
+        this.reloadSuccess = Counter.builder("gateway_rate_limit_policy_reloads_total")
+                .description("Rate limit policy reloads")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.reloadFailure = Counter.builder("gateway_rate_limit_policy_reloads_total")
+                .description("Rate limit policy reloads")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+        Gauge.builder("gateway_rate_limit_policies", this, resolver -> resolver.table.policies.size())
+                .description("Number of configured route and tier rate limit policies")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Recompile the policy table after the configuration properties have been rebound.
+     */
+    @EventListener(RefreshScopeRefreshedEvent.class)
+    public void reload() {
+        try {
+            PolicyTable compiled = compile(properties);
+            table = compiled;
+            reloadSuccess.increment();
+            log.info("Reloaded rate limit policies: {} policies, {} tiers, {} cost rules",
+                    compiled.policies.size(), compiled.tiers.size(), compiled.costs.size());
+        } catch (IllegalArgumentException ex) {
+            reloadFailure.increment();
+            log.error("Rejected rate limit policy change, keeping the previous policies: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Policy for a route and client tier.
+     */
+    public RateLimitPolicy resolve(String routeId, String tier) {
+        PolicyTable current = table;
+        RateLimitPolicy policy = current.policies.get(policyKey(routeId, tier));
+        if (policy == null) {
+            policy = current.policies.get(policyKey(routeId, ANY));
+        }
+        if (policy == null) {
+            policy = current.policies.get(policyKey(ANY, tier));
+        }
+        return policy != null ? policy : current.defaultPolicy;
+    }
+
+    /**
+     * Client tier from the plan and roles set by the JwtAuthenticationFilter. Values sent by
+     * clients are dropped by the InternalHeadersFilter, so unauthenticated routes get the
+     * default tier. Tiers are matched in configuration order.
+     */
+    public String resolveTier(ServerHttpRequest request) {
+        String plan = request.getHeaders().getFirst(PLAN_HEADER);
+        String rolesHeader = request.getHeaders().getFirst(ROLES_HEADER);
+        List<String> roles = rolesHeader == null || rolesHeader.isEmpty()
+                ? Collections.emptyList()
+                : Arrays.asList(rolesHeader.split(","));
+
+        for (Map.Entry<String, List<String>> tier : table.tiers.entrySet()) {
+            for (String selector : tier.getValue()) {
+                if (selector.startsWith(PLAN_PREFIX)) {
+                    if (selector.substring(PLAN_PREFIX.length()).equalsIgnoreCase(plan)) {
+                        return tier.getKey();
+                    }
+                } else if (roles.contains(selector.startsWith(ROLE_PREFIX)
+                        ? selector.substring(ROLE_PREFIX.length()) : selector)) {
+                    return tier.getKey();
+                }
+            }
+        }
+        return DEFAULT_TIER;
+    }
+
+    /**
+     * Tokens charged for a request. The first matching cost rule wins.
+     */
+    public long resolveCost(ServerHttpRequest request) {
+        PolicyTable current = table;
+        for (CostRule rule : current.costs) {
+            if (rule.matches(request)) {
+                return rule.tokens;
+            }
+        }
+        return current.defaultCost;
+    }
+
+    static PolicyTable compile(RateLimitConfig properties) {
+        RateLimitPolicy defaultPolicy = validate("default", new RateLimitPolicy(
+                properties.getAlgorithm(),
+                properties.getReplenishRate(),
+                properties.getBurstCapacity(),
+                properties.getWindow()));
+
+        Map<String, RateLimitPolicy> policies = new HashMap<>();
+        for (RateLimitConfig.Policy policy : properties.getPolicies()) {
+            String route = policy.getRoute() != null ? policy.getRoute() : ANY;
+            String tier = policy.getTier() != null ? policy.getTier() : ANY;
+            String key = policyKey(route, tier);
+            if (ANY.equals(route) && ANY.equals(tier)) {
+                throw new IllegalArgumentException("Policy must name a route or a tier; "
+                        + "use gateway.rate-limit.* for the defaults");
+            }
+            if (policies.containsKey(key)) {
+                throw new IllegalArgumentException("Duplicate policy for route " + route + " and tier " + tier);
+            }
+            policies.put(key, validate(key, new RateLimitPolicy(
+                    policy.getAlgorithm() != null ? policy.getAlgorithm() : defaultPolicy.getAlgorithm(),
+                    policy.getReplenishRate() != null ? policy.getReplenishRate() : defaultPolicy.getReplenishRate(),
+                    policy.getBurstCapacity() != null ? policy.getBurstCapacity() : defaultPolicy.getBurstCapacity(),
+                    policy.getWindow() != null ? policy.getWindow() : defaultPolicy.getWindow())));
+        }
+
+        List<CostRule> costs = new ArrayList<>();
+        for (RateLimitConfig.Cost cost : properties.getCosts()) {
+            if (cost.getPath() == null || cost.getTokens() < 1) {
+                throw new IllegalArgumentException("Cost rule needs a path and at least one token: " + cost);
+            }
+            HttpMethod method = cost.getMethod() != null ? HttpMethod.resolve(cost.getMethod().toUpperCase()) : null;
+            if (cost.getMethod() != null && method == null) {
+                throw new IllegalArgumentException("Unknown HTTP method in cost rule: " + cost.getMethod());
+            }
+            costs.add(new CostRule(PathPatternParser.defaultInstance.parse(cost.getPath()), method, cost.getTokens()));
+        }
+
+        if (properties.getRequestedTokens() < 1) {
+            throw new IllegalArgumentException("requested-tokens must be at least 1");
+        }
+
+        return new PolicyTable(defaultPolicy, Collections.unmodifiableMap(policies),
+                Collections.unmodifiableMap(new LinkedHashMap<>(properties.getTiers())),
+                Collections.unmodifiableList(costs), properties.getRequestedTokens());
+    }
+
+    private static RateLimitPolicy validate(String name, RateLimitPolicy policy) {
+        if (policy.getAlgorithm() == null) {
+            throw new IllegalArgumentException("Policy " + name + " has no algorithm");
+        }
+        if (policy.getReplenishRate() < 1 || policy.getBurstCapacity() < 1) {
+            throw new IllegalArgumentException("Policy " + name + " needs a positive replenish rate and burst capacity");
+        }
+        if (policy.getWindow() == null || policy.getWindow().compareTo(Duration.ofMillis(1)) < 0) {
+            throw new IllegalArgumentException("Policy " + name + " needs a window of at least 1ms");
+        }
+        return policy;
+    }
+
+    private static String policyKey(String route, String tier) {
+        return route + "|" + tier;
+    }
+
+    static final class PolicyTable {
+        private final RateLimitPolicy defaultPolicy;
+        private final Map<String, RateLimitPolicy> policies;
+        private final Map<String, List<String>> tiers;
+        private final List<CostRule> costs;
+        private final long defaultCost;
+
+        private PolicyTable(RateLimitPolicy defaultPolicy, Map<String, RateLimitPolicy> policies,
+                            Map<String, List<String>> tiers, List<CostRule> costs, long defaultCost) {
+            this.defaultPolicy = defaultPolicy;
+            this.policies = policies;
+            this.tiers = tiers;
+            this.costs = costs;
+            this.defaultCost = defaultCost;
+        }
+    }
+
+    private static final class CostRule {
+        private final PathPattern pattern;
+        private final HttpMethod method;
+        private final long tokens;
+
+        private CostRule(PathPattern pattern, HttpMethod method, long tokens) {
+            this.pattern = pattern;
+            this.method = method;
+            this.tokens = tokens;
+        }
+
+        private boolean matches(ServerHttpRequest request) {
+            return (method == null || method == request.getMethod())
+                    && pattern.matches(request.getPath().pathWithinApplication());
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Leases batches of tokens from the global budget kept in Redis, using the GCRA or
+ * sliding window counter state of the lease's policy.
+ * <p>
+ * With batching enabled, leases arriving within a microsecond-scale window are
+ * evaluated together in one multi-key script call. All keys of a script call must hash
+ * to the same slot on Redis Cluster, so there a batch is split into one call per slot.
+ */
+@Slf4j
+public class RedisLeaseClient {
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RedisScript<List<Long>> script;
+    private final LeaseBatcher batcher;
+
+    /**
+     * @param cluster whether Redis runs as a cluster, so batched keys must share a hash slot
+     */
+    public RedisLeaseClient(ReactiveStringRedisTemplate redisTemplate,
+                            RedisScript<List<Long>> script,
+                            RateLimitConfig.Batch batch,
+                            boolean cluster) {
+        this.redisTemplate = redisTemplate;
+        this.script = script;
+        this.batcher = batch.isEnabled()
+                ? new LeaseBatcher(this::acquireBatch,
+                        cluster ? request -> ClusterSlotHashUtil.calculateSlot(getKey(request)) : request -> 0,
+                        batch.getMaxSize(), batch.getWindow(), Schedulers.parallel())
+                : null;
+    }
+
+    /**
+     * Lease up to {@code wanted} tokens. Emits the number of tokens granted,
+     * which is either zero or at least the request's minimum.
+     */
+    public Mono<Long> acquire(LeaseRequest request) {
+        if (batcher != null) {
+            return batcher.submit(request);
+        }
+
+        List<String> args = new ArrayList<>(6);
+        addArgs(args, request);
+
+        return redisTemplate.execute(script, Collections.singletonList(getKey(request)), args)
+                .next()
+                .map(result -> result.get(0))
+                .doOnNext(granted -> log.debug("Leased {} of {} tokens for key {}",
+                        granted, request.getWanted(), request.getKey()));
+    }
+
+    /**
+     * Evaluate several leases in one script call. Emits the granted counts in request order.
+     */
+    Mono<List<Long>> acquireBatch(List<LeaseRequest> requests) {
+        List<String> keys = new ArrayList<>(requests.size());
+        List<String> args = new ArrayList<>(requests.size() * 6);
+        for (LeaseRequest request : requests) {
+            keys.add(getKey(request));
+            addArgs(args, request);
+        }
+
+        return redisTemplate.execute(script, keys, args)
+                .next()
+                .map(result -> {
+                    List<Long> granted = new ArrayList<>(requests.size());
+                    for (int i = 0; i < result.size(); i += 2) {
+                        granted.add(result.get(i));
+                    }
+                    return granted;
+                })
+                .doOnNext(granted -> log.debug("Evaluated {} leases in one Redis call", granted.size()));
+    }
+
+    private static void addArgs(List<String> args, LeaseRequest request) {
+        RateLimitPolicy policy = request.getPolicy();
+        args.add(String.valueOf(policy.getAlgorithm().getScriptCode()));
+        args.add(String.valueOf(policy.getReplenishRate()));
+        args.add(String.valueOf(policy.getBurstCapacity()));
+        args.add(String.valueOf(policy.getWindow().toMillis()));
+        args.add(String.valueOf(request.getWanted()));
+        args.add(String.valueOf(request.getMinimum()));
+    }
+
+    static String getKey(LeaseRequest request) {
+        // Hash tag keeps the states of one limit key on the same cluster slot whatever the algorithm.
+        // The algorithm is part of the key so a policy change never misreads the old state.
+        return "rate_limit.{" + request.getKey() + "}."
+                + request.getPolicy().getAlgorithm().name().toLowerCase();
+    }
+
+}
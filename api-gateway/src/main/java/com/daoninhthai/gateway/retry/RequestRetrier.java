@@ -0,0 +1,164 @@
+package com.daoninhthai.gateway.retry;
+
+import com.daoninhthai.gateway.config.RetryConfig;
+import com.daoninhthai.gateway.util.RequestBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpMethod;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed attempt of a route's request is retried, and after which backoff.
+ * <p>
+ * Retries are limited by the route's policy, by the deadline of the request and by a
+ * {@link RequestBudget} that every request of the route contributes to. Because each
+ * gateway instance only spends its own budget, retries across the cluster stay within the
+ * same share of the requests, however many gateway instances there are. Backoffs are
+ * exponential with full jitter, so clients failing at the same time do not retry in step.
+ */
+public class RequestRetrier {
+
+    private static final Set<HttpMethod> IDEMPOTENT = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD,
+            HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.TRACE);
+
+    private final RetryConfig properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, RouteRetries> routes = new ConcurrentHashMap<>();
+
+    public RequestRetrier(RetryConfig properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Retry policy for a request with this method on this route, or null if it is not retried.
+     */
+    public RetryConfig.Policy getPolicy(String routeId, HttpMethod method) {
+        if (!properties.isEnabled() || method == null || !IDEMPOTENT.contains(method)) {
+            return null;
+        }
+        RetryConfig.Policy policy = properties.getRoutes().get(routeId);
+        return policy != null && policy.getMethods().contains(method) ? policy : null;
+    }
+
+    /**
+     * Start a request of a route, crediting the route's retry budget.
+     */
+    public void onRequest(String routeId) {
+        getState(routeId).budget.deposit();
+    }
+
+    /**
+     * Whether the error, or one of its causes, is one the policy retries.
+     */
+    public boolean isRetryable(RetryConfig.Policy policy, Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            for (Class<? extends Throwable> retryable : policy.getExceptions()) {
+                if (retryable.isInstance(cause)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether an upstream response with this status is retried.
+     */
+    public boolean isRetryable(RetryConfig.Policy policy, Integer status) {
+        return status != null && policy.getStatuses().contains(status);
+    }
+
+    /**
+     * Backoff before the given retry, starting at 1.
+     */
+    public Duration backoff(RetryConfig.Policy policy, int retry) {
+        return backoff(policy, retry, ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * Full jitter: uniform between 0 and the first backoff doubled for every earlier retry,
+     * capped at the max backoff.
+     */
+    static Duration backoff(RetryConfig.Policy policy, int retry, double random) {
+        long max = policy.getMaxBackoff().toNanos();
+        long ceiling = Math.min(max, policy.getFirstBackoff().toNanos());
+        for (int i = 1; i < retry && ceiling < max; i++) {
+            ceiling = Math.min(max, ceiling * 2);
+        }
+        return Duration.ofNanos((long) (ceiling * random));
+    }
+
+    /**
+     * Take a retry from the route's budget after {@code attempts} failed attempts, unless
+     * the policy's attempts are used up or the request's deadline passes before the backoff
+     * is over. Skipped retries are counted by reason.
+     *
+     * @param remaining time left until the request's deadline, or null if it has none
+     */
+    public boolean tryRetry(String routeId, RetryConfig.Policy policy, int attempts, Duration backoff,
+                            Duration remaining) {
+        RouteRetries state = getState(routeId);
+        if (attempts >= policy.getMaxAttempts()) {
+            state.attemptsExhausted.increment();
+            return false;
+        }
+        if (remaining != null && remaining.compareTo(backoff) <= 0) {
+            state.deadlineExceeded.increment();
+            return false;
+        }
+        if (!state.budget.tryWithdraw()) {
+            state.budgetExhausted.increment();
+            return false;
+        }
+        state.retries.increment();
+        return true;
+    }
+
+    RouteRetries getState(String routeId) {
+        RouteRetries state = routes.get(routeId);
+        return state != null ? state : routes.computeIfAbsent(routeId, RouteRetries::new);
+    }
+
+    final class RouteRetries {
+        private final RequestBudget budget;
+        private final Counter retries;
+        private final Counter attemptsExhausted;
+        private final Counter deadlineExceeded;
+        private final Counter budgetExhausted;
+
+        private RouteRetries(String routeId) {
+            this.budget = new RequestBudget(properties.getBudgetRatio(), properties.getBudgetCapacity());
+            this.retries = Counter.builder("gateway_retries_total")
+                    .description("Retries of failed upstream attempts")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+            this.attemptsExhausted = skipped(routeId, "attempts");
+            this.deadlineExceeded = skipped(routeId, "deadline");
+            this.budgetExhausted = skipped(routeId, "budget");
+            Gauge.builder("gateway_retry_budget", budget, RequestBudget::getBalance)
+                    .description("Retries currently available in the route's retry budget")
+                    .tag("route", routeId)
+                    .register(meterRegistry);
+        }
+
+        private Counter skipped(String routeId, String reason) {
+            return Counter.builder("gateway_retries_skipped_total")
+                    .description("Retryable failures that were not retried, by reason")
+                    .tag("route", routeId)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        double getBudget() {
+            return budget.getBalance();
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.daoninhthai.gateway.routing;
+
+import org.springframework.cloud.gateway.route.CachingRouteLocator;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Route locator over the cached static routes and the current {@link DynamicRouteTable}.
+ * The static routes are cached and refreshed like in the default CachingRouteLocator, while
+ * the dynamic table is read on every call, so a swapped table is visible to route lookup and
+ * the gateway actuator endpoints without a RefreshRoutesEvent.
+ */
+public class DynamicRouteLocator extends CachingRouteLocator {
+
+    private final DynamicRouteTable dynamicRouteTable;
+
+    public DynamicRouteLocator(RouteLocator delegate, DynamicRouteTable dynamicRouteTable) {
+        super(delegate);
+        this.dynamicRouteTable = dynamicRouteTable;
+    }
+
+    @Override
+    public Flux<Route> getRoutes() {
+        return super.getRoutes()
+                .collectList()
+                .flatMapIterable(staticRoutes -> merge(staticRoutes, dynamicRouteTable.getRoutes()));
+    }
+
+    /**
+     * Static and dynamic routes by route order, dynamic routes replacing static ones with the same id.
+     */
+    static List<Route> merge(List<Route> staticRoutes, List<Route> dynamicRoutes) {
+        if (dynamicRoutes.isEmpty()) {
+            return staticRoutes;
+        }
+        Set<String> dynamicIds = new HashSet<>();
+        for (Route route : dynamicRoutes) {
+            dynamicIds.add(route.getId());
+        }
+        List<Route> merged = new ArrayList<>(staticRoutes.size() + dynamicRoutes.size());
+        for (Route route : staticRoutes) {
+            if (!dynamicIds.contains(route.getId())) {
+                merged.add(route);
+            }
+        }
+        merged.addAll(dynamicRoutes);
+        merged.sort(Comparator.comparingInt(Route::getOrder));
+        return merged;
+    }
+
+}
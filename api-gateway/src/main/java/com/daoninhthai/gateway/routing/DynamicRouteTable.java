@@ -0,0 +1,247 @@
+package com.daoninhthai.gateway.routing;
+
+import com.daoninhthai.gateway.config.DynamicRouteConfig;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.handler.predicate.RoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Routes loaded from a JSON file of RouteDefinitions, added to the routes from RouteConfig.
+ * A dynamic route with the id of a static route replaces it.
+ * <p>
+ * The file is polled for changes. A changed file is parsed, validated and compiled into
+ * routes, filters included, on the bounded elastic scheduler, so the shared scheduling thread
+ * never waits for a compile and at most one compile runs at a time. The compiled table then
+ * replaces the previous one in a single volatile write and a {@link DynamicRoutesChangedEvent}
+ * is published so the route index is rebuilt. The table is served through the
+ * {@link DynamicRouteLocator}. Requests that already resolved a route finish on the old one,
+ * and no RefreshRoutesEvent is needed, so the other route locators are not re-evaluated.
+ * A file that fails to parse or validate is rejected and the previous table stays in effect
+ * until the file changes again. Any other failure, such as a compile timeout, also keeps the
+ * previous table, but the same file is compiled again on the next poll.
+ */
+@Slf4j
+@SuppressWarnings("rawtypes")
+public class DynamicRouteTable {
+
+    private final DynamicRouteConfig properties;
+    private final List<RoutePredicateFactory> predicateFactories;
+    private final List<GatewayFilterFactory> filterFactories;
+    private final Set<String> predicateNames;
+    private final Set<String> filterNames;
+    private final GatewayProperties gatewayProperties;
+    private final ConfigurationService configurationService;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer reloadSuccess;
+    private final Timer reloadFailure;
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    private volatile List<Route> routes = Collections.emptyList();
+    /**
+     * Content of the last file that was loaded or rejected, which is not reloaded until it changes
+     */
+    private volatile byte[] lastContent;
+
+    public DynamicRouteTable(DynamicRouteConfig properties,
+                             List<RoutePredicateFactory> predicateFactories,
+                             List<GatewayFilterFactory> filterFactories,
+                             GatewayProperties gatewayProperties,
+                             ConfigurationService configurationService,
+                             ObjectMapper objectMapper,
+                             ApplicationEventPublisher eventPublisher,
+                             MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.predicateFactories = predicateFactories;
+        this.filterFactories = filterFactories;
+        this.predicateNames = predicateFactories.stream().map(RoutePredicateFactory::name).collect(Collectors.toSet());
+        this.filterNames = filterFactories.stream().map(GatewayFilterFactory::name).collect(Collectors.toSet());
+        this.gatewayProperties = gatewayProperties;
+        this.configurationService = configurationService;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+
+        this.reloadSuccess = Timer.builder("gateway_dynamic_routes_reload")
+                .description("Time to load, validate and compile the dynamic route table")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.reloadFailure = Timer.builder("gateway_dynamic_routes_reload")
+                .description("Time to load, validate and compile the dynamic route table")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+        Gauge.builder("gateway_dynamic_routes", this, table -> table.routes.size())
+                .description("Number of routes in the dynamic route table")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Routes of the current table, in route order.
+     */
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Start reloading the route file if its content changed since it was last loaded or
+     * rejected. Skipped while the previous reload is still compiling; the next poll picks up
+     * the change.
+     */
+    @Scheduled(fixedDelayString = "${gateway.dynamic-routes.poll-interval-ms:2000}")
+    public void poll() {
+        if (!properties.isEnabled() || reloading.get()) {
+            return;
+        }
+        Path file = Paths.get(properties.getFile());
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file);
+        } catch (NoSuchFileException ex) {
+            log.debug("Dynamic route file {} does not exist", file);
+            return;
+        } catch (IOException ex) {
+            log.warn("Failed to read dynamic route file {}: {}", file, ex.getMessage());
+            return;
+        }
+        if (Arrays.equals(content, lastContent)) {
+            return;
+        }
+        reloading.set(true);
+        reload(content)
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signalType -> reloading.set(false))
+                .subscribe();
+    }
+
+    /**
+     * Parse, validate and compile the route file, then swap in the new table. Completes
+     * empty if the file was rejected or could not be compiled.
+     */
+    Mono<List<Route>> reload(byte[] content) {
+        long start = System.nanoTime();
+        return Mono.fromCallable(() -> {
+                    List<RouteDefinition> definitions = objectMapper.readValue(content,
+                            new TypeReference<List<RouteDefinition>>() { });
+                    validate(definitions);
+                    return definitions;
+                })
+                .flatMap(this::compile)
+                .doOnNext(compiled -> {
+                    routes = compiled;
+                    lastContent = content;
+                    reloadSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    log.info("Loaded {} dynamic routes in {}ms", compiled.size(),
+                            (System.nanoTime() - start) / 1_000_000);
+                    eventPublisher.publishEvent(new DynamicRoutesChangedEvent(this, compiled));
+                })
+                .onErrorResume(ex -> {
+                    reloadFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (isRejection(ex)) {
+                        lastContent = content;
+                        log.error("Rejected dynamic route change, keeping the previous {} routes: {}",
+                                routes.size(), ex.getMessage());
+                    } else {
+                        log.warn("Failed to load dynamic route change, keeping the previous {} routes "
+                                + "until the next poll: {}", routes.size(), ex.toString());
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Whether the file itself is at fault, a parse or validation error, so loading it again
+     * would fail the same way.
+     */
+    private static boolean isRejection(Throwable error) {
+        return error instanceof IOException || error instanceof IllegalArgumentException;
+    }
+
+    void validate(List<RouteDefinition> definitions) {
+        Set<String> ids = new HashSet<>();
+        for (RouteDefinition definition : definitions) {
+            String id = definition.getId();
+            if (id == null || id.isEmpty()) {
+                throw new IllegalArgumentException("Route definition without an id: " + definition);
+            }
+            if (!ids.add(id)) {
+                throw new IllegalArgumentException("Duplicate route id " + id);
+            }
+            if (definition.getUri() == null || definition.getUri().getScheme() == null) {
+                throw new IllegalArgumentException("Route " + id + " needs an absolute uri");
+            }
+            if (definition.getPredicates().isEmpty()) {
+                throw new IllegalArgumentException("Route " + id + " has no predicates");
+            }
+            for (PredicateDefinition predicate : definition.getPredicates()) {
+                if (!predicateNames.contains(predicate.getName())) {
+                    throw new IllegalArgumentException("Route " + id + " uses unknown predicate " + predicate.getName());
+                }
+            }
+            for (FilterDefinition filter : definition.getFilters()) {
+                if (!filterNames.contains(filter.getName())) {
+                    throw new IllegalArgumentException("Route " + id + " uses unknown filter " + filter.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Compile definitions into routes, failing after the compile timeout. The Path patterns
+     * are copied into the route metadata so the route index can place the routes in its trie
+     * even when they have other predicates.
+     */
+    private Mono<List<Route>> compile(List<RouteDefinition> definitions) {
+        for (RouteDefinition definition : definitions) {
+            List<String> patterns = IndexedRoutePredicateHandlerMapping.definitionPatterns(definition);
+            if (!patterns.isEmpty()) {
+                definition.getMetadata().putIfAbsent(RouteIndex.PATHS_METADATA, String.join(",", patterns));
+            }
+        }
+
+        RouteDefinitionRouteLocator locator = new RouteDefinitionRouteLocator(() -> Flux.fromIterable(definitions),
+                predicateFactories, filterFactories, gatewayProperties, configurationService);
+        return locator.getRoutes()
+                .sort((a, b) -> Integer.compare(a.getOrder(), b.getOrder()))
+                .collectList()
+                .timeout(properties.getCompileTimeout())
+                .map(compiled -> {
+                    if (compiled.size() != definitions.size()) {
+                        throw new IllegalArgumentException("Only " + compiled.size() + " of "
+                                + definitions.size() + " route definitions could be compiled");
+                    }
+                    return Collections.unmodifiableList(compiled);
+                });
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.daoninhthai.gateway.routing;
+
+import lombok.Getter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Published after the dynamic route table has been replaced by a newly compiled one.
+ */
+@Getter
+public class DynamicRoutesChangedEvent extends ApplicationEvent {
+
+    private final List<Route> routes;
+
+    public DynamicRoutesChangedEvent(Object source, List<Route> routes) {
+        super(source);
+        this.routes = routes;
+    }
+
+}
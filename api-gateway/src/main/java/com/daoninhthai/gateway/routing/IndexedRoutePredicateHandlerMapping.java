@@ -0,0 +1,157 @@
+package com.daoninhthai.gateway.routing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR;
+
+/**
+ * Route lookup through a {@link RouteIndex} instead of evaluating every route in turn.
+ * Only the candidates from the trie have their predicates evaluated, in route order,
+ * so the first matching route is the same one the default lookup would return.
+ * <p>
+ * Path patterns are taken from the configs of the route's Path predicates, from its
+ * {@code paths} metadata or from the Path predicate of its RouteDefinition. Routes from the
+ * {@link DynamicRouteTable} come in through the {@link DynamicRouteLocator}. The index is rebuilt
+ * after the routes are refreshed or the dynamic table changes; until then lookups keep using
+ * the previous index, which holds its own copy of the route table.
+ */
+@Slf4j
+public class IndexedRoutePredicateHandlerMapping extends RoutePredicateHandlerMapping
+        implements ApplicationListener<RefreshRoutesResultEvent> {
+
+    private static final String PATH_PREDICATE = "Path";
+
+    private final RouteLocator routeLocator;
+    private final RouteDefinitionLocator routeDefinitionLocator;
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Mono<RouteIndex> index;
+
+    public IndexedRoutePredicateHandlerMapping(FilteringWebHandler webHandler,
+                                               RouteLocator routeLocator,
+                                               RouteDefinitionLocator routeDefinitionLocator,
+                                               GlobalCorsProperties globalCorsProperties,
+                                               Environment environment) {
+        super(webHandler, routeLocator, globalCorsProperties, environment);
+        this.routeLocator = routeLocator;
+        this.routeDefinitionLocator = routeDefinitionLocator;
+        this.index = buildIndex().cache();
+    }
+
+    @Override
+    public void onApplicationEvent(RefreshRoutesResultEvent event) {
+        if (event.isSuccess()) {
+            rebuild();
+        }
+    }
+
+    @EventListener
+    public void onDynamicRoutesChanged(DynamicRoutesChangedEvent event) {
+        rebuild();
+    }
+
+    /**
+     * Rebuild the index in the background. A rebuild that completes after a newer one
+     * was started is discarded.
+     */
+    private void rebuild() {
+        long current = generation.incrementAndGet();
+        buildIndex().subscribe(
+                rebuilt -> {
+                    if (generation.get() == current) {
+                        index = Mono.just(rebuilt);
+                    }
+                },
+                ex -> log.error("Failed to rebuild the route index, keeping the previous one", ex));
+    }
+
+    @Override
+    protected Mono<Route> lookupRoute(ServerWebExchange exchange) {
+        PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+        return index
+                .flatMap(routeIndex -> Flux.fromIterable(routeIndex.candidates(path))
+                        .concatMap(route -> Mono.just(route)
+                                .filterWhen(r -> {
+                                    exchange.getAttributes().put(GATEWAY_PREDICATE_ROUTE_ATTR, r.getId());
+                                    return r.getPredicate().apply(exchange);
+                                })
+                                .doOnError(e -> log.error("Error applying predicate for route: {}", route.getId(), e))
+                                .onErrorResume(e -> Mono.empty()))
+                        .next())
+                .map(route -> {
+                    validateRoute(route, exchange);
+                    return route;
+                });
+    }
+
+    private Mono<RouteIndex> buildIndex() {
+        Mono<Map<String, List<String>>> definitionPatterns = routeDefinitionLocator.getRouteDefinitions()
+                .collectMap(RouteDefinition::getId, IndexedRoutePredicateHandlerMapping::definitionPatterns,
+                        HashMap::new);
+
+        return Mono.zip(routeLocator.getRoutes().collectList(), definitionPatterns)
+                .map(tuple -> {
+                    long start = System.nanoTime();
+                    Map<String, List<String>> byId = tuple.getT2();
+                    List<Route> routes = tuple.getT1();
+                    RouteIndex built = RouteIndex.build(routes, route -> {
+                        List<String> patterns = RouteIndex.predicatePatterns(route);
+                        if (patterns.isEmpty()) {
+                            patterns = RouteIndex.metadataPatterns(route);
+                        }
+                        return patterns.isEmpty()
+                                ? byId.getOrDefault(route.getId(), Collections.emptyList())
+                                : patterns;
+                    });
+                    log.info("Built route index over {} routes ({} unindexed) in {}us", built.size(),
+                            built.getUnindexedCount(), (System.nanoTime() - start) / 1000);
+                    return built;
+                });
+    }
+
+    /**
+     * Patterns of the definition's Path predicate, or an empty list if it has none or
+     * its arguments are not plain patterns.
+     */
+    static List<String> definitionPatterns(RouteDefinition definition) {
+        for (PredicateDefinition predicate : definition.getPredicates()) {
+            if (!PATH_PREDICATE.equals(predicate.getName())) {
+                continue;
+            }
+            List<String> patterns = new ArrayList<>();
+            for (Map.Entry<String, String> arg : predicate.getArgs().entrySet()) {
+                if (arg.getKey().startsWith("_genkey_") || arg.getKey().startsWith("patterns")) {
+                    patterns.add(arg.getValue());
+                } else if (!arg.getKey().startsWith("match")) {
+                    return Collections.emptyList();
+                }
+            }
+            return patterns;
+        }
+        return Collections.emptyList();
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.daoninhthai.gateway.routing;
+
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.server.PathContainer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Immutable prefix trie over the path patterns of the routes, keyed by path segment.
+ * <p>
+ * The index is a conservative pre-filter: {@link #candidates} returns every route whose
+ * path predicate could match, in route order, and the caller still evaluates the full
+ * predicate of each candidate. Pattern segments with wildcards or variables match any
+ * segment, {@code **} and {@code {*var}} match any remainder. Routes whose path patterns
+ * are unknown are candidates for every request, so route semantics never change.
+ */
+public final class RouteIndex {
+
+    /**
+     * Route metadata key listing the route's path patterns, as a comma separated
+     * string or a collection. Only needed for routes whose patterns cannot be taken from
+     * their predicate or RouteDefinition, see {@link #predicatePatterns}.
+     */
+    public static final String PATHS_METADATA = "paths";
+
+    private static final RouteIndex EMPTY = new RouteIndex(new Route[0], new Node(), new BitSet());
+
+    private final Route[] routes;
+    private final Node root;
+    private final BitSet unindexed;
+
+    private RouteIndex(Route[] routes, Node root, BitSet unindexed) {
+        this.routes = routes;
+        this.root = root;
+        this.unindexed = unindexed;
+    }
+
+    public static RouteIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build an index over routes in their matching order.
+     *
+     * @param pathPatterns path patterns of a route, or an empty list if they are unknown
+     */
+    public static RouteIndex build(List<Route> routes, Function<Route, List<String>> pathPatterns) {
+        Node root = new Node();
+        BitSet unindexed = new BitSet();
+        for (int position = 0; position < routes.size(); position++) {
+            List<String> patterns = pathPatterns.apply(routes.get(position));
+            if (patterns.isEmpty()) {
+                unindexed.set(position);
+                continue;
+            }
+            for (String pattern : patterns) {
+                insert(root, pattern, position);
+            }
+        }
+        return new RouteIndex(routes.toArray(new Route[0]), root, unindexed);
+    }
+
+    private static void insert(Node root, String pattern, int position) {
+        Node node = root;
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.equals("**") || segment.startsWith("{*")) {
+                node.catchAll = set(node.catchAll, position);
+                return;
+            }
+            if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            } else {
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+        }
+        node.terminal = set(node.terminal, position);
+    }
+
+    private static BitSet set(BitSet bits, int position) {
+        BitSet result = bits != null ? bits : new BitSet();
+        result.set(position);
+        return result;
+    }
+
+    /**
+     * Routes that may match the path, in route order.
+     */
+    public List<Route> candidates(PathContainer path) {
+        List<String> segments = new ArrayList<>();
+        for (PathContainer.Element element : path.elements()) {
+            if (element instanceof PathContainer.PathSegment) {
+                String value = ((PathContainer.PathSegment) element).valueToMatch();
+                if (!value.isEmpty()) {
+                    segments.add(value);
+                }
+            }
+        }
+
+        BitSet matches = (BitSet) unindexed.clone();
+        collect(root, segments, 0, matches);
+        if (matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Route> result = new ArrayList<>(matches.cardinality());
+        for (int position = matches.nextSetBit(0); position >= 0; position = matches.nextSetBit(position + 1)) {
+            result.add(routes[position]);
+        }
+        return result;
+    }
+
+    private static void collect(Node node, List<String> segments, int index, BitSet matches) {
+        if (node.catchAll != null) {
+            matches.or(node.catchAll);
+        }
+        if (index == segments.size()) {
+            if (node.terminal != null) {
+                matches.or(node.terminal);
+            }
+            return;
+        }
+        Node child = node.children.get(segments.get(index));
+        if (child != null) {
+            collect(child, segments, index + 1, matches);
+        }
+        if (node.wildcard != null) {
+            collect(node.wildcard, segments, index + 1, matches);
+        }
+    }
+
+    public int size() {
+        return routes.length;
+    }
+
+    /**
+     * Number of routes that had to be left out of the trie.
+     */
+    public int getUnindexedCount() {
+        return unindexed.cardinality();
+    }
+
+    /**
+     * Path patterns read from the configs of the route's Path predicates, or an empty list
+     * unless every predicate of the route is a Path predicate. Visitors see the predicates
+     * but not whether they are and-ed, or-ed or negated; when they are all Path predicates
+     * the union of their patterns covers the route either way, while a negated predicate
+     * is visited as a predicate without config and leaves the route unindexed.
+     */
+    public static List<String> predicatePatterns(Route route) {
+        List<String> patterns = new ArrayList<>();
+        boolean[] pathOnly = {true};
+        route.getPredicate().accept(predicate -> {
+            Object config = predicate.getConfig();
+            if (config instanceof PathRoutePredicateFactory.Config) {
+                patterns.addAll(((PathRoutePredicateFactory.Config) config).getPatterns());
+            } else {
+                pathOnly[0] = false;
+            }
+        });
+        return pathOnly[0] ? patterns : Collections.emptyList();
+    }
+
+    /**
+     * Path patterns from a route's {@link #PATHS_METADATA} metadata.
+     */
+    public static List<String> metadataPatterns(Route route) {
+        Object value = route.getMetadata().get(PATHS_METADATA);
+        if (value instanceof String) {
+            List<String> patterns = new ArrayList<>();
+            for (String pattern : ((String) value).split(",")) {
+                if (!pattern.trim().isEmpty()) {
+                    patterns.add(pattern.trim());
+                }
+            }
+            return patterns;
+        }
+        if (value instanceof Collection) {
+            List<String> patterns = new ArrayList<>();
+            for (Object pattern : (Collection<?>) value) {
+                patterns.add(String.valueOf(pattern));
+            }
+            return patterns;
+        }
+        return Collections.emptyList();
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node wildcard;
+        private BitSet terminal;
+        private BitSet catchAll;
+    }
+
+}
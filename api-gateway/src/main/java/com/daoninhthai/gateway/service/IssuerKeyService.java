@@ -0,0 +1,187 @@
+package com.daoninhthai.gateway.service;
+
+import com.daoninhthai.gateway.config.OAuth2Config;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Caches the public signing keys (JWK set) of the OAuth2 issuer so that JWT access
+ * tokens can be verified locally. Keys are refreshed lazily: in the background once
+ * they are older than the refresh interval, and on demand when a token references
+ * an unknown key id (rate limited by the minimum refresh interval).
+ */
+@Service
+@Slf4j
+public class IssuerKeyService {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JWK_SET_TYPE =
+            new ParameterizedTypeReference<Map<String, Object>>() {};
+
+    private final WebClient webClient;
+    private final OAuth2Config oauth2Config;
+
+    private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+    private volatile long lastRefreshNanos;
+    private final AtomicReference<Mono<Map<String, PublicKey>>> inFlightRefresh = new AtomicReference<>();
+
+    public IssuerKeyService(@Qualifier("oauth2WebClient") WebClient webClient, OAuth2Config oauth2Config) {
+        this.webClient = webClient;
+        this.oauth2Config = oauth2Config;
+    }
+
+    /**
+     * Resolve the public key for the given key id. Completes empty when the key
+     * is unknown to the issuer or cannot be fetched right now.
+     */
+    public Mono<PublicKey> getKey(String keyId) {
+        long age = System.nanoTime() - lastRefreshNanos;
+        PublicKey key = lookup(keys, keyId);
+        if (key != null) {
+            if (age > oauth2Config.getHybrid().getKeyRefreshInterval().toNanos()) {
+                refresh().subscribe(refreshed -> { }, ex -> { });
+            }
+            return Mono.just(key);
+        }
+
+        if (lastRefreshNanos != 0 && age < oauth2Config.getHybrid().getMinRefreshInterval().toNanos()) {
+            return Mono.empty();
+        }
+        return refresh()
+                .flatMap(refreshed -> Mono.justOrEmpty(lookup(refreshed, keyId)))
+                .onErrorResume(ex -> Mono.empty());
+    }
+
+    /**
+     * Number of keys currently cached.
+     */
+    public int getCachedKeyCount() {
+        return keys.size();
+    }
+
+    private PublicKey lookup(Map<String, PublicKey> source, String keyId) {
+        if (keyId == null) {
+            // Issuers with a single key often omit the kid header
+            return source.size() == 1 ? source.values().iterator().next() : null;
+        }
+        return source.get(keyId);
+    }
+
+    /**
+     * Fetch the JWK set, sharing a single in-flight request between concurrent callers.
+     */
+    private Mono<Map<String, PublicKey>> refresh() {
+        Mono<Map<String, PublicKey>> current = inFlightRefresh.get();
+        if (current != null) {
+            return current;
+        }
+
+        Mono<Map<String, PublicKey>> fetch = webClient.get()
+                .uri(oauth2Config.resolveJwkSetUri())
+                .retrieve()
+                .bodyToMono(JWK_SET_TYPE)
+                .map(this::parseJwkSet)
+                .doOnNext(parsed -> {
+                    keys = parsed;
+                    log.info("Loaded {} signing keys from {}", parsed.size(), oauth2Config.resolveJwkSetUri());
+                })
+                .doOnError(ex -> log.warn("Failed to load JWK set from {}: {}",
+                        oauth2Config.resolveJwkSetUri(), ex.getMessage()))
+                .doFinally(signal -> {
+                    lastRefreshNanos = System.nanoTime();
+                    inFlightRefresh.set(null);
+                })
+                .cache();
+
+        if (inFlightRefresh.compareAndSet(null, fetch)) {
+            return fetch;
+        }
+        Mono<Map<String, PublicKey>> winner = inFlightRefresh.get();
+        return winner != null ? winner : Mono.just(keys);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, PublicKey> parseJwkSet(Map<String, Object> jwkSet) {
+        Map<String, PublicKey> parsed = new HashMap<>();
+        Object entries = jwkSet.get("keys");
+        if (!(entries instanceof List)) {
+            return parsed;
+        }
+
+        int index = 0;
+        for (Object entry : (List<Object>) entries) {
+            if (!(entry instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> jwk = (Map<String, Object>) entry;
+            if ("enc".equals(jwk.get("use"))) {
+                continue;
+            }
+            try {
+                PublicKey key = toPublicKey(jwk);
+                if (key != null) {
+                    String keyId = jwk.get("kid") != null ? jwk.get("kid").toString() : "key-" + index;
+                    parsed.put(keyId, key);
+                }
+            } catch (Exception e) {
+                log.warn("Skipping unusable JWK {}: {}", jwk.get("kid"), e.getMessage());
+            }
+            index++;
+        }
+        return Collections.unmodifiableMap(parsed);
+    }
+
+    private PublicKey toPublicKey(Map<String, Object> jwk) throws Exception {
+        String keyType = String.valueOf(jwk.get("kty"));
+        if ("RSA".equals(keyType)) {
+            BigInteger modulus = decodeUnsigned(jwk.get("n"));
+            BigInteger exponent = decodeUnsigned(jwk.get("e"));
+            return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent));
+        }
+        if ("EC".equals(keyType)) {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec(toStandardCurveName(String.valueOf(jwk.get("crv")))));
+            ECParameterSpec curve = parameters.getParameterSpec(ECParameterSpec.class);
+            ECPoint point = new ECPoint(decodeUnsigned(jwk.get("x")), decodeUnsigned(jwk.get("y")));
+            return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(point, curve));
+        }
+        return null;
+    }
+
+    private String toStandardCurveName(String jwkCurve) {
+        switch (jwkCurve) {
+            case "P-256":
+                return "secp256r1";
+            case "P-384":
+                return "secp384r1";
+            case "P-521":
+                return "secp521r1";
+            default:
+                throw new IllegalArgumentException("Unsupported curve: " + jwkCurve);
+        }
+    }
+
+    private BigInteger decodeUnsigned(Object value) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(String.valueOf(value)));
+    }
+
+}
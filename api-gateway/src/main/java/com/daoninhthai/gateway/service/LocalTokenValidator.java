@@ -0,0 +1,135 @@
+package com.daoninhthai.gateway.service;
+
+import com.daoninhthai.gateway.config.OAuth2Config;
+import com.daoninhthai.gateway.dto.TokenIntrospectionResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Validates JWT-formatted OAuth2 access tokens locally against the issuer's cached
+ * signing keys and maps their claims onto a {@link TokenIntrospectionResponse}, so the
+ * authentication filter can treat local and remote validation the same way.
+ * <p>
+ * {@link #validate(String)} completes empty for tokens that must be introspected instead:
+ * opaque tokens, JWTs from untrusted issuers, and JWTs whose key cannot be resolved.
+ * A JWT from a trusted issuer that fails verification is rejected with an error.
+ */
+@Service
+@Slf4j
+public class LocalTokenValidator {
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<Map<String, Object>>() {};
+
+    private final IssuerKeyService issuerKeyService;
+    private final OAuth2Config oauth2Config;
+    private final ObjectMapper objectMapper;
+
+    public LocalTokenValidator(IssuerKeyService issuerKeyService,
+                               OAuth2Config oauth2Config,
+                               ObjectMapper objectMapper) {
+        this.issuerKeyService = issuerKeyService;
+        this.oauth2Config = oauth2Config;
+        this.objectMapper = objectMapper;
+    }
+
+    public Mono<TokenIntrospectionResponse> validate(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return Mono.empty();
+        }
+
+        Map<String, Object> header = decodeSegment(parts[0]);
+        Map<String, Object> payload = decodeSegment(parts[1]);
+        if (header == null || payload == null || !isSignedAlgorithm(header.get("alg"))) {
+            return Mono.empty();
+        }
+
+        Object issuer = payload.get("iss");
+        if (issuer == null || !oauth2Config.resolveTrustedIssuers().contains(issuer.toString())) {
+            return Mono.empty();
+        }
+
+        String keyId = header.get("kid") != null ? header.get("kid").toString() : null;
+        return issuerKeyService.getKey(keyId)
+                .map(key -> {
+                    Claims claims = Jwts.parserBuilder()
+                            .setSigningKey(key)
+                            .requireIssuer(issuer.toString())
+                            .setAllowedClockSkewSeconds(oauth2Config.getHybrid().getClockSkew().getSeconds())
+                            .build()
+                            .parseClaimsJws(token)
+                            .getBody();
+                    return toIntrospectionResponse(claims);
+                });
+    }
+
+    private TokenIntrospectionResponse toIntrospectionResponse(Claims claims) {
+        String clientId = firstNonNull(claims.get("client_id"), claims.get("azp"), claims.get("cid"));
+        return TokenIntrospectionResponse.builder()
+                .active(true)
+                .subject(claims.getSubject())
+                .clientId(clientId)
+                .scope(joinScopes(claims.get("scope") != null ? claims.get("scope") : claims.get("scp")))
+                .exp(claims.getExpiration() != null ? claims.getExpiration().getTime() / 1000 : null)
+                .iss(claims.getIssuer())
+                .audience(toList(claims.get("aud")))
+                .tokenType("Bearer")
+                .build();
+    }
+
+    private boolean isSignedAlgorithm(Object algorithm) {
+        if (algorithm == null) {
+            return false;
+        }
+        String alg = algorithm.toString();
+        return alg.startsWith("RS") || alg.startsWith("ES") || alg.startsWith("PS");
+    }
+
+    private Map<String, Object> decodeSegment(String segment) {
+        try {
+            return objectMapper.readValue(Base64.getUrlDecoder().decode(segment), JSON_OBJECT);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String joinScopes(Object scopes) {
+        if (scopes instanceof Collection) {
+            return ((Collection<?>) scopes).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(" "));
+        }
+        return scopes != null ? scopes.toString() : null;
+    }
+
+    private List<String> toList(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.toList());
+        }
+        return value != null ? List.of(value.toString()) : Collections.emptyList();
+    }
+
+    private String firstNonNull(Object... values) {
+        for (Object value : values) {
+            if (value != null) {
+                return value.toString();
+            }
+        }
+        return null;
+    }
+
+}
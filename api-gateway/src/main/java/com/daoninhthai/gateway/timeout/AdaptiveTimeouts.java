@@ -0,0 +1,176 @@
+package com.daoninhthai.gateway.timeout;
+
+import com.daoninhthai.gateway.config.AdaptiveTimeoutConfig;
+import com.daoninhthai.gateway.util.RollingLatencyHistogram;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Upstream response timeouts learned from the latencies of each route, or of each
+ * configured path template within a route.
+ * <p>
+ * The timeout is a multiple of a high percentile of the recent time to response headers,
+ * clamped to the configured bounds, and the initial timeout until enough requests have been
+ * seen. Requests that time out are recorded with the timeout as their latency, so a target
+ * that legitimately got slower raises its own timeout. Timeouts are recomputed at most once
+ * a second per target.
+ */
+public class AdaptiveTimeouts {
+
+    /**
+     * Path tag of requests that do not match any of their route's path templates
+     */
+    public static final String ANY_PATH = "*";
+
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AdaptiveTimeoutConfig properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<String, List<PathPattern>> patterns = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Target> targets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> deadlineExceeded = new ConcurrentHashMap<>();
+
+    public AdaptiveTimeouts(AdaptiveTimeoutConfig properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    AdaptiveTimeouts(AdaptiveTimeoutConfig properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * First path template of the route that matches the path, or {@link #ANY_PATH}.
+     */
+    public String getTemplate(String routeId, PathContainer path) {
+        for (PathPattern pattern : patterns.computeIfAbsent(routeId, this::parsePatterns)) {
+            if (pattern.matches(path)) {
+                return pattern.getPatternString();
+            }
+        }
+        return ANY_PATH;
+    }
+
+    private List<PathPattern> parsePatterns(String routeId) {
+        AdaptiveTimeoutConfig.Route route = properties.getRoutes().get(routeId);
+        if (route == null || route.getPaths().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<PathPattern> parsed = new ArrayList<>(route.getPaths().size());
+        for (String path : route.getPaths()) {
+            parsed.add(PathPatternParser.defaultInstance.parse(path));
+        }
+        return parsed;
+    }
+
+    /**
+     * Current timeout of a route's path template.
+     */
+    public Duration getTimeout(String routeId, String template) {
+        return getTarget(routeId, template).getTimeout();
+    }
+
+    /**
+     * Record the time an upstream call took to respond.
+     */
+    public void record(String routeId, String template, long latencyNanos) {
+        getTarget(routeId, template).histogram.record(latencyNanos, false);
+    }
+
+    /**
+     * Record an upstream call cut off by its timeout.
+     */
+    public void recordTimeout(String routeId, String template, Duration timeout) {
+        Target target = getTarget(routeId, template);
+        target.histogram.record(timeout.toNanos(), true);
+        target.timeouts.increment();
+    }
+
+    /**
+     * Record a request rejected because its deadline left too little time for the upstream call.
+     */
+    public void recordDeadlineExceeded(String routeId) {
+        deadlineExceeded.computeIfAbsent(routeId, id -> Counter.builder("gateway_deadline_exceeded_total")
+                .description("Requests rejected before the upstream call because their deadline ran out")
+                .tag("route", id)
+                .register(meterRegistry))
+                .increment();
+    }
+
+    Target getTarget(String routeId, String template) {
+        String key = routeId + " " + template;
+        Target target = targets.get(key);
+        return target != null ? target : targets.computeIfAbsent(key, k -> new Target(routeId, template));
+    }
+
+    final class Target {
+        private final RollingLatencyHistogram histogram;
+        private final Duration minTimeout;
+        private final Duration maxTimeout;
+        private final Counter timeouts;
+        private volatile long computedAt;
+        private volatile Duration timeout;
+
+        private Target(String routeId, String template) {
+            AdaptiveTimeoutConfig.Route route = properties.getRoutes().get(routeId);
+            this.minTimeout = route != null && route.getMinTimeout() != null
+                    ? route.getMinTimeout()
+                    : properties.getMinTimeout();
+            this.maxTimeout = route != null && route.getMaxTimeout() != null
+                    ? route.getMaxTimeout()
+                    : properties.getMaxTimeout();
+            this.histogram = new RollingLatencyHistogram(properties.getWindow(), properties.getWindowSlices(),
+                    nanoClock);
+            this.computedAt = nanoClock.getAsLong() - REFRESH_NANOS;
+            this.timeouts = Counter.builder("gateway_adaptive_timeouts_total")
+                    .description("Upstream calls cut off by their adaptive timeout")
+                    .tag("route", routeId)
+                    .tag("path", template)
+                    .register(meterRegistry);
+            Gauge.builder("gateway_adaptive_timeout_ms", this, target -> target.getTimeout().toMillis())
+                    .description("Current upstream response timeout")
+                    .tag("route", routeId)
+                    .tag("path", template)
+                    .register(meterRegistry);
+        }
+
+        Duration getTimeout() {
+            long now = nanoClock.getAsLong();
+            if (now - computedAt < REFRESH_NANOS) {
+                return timeout;
+            }
+            Duration computed = properties.getInitialTimeout();
+            if (histogram.getCount() >= properties.getMinSamples()) {
+                Duration percentile = histogram.getPercentile(properties.getPercentile());
+                computed = Duration.ofNanos((long) (percentile.toNanos() * properties.getFactor()));
+            }
+            if (computed.compareTo(minTimeout) < 0) {
+                computed = minTimeout;
+            } else if (computed.compareTo(maxTimeout) > 0) {
+                computed = maxTimeout;
+            }
+            timeout = computed;
+            computedAt = now;
+            return computed;
+        }
+    }
+
+}
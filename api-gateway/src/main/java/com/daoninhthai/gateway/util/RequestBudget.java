@@ -0,0 +1,58 @@
+package com.daoninhthai.gateway.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token budget for extra requests, such as hedges or retries, as a share of the regular ones.
+ * <p>
+ * Every regular request deposits {@code ratio} of a token and every extra request withdraws a
+ * whole one, so extra load stays below {@code ratio} of the traffic over time. The balance is
+ * capped at {@code capacity} tokens, which is the largest burst allowed after a quiet period,
+ * and starts full. It is kept in thousandths of a token so it can be updated atomically.
+ */
+public class RequestBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    public RequestBudget(double ratio, int capacity) {
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = capacity * SCALE;
+        this.balance = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * Credit one regular request.
+     */
+    public void deposit() {
+        if (balance.get() < capacity) {
+            balance.accumulateAndGet(deposit, (current, amount) -> Math.min(capacity, current + amount));
+        }
+    }
+
+    /**
+     * Take a token for an extra request, if there is one.
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Tokens currently available.
+     */
+    public double getBalance() {
+        return (double) balance.get() / SCALE;
+    }
+
+}
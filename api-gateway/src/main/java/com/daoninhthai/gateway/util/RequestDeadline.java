@@ -0,0 +1,36 @@
+package com.daoninhthai.gateway.util;
+
+import org.springframework.web.server.ServerWebExchange;
+
+import java.time.Duration;
+
+/**
+ * Deadline of a request, kept as a {@link System#nanoTime()} value in an exchange attribute.
+ * A deadline can only be moved earlier, so every filter that sets one bounds the request by
+ * its own limit.
+ */
+public final class RequestDeadline {
+
+    public static final String DEADLINE_ATTR = RequestDeadline.class.getName() + ".deadline";
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Set the deadline of the request to {@code timeout} from now, unless it already has an earlier one.
+     */
+    public static void tighten(ServerWebExchange exchange, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        exchange.getAttributes().merge(DEADLINE_ATTR, deadline,
+                (current, proposed) -> (Long) current - (Long) proposed <= 0 ? current : proposed);
+    }
+
+    /**
+     * Time left until the deadline of the request, negative once it has passed, or null if it has none.
+     */
+    public static Duration getRemaining(ServerWebExchange exchange) {
+        Long deadline = exchange.getAttribute(DEADLINE_ATTR);
+        return deadline != null ? Duration.ofNanos(deadline - System.nanoTime()) : null;
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.daoninhthai.gateway.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency histogram and failure count over a sliding window, for comparing upstreams.
+ * <p>
+ * Latencies are kept in microseconds in log-linear buckets: exact below 8µs, then eight
+ * buckets per power of two, so a percentile is off by at most 12.5%. The window is a ring
+ * of slices rotated lazily by the clock; a slice that has fallen out of the window is
+ * cleared by the first request that lands in it again. Recording is lock-free except for
+ * that rotation.
+ */
+public class RollingLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final Slice[] slices;
+    private final long sliceNanos;
+    private final LongSupplier nanoClock;
+
+    public RollingLatencyHistogram(Duration window, int slices) {
+        this(window, slices, System::nanoTime);
+    }
+
+    public RollingLatencyHistogram(Duration window, int slices, LongSupplier nanoClock) {
+        this.slices = new Slice[slices];
+        for (int i = 0; i < slices; i++) {
+            this.slices[i] = new Slice();
+        }
+        this.sliceNanos = Math.max(1, window.toNanos() / slices);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Record one request.
+     */
+    public void record(long latencyNanos, boolean failed) {
+        long sliceIndex = nanoClock.getAsLong() / sliceNanos;
+        Slice slice = slice(sliceIndex);
+        slice.counts.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(Math.max(0, latencyNanos))));
+        slice.total.increment();
+        if (failed) {
+            slice.failed.increment();
+        }
+    }
+
+    private Slice slice(long sliceIndex) {
+        Slice slice = slices[Math.floorMod(sliceIndex, slices.length)];
+        if (slice.index != sliceIndex) {
+            synchronized (slice) {
+                if (slice.index != sliceIndex) {
+                    slice.reset();
+                    slice.index = sliceIndex;
+                }
+            }
+        }
+        return slice;
+    }
+
+    private boolean isLive(Slice slice, long sliceIndex) {
+        return slice.index <= sliceIndex && slice.index > sliceIndex - slices.length;
+    }
+
+    /**
+     * Requests recorded in the window.
+     */
+    public long getCount() {
+        long sliceIndex = nanoClock.getAsLong() / sliceNanos;
+        long count = 0;
+        for (Slice slice : slices) {
+            if (isLive(slice, sliceIndex)) {
+                count += slice.total.sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Share of the requests in the window that failed, 0 if there were none.
+     */
+    public double getFailureRate() {
+        long sliceIndex = nanoClock.getAsLong() / sliceNanos;
+        long total = 0;
+        long failed = 0;
+        for (Slice slice : slices) {
+            if (isLive(slice, sliceIndex)) {
+                total += slice.total.sum();
+                failed += slice.failed.sum();
+            }
+        }
+        return total == 0 ? 0.0 : (double) failed / total;
+    }
+
+    /**
+     * Latency at the given quantile (0..1) over the window, 0 if nothing was recorded.
+     */
+    public Duration getPercentile(double quantile) {
+        long sliceIndex = nanoClock.getAsLong() / sliceNanos;
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (Slice slice : slices) {
+            if (!isLive(slice, sliceIndex)) {
+                continue;
+            }
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                long count = slice.counts.get(bucket);
+                counts[bucket] += count;
+                total += count;
+            }
+        }
+        if (total == 0) {
+            return Duration.ZERO;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(upperBound(bucket)));
+            }
+        }
+        return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(upperBound(BUCKETS - 1)));
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int mantissa = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int mantissa = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + mantissa + 1L) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static final class Slice {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private volatile long index = Long.MIN_VALUE;
+
+        private void reset() {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts.set(bucket, 0);
+            }
+            total.reset();
+            failed.reset();
+        }
+    }
+
+}
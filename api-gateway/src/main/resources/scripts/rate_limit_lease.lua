@@ -0,0 +1,90 @@
+-- Leases tokens for one or more rate limit keys in a single call.
+-- KEYS: one state key per lease
+-- ARGV: six values per lease - algorithm (1 = GCRA, 2 = sliding window counter),
+--       replenish rate (tokens/s), burst capacity, window (ms), tokens wanted, minimum grant
+-- Each lease reads and writes only its own key. Redis Cluster rejects a call whose keys
+-- hash to different slots, so on a cluster RedisLeaseClient only batches keys of one slot.
+-- The state is a single value: the theoretical arrival time in microseconds for GCRA,
+-- "<window index>:<count of that window>:<count of the window before>" for the sliding
+-- window counter.
+-- Returns { granted_1, available_1, granted_2, available_2, ... } in request order.
+-- Nothing is granted below the minimum.
+local time = redis.call('TIME')
+local now_us = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local function gcra(key, rate, burst, wanted, minimum)
+  local interval = 1000000 / rate
+  local tat = tonumber(redis.call('get', key))
+  if tat == nil or tat < now_us then
+    tat = now_us
+  end
+
+  local available = math.max(0, math.floor((now_us + burst * interval - tat) / interval))
+  local granted = math.min(available, wanted)
+  if granted < minimum then
+    granted = 0
+  end
+
+  if granted > 0 then
+    tat = tat + granted * interval
+    local ttl_ms = math.ceil((tat - now_us) / 1000) + 1000
+    redis.call('set', key, string.format('%.0f', tat), 'PX', ttl_ms)
+  end
+  return granted, available - granted
+end
+
+local function sliding_window(key, rate, window_ms, wanted, minimum)
+  local now_ms = math.floor(now_us / 1000)
+  local index = math.floor(now_ms / window_ms)
+
+  local current = 0
+  local previous = 0
+  local state = redis.call('get', key)
+  if state then
+    local stored_index, stored_current, stored_previous = string.match(state, '^(%-?%d+):(%d+):(%d+)$')
+    stored_index = tonumber(stored_index)
+    if stored_index == index then
+      current = tonumber(stored_current)
+      previous = tonumber(stored_previous)
+    elseif stored_index == index - 1 then
+      previous = tonumber(stored_current)
+    end
+  end
+
+  local limit = math.max(1, math.floor(rate * window_ms / 1000))
+  local elapsed = (now_ms % window_ms) / window_ms
+
+  local available = math.max(0, math.floor(limit - (previous * (1 - elapsed) + current)))
+  local granted = math.min(available, wanted)
+  if granted < minimum then
+    granted = 0
+  end
+
+  if granted > 0 then
+    local packed = string.format('%.0f:%.0f:%.0f', index, current + granted, previous)
+    redis.call('set', key, packed, 'PX', window_ms * 2)
+  end
+  return granted, available - granted
+end
+
+local results = {}
+for i = 0, #KEYS - 1 do
+  local algorithm = tonumber(ARGV[i * 6 + 1])
+  local rate = tonumber(ARGV[i * 6 + 2])
+  local burst = tonumber(ARGV[i * 6 + 3])
+  local window_ms = tonumber(ARGV[i * 6 + 4])
+  local wanted = tonumber(ARGV[i * 6 + 5])
+  local minimum = tonumber(ARGV[i * 6 + 6])
+
+  local granted, available
+  if algorithm == 2 then
+    granted, available = sliding_window(KEYS[i + 1], rate, window_ms, wanted, minimum)
+  else
+    granted, available = gcra(KEYS[i + 1], rate, burst, wanted, minimum)
+  end
+
+  results[i * 2 + 1] = granted
+  results[i * 2 + 2] = available
+end
+
+return results
@@ -0,0 +1,65 @@
+package com.daoninhthai.gateway.admission;
+
+import com.daoninhthai.gateway.config.AdmissionConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for AdmissionController.
+ * Verifies that priority classes are shed in order as pressure rises.
+ */
+class AdmissionControllerTest {
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private double lagMillis;
+    private AdmissionController controller;
+
+    @BeforeEach
+    void setUp() {
+        AdmissionConfig properties = new AdmissionConfig();
+        properties.setMaxInflight(1000);
+        properties.getRoutes().put("auth-service", RequestPriority.CRITICAL);
+        properties.getRoutes().put("product-service", RequestPriority.LOW);
+
+        controller = new AdmissionController(properties, () -> lagMillis, inflight::get, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("All traffic should be admitted under normal load")
+    void shouldAdmitUnderNormalLoad() {
+        inflight.set(100);
+        lagMillis = 2;
+
+        for (RequestPriority priority : RequestPriority.values()) {
+            assertThat(controller.admit(priority)).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("Low priority traffic should be shed first")
+    void shouldShedLowPriorityFirst() {
+        inflight.set(800);
+
+        assertThat(controller.admit(controller.resolvePriority("product-service"))).isFalse();
+        assertThat(controller.admit(controller.resolvePriority("user-service"))).isTrue();
+        assertThat(controller.admit(RequestPriority.HIGH)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Event loop lag should shed everything except critical traffic")
+    void shouldShedOnEventLoopLag() {
+        lagMillis = 100;
+
+        assertThat(controller.getPressure()).isEqualTo(2.0);
+        assertThat(controller.admit(RequestPriority.HIGH)).isFalse();
+        assertThat(controller.admit(RequestPriority.NORMAL)).isFalse();
+        assertThat(controller.admit(controller.resolvePriority("auth-service"))).isTrue();
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.daoninhthai.gateway.admission;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for EventLoopLagMonitor against a real single-threaded event loop.
+ */
+class EventLoopLagMonitorTest {
+
+    private final DefaultEventLoopGroup group = new DefaultEventLoopGroup(1);
+
+    @AfterEach
+    void tearDown() {
+        group.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    @DisplayName("Blocked event loop should show up as lag")
+    void blockedLoopShouldShowLag() throws Exception {
+        EventLoopLagMonitor monitor = new EventLoopLagMonitor(group, Duration.ofMillis(10));
+        monitor.start();
+        Thread.sleep(50);
+        assertThat(monitor.getLagMillis()).isLessThan(50);
+
+        group.next().execute(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(200);
+
+        assertThat(monitor.getLagMillis()).isGreaterThan(100);
+        monitor.stop();
+    }
+
+}
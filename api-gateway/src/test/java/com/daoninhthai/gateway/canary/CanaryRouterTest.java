@@ -0,0 +1,116 @@
+package com.daoninhthai.gateway.canary;
+
+import com.daoninhthai.gateway.config.CanaryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for CanaryRouter.
+ * Verifies weighted sticky assignment and automatic rollback.
+ */
+class CanaryRouterTest {
+
+    private static final String ROUTE = "user-service";
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private CanaryConfig properties;
+    private CanaryConfig.Canary canary;
+    private CanaryRouter router;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CanaryConfig();
+        properties.setMinSamples(50);
+        canary = new CanaryConfig.Canary();
+        canary.setService("user-service-v2");
+        canary.setWeight(10);
+        properties.getRoutes().put(ROUTE, canary);
+        router = new CanaryRouter(properties, new SimpleMeterRegistry(), clock::get);
+    }
+
+    private void traffic(CanaryGroup group, int requests, long latencyMillis, int failures) {
+        for (int i = 0; i < requests; i++) {
+            router.record(ROUTE, group, TimeUnit.MILLISECONDS.toNanos(latencyMillis), i < failures);
+        }
+    }
+
+    @Test
+    @DisplayName("Clients should be split by weight and stay in their group")
+    void shouldSplitStickily() {
+        int canaryClients = 0;
+        for (int i = 0; i < 10_000; i++) {
+            CanaryGroup group = router.select(ROUTE, "user:" + i);
+            assertThat(router.select(ROUTE, "user:" + i)).isEqualTo(group);
+            if (group == CanaryGroup.CANARY) {
+                canaryClients++;
+            }
+        }
+        assertThat(canaryClients).isBetween(800, 1200);
+
+        assertThat(router.select("order-service", "user:1")).isEqualTo(CanaryGroup.BASELINE);
+    }
+
+    @Test
+    @DisplayName("Raising the weight should only move baseline clients to the canary")
+    void shouldKeepCanaryClientsWhenWeightGrows() {
+        boolean[] before = new boolean[1000];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = router.select(ROUTE, "user:" + i) == CanaryGroup.CANARY;
+        }
+        canary.setWeight(50);
+        for (int i = 0; i < before.length; i++) {
+            if (before[i]) {
+                assertThat(router.select(ROUTE, "user:" + i)).isEqualTo(CanaryGroup.CANARY);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A failing canary should be rolled back until the weight is changed")
+    void shouldRollBackFailingCanary() {
+        traffic(CanaryGroup.BASELINE, 500, 20, 5);
+        traffic(CanaryGroup.CANARY, 60, 20, 12);
+
+        router.evaluate();
+
+        assertThat(router.getWeight(ROUTE)).isZero();
+        assertThat(router.select(ROUTE, "user:1")).isEqualTo(CanaryGroup.BASELINE);
+
+        canary.setWeight(5);
+        assertThat(router.getWeight(ROUTE)).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("A slow canary should be rolled back")
+    void shouldRollBackSlowCanary() {
+        traffic(CanaryGroup.BASELINE, 500, 20, 0);
+        traffic(CanaryGroup.CANARY, 100, 80, 0);
+
+        router.evaluate();
+
+        assertThat(router.getState(ROUTE).isRolledBack()).isTrue();
+    }
+
+    @Test
+    @DisplayName("A healthy canary or one without enough samples should be kept")
+    void shouldKeepHealthyCanary() {
+        traffic(CanaryGroup.BASELINE, 500, 20, 5);
+        traffic(CanaryGroup.CANARY, 100, 21, 1);
+        router.evaluate();
+        assertThat(router.getWeight(ROUTE)).isEqualTo(10);
+
+        setUp();
+        traffic(CanaryGroup.BASELINE, 500, 20, 0);
+        traffic(CanaryGroup.CANARY, 10, 500, 10);
+        router.evaluate();
+        assertThat(router.getWeight(ROUTE)).isEqualTo(10);
+    }
+
+}
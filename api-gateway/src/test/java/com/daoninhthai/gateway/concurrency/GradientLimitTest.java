@@ -0,0 +1,102 @@
+package com.daoninhthai.gateway.concurrency;
+
+import com.daoninhthai.gateway.config.ConcurrencyLimitConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for GradientLimit and AdaptiveConcurrencyLimiter.
+ * Drives the limit with synthetic RTT samples, one sample window at a time.
+ */
+class GradientLimitTest {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private ConcurrencyLimitConfig.Limit config;
+    private GradientLimit limit;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        config = new ConcurrencyLimitConfig.Limit();
+        config.setInitialLimit(20);
+        config.setMinLimit(5);
+        config.setMaxLimit(100);
+        config.setSampleWindow(Duration.ofSeconds(1));
+        config.setMinSamples(10);
+        limit = new GradientLimit(config);
+    }
+
+    /**
+     * Feed one full sample window with the given RTT and in-flight count.
+     */
+    private void window(long rttMillis, int inflight, boolean dropped) {
+        for (int i = 0; i < 10; i++) {
+            now += WINDOW_NANOS / 9 + 1;
+            limit.onSample(now, TimeUnit.MILLISECONDS.toNanos(rttMillis), inflight, dropped);
+        }
+    }
+
+    @Test
+    @DisplayName("Limit should grow while latency stays at the baseline")
+    void shouldGrowAtBaselineLatency() {
+        for (int i = 0; i < 20; i++) {
+            window(10, limit.getLimit(), false);
+        }
+
+        assertThat(limit.getLimit()).isGreaterThan(20);
+        assertThat(limit.getRttNoLoadMillis()).isEqualTo(10.0);
+    }
+
+    @Test
+    @DisplayName("Limit should shrink when queueing inflates latency")
+    void shouldShrinkWhenLatencyRises() {
+        window(10, 20, false);
+        for (int i = 0; i < 20; i++) {
+            window(50, limit.getLimit(), false);
+        }
+
+        assertThat(limit.getLimit()).isLessThan(20).isGreaterThanOrEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Drops should back off multiplicatively")
+    void shouldBackOffOnDrops() {
+        window(10, 20, true);
+
+        assertThat(limit.getLimit()).isEqualTo(18);
+    }
+
+    @Test
+    @DisplayName("Limit should not change when it was not the bottleneck")
+    void shouldIgnoreAppLimitedWindows() {
+        window(10, 20, false);
+        int before = limit.getLimit();
+        window(100, 2, false);
+
+        assertThat(limit.getLimit()).isEqualTo(before);
+    }
+
+    @Test
+    @DisplayName("Limiter should reject requests beyond the limit")
+    void limiterShouldRejectBeyondLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("order-service", limit);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getRejected()).isEqualTo(1);
+
+        limiter.cancel();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.getInflight()).isEqualTo(20);
+    }
+
+}
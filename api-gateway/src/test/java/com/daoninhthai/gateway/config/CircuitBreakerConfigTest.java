@@ -0,0 +1,52 @@
+package com.daoninhthai.gateway.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.support.NotFoundException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for CircuitBreakerConfig.
+ * Verifies which failures the route circuit breakers record next to per-instance breakers.
+ */
+class CircuitBreakerConfigTest {
+
+    private LoadBalancerConfig loadBalancerConfig;
+
+    @BeforeEach
+    void setUp() {
+        loadBalancerConfig = new LoadBalancerConfig();
+        loadBalancerConfig.getInstanceCircuitBreaker().getRouteBreakers().add("product-service-cb");
+    }
+
+    @Test
+    @DisplayName("Listed lb:// route breakers should record only missing instances and timeouts")
+    void shouldLeaveInstanceFailuresToInstanceBreakers() {
+        Predicate<Throwable> recorded = CircuitBreakerConfig.recordedFailures(loadBalancerConfig, "product-service-cb");
+
+        assertThat(recorded.test(NotFoundException.create(true, "No instances"))).isTrue();
+        assertThat(recorded.test(new TimeoutException())).isTrue();
+        assertThat(recorded.test(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Upstream timed out",
+                new TimeoutException()))).isTrue();
+        assertThat(recorded.test(new ResponseStatusException(HttpStatus.BAD_GATEWAY))).isFalse();
+    }
+
+    @Test
+    @DisplayName("Other route breakers, or all with instance breakers off, should record every failure")
+    void shouldRecordEverythingElsewhere() {
+        assertThat(CircuitBreakerConfig.recordedFailures(loadBalancerConfig, "auth-service-cb")
+                .test(new ResponseStatusException(HttpStatus.BAD_GATEWAY))).isTrue();
+
+        loadBalancerConfig.getInstanceCircuitBreaker().setEnabled(false);
+        assertThat(CircuitBreakerConfig.recordedFailures(loadBalancerConfig, "product-service-cb")
+                .test(new ResponseStatusException(HttpStatus.BAD_GATEWAY))).isTrue();
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.daoninhthai.gateway.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for ConcurrencyLimitConfig.
+ * Verifies that per-service limits are merged over the configured defaults.
+ */
+class ConcurrencyLimitConfigTest {
+
+    @Test
+    @DisplayName("Services should inherit the default settings they do not set themselves")
+    void shouldMergeServiceOverDefaults() {
+        ConcurrencyLimitConfig properties = new ConcurrencyLimitConfig();
+        properties.getDefaults().setMinLimit(8);
+        properties.getDefaults().setRttTolerance(2.0);
+        properties.getDefaults().setSampleWindow(Duration.ofMillis(500));
+        ConcurrencyLimitConfig.ServiceLimit orders = new ConcurrencyLimitConfig.ServiceLimit();
+        orders.setInitialLimit(10);
+        orders.setMaxLimit(200);
+        properties.getServices().put("order-service", orders);
+
+        ConcurrencyLimitConfig.Limit limit = properties.resolveLimit("order-service");
+
+        assertThat(limit.getInitialLimit()).isEqualTo(10);
+        assertThat(limit.getMaxLimit()).isEqualTo(200);
+        assertThat(limit.getMinLimit()).isEqualTo(8);
+        assertThat(limit.getRttTolerance()).isEqualTo(2.0);
+        assertThat(limit.getSampleWindow()).isEqualTo(Duration.ofMillis(500));
+        assertThat(properties.resolveLimit("product-service")).isSameAs(properties.getDefaults());
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.daoninhthai.gateway.fallback;
+
+import com.daoninhthai.gateway.config.FallbackConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for FallbackStore.
+ * Verifies which responses are kept, their retention and the memory bounds.
+ */
+class FallbackStoreTest {
+
+    private static final String ROUTE = "product-service";
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private FallbackConfig properties;
+    private FallbackStore store;
+
+    @BeforeEach
+    void setUp() {
+        properties = new FallbackConfig();
+        properties.getRoutes().add(ROUTE);
+        properties.setRetention(Duration.ofHours(24));
+        properties.setMaxEntries(10);
+        properties.setMaxSize(DataSize.ofMegabytes(1));
+        store = new FallbackStore(properties, new SimpleMeterRegistry(), clock::get);
+    }
+
+    private static HttpHeaders json() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(2);
+        return headers;
+    }
+
+    private String key(String path) {
+        return store.getKey(ROUTE, "GET", URI.create("http://gateway" + path));
+    }
+
+    private void put(String path) {
+        store.put(key(path), 200, json(), "{}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Only GET requests on configured routes should have a key")
+    void shouldKeyConfiguredGetRequests() {
+        URI uri = URI.create("http://gateway/api/products/42?fields=name");
+
+        assertThat(store.getKey(ROUTE, "GET", uri)).isEqualTo("product-service /api/products/42?fields=name");
+        assertThat(store.getKey(ROUTE, "POST", uri)).isNull();
+        assertThat(store.getKey("user-service", "GET", uri)).isNull();
+    }
+
+    @Test
+    @DisplayName("Latest response should be served without its framing headers")
+    void shouldKeepLatestResponse() {
+        put("/api/products/42");
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        store.put(key("/api/products/42"), 200, json(), "{\"id\":42}".getBytes(StandardCharsets.UTF_8));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        FallbackStore.Entry entry = store.get(key("/api/products/42"));
+
+        assertThat(new String(entry.getBody(), StandardCharsets.UTF_8)).isEqualTo("{\"id\":42}");
+        assertThat(entry.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(entry.getHeaders().containsKey(HttpHeaders.CONTENT_LENGTH)).isFalse();
+        assertThat(store.getAgeSeconds(entry)).isEqualTo(30);
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Private, cookie-setting and already stale responses should not be kept")
+    void shouldRejectUnstorableResponses() {
+        HttpHeaders privateResponse = json();
+        privateResponse.setCacheControl("private, max-age=60");
+        HttpHeaders cookie = json();
+        cookie.add(HttpHeaders.SET_COOKIE, "session=1");
+        HttpHeaders stale = json();
+        stale.set(properties.getStaleHeader(), "120");
+
+        assertThat(store.isStorable(json())).isTrue();
+        assertThat(store.isStorable(privateResponse)).isFalse();
+        assertThat(store.isStorable(cookie)).isFalse();
+        assertThat(store.isStorable(stale)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Responses past the retention time should no longer be served")
+    void shouldExpireAfterRetention() {
+        put("/api/products/1");
+        put("/api/products/2");
+        clock.addAndGet(TimeUnit.HOURS.toNanos(25));
+
+        assertThat(store.get(key("/api/products/1"))).isNull();
+        store.evictExpired();
+        assertThat(store.size()).isZero();
+        assertThat(store.getSize()).isZero();
+    }
+
+    @Test
+    @DisplayName("Oldest responses should be dropped once the store is full")
+    void shouldDropOldestWhenFull() {
+        for (int i = 0; i < 11; i++) {
+            put("/api/products/" + i);
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        }
+
+        assertThat(store.size()).isEqualTo(9);
+        assertThat(store.get(key("/api/products/0"))).isNull();
+        assertThat(store.get(key("/api/products/1"))).isNull();
+        assertThat(store.get(key("/api/products/10"))).isNotNull();
+    }
+
+}
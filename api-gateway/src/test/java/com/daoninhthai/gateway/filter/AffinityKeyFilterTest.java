@@ -0,0 +1,61 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import com.daoninhthai.gateway.loadbalancer.AffinityKeySource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for AffinityKeyFilter.
+ * Verifies that affinity keys are taken from the path, a header or the user.
+ */
+class AffinityKeyFilterTest {
+
+    private final MockServerHttpRequest request = MockServerHttpRequest.get("/api/products/42/reviews")
+            .header("X-Tenant", "acme")
+            .header("X-Auth-UserId", "user-7")
+            .build();
+
+    @Test
+    @DisplayName("Path-segment affinity should use the configured segment")
+    void shouldResolvePathSegmentKey() {
+        LoadBalancerConfig.Affinity affinity = new LoadBalancerConfig.Affinity();
+
+        assertThat(AffinityKeyFilter.resolveKey(request, affinity)).isEqualTo("42");
+    }
+
+    @Test
+    @DisplayName("Header affinity should use the configured header")
+    void shouldResolveHeaderKey() {
+        LoadBalancerConfig.Affinity affinity = new LoadBalancerConfig.Affinity();
+        affinity.setSource(AffinityKeySource.HEADER);
+        affinity.setHeader("X-Tenant");
+
+        assertThat(AffinityKeyFilter.resolveKey(request, affinity)).isEqualTo("acme");
+    }
+
+    @Test
+    @DisplayName("User affinity should use the authenticated user id")
+    void shouldResolveUserKey() {
+        LoadBalancerConfig.Affinity affinity = new LoadBalancerConfig.Affinity();
+        affinity.setSource(AffinityKeySource.USER);
+
+        assertThat(AffinityKeyFilter.resolveKey(request, affinity)).isEqualTo("user-7");
+    }
+
+    @Test
+    @DisplayName("Requests without the key should have no affinity")
+    void shouldResolveMissingKeyToNull() {
+        LoadBalancerConfig.Affinity affinity = new LoadBalancerConfig.Affinity();
+        affinity.setSource(AffinityKeySource.HEADER);
+        affinity.setHeader("X-Region");
+
+        assertThat(AffinityKeyFilter.resolveKey(request, affinity)).isNull();
+        assertThat(AffinityKeyFilter.pathSegment("/api/products", 2)).isNull();
+        assertThat(AffinityKeyFilter.pathSegment("//api//products/", 1)).isEqualTo("products");
+    }
+
+}
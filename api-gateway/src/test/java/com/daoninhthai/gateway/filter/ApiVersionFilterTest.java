@@ -0,0 +1,104 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.ApiVersionConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for ApiVersionFilter and VersionedServiceFilter.
+ * Verifies path rewriting, rejection of unsupported versions and upstream selection.
+ */
+class ApiVersionFilterTest {
+
+    private GatewayFilter filter;
+    private final AtomicReference<ServerWebExchange> forwarded = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        ApiVersionConfig config = new ApiVersionConfig();
+        config.getServiceMapping().put("v2", Collections.singletonMap("user-service", "user-service-v2"));
+        filter = new ApiVersionFilter(config).apply(new ApiVersionFilter.Config());
+    }
+
+    private MockServerWebExchange exchange(String path) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+                .id("user-service-v2")
+                .uri(URI.create("lb://user-service"))
+                .predicate(e -> true)
+                .build());
+        return exchange;
+    }
+
+    private void run(ServerWebExchange exchange) {
+        filter.filter(exchange, e -> {
+            forwarded.set(e);
+            return Mono.empty();
+        }).block();
+    }
+
+    @Test
+    @DisplayName("Versioned paths should be rewritten and routed to the mapped service")
+    void shouldRewriteAndSelectService() {
+        MockServerWebExchange exchange = exchange("/api/v2/users/42?expand=orders");
+        run(exchange);
+
+        ServerWebExchange result = forwarded.get();
+        assertThat(result.getRequest().getURI().getRawPath()).isEqualTo("/api/users/42");
+        assertThat(result.getRequest().getURI().getRawQuery()).isEqualTo("expand=orders");
+        assertThat(result.getRequest().getHeaders().getFirst("X-API-Version")).isEqualTo("v2");
+        assertThat((String) result.getAttribute(ApiVersionFilter.TARGET_SERVICE_ATTR)).isEqualTo("user-service-v2");
+
+        result.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                URI.create("lb://user-service/api/users/42?expand=orders"));
+        new VersionedServiceFilter().filter(result, e -> Mono.empty()).block();
+        assertThat((URI) result.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR))
+                .isEqualTo(URI.create("lb://user-service-v2/api/users/42?expand=orders"));
+    }
+
+    @Test
+    @DisplayName("Versions without a mapping should keep the route's service")
+    void shouldKeepServiceWithoutMapping() {
+        run(exchange("/api/v1/users/42"));
+
+        assertThat(forwarded.get().getRequest().getURI().getRawPath()).isEqualTo("/api/users/42");
+        assertThat((String) forwarded.get().getAttribute(ApiVersionFilter.TARGET_SERVICE_ATTR)).isNull();
+    }
+
+    @Test
+    @DisplayName("Unsupported versions should be rejected with 400")
+    void shouldRejectUnsupportedVersion() {
+        MockServerWebExchange exchange = exchange("/api/v9/users/42");
+        run(exchange);
+
+        assertThat(forwarded.get()).isNull();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    @DisplayName("Only /api/v<digits>/<rest> should count as a versioned path")
+    void shouldParseVersionSegment() {
+        assertThat(ApiVersionFilter.versionEnd("/api/v1/users")).isEqualTo(7);
+        assertThat(ApiVersionFilter.versionEnd("/api/v12/users")).isEqualTo(8);
+        assertThat(ApiVersionFilter.versionEnd("/api/users/1")).isEqualTo(-1);
+        assertThat(ApiVersionFilter.versionEnd("/api/vx/users")).isEqualTo(-1);
+        assertThat(ApiVersionFilter.versionEnd("/api/v1/")).isEqualTo(-1);
+        assertThat(ApiVersionFilter.versionEnd("/api/v1")).isEqualTo(-1);
+    }
+
+}
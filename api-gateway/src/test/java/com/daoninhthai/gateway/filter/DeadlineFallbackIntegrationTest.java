@@ -0,0 +1,79 @@
+package com.daoninhthai.gateway.filter;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+/**
+ * Integration test for request deadlines through a route with a circuit breaker fallback.
+ * Verifies that a request whose deadline runs out gets 504 rather than the route's fallback,
+ * while a hung upstream within the deadline still falls back.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class DeadlineFallbackIntegrationTest {
+
+    private static final DisposableServer UPSTREAM = HttpServer.create()
+            .host("127.0.0.1")
+            .port(0)
+            .route(routes -> routes
+                    .get("/deadline-test/slow", (request, response) -> Mono.never())
+                    .get("/deadline-test/error", (request, response) -> response.status(500).send()))
+            .bindNow();
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @DynamicPropertySource
+    static void routes(DynamicPropertyRegistry registry) {
+        // Load shedding answers 503 itself and would hide the fallback under test
+        registry.add("gateway.admission.enabled", () -> "false");
+        registry.add("gateway.concurrency-limit.enabled", () -> "false");
+        registry.add("spring.cloud.gateway.routes[0].id", () -> "deadline-test");
+        registry.add("spring.cloud.gateway.routes[0].uri", () -> "http://127.0.0.1:" + UPSTREAM.port());
+        registry.add("spring.cloud.gateway.routes[0].predicates[0]", () -> "Path=/deadline-test/**");
+        registry.add("spring.cloud.gateway.routes[0].filters[0].name", () -> "CircuitBreaker");
+        registry.add("spring.cloud.gateway.routes[0].filters[0].args.name", () -> "deadline-test-cb");
+        registry.add("spring.cloud.gateway.routes[0].filters[0].args.fallbackUri",
+                () -> "forward:/fallback/product-service");
+        registry.add("spring.cloud.gateway.routes[0].filters[0].args.statusCodes", () -> "500");
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        UPSTREAM.disposeNow();
+    }
+
+    @Test
+    @DisplayName("A request whose deadline runs out should get 504, not the route's fallback")
+    void shouldNotFallBackWhenDeadlineExceeded() {
+        webTestClient.mutate().responseTimeout(Duration.ofSeconds(10)).build()
+                .get().uri("/deadline-test/slow")
+                .header("X-Request-Timeout", "200")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    @DisplayName("Upstream failures within the deadline should still get the route's fallback")
+    void shouldFallBackOnUpstreamFailure() {
+        webTestClient.get().uri("/deadline-test/error")
+                .header("X-Request-Timeout", "5000")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectBody().jsonPath("$.service").isEqualTo("Product Service");
+    }
+
+}
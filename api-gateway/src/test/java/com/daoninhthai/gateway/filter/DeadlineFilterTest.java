@@ -0,0 +1,137 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.AdaptiveTimeoutConfig;
+import com.daoninhthai.gateway.config.DeadlineConfig;
+import com.daoninhthai.gateway.exception.DeadlineExceededException;
+import com.daoninhthai.gateway.timeout.AdaptiveTimeouts;
+import com.daoninhthai.gateway.util.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for DeadlineFilter and the deadline handling of AdaptiveTimeoutFilter.
+ * Verifies accepted and assigned budgets, the header sent downstream and shedding.
+ */
+class DeadlineFilterTest {
+
+    private static final String HEADER = "X-Request-Timeout";
+
+    private DeadlineConfig properties;
+    private DeadlineFilter filter;
+    private AdaptiveTimeoutFilter timeoutFilter;
+
+    @BeforeEach
+    void setUp() {
+        properties = new DeadlineConfig();
+        properties.setDefaultTimeout(Duration.ofSeconds(10));
+        properties.setMaxTimeout(Duration.ofSeconds(30));
+        filter = new DeadlineFilter(properties);
+        AdaptiveTimeoutConfig timeoutConfig = new AdaptiveTimeoutConfig();
+        timeoutConfig.setInitialTimeout(Duration.ofSeconds(4));
+        timeoutFilter = new AdaptiveTimeoutFilter(new AdaptiveTimeouts(timeoutConfig, new SimpleMeterRegistry()),
+                properties);
+    }
+
+    private MockServerWebExchange exchange(MockServerHttpRequest request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+                .id("order-service")
+                .uri(URI.create("lb://order-service"))
+                .predicate(e -> true)
+                .build());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                URI.create("http://10.0.0.1:8080/api/orders/42"));
+        return exchange;
+    }
+
+    private MockServerWebExchange admit(MockServerHttpRequest request) {
+        MockServerWebExchange exchange = exchange(request);
+        filter.filter(exchange, e -> Mono.empty()).block();
+        return exchange;
+    }
+
+    @Test
+    @DisplayName("Budget sent by the client should become the deadline, up to the maximum")
+    void shouldAcceptClientBudget() {
+        Duration accepted = RequestDeadline.getRemaining(
+                admit(MockServerHttpRequest.get("/api/orders/42").header(HEADER, "250").build()));
+        Duration capped = RequestDeadline.getRemaining(
+                admit(MockServerHttpRequest.get("/api/orders/42").header(HEADER, "600000").build()));
+
+        assertThat(accepted).isBetween(Duration.ofMillis(200), Duration.ofMillis(250));
+        assertThat(capped).isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30));
+    }
+
+    @Test
+    @DisplayName("Requests without a valid budget should get the default deadline")
+    void shouldAssignDefaultBudget() {
+        Duration missing = RequestDeadline.getRemaining(admit(MockServerHttpRequest.get("/api/orders/42").build()));
+        Duration invalid = RequestDeadline.getRemaining(
+                admit(MockServerHttpRequest.get("/api/orders/42").header(HEADER, "soon").build()));
+
+        assertThat(missing).isBetween(Duration.ofSeconds(9), Duration.ofSeconds(10));
+        assertThat(invalid).isBetween(Duration.ofSeconds(9), Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("Requests whose budget is already spent should be rejected")
+    void shouldRejectSpentBudget() {
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/42")
+                .header(HEADER, "0").build());
+
+        assertThatThrownBy(() -> filter.filter(exchange, e -> Mono.empty()).block())
+                .isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    @DisplayName("Proxied requests should carry the remaining budget")
+    void shouldPropagateRemainingBudget() {
+        MockServerWebExchange exchange = admit(MockServerHttpRequest.get("/api/orders/42")
+                .header(HEADER, "2000").build());
+
+        HttpHeaders headers = filter.filter(exchange.getRequest().getHeaders(), exchange);
+
+        assertThat(Long.parseLong(headers.getFirst(HEADER))).isBetween(1000L, 2000L);
+    }
+
+    @Test
+    @DisplayName("Upstream timeout should narrow the budget sent downstream")
+    void shouldNarrowBudgetToAttemptTimeout() {
+        MockServerWebExchange exchange = admit(MockServerHttpRequest.get("/api/orders/42").build());
+
+        timeoutFilter.filter(exchange, e -> Mono.empty()).block();
+        HttpHeaders headers = filter.filter(exchange.getRequest().getHeaders(), exchange);
+
+        assertThat(Long.parseLong(headers.getFirst(HEADER))).isBetween(3000L, 4000L);
+    }
+
+    @Test
+    @DisplayName("Requests with too little budget left should not reach the upstream")
+    void shouldShedExhaustedBudget() {
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/orders/42").build());
+        RequestDeadline.tighten(exchange, Duration.ofMillis(1));
+        AtomicBoolean called = new AtomicBoolean();
+
+        assertThatThrownBy(() -> timeoutFilter.filter(exchange, e -> {
+            called.set(true);
+            return Mono.empty();
+        }).block()).isInstanceOf(DeadlineExceededException.class);
+        assertThat(called).isFalse();
+    }
+
+}
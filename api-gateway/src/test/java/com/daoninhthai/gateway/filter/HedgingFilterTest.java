@@ -0,0 +1,206 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.HedgingConfig;
+import com.daoninhthai.gateway.hedging.RequestHedger;
+import com.daoninhthai.gateway.loadbalancer.LoadBalancerHints;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.test.StepVerifier;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for HedgingFilter.
+ * Verifies which attempt wins, that the loser is closed and that the winner's status,
+ * headers and attributes are applied to the exchange, against a stub filter chain.
+ */
+class HedgingFilterTest {
+
+    private static final String ROUTE = "product-service";
+    private static final String ATTEMPT_HEADER = "X-Attempt";
+    private static final String ATTEMPT_ATTR = "attempt";
+    private static final Duration SLOW = Duration.ofMillis(300);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HedgingConfig properties;
+    private HedgingFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        properties = new HedgingConfig();
+        properties.getRoutes().add(ROUTE);
+        properties.setMinSamples(100);
+        properties.setBudgetCapacity(1);
+        filter = filter();
+    }
+
+    /**
+     * Filter whose route is hedged after about 20ms.
+     */
+    private HedgingFilter filter() {
+        RequestHedger hedger = new RequestHedger(properties, meterRegistry);
+        for (int i = 0; i < 100; i++) {
+            hedger.recordLatency(ROUTE, TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        return new HedgingFilter(hedger);
+    }
+
+    private MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/products/42"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+                .id(ROUTE)
+                .uri(URI.create("lb://product-service"))
+                .predicate(e -> true)
+                .build());
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                URI.create("lb://product-service/api/products/42"));
+        return exchange;
+    }
+
+    /**
+     * Chain that runs the n-th attempt through the n-th handler and records the attempts.
+     */
+    @SafeVarargs
+    private static GatewayFilterChain chain(List<ServerWebExchange> attempts,
+                                            Function<ServerWebExchange, Mono<Void>>... handlers) {
+        return attempt -> {
+            attempts.add(attempt);
+            return handlers[attempts.size() - 1].apply(attempt);
+        };
+    }
+
+    /**
+     * Handler that picks an instance, then responds with the given status after the delay.
+     */
+    private static Function<ServerWebExchange, Mono<Void>> respond(String name, int status, Duration delay,
+                                                                   Connection connection) {
+        return attempt -> {
+            attempt.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR,
+                    new DefaultResponse(new DefaultServiceInstance(name, ROUTE, "10.0.0.1", 8080, false)));
+            attempt.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR, connection);
+            return Mono.delay(delay)
+                    .doOnNext(tick -> {
+                        attempt.getResponse().setRawStatusCode(status);
+                        attempt.getResponse().getHeaders().set(ATTEMPT_HEADER, name);
+                        attempt.getAttributes().put(ATTEMPT_ATTR, name);
+                    })
+                    .then();
+        };
+    }
+
+    private double counter(String name) {
+        return meterRegistry.counter(name, "route", ROUTE).count();
+    }
+
+    @Test
+    @DisplayName("A primary responding before the hedge delay should win without a hedge")
+    void primaryShouldWin() {
+        MockServerWebExchange exchange = exchange();
+        List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+        Connection connection = mock(Connection.class);
+
+        filter.filter(exchange, chain(attempts, respond("primary", 201, Duration.ZERO, connection))).block();
+
+        assertThat(attempts).hasSize(1);
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(201);
+        assertThat(exchange.getResponse().getHeaders().getFirst(ATTEMPT_HEADER)).isEqualTo("primary");
+        assertThat(exchange.<String>getAttribute(ATTEMPT_ATTR)).isEqualTo("primary");
+        verify(connection, never()).dispose();
+        assertThat(counter("gateway_hedges_sent_total")).isZero();
+    }
+
+    @Test
+    @DisplayName("A hedge responding first should win, exclude the primary's instance and close the primary")
+    void hedgeShouldWin() {
+        MockServerWebExchange exchange = exchange();
+        List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+        Connection primaryConnection = mock(Connection.class);
+        Connection hedgeConnection = mock(Connection.class);
+
+        filter.filter(exchange, chain(attempts,
+                respond("primary", 200, SLOW, primaryConnection),
+                respond("hedge", 203, Duration.ZERO, hedgeConnection))).block();
+
+        assertThat(attempts).hasSize(2);
+        assertThat(attempts.get(1).getRequest().getHeaders().getFirst(LoadBalancerHints.EXCLUDED_INSTANCES_HEADER))
+                .isEqualTo("primary");
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(203);
+        assertThat(exchange.getResponse().getHeaders().getFirst(ATTEMPT_HEADER)).isEqualTo("hedge");
+        assertThat(exchange.<String>getAttribute(ATTEMPT_ATTR)).isEqualTo("hedge");
+        verify(primaryConnection).dispose();
+        verify(hedgeConnection, never()).dispose();
+        assertThat(counter("gateway_hedges_sent_total")).isEqualTo(1);
+        assertThat(counter("gateway_hedges_won_total")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A primary failing before the hedge delay should fail the request without a hedge")
+    void primaryErrorShouldNotBeHedged() throws InterruptedException {
+        MockServerWebExchange exchange = exchange();
+        List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+
+        StepVerifier.create(filter.filter(exchange, chain(attempts,
+                        attempt -> Mono.error(new ConnectException("Connection refused")))))
+                .expectError(ConnectException.class)
+                .verify(Duration.ofSeconds(5));
+
+        Thread.sleep(100);
+        assertThat(attempts).hasSize(1);
+        assertThat(counter("gateway_hedges_sent_total")).isZero();
+    }
+
+    @Test
+    @DisplayName("Without budget the slow primary should be awaited and no hedge sent")
+    void exhaustedBudgetShouldNotHedge() {
+        properties.setBudgetCapacity(0);
+        filter = filter();
+        MockServerWebExchange exchange = exchange();
+        List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+
+        filter.filter(exchange, chain(attempts, respond("primary", 200, SLOW, mock(Connection.class)))).block();
+
+        assertThat(attempts).hasSize(1);
+        assertThat(exchange.getResponse().getHeaders().getFirst(ATTEMPT_HEADER)).isEqualTo("primary");
+        assertThat(counter("gateway_hedges_budget_exhausted_total")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("When every attempt fails the error of the primary should be passed on")
+    void failedAttemptsShouldBeUnwrapped() {
+        MockServerWebExchange exchange = exchange();
+        List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+
+        StepVerifier.create(filter.filter(exchange, chain(attempts,
+                        attempt -> Mono.delay(SLOW).then(Mono.error(new ConnectException("primary"))),
+                        attempt -> Mono.error(new ConnectException("hedge")))))
+                .expectErrorMatches(e -> e instanceof ConnectException && "primary".equals(e.getMessage()))
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(attempts).hasSize(2);
+        assertThat(exchange.getResponse().getHeaders()).doesNotContainKey(ATTEMPT_HEADER);
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import com.daoninhthai.gateway.loadbalancer.LoadBalancerHints;
+import com.daoninhthai.gateway.ratelimit.RateLimitPolicyResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for InternalHeadersFilter.
+ * Verifies that clients cannot set internal or tier headers, while the tier headers set by
+ * the gateway still reach the services.
+ */
+class InternalHeadersFilterTest {
+
+    private final InternalHeadersFilter filter = new InternalHeadersFilter();
+
+    @Test
+    @DisplayName("Spoofed plan and roles on a route without authentication should resolve to the default tier")
+    void shouldDropSpoofedTierHeaders() {
+        RateLimitConfig properties = new RateLimitConfig();
+        properties.getTiers().put("premium", Arrays.asList("plan:premium", "role:ROLE_PREMIUM"));
+        RateLimitConfig.Policy premium = new RateLimitConfig.Policy();
+        premium.setTier("premium");
+        premium.setReplenishRate(50);
+        properties.getPolicies().add(premium);
+        RateLimitPolicyResolver resolver = new RateLimitPolicyResolver(properties, new SimpleMeterRegistry());
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/auth/login")
+                .header(RateLimitPolicyResolver.PLAN_HEADER, "premium")
+                .header(RateLimitPolicyResolver.ROLES_HEADER, "ROLE_PREMIUM")
+                .header(LoadBalancerHints.AFFINITY_KEY_HEADER, "42"));
+        AtomicReference<ServerWebExchange> forwarded = new AtomicReference<>();
+
+        filter.filter(exchange, next -> {
+            forwarded.set(next);
+            return Mono.empty();
+        }).block();
+
+        String tier = resolver.resolveTier(forwarded.get().getRequest());
+        assertThat(tier).isEqualTo(RateLimitPolicyResolver.DEFAULT_TIER);
+        assertThat(resolver.resolve("auth-service", tier).getReplenishRate()).isEqualTo(properties.getReplenishRate());
+        assertThat(forwarded.get().getRequest().getHeaders()).doesNotContainKeys(
+                RateLimitPolicyResolver.PLAN_HEADER, RateLimitPolicyResolver.ROLES_HEADER,
+                LoadBalancerHints.AFFINITY_KEY_HEADER);
+    }
+
+    @Test
+    @DisplayName("Proxied requests should keep the tier headers but not the load balancer hints")
+    void shouldKeepTierHeadersForServices() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(RateLimitPolicyResolver.PLAN_HEADER, "premium");
+        headers.add(LoadBalancerHints.EXCLUDED_INSTANCES_HEADER, "order-service-1");
+
+        HttpHeaders proxied = filter.filter(headers, MockServerWebExchange.from(MockServerHttpRequest.get("/")));
+
+        assertThat(proxied.getFirst(RateLimitPolicyResolver.PLAN_HEADER)).isEqualTo("premium");
+        assertThat(proxied).doesNotContainKey(LoadBalancerHints.EXCLUDED_INSTANCES_HEADER);
+    }
+
+}
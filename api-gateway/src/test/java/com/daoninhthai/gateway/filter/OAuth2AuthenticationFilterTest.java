@@ -0,0 +1,118 @@
+package com.daoninhthai.gateway.filter;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for OAuth2AuthenticationFilter.
+ * Verifies which introspection failures mean the auth server is unavailable (503) rather
+ * than that the token is invalid (401), using a real saturated connection pool.
+ */
+class OAuth2AuthenticationFilterTest {
+
+    private DisposableServer server;
+    private ConnectionProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        // An auth server that never answers keeps the only pooled connection busy
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes.post("/introspect", (request, response) -> Mono.never()))
+                .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (provider != null) {
+            provider.disposeLater().block(Duration.ofSeconds(5));
+        }
+        server.disposeNow();
+    }
+
+    private WebClient webClient(ConnectionProvider provider) {
+        this.provider = provider;
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider)))
+                .baseUrl("http://127.0.0.1:" + server.port())
+                .build();
+    }
+
+    private static Mono<String> introspect(WebClient webClient) {
+        return webClient.post().uri("/introspect").retrieve().bodyToMono(String.class);
+    }
+
+    @Test
+    @DisplayName("A full pending-acquire queue should count as introspection unavailable")
+    void shouldTreatPendingLimitAsUnavailable() {
+        WebClient webClient = webClient(ConnectionProvider.builder("introspection-test")
+                .maxConnections(1)
+                .pendingAcquireMaxCount(1)
+                .build());
+        introspect(webClient).subscribe();
+        introspect(webClient).subscribe();
+
+        Throwable error = introspect(webClient).then(Mono.<Throwable>empty())
+                .onErrorResume(Mono::just)
+                .block(Duration.ofSeconds(5));
+
+        assertThat(error).isNotNull();
+        assertThat(OAuth2AuthenticationFilter.isIntrospectionUnavailable(error)).isTrue();
+    }
+
+    @Test
+    @DisplayName("A pending-acquire timeout should count as introspection unavailable")
+    void shouldTreatAcquireTimeoutAsUnavailable() {
+        WebClient webClient = webClient(ConnectionProvider.builder("introspection-test")
+                .maxConnections(1)
+                .pendingAcquireTimeout(Duration.ofMillis(100))
+                .build());
+        introspect(webClient).subscribe();
+
+        Throwable error = introspect(webClient).then(Mono.<Throwable>empty())
+                .onErrorResume(Mono::just)
+                .block(Duration.ofSeconds(5));
+
+        assertThat(error).isNotNull();
+        assertThat(OAuth2AuthenticationFilter.isIntrospectionUnavailable(error)).isTrue();
+    }
+
+    @Test
+    @DisplayName("An open breaker or a 5xx should count as unavailable, a 4xx should not")
+    void shouldClassifyOtherFailures() {
+        CircuitBreaker breaker = CircuitBreaker.ofDefaults("oauth2-introspection");
+        breaker.transitionToOpenState();
+
+        assertThat(OAuth2AuthenticationFilter.isIntrospectionUnavailable(
+                CallNotPermittedException.createCallNotPermittedException(breaker))).isTrue();
+        assertThat(OAuth2AuthenticationFilter.isIntrospectionUnavailable(WebClientResponseException.create(
+                HttpStatus.BAD_GATEWAY.value(), "Bad Gateway", HttpHeaders.EMPTY, new byte[0],
+                StandardCharsets.UTF_8))).isTrue();
+        assertThat(OAuth2AuthenticationFilter.isIntrospectionUnavailable(WebClientResponseException.create(
+                HttpStatus.BAD_REQUEST.value(), "Bad Request", HttpHeaders.EMPTY, new byte[0],
+                StandardCharsets.UTF_8))).isFalse();
+        assertThat(OAuth2AuthenticationFilter.isIntrospectionUnavailable(new IllegalStateException("bad token")))
+                .isFalse();
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.daoninhthai.gateway.filter;
+
+import com.daoninhthai.gateway.config.RetryConfig;
+import com.daoninhthai.gateway.loadbalancer.LoadBalancerHints;
+import com.daoninhthai.gateway.retry.RequestRetrier;
+import com.daoninhthai.gateway.util.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClientResponse;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for RetryFilter.
+ * Verifies retries on retryable statuses, the instances excluded from later attempts, the
+ * deadline and the outcome applied to the exchange, against a stub filter chain.
+ */
+class RetryFilterTest {
+
+    private static final String ROUTE = "product-service";
+    private static final String ATTEMPT_HEADER = "X-Attempt";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RetryFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        RetryConfig properties = new RetryConfig();
+        RetryConfig.Policy policy = new RetryConfig.Policy();
+        policy.setFirstBackoff(Duration.ofMillis(10));
+        properties.getRoutes().put(ROUTE, policy);
+        filter = new RetryFilter(new RequestRetrier(properties, meterRegistry));
+    }
+
+    private MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/products/42"));
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, Route.async()
+                .id(ROUTE)
+                .uri(URI.create("lb://product-service"))
+                .predicate(e -> true)
+                .build());
+        return exchange;
+    }
+
+    /**
+     * Chain that records the attempts and answers the n-th one from the n-th instance with
+     * the n-th status.
+     */
+    private static GatewayFilterChain chain(List<ServerWebExchange> attempts, List<Connection> connections,
+                                            int... statuses) {
+        return attempt -> {
+            attempts.add(attempt);
+            int index = attempts.size() - 1;
+            Connection connection = mock(Connection.class);
+            connections.add(connection);
+            attempt.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR,
+                    new DefaultResponse(new DefaultServiceInstance(ROUTE + "-" + index, ROUTE, "10.0.0." + index,
+                            8080, false)));
+            attempt.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR, connection);
+            attempt.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR, mock(HttpClientResponse.class));
+            attempt.getResponse().setRawStatusCode(statuses[index]);
+            attempt.getResponse().getHeaders().set(ATTEMPT_HEADER, String.valueOf(index));
+            return Mono.empty();
+        };
+    }
+
+    @Test
+    @DisplayName("A retryable status should be retried on another instance")
+    void shouldRetryOnAnotherInstance() {
+        MockServerWebExchange exchange = exchange();
+        List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+        List<Connection> connections = new CopyOnWriteArrayList<>();
+
+        filter.filter(exchange, chain(attempts, connections, 503, 503, 200)).block(Duration.ofSeconds(5));
+
+        assertThat(attempts).hasSize(3);
+        assertThat(attempts.get(0).getRequest().getHeaders()).doesNotContainKey(LoadBalancerHints.EXCLUDED_INSTANCES_HEADER);
+        assertThat(attempts.get(1).getRequest().getHeaders().getFirst(LoadBalancerHints.EXCLUDED_INSTANCES_HEADER))
+                .isEqualTo("product-service-0");
+        assertThat(attempts.get(2).getRequest().getHeaders().getFirst(LoadBalancerHints.EXCLUDED_INSTANCES_HEADER))
+                .isEqualTo("product-service-0,product-service-1");
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(200);
+        assertThat(exchange.getResponse().getHeaders().getFirst(ATTEMPT_HEADER)).isEqualTo("2");
+        assertThat(exchange.getRequest().getHeaders()).doesNotContainKey(LoadBalancerHints.EXCLUDED_INSTANCES_HEADER);
+        verify(connections.get(0)).dispose();
+        verify(connections.get(1)).dispose();
+        verify(connections.get(2), never()).dispose();
+        assertThat(meterRegistry.counter("gateway_retries_total", "route", ROUTE).count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("No retry should be made once the deadline is closer than the backoff")
+    void shouldNotRetryPastDeadline() {
+        MockServerWebExchange exchange = exchange();
+        RequestDeadline.tighten(exchange, Duration.ZERO);
+        List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+        List<Connection> connections = new CopyOnWriteArrayList<>();
+
+        filter.filter(exchange, chain(attempts, connections, 503, 200)).block(Duration.ofSeconds(5));
+
+        assertThat(attempts).hasSize(1);
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(503);
+        assertThat(exchange.getResponse().getHeaders().getFirst(ATTEMPT_HEADER)).isEqualTo("0");
+        verify(connections.get(0), never()).dispose();
+        assertThat(meterRegistry.counter("gateway_retries_skipped_total", "route", ROUTE, "reason", "deadline").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A status that is not retryable should be applied to the exchange as is")
+    void shouldApplyOutcomeThatIsNotRetried() {
+        MockServerWebExchange exchange = exchange();
+        List<ServerWebExchange> attempts = new CopyOnWriteArrayList<>();
+        List<Connection> connections = new CopyOnWriteArrayList<>();
+
+        filter.filter(exchange, chain(attempts, connections, 404)).block(Duration.ofSeconds(5));
+
+        assertThat(attempts).hasSize(1);
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(404);
+        assertThat(exchange.getResponse().getHeaders().getFirst(ATTEMPT_HEADER)).isEqualTo("0");
+        assertThat(exchange.getAttributes()).containsKey(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+        assertThat(meterRegistry.counter("gateway_retries_total", "route", ROUTE).count()).isZero();
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.daoninhthai.gateway.health;
+
+import com.daoninhthai.gateway.config.HealthProbeConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for HealthProber and the health indicators reading its snapshots.
+ * Instances come from a stub discovery client and answer from a stub exchange function.
+ */
+class HealthProberTest {
+
+    private final Map<String, List<ServiceInstance>> instances = new HashMap<>();
+    private HealthProbeConfig properties;
+    private HealthProber prober;
+
+    @BeforeEach
+    void setUp() {
+        properties = new HealthProbeConfig();
+        properties.setTimeout(Duration.ofMillis(300));
+
+        ReactiveDiscoveryClient discoveryClient = new ReactiveDiscoveryClient() {
+            @Override
+            public String description() {
+                return "stub";
+            }
+
+            @Override
+            public Flux<ServiceInstance> getInstances(String serviceId) {
+                return Flux.fromIterable(instances.getOrDefault(serviceId, Collections.emptyList()));
+            }
+
+            @Override
+            public Flux<String> getServices() {
+                return Flux.fromIterable(instances.keySet());
+            }
+        };
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    String host = request.url().getHost();
+                    if (host.startsWith("hung")) {
+                        return Mono.never();
+                    }
+                    boolean up = host.startsWith("up");
+                    return Mono.just(ClientResponse.create(up ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(up ? "{\"status\":\"UP\"}" : "{\"status\":\"DOWN\"}")
+                            .build());
+                })
+                .build();
+        prober = new HealthProber(properties, discoveryClient, webClient, new SimpleMeterRegistry());
+    }
+
+    private static ServiceInstance instance(String serviceId, String host) {
+        return new DefaultServiceInstance(host, serviceId, host, 8080, false);
+    }
+
+    @Test
+    @DisplayName("All instances of all discovered services should be probed concurrently")
+    void shouldProbeAllInstances() {
+        instances.put("product-service", Arrays.asList(
+                instance("product-service", "up-1"),
+                instance("product-service", "down-1"),
+                instance("product-service", "hung-1"),
+                instance("product-service", "hung-2"),
+                instance("product-service", "hung-3")));
+        instances.put("order-service", Collections.singletonList(instance("order-service", "down-2")));
+
+        long start = System.nanoTime();
+        HealthSnapshot snapshot = prober.probe().block();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(elapsedMillis).isLessThan(800);
+        assertThat(snapshot.getServices()).containsOnlyKeys("product-service", "order-service");
+        HealthSnapshot.ServiceHealth products = snapshot.getService("product-service");
+        assertThat(products.getStatus()).isEqualTo(Status.UP);
+        assertThat(products.getUpCount()).isEqualTo(1);
+        assertThat(products.getInstances()).filteredOn(i -> i.getInstanceId().startsWith("hung"))
+                .allMatch(i -> Status.DOWN.equals(i.getStatus()) && i.getError() != null);
+        assertThat(snapshot.getService("order-service").getStatus()).isEqualTo(Status.DOWN);
+    }
+
+    @Test
+    @DisplayName("Only the configured services should be probed, on the registered management port")
+    void shouldProbeConfiguredServices() {
+        properties.setServices(Arrays.asList("user-service", "product-service"));
+        instances.put("product-service", Collections.singletonList(instance("product-service", "up-1")));
+        instances.put("order-service", Collections.singletonList(instance("order-service", "up-2")));
+
+        HealthSnapshot snapshot = prober.probe().block();
+
+        assertThat(snapshot.getServices()).containsOnlyKeys("user-service", "product-service");
+        assertThat(snapshot.getService("user-service").getStatus()).isEqualTo(Status.DOWN);
+
+        DefaultServiceInstance managed = new DefaultServiceInstance("up-3", "product-service", "up-3", 8080, false,
+                Collections.singletonMap("management.port", "9090"));
+        assertThat(prober.healthUrl(managed)).isEqualTo("http://up-3:9090/actuator/health");
+    }
+
+    @Test
+    @DisplayName("A malformed management port should fall back to the instance port without failing the round")
+    void shouldIgnoreMalformedManagementPort() {
+        DefaultServiceInstance malformed = new DefaultServiceInstance("up-4", "product-service", "up-4", 8080, false,
+                Collections.singletonMap("management.port", "not-a-port"));
+        instances.put("product-service", Collections.singletonList(malformed));
+        instances.put("order-service", Collections.singletonList(instance("order-service", "up-5")));
+
+        HealthSnapshot snapshot = prober.probe().block();
+
+        assertThat(prober.healthUrl(malformed)).isEqualTo("http://up-4:8080/actuator/health");
+        assertThat(snapshot.getService("product-service").getStatus()).isEqualTo(Status.UP);
+        assertThat(snapshot.getService("order-service").getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    @DisplayName("Indicators should report the latest snapshot and flag stale ones")
+    void indicatorsShouldReadSnapshot() {
+        ServiceHealthIndicator indicator = new ServiceHealthIndicator("product-service", prober, Duration.ofMinutes(1));
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UNKNOWN);
+
+        instances.put("product-service", Collections.singletonList(instance("product-service", "up-1")));
+        prober.update(prober.probe().block());
+
+        Health health = indicator.health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("up", 1L);
+
+        DownstreamServicesHealthContributor composite = new DownstreamServicesHealthContributor(prober,
+                Duration.ofMinutes(1));
+        assertThat(composite.getContributor("product-service")).isNotNull();
+        assertThat(composite.getContributor("order-service")).isNull();
+
+        ServiceHealthIndicator strict = new ServiceHealthIndicator("product-service", prober, Duration.ofNanos(1));
+        assertThat(strict.health().getStatus()).isEqualTo(Status.UNKNOWN);
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.daoninhthai.gateway.hedging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.netty.Connection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for AttemptExchange.
+ * Verifies that attempts are isolated from the real exchange until one is applied to it.
+ */
+class AttemptExchangeTest {
+
+    @Test
+    @DisplayName("An attempt should only change the exchange once it is applied")
+    void shouldApplyStatusHeadersAndAttributes() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/products/42"));
+        exchange.getResponse().getHeaders().set("X-Request-Id", "abc");
+        exchange.getAttributes().put("route", "product-service");
+        AttemptExchange attempt = new AttemptExchange(exchange, AttemptExchange.bodiless(exchange.getRequest()));
+
+        attempt.getResponse().setRawStatusCode(503);
+        attempt.getResponse().getHeaders().set("Retry-After", "1");
+        attempt.getAttributes().put("instance", "product-service-1");
+        attempt.getResponse().setComplete().block();
+
+        assertThat(exchange.getResponse().getRawStatusCode()).isNull();
+        assertThat(exchange.getResponse().getHeaders()).doesNotContainKey("Retry-After");
+        assertThat(exchange.getAttributes()).doesNotContainKey("instance");
+        assertThat(exchange.getResponse().isCommitted()).isFalse();
+
+        attempt.applyTo(exchange);
+
+        assertThat(exchange.getResponse().getRawStatusCode()).isEqualTo(503);
+        assertThat(exchange.getResponse().getHeaders().getFirst("Retry-After")).isEqualTo("1");
+        assertThat(exchange.getResponse().getHeaders().getFirst("X-Request-Id")).isEqualTo("abc");
+        assertThat(exchange.<String>getAttribute("instance")).isEqualTo("product-service-1");
+        assertThat(exchange.<String>getAttribute("route")).isEqualTo("product-service");
+    }
+
+    @Test
+    @DisplayName("Closing an attempt should dispose its upstream connection")
+    void shouldCloseConnection() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/products/42"));
+        AttemptExchange attempt = new AttemptExchange(exchange, exchange.getRequest());
+        Connection connection = mock(Connection.class);
+        attempt.getAttributes().put(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR, connection);
+
+        attempt.close();
+
+        verify(connection).dispose();
+        assertThat(exchange.getAttributes()).doesNotContainKey(ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR);
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.daoninhthai.gateway.hedging;
+
+import com.daoninhthai.gateway.config.HedgingConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for RequestHedger.
+ * Verifies hedge delays from the route's latency and the hedge budget.
+ */
+class RequestHedgerTest {
+
+    private static final String ROUTE = "product-service";
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HedgingConfig properties;
+    private RequestHedger hedger;
+
+    @BeforeEach
+    void setUp() {
+        properties = new HedgingConfig();
+        properties.getRoutes().add(ROUTE);
+        properties.setMinSamples(100);
+        properties.setBudgetRatio(0.05);
+        properties.setBudgetCapacity(2);
+        hedger = new RequestHedger(properties, meterRegistry, clock::get);
+    }
+
+    private void latencies(int requests, long latencyMillis) {
+        for (int i = 0; i < requests; i++) {
+            hedger.recordLatency(ROUTE, TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    @DisplayName("Only configured routes and idempotent methods should be hedged")
+    void shouldHedgeConfiguredRoutesAndMethods() {
+        assertThat(hedger.isHedged(ROUTE, HttpMethod.GET)).isTrue();
+        assertThat(hedger.isHedged(ROUTE, HttpMethod.POST)).isFalse();
+        assertThat(hedger.isHedged("order-service", HttpMethod.GET)).isFalse();
+
+        properties.setEnabled(false);
+        assertThat(hedger.isHedged(ROUTE, HttpMethod.GET)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Delay should be the route's p95 once it has enough samples")
+    void shouldDelayByPercentile() {
+        latencies(50, 10);
+        assertThat(hedger.onRequest(ROUTE)).isNull();
+
+        latencies(940, 10);
+        latencies(60, 200);
+        advance(1000);
+
+        Duration delay = hedger.onRequest(ROUTE);
+        assertThat(delay.toMillis()).isBetween(200L, 230L);
+    }
+
+    @Test
+    @DisplayName("Delay should not go below the minimum delay")
+    void shouldApplyMinimumDelay() {
+        properties.setMinDelay(Duration.ofMillis(20));
+        latencies(200, 1);
+
+        assertThat(hedger.onRequest(ROUTE)).isEqualTo(Duration.ofMillis(20));
+    }
+
+    @Test
+    @DisplayName("Hedges should be limited to the budget ratio after the initial burst")
+    void shouldLimitHedgesToBudget() {
+        assertThat(hedger.tryHedge(ROUTE)).isTrue();
+        assertThat(hedger.tryHedge(ROUTE)).isTrue();
+        assertThat(hedger.tryHedge(ROUTE)).isFalse();
+
+        int hedges = 0;
+        for (int i = 0; i < 1000; i++) {
+            hedger.onRequest(ROUTE);
+            if (hedger.tryHedge(ROUTE)) {
+                hedges++;
+            }
+        }
+
+        assertThat(hedges).isEqualTo(50);
+        assertThat(meterRegistry.counter("gateway_hedges_sent_total", "route", ROUTE).count()).isEqualTo(52);
+        assertThat(meterRegistry.counter("gateway_hedges_budget_exhausted_total", "route", ROUTE).count())
+                .isEqualTo(951);
+    }
+
+    @Test
+    @DisplayName("Budget should not grow beyond its capacity")
+    void shouldCapBudget() {
+        for (int i = 0; i < 1000; i++) {
+            hedger.onRequest(ROUTE);
+        }
+
+        assertThat(hedger.getState(ROUTE).getBudget()).isEqualTo(2.0);
+    }
+
+}
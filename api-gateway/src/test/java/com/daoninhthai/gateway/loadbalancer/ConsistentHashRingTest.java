@@ -0,0 +1,111 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for ConsistentHashRing.
+ * Verifies key stability, minimal remapping and bounded-load spill over.
+ */
+class ConsistentHashRingTest {
+
+    private static List<ServiceInstance> instances(int count) {
+        List<ServiceInstance> instances = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            instances.add(new DefaultServiceInstance("product-" + i, "product-service", "10.0.0." + i, 8080, false));
+        }
+        return instances;
+    }
+
+    private static Map<String, String> assign(ConsistentHashRing ring, int keys) {
+        Map<String, String> assignment = new HashMap<>();
+        for (int key = 0; key < keys; key++) {
+            assignment.put("product:" + key, ring.choose("product:" + key, 1.25, instance -> 0).getInstanceId());
+        }
+        return assignment;
+    }
+
+    @Test
+    @DisplayName("Keys should spread over the instances and stay put")
+    void shouldSpreadKeys() {
+        ConsistentHashRing ring = new ConsistentHashRing(instances(10), 100);
+        Map<String, String> first = assign(ring, 10_000);
+
+        Map<String, Integer> perInstance = new HashMap<>();
+        first.values().forEach(id -> perInstance.merge(id, 1, Integer::sum));
+        assertThat(perInstance).hasSize(10);
+        assertThat(perInstance.values()).allMatch(count -> count > 600 && count < 1400);
+
+        assertThat(assign(new ConsistentHashRing(instances(10), 100), 10_000)).isEqualTo(first);
+    }
+
+    @Test
+    @DisplayName("Only the keys of a leaving or joining instance should move")
+    void shouldRemapMinimally() {
+        List<ServiceInstance> ten = instances(10);
+        Map<String, String> before = assign(new ConsistentHashRing(ten, 100), 10_000);
+
+        List<ServiceInstance> nine = new ArrayList<>(ten.subList(0, 9));
+        Collections.shuffle(nine);
+        Map<String, String> after = assign(new ConsistentHashRing(nine, 100), 10_000);
+
+        long moved = before.keySet().stream().filter(key -> !before.get(key).equals(after.get(key))).count();
+        long owned = before.values().stream().filter("product-9"::equals).count();
+        assertThat(moved).isEqualTo(owned);
+    }
+
+    @Test
+    @DisplayName("A key should spill over when its instance is at the load bound")
+    void shouldSpillOverAtLoadBound() {
+        List<ServiceInstance> instances = instances(4);
+        ConsistentHashRing ring = new ConsistentHashRing(instances, 100);
+        ServiceInstance home = ring.choose("product:hot", 1.25, instance -> 0);
+
+        Map<String, Integer> loads = new HashMap<>();
+        loads.put(home.getInstanceId(), 5);
+        // bound = ceil(1.25 * (5 + 1) / 4) = 2
+        ServiceInstance spilled = ring.choose("product:hot", 1.25,
+                instance -> loads.getOrDefault(instance.getInstanceId(), 0));
+        assertThat(spilled.getInstanceId()).isNotEqualTo(home.getInstanceId());
+
+        // bound = ceil(1.25 * (1 + 3 + 1) / 4) = 2
+        loads.put(home.getInstanceId(), 1);
+        loads.put(spilled.getInstanceId(), 3);
+        assertThat(ring.choose("product:hot", 1.25, instance -> loads.getOrDefault(instance.getInstanceId(), 0)))
+                .isSameAs(home);
+    }
+
+    @Test
+    @DisplayName("An excluded instance should be skipped like one at the load bound")
+    void shouldSkipExcludedInstance() {
+        ConsistentHashRing ring = new ConsistentHashRing(instances(4), 100);
+        ServiceInstance home = ring.choose("product:hot", 1.25, instance -> 0);
+
+        ServiceInstance other = ring.choose("product:hot", 1.25, instance -> 0,
+                Collections.singleton(home.getInstanceId()));
+        assertThat(other.getInstanceId()).isNotEqualTo(home.getInstanceId());
+    }
+
+    @Test
+    @DisplayName("Ring should be reused for the same instances in any order")
+    void shouldRecognizeSameInstances() {
+        List<ServiceInstance> instances = instances(5);
+        ConsistentHashRing ring = new ConsistentHashRing(instances, 10);
+        List<ServiceInstance> shuffled = new ArrayList<>(instances);
+        Collections.reverse(shuffled);
+
+        assertThat(ring.isFor(shuffled)).isTrue();
+        assertThat(ring.isFor(instances(4))).isFalse();
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import com.daoninhthai.gateway.exception.DeadlineExceededException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for InstanceCircuitBreakers.
+ * Verifies which outcomes open an instance's breaker and that the breakers stay bounded.
+ */
+class InstanceCircuitBreakersTest {
+
+    private static final String SERVICE = "user-service";
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private LoadBalancerConfig.InstanceCircuitBreaker properties;
+    private InstanceCircuitBreakers breakers;
+
+    @BeforeEach
+    void setUp() {
+        properties = new LoadBalancerConfig.InstanceCircuitBreaker();
+        properties.setSlidingWindowSize(10);
+        properties.setMinimumNumberOfCalls(10);
+        properties.setMaxInstances(3);
+        properties.setIdleTime(Duration.ofMinutes(10));
+        breakers = new InstanceCircuitBreakers(properties, meterRegistry, clock::get);
+    }
+
+    private static ServiceInstance instance(String id) {
+        return new DefaultServiceInstance(id, SERVICE, id + ".internal", 8080, false);
+    }
+
+    @Test
+    @DisplayName("Upstream errors and 5xx responses should open the instance's breaker")
+    void shouldOpenOnFailures() {
+        ServiceInstance bad = instance("bad");
+        ServiceInstance good = instance("good");
+        CircuitBreaker breaker = breakers.getBreaker(bad);
+        for (int i = 0; i < 5; i++) {
+            breakers.onError(breaker, LATENCY, new IOException("Connection reset"));
+            breakers.onResult(breaker, LATENCY, 503);
+        }
+        breakers.onResult(breakers.getBreaker(good), LATENCY, 200);
+
+        assertThat(breakers.isOpen(bad)).isTrue();
+        assertThat(breakers.isOpen(good)).isFalse();
+        assertThat(breakers.getAvailable(Arrays.asList(bad, good))).containsExactly(good);
+        assertThat(meterRegistry.get("gateway_instance_circuit_breakers_open").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Client errors and spent deadlines should not count against an instance")
+    void shouldIgnoreClientCausedOutcomes() {
+        ServiceInstance instance = instance("a");
+        CircuitBreaker breaker = breakers.getBreaker(instance);
+        for (int i = 0; i < 10; i++) {
+            breakers.onResult(breaker, LATENCY, 404);
+            breakers.onError(breaker, LATENCY, new DeadlineExceededException("Request deadline exceeded"));
+        }
+
+        assertThat(breakers.isOpen(instance)).isFalse();
+        assertThat(breaker.getMetrics().getNumberOfFailedCalls()).isZero();
+    }
+
+    @Test
+    @DisplayName("Breakers should be bounded and dropped once idle and closed")
+    void shouldStayBounded() {
+        List<ServiceInstance> instances = Arrays.asList(instance("a"), instance("b"), instance("c"), instance("d"));
+        instances.forEach(breakers::getBreaker);
+
+        assertThat(breakers.size()).isEqualTo(3);
+        assertThat(breakers.getBreaker(instance("d"))).isNull();
+
+        breakers.getBreaker(instance("a")).transitionToOpenState();
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        breakers.evictIdle();
+
+        assertThat(breakers.size()).isEqualTo(1);
+        assertThat(breakers.isOpen(instance("a"))).isTrue();
+        assertThat(breakers.getBreaker(instance("d"))).isNotNull();
+    }
+
+}
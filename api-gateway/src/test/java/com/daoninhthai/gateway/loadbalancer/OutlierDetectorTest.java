@@ -0,0 +1,140 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import com.daoninhthai.gateway.dto.OutlierStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for OutlierDetector.
+ * Verifies ejection on consecutive errors and latency, exponential ejection times and the
+ * ejection cap.
+ */
+class OutlierDetectorTest {
+
+    private static final String SERVICE = "product-service";
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private OutlierDetector detector;
+
+    @BeforeEach
+    void setUp() {
+        LoadBalancerConfig.OutlierDetection properties = new LoadBalancerConfig.OutlierDetection();
+        properties.setConsecutiveErrors(5);
+        properties.setBaseEjectionTime(Duration.ofSeconds(30));
+        properties.setMaxEjectionTime(Duration.ofSeconds(100));
+        properties.setMaxEjectionPercent(50);
+        detector = new OutlierDetector(properties, meterRegistry, clock::get);
+    }
+
+    private static ServiceInstance instance(String id) {
+        return new DefaultServiceInstance(id, SERVICE, id + ".internal", 8080, false);
+    }
+
+    private void fail(ServiceInstance instance, int times) {
+        for (int i = 0; i < times; i++) {
+            detector.record(instance, LATENCY, true);
+        }
+    }
+
+    private void advance(long seconds) {
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    @DisplayName("Consecutive errors should eject an instance until its ejection time is over")
+    void shouldEjectOnConsecutiveErrors() {
+        ServiceInstance bad = instance("bad");
+        fail(bad, 4);
+        detector.record(bad, LATENCY, false);
+        fail(bad, 4);
+        assertThat(detector.getEjected(SERVICE, 4)).isEmpty();
+
+        fail(bad, 1);
+        assertThat(detector.getEjected(SERVICE, 4)).containsExactly("bad");
+
+        advance(31);
+        assertThat(detector.getEjected(SERVICE, 4)).isEmpty();
+        assertThat(meterRegistry.counter("gateway_outlier_ejections_total",
+                "service", SERVICE, "reason", OutlierDetector.REASON_CONSECUTIVE_ERRORS).count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Ejection time should double with each ejection up to the max")
+    void shouldGrowEjectionTime() {
+        ServiceInstance bad = instance("bad");
+        detector.getEjected(SERVICE, 4);
+        long[] expectedSeconds = {30, 60, 100, 100};
+        for (long expected : expectedSeconds) {
+            fail(bad, 5);
+            OutlierStatus status = detector.getStatus(SERVICE).get(0);
+            assertThat(status.isEjected()).isTrue();
+            assertThat(status.getRemainingEjectionMs()).isEqualTo(TimeUnit.SECONDS.toMillis(expected));
+            advance(expected);
+            detector.evaluate();
+        }
+    }
+
+    @Test
+    @DisplayName("Ejection count should decay while the instance stays healthy")
+    void shouldDecayEjections() {
+        ServiceInstance bad = instance("bad");
+        detector.getEjected(SERVICE, 4);
+        fail(bad, 5);
+        advance(30);
+        detector.evaluate();
+        fail(bad, 5);
+        assertThat(detector.getStatus(SERVICE).get(0).getEjections()).isEqualTo(2);
+
+        advance(60);
+        detector.evaluate();
+        detector.evaluate();
+        detector.evaluate();
+        assertThat(detector.getStatus(SERVICE).get(0).getEjections()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("No more than the max ejection percent of the instances should be ejected")
+    void shouldCapEjections() {
+        detector.getEjected(SERVICE, 4);
+        fail(instance("a"), 5);
+        fail(instance("b"), 5);
+        fail(instance("c"), 5);
+
+        assertThat(detector.getEjected(SERVICE, 4)).containsExactlyInAnyOrder("a", "b");
+        assertThat(meterRegistry.counter("gateway_outlier_ejections_capped_total", "service", SERVICE).count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("An instance much slower than its peers should be ejected")
+    void shouldEjectLatencyOutlier() {
+        List<ServiceInstance> instances = List.of(instance("a"), instance("b"), instance("c"), instance("slow"));
+        detector.getEjected(SERVICE, instances.size());
+        for (int i = 0; i < 50; i++) {
+            for (ServiceInstance instance : instances) {
+                long latency = instance.getInstanceId().equals("slow") ? LATENCY * 5 : LATENCY;
+                detector.record(instance, latency, false);
+            }
+        }
+
+        detector.evaluate();
+
+        assertThat(detector.getEjected(SERVICE, instances.size())).containsExactly("slow");
+        assertThat(detector.getStatus(SERVICE).get(0).getReason()).isEqualTo(OutlierDetector.REASON_LATENCY);
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.daoninhthai.gateway.loadbalancer;
+
+import com.daoninhthai.gateway.config.LoadBalancerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Simulation tests for PeakEwmaLoadBalancer.
+ * Stub instances with different latencies and error rates serve a steady request stream
+ * in virtual time; the share of requests each instance receives is compared.
+ */
+class PeakEwmaLoadBalancerTest {
+
+    private static final String SERVICE = "product-service";
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private InstanceStatsRegistry registry;
+    private OutlierDetector outlierDetector;
+    private InstanceCircuitBreakers circuitBreakers;
+    private PeakEwmaLoadBalancer loadBalancer;
+
+    @BeforeEach
+    void setUp() {
+        LoadBalancerConfig properties = new LoadBalancerConfig();
+        registry = new InstanceStatsRegistry(properties, new SimpleMeterRegistry(), clock::get);
+        outlierDetector = new OutlierDetector(properties.getOutlierDetection(), new SimpleMeterRegistry(), clock::get);
+        circuitBreakers = new InstanceCircuitBreakers(properties.getInstanceCircuitBreaker(),
+                new SimpleMeterRegistry(), clock::get);
+        loadBalancer = new PeakEwmaLoadBalancer(SERVICE, null, registry, properties.getConsistentHash(),
+                outlierDetector, circuitBreakers);
+    }
+
+    private static ServiceInstance instance(String id) {
+        return new DefaultServiceInstance(id, SERVICE, id + ".internal", 8080, false);
+    }
+
+    /**
+     * Send requests every {@code intervalMillis} and complete each after its instance's
+     * latency, failing the first {@code failurePercent} of every hundred.
+     */
+    private Map<String, Integer> simulate(List<ServiceInstance> instances, Map<String, Long> latencyMillis,
+                                          Map<String, Integer> failurePercent, int requests, long intervalMillis) {
+        PriorityQueue<long[]> completions = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        Map<Long, ServiceInstance> inFlight = new HashMap<>();
+        Map<String, Integer> served = new HashMap<>();
+
+        for (long i = 0; i < requests; i++) {
+            long now = clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+            while (!completions.isEmpty() && completions.peek()[0] <= now) {
+                long[] done = completions.poll();
+                ServiceInstance instance = inFlight.remove(done[1]);
+                boolean failed = done[1] % 100 < failurePercent.getOrDefault(instance.getInstanceId(), 0);
+                registry.getStats(instance).complete(done[0], done[2], failed);
+            }
+
+            ServiceInstance chosen = loadBalancer.choose(instances).getServer();
+            long latency = TimeUnit.MILLISECONDS.toNanos(latencyMillis.get(chosen.getInstanceId()));
+            registry.getStats(chosen).start(now);
+            inFlight.put(i, chosen);
+            completions.add(new long[]{now + latency, i, latency});
+            served.merge(chosen.getInstanceId(), 1, Integer::sum);
+        }
+        return served;
+    }
+
+    @Test
+    @DisplayName("A slow instance should receive only a small share of requests")
+    void shouldAvoidSlowInstance() {
+        List<ServiceInstance> instances = Arrays.asList(instance("fast-1"), instance("fast-2"), instance("slow"));
+        Map<String, Long> latency = new HashMap<>();
+        latency.put("fast-1", 10L);
+        latency.put("fast-2", 10L);
+        latency.put("slow", 200L);
+
+        Map<String, Integer> served = simulate(instances, latency, Collections.emptyMap(), 20_000, 2);
+
+        assertThat(served.getOrDefault("slow", 0)).isLessThan(1000);
+        assertThat(served.get("fast-1")).isBetween(8000, 11000);
+        assertThat(served.get("fast-2")).isBetween(8000, 11000);
+    }
+
+    @Test
+    @DisplayName("An erroring instance should receive fewer requests")
+    void shouldAvoidErroringInstance() {
+        List<ServiceInstance> instances = Arrays.asList(instance("healthy-1"), instance("healthy-2"),
+                instance("healthy-3"), instance("erroring"));
+        Map<String, Long> latency = new HashMap<>();
+        instances.forEach(instance -> latency.put(instance.getInstanceId(), 20L));
+
+        Map<String, Integer> served = simulate(instances, latency,
+                Collections.singletonMap("erroring", 50), 20_000, 2);
+
+        assertThat(served.getOrDefault("erroring", 0)).isLessThan(20_000 / 8);
+    }
+
+    @Test
+    @DisplayName("Equal instances should share the load evenly")
+    void shouldSpreadEvenly() {
+        List<ServiceInstance> instances = Arrays.asList(instance("a"), instance("b"), instance("c"), instance("d"));
+        Map<String, Long> latency = new HashMap<>();
+        instances.forEach(instance -> latency.put(instance.getInstanceId(), 15L));
+
+        Map<String, Integer> served = simulate(instances, latency, Collections.emptyMap(), 20_000, 1);
+
+        assertThat(served.values()).allMatch(count -> count > 4000 && count < 6000);
+    }
+
+    private PeakEwmaLoadBalancer balancerFor(List<ServiceInstance> instances) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("supplier", new ServiceInstanceListSupplier() {
+            @Override
+            public String getServiceId() {
+                return SERVICE;
+            }
+
+            @Override
+            public Flux<List<ServiceInstance>> get() {
+                return Flux.just(instances);
+            }
+        });
+        return new PeakEwmaLoadBalancer(SERVICE, beanFactory.getBeanProvider(ServiceInstanceListSupplier.class),
+                registry, new LoadBalancerConfig.ConsistentHash(), outlierDetector, circuitBreakers);
+    }
+
+    @Test
+    @DisplayName("Instances should be taken from the service instance list supplier")
+    void shouldChooseFromSupplier() {
+        ServiceInstance only = instance("only");
+        PeakEwmaLoadBalancer balancer = balancerFor(Collections.singletonList(only));
+
+        Response<ServiceInstance> response = balancer.choose(new DefaultRequest<>()).block();
+
+        assertThat(response.hasServer()).isTrue();
+        assertThat(response.getServer()).isSameAs(only);
+        assertThat(balancer.choose(Collections.emptyList()).hasServer()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Instances with an open circuit breaker should never be chosen")
+    void shouldSkipOpenCircuitBreakers() {
+        ServiceInstance broken = instance("broken");
+        ServiceInstance healthy = instance("healthy");
+        PeakEwmaLoadBalancer balancer = balancerFor(Arrays.asList(broken, healthy));
+        circuitBreakers.getBreaker(broken).transitionToOpenState();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(balancer.choose(new DefaultRequest<>()).block().getServer()).isSameAs(healthy);
+        }
+
+        circuitBreakers.getBreaker(healthy).transitionToOpenState();
+        assertThat(balancer.choose(new DefaultRequest<>()).block().hasServer()).isFalse();
+    }
+
+}
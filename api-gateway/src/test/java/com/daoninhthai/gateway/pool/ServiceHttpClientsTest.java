@@ -0,0 +1,134 @@
+package com.daoninhthai.gateway.pool;
+
+import com.daoninhthai.gateway.config.ConnectionPoolConfig;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for ServiceHttpClients.
+ * Verifies that every service gets a client and pool of its own, and HTTP/2 routes one more
+ * that multiplexes requests over a single connection.
+ */
+class ServiceHttpClientsTest {
+
+    private ConnectionPoolConfig properties;
+    private ServiceHttpClients clients;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ConnectionPoolConfig();
+        ConnectionPoolConfig.ServicePool orders = new ConnectionPoolConfig.ServicePool();
+        orders.setMaxConnections(10);
+        properties.getServices().put("order-service", orders);
+        properties.getHttp2().put("product-service", new ConnectionPoolConfig.Http2());
+        clients = new ServiceHttpClients(properties, new HttpClientProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clients.dispose();
+    }
+
+    @Test
+    @DisplayName("Each service should get its own client, reused across requests")
+    void shouldIsolateServices() {
+        HttpClient orders = clients.getHttpClient("order-service");
+        HttpClient products = clients.getHttpClient("product-service");
+
+        assertThat(orders).isNotSameAs(products);
+        assertThat(clients.getHttpClient("order-service")).isSameAs(orders);
+        assertThat(clients.size()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("HTTP/2 routes should get their own client, other routes the service's HTTP/1.1 client")
+    void shouldSeparateHttp2Routes() {
+        HttpClient http11 = clients.getHttpClient("product-service");
+        HttpClient h2c = clients.getHttpClient("product-service", "product-service");
+
+        assertThat(h2c).isNotSameAs(http11);
+        assertThat(h2c.configuration().protocols()).containsExactly(HttpProtocol.H2C);
+        assertThat(clients.getHttpClient("product-service", "product-search")).isSameAs(http11);
+        assertThat(clients.getHttpClient("product-service", "product-service")).isSameAs(h2c);
+        assertThat(clients.size()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("HTTP/2 routes should multiplex concurrent requests over one connection with a raised window")
+    void shouldMultiplexHttp2Requests() {
+        ConnectionPoolConfig.Http2 http2 = properties.getHttp2().get("product-service");
+        http2.setMaxConnections(1);
+        AtomicInteger connections = new AtomicInteger();
+        AtomicReference<Http2Connection> connection = new AtomicReference<>();
+        DisposableServer server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .protocol(HttpProtocol.H2C)
+                .doOnChannelInit((observer, channel, remoteAddress) -> {
+                    if (!(channel instanceof Http2StreamChannel)) {
+                        connections.incrementAndGet();
+                    }
+                })
+                .route(routes -> routes.get("/products", (request, response) ->
+                        response.sendString(Mono.just("ok").delayElement(Duration.ofMillis(50)))))
+                .bindNow();
+        try {
+            HttpClient client = clients.getHttpClient("product-service", "product-service")
+                    .baseUrl("http://127.0.0.1:" + server.port())
+                    .doOnConnected(conn -> connection.set(
+                            conn.channel().pipeline().get(Http2FrameCodec.class).connection()));
+
+            List<String> bodies = Flux.range(0, 10)
+                    .flatMap(i -> client.get().uri("/products").responseContent().aggregate().asString())
+                    .collectList()
+                    .block(Duration.ofSeconds(10));
+
+            assertThat(bodies).hasSize(10).containsOnly("ok");
+            assertThat(connections.get()).isEqualTo(1);
+            Http2Connection http2Connection = connection.get();
+            assertThat(http2Connection.local().flowController().windowSize(http2Connection.connectionStream()))
+                    .isGreaterThan((int) http2.getConnectionWindowSize().toBytes() - 1024);
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Services should inherit the default pool settings they do not set themselves")
+    void shouldFallBackToDefaults() {
+        properties.getDefaults().setPendingAcquireTimeout(Duration.ofMillis(500));
+
+        assertThat(properties.getPool("order-service").getMaxConnections()).isEqualTo(10);
+        assertThat(properties.getPool("order-service").getPendingAcquireTimeout()).isEqualTo(Duration.ofMillis(500));
+        assertThat(properties.getPool("product-service")).isSameAs(properties.getDefaults());
+    }
+
+    @Test
+    @DisplayName("Disposing should close every pool")
+    void shouldDisposePools() {
+        clients.getHttpClient("order-service");
+        clients.dispose();
+
+        assertThat(clients.size()).isZero();
+    }
+
+}
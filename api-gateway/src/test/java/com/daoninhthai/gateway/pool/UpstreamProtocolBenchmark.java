@@ -0,0 +1,109 @@
+package com.daoninhthai.gateway.pool;
+
+import com.daoninhthai.gateway.config.ConnectionPoolConfig;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JMH benchmark of upstream requests from many concurrent callers over HTTP/1.1, one
+ * request per pooled connection, against h2c, streams multiplexed over two connections.
+ * The upstream is a local server that answers after a short delay; the sampled latencies
+ * give the p99, and the connections it accepted are printed at the end of each trial.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.daoninhthai.gateway.pool.UpstreamProtocolBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(64)
+@Fork(1)
+public class UpstreamProtocolBenchmark {
+
+    private static final String SERVICE_ID = "benchmark-service";
+    private static final String HTTP2_ROUTE = "benchmark-h2c";
+
+    @Param({"HTTP11", "H2C"})
+    private HttpProtocol protocol;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private DisposableServer server;
+    private ServiceHttpClients clients;
+    private HttpClient client;
+
+    @Setup
+    public void setUp() {
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+                .doOnChannelInit((observer, channel, remoteAddress) -> {
+                    if (!(channel instanceof Http2StreamChannel)) {
+                        connections.incrementAndGet();
+                    }
+                })
+                .route(routes -> routes.get("/items", (request, response) ->
+                        response.sendString(Mono.just("ok").delayElement(Duration.ofMillis(2)))))
+                .bindNow();
+
+        ConnectionPoolConfig properties = new ConnectionPoolConfig();
+        properties.getDefaults().setMaxConnections(500);
+        properties.getDefaults().setPendingAcquireMaxCount(-1);
+        properties.getHttp2().put(HTTP2_ROUTE, new ConnectionPoolConfig.Http2());
+        clients = new ServiceHttpClients(properties, new HttpClientProperties());
+        client = clients.getHttpClient(SERVICE_ID, protocol == HttpProtocol.H2C ? HTTP2_ROUTE : null)
+                .baseUrl("http://127.0.0.1:" + server.port());
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n%s: %d upstream connections%n", protocol, connections.get());
+        clients.dispose();
+        server.disposeNow();
+    }
+
+    @Benchmark
+    public String request() {
+        return client.get()
+                .uri("/items")
+                .responseContent()
+                .aggregate()
+                .asString()
+                .block();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UpstreamProtocolBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for CountMinSketch.
+ * Verifies that estimates never under-count and that keys colliding on String.hashCode
+ * are counted apart.
+ */
+class CountMinSketchTest {
+
+    @Test
+    @DisplayName("Estimates should never under-count")
+    void shouldNotUnderCount() {
+        CountMinSketch sketch = new CountMinSketch(64, 4);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("key-" + (i % 100), 1);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(sketch.estimate("key-" + i)).isGreaterThanOrEqualTo(10);
+        }
+    }
+
+    @Test
+    @DisplayName("Keys with the same String.hashCode should not share every counter")
+    void shouldSeparateHashCodeCollisions() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        sketch.add("Aa", 1000);
+        sketch.add("AaAa", 1000);
+
+        assertThat(sketch.estimate("Aa")).isEqualTo(1000);
+        assertThat(sketch.estimate("BB")).isZero();
+        assertThat(sketch.estimate("BBBB")).isZero();
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for DegradedModeLimiter.
+ * Verifies the switch to node-local limits when Redis fails and back once it recovers.
+ */
+class DegradedModeLimiterTest {
+
+    private static final RateLimitPolicy POLICY =
+            new RateLimitPolicy(RateLimitAlgorithm.GCRA, 40, 40, Duration.ofSeconds(1));
+
+    private final List<Object> events = new ArrayList<>();
+    private DegradedModeLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitConfig.Degraded properties = new RateLimitConfig.Degraded();
+        properties.setReplicas(4);
+        properties.setSlidingWindowSize(2);
+        properties.setMinimumNumberOfCalls(2);
+        properties.setTimeout(Duration.ofMillis(50));
+        properties.setWaitDurationInOpenState(Duration.ofMinutes(1));
+
+        limiter = new DegradedModeLimiter(properties, null, events::add, new SimpleMeterRegistry());
+    }
+
+    private LeaseRequest lease(String key) {
+        return new LeaseRequest(key, POLICY, 20, 1);
+    }
+
+    @Test
+    @DisplayName("Redis lease should pass through while the breaker is closed")
+    void shouldUseRedisWhenAvailable() {
+        StepVerifier.create(limiter.lease(lease("user:1"), () -> Mono.just(8L)))
+                .expectNext(8L)
+                .verifyComplete();
+
+        assertThat(limiter.isDegraded()).isFalse();
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Failing Redis should switch to local limits scaled by replica count")
+    void shouldDegradeToScaledLocalLimits() {
+        AtomicInteger redisCalls = new AtomicInteger();
+        Mono<Long> failing = Mono.defer(() -> {
+            redisCalls.incrementAndGet();
+            return Mono.error(new IllegalStateException("connection refused"));
+        });
+
+        long granted = 0;
+        for (int i = 0; i < 5; i++) {
+            granted += limiter.lease(lease("user:2"), () -> failing).block();
+        }
+
+        // 40 tokens shared by 4 replicas
+        assertThat(granted).isBetween(10L, 11L);
+        assertThat(limiter.isDegraded()).isTrue();
+        // The open breaker stops calling Redis
+        assertThat(redisCalls.get()).isEqualTo(2);
+        assertThat(events).singleElement()
+                .isInstanceOfSatisfying(RateLimitModeChangedEvent.class,
+                        event -> assertThat(event.isDegraded()).isTrue());
+    }
+
+    @Test
+    @DisplayName("Slow Redis should time out instead of delaying the request")
+    void shouldTimeOutSlowRedis() {
+        StepVerifier.create(limiter.lease(lease("user:3"), () -> Mono.just(8L).delayElement(Duration.ofSeconds(5))))
+                .expectNext(10L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    @DisplayName("Recovered Redis should leave degraded mode")
+    void shouldRecover() {
+        limiter.getCircuitBreaker().transitionToOpenState();
+        assertThat(limiter.isDegraded()).isTrue();
+
+        limiter.getCircuitBreaker().transitionToHalfOpenState();
+        limiter.getCircuitBreaker().transitionToClosedState();
+
+        assertThat(limiter.isDegraded()).isFalse();
+        assertThat(events).hasSize(2);
+        assertThat(((RateLimitModeChangedEvent) events.get(1)).isDegraded()).isFalse();
+    }
+
+}
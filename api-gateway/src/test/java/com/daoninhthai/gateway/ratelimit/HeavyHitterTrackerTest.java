@@ -0,0 +1,107 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import com.daoninhthai.gateway.dto.HeavyHitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for HeavyHitterTracker.
+ * Verifies top-K detection on a skewed stream, window expiry and penalties.
+ */
+class HeavyHitterTrackerTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private RateLimitConfig.HeavyHitters properties;
+    private HeavyHitterTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimitConfig.HeavyHitters();
+        properties.setTopK(5);
+        properties.setWindow(Duration.ofSeconds(10));
+        properties.setWindows(6);
+        tracker = new HeavyHitterTracker(properties, new SimpleMeterRegistry(), clock::get);
+    }
+
+    @Test
+    @DisplayName("Heavy keys should be found among many light keys")
+    void shouldFindHeavyHitters() {
+        for (int round = 0; round < 200; round++) {
+            for (int heavy = 0; heavy < 5; heavy++) {
+                tracker.record("order-service", "user:heavy-" + heavy, 5);
+            }
+            for (int light = 0; light < 50; light++) {
+                tracker.record("order-service", "ip:10.0." + round + "." + light, 1);
+            }
+        }
+
+        List<HeavyHitter> top = tracker.getTopConsumers("order-service");
+        assertThat(top).hasSize(5);
+        assertThat(top.stream().map(HeavyHitter::getKey).collect(Collectors.toList()))
+                .allMatch(key -> key.startsWith("user:heavy-"));
+        // Sketch estimates never under-count
+        assertThat(top).allMatch(hitter -> hitter.getEstimatedTokens() >= 1000);
+        assertThat(tracker.getTopConsumers()).containsOnlyKeys("order-service");
+    }
+
+    @Test
+    @DisplayName("Consumption should drop out after the sliding window")
+    void shouldExpireOldWindows() {
+        tracker.record("product-service", "user:1", 100);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        tracker.record("product-service", "user:1", 50);
+
+        assertThat(tracker.getTopConsumers("product-service").get(0).getEstimatedTokens()).isEqualTo(150);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        assertThat(tracker.getTopConsumers("product-service").get(0).getEstimatedTokens()).isEqualTo(50);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        assertThat(tracker.getTopConsumers("product-service")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Windows should rotate through a negative nanoTime")
+    void shouldHandleNegativeClock() {
+        clock.set(-TimeUnit.SECONDS.toNanos(25));
+        tracker.record("product-service", "user:1", 100);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        tracker.record("product-service", "user:1", 50);
+
+        assertThat(tracker.getTopConsumers("product-service").get(0).getEstimatedTokens()).isEqualTo(150);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        assertThat(tracker.getTopConsumers("product-service").get(0).getEstimatedTokens()).isEqualTo(50);
+    }
+
+    @Test
+    @DisplayName("Keys above the threshold should be penalized temporarily")
+    void shouldPenalizeAboveThreshold() {
+        properties.setPenaltyThreshold(100);
+        properties.setPenaltyDuration(Duration.ofSeconds(30));
+
+        for (int i = 0; i < 99; i++) {
+            tracker.record("user-service", "user:2", 1);
+        }
+        assertThat(tracker.isPenalized("user-service", "user:2")).isFalse();
+
+        tracker.record("user-service", "user:2", 1);
+        assertThat(tracker.isPenalized("user-service", "user:2")).isTrue();
+        assertThat(tracker.isPenalized("product-service", "user:2")).isFalse();
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        assertThat(tracker.isPenalized("user-service", "user:2")).isFalse();
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for HierarchicalRateLimiter.
+ * Verifies that leased tokens are spent locally and Redis is only asked for refills.
+ */
+class HierarchicalRateLimiterTest {
+
+    private RedisLeaseClient leaseClient;
+    private HierarchicalRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        leaseClient = mock(RedisLeaseClient.class);
+
+        RateLimitConfig properties = new RateLimitConfig();
+        properties.setReplenishRate(10);
+        properties.setBurstCapacity(20);
+        properties.getLocal().setBatchFraction(0.25);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        rateLimiter = new HierarchicalRateLimiter(leaseClient, properties,
+                new RateLimitPolicyResolver(properties, registry), null,
+                mock(ConfigurationService.class), registry);
+    }
+
+    @Test
+    @DisplayName("Leased batch should serve subsequent requests without Redis")
+    void leasedTokensShouldBeSpentLocally() {
+        when(leaseClient.acquire(any())).thenReturn(Mono.just(5L));
+
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(rateLimiter.isAllowed("product-service", "user:1"))
+                    .assertNext(response -> assertThat(response.isAllowed()).isTrue())
+                    .verifyComplete();
+        }
+
+        verify(leaseClient, times(1)).acquire(any());
+        assertThat(rateLimiter.getLocalDecisionRatio()).isEqualTo(0.8);
+    }
+
+    @Test
+    @DisplayName("Empty global bucket should deny and keep denying locally")
+    void emptyBucketShouldDenyLocally() {
+        when(leaseClient.acquire(any())).thenReturn(Mono.just(0L));
+
+        StepVerifier.create(rateLimiter.isAllowed("product-service", "user:2"))
+                .assertNext(response -> assertThat(response.isAllowed()).isFalse())
+                .verifyComplete();
+        StepVerifier.create(rateLimiter.isAllowed("product-service", "user:2"))
+                .assertNext(response -> assertThat(response.isAllowed()).isFalse())
+                .verifyComplete();
+
+        verify(leaseClient, times(1)).acquire(any());
+    }
+
+    @Test
+    @DisplayName("Concurrent requests on an exhausted lease should be admitted while the global budget lasts")
+    void concurrentRequestsShouldNotBeUnderAdmitted() {
+        AtomicLong budget = new AtomicLong(20);
+        when(leaseClient.acquire(any())).thenAnswer(invocation -> {
+            LeaseRequest request = invocation.getArgument(0);
+            return Mono.delay(Duration.ofMillis(20)).map(tick -> {
+                synchronized (budget) {
+                    long granted = Math.min(request.getWanted(), budget.get());
+                    if (granted < request.getMinimum()) {
+                        return 0L;
+                    }
+                    budget.addAndGet(-granted);
+                    return granted;
+                }
+            });
+        });
+
+        List<Boolean> decisions = Flux.range(0, 20)
+                .flatMap(i -> rateLimiter.isAllowed("product-service", "user:5"))
+                .map(RateLimiter.Response::isAllowed)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(decisions).hasSize(20).containsOnly(true);
+        verify(leaseClient, times(2)).acquire(any());
+        StepVerifier.create(rateLimiter.isAllowed("product-service", "user:5"))
+                .assertNext(response -> assertThat(response.isAllowed()).isFalse())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Redis failure should fail open")
+    void redisFailureShouldAllow() {
+        when(leaseClient.acquire(any())).thenReturn(Mono.error(new IllegalStateException("connection refused")));
+
+        StepVerifier.create(rateLimiter.isAllowed("product-service", "user:3"))
+                .assertNext(response -> assertThat(response.isAllowed()).isTrue())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Request cost should be charged against the local lease")
+    void costShouldBeChargedLocally() {
+        when(leaseClient.acquire(any())).thenReturn(Mono.just(20L));
+        RateLimitPolicy policy = new RateLimitPolicy(RateLimitAlgorithm.GCRA, 10, 100, Duration.ofSeconds(1));
+
+        StepVerifier.create(rateLimiter.isAllowed("order-service:user:4", policy, 10))
+                .assertNext(response -> assertThat(response.getHeaders())
+                        .containsEntry(HierarchicalRateLimiter.REMAINING_HEADER, "10")
+                        .containsEntry(HierarchicalRateLimiter.REQUESTED_TOKENS_HEADER, "10"))
+                .verifyComplete();
+        StepVerifier.create(rateLimiter.isAllowed("order-service:user:4", policy, 10))
+                .assertNext(response -> assertThat(response.isAllowed()).isTrue())
+                .verifyComplete();
+
+        verify(leaseClient, times(1)).acquire(any());
+    }
+
+}
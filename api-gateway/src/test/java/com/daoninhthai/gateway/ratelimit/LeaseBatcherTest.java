@@ -0,0 +1,132 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test for LeaseBatcher against an in-memory stand-in for the Redis lease script.
+ * Verifies that concurrent leases share round trips without changing the decisions.
+ */
+class LeaseBatcherTest {
+
+    private static final int KEYS = 200;
+    private static final int CAPACITY = 10;
+
+    /**
+     * Evaluates leases like the Lua script does, against fixed per-key budgets.
+     */
+    private static class RedisStandIn {
+
+        private final Map<String, Long> remaining = new HashMap<>();
+        private final AtomicInteger roundTrips = new AtomicInteger();
+
+        synchronized List<Long> evaluate(List<LeaseRequest> requests) {
+            roundTrips.incrementAndGet();
+            List<Long> granted = new ArrayList<>(requests.size());
+            for (LeaseRequest request : requests) {
+                long available = remaining.getOrDefault(request.getKey(), request.getPolicy().getCapacity());
+                long grant = Math.min(available, request.getWanted());
+                if (grant < request.getMinimum()) {
+                    grant = 0;
+                }
+                remaining.put(request.getKey(), available - grant);
+                granted.add(grant);
+            }
+            return granted;
+        }
+    }
+
+    private Function<List<LeaseRequest>, Mono<List<Long>>> executor(RedisStandIn standIn) {
+        return requests -> Mono.fromCallable(() -> standIn.evaluate(requests))
+                .delayElement(Duration.ofMillis(1));
+    }
+
+    private static final RateLimitPolicy POLICY =
+            new RateLimitPolicy(RateLimitAlgorithm.GCRA, CAPACITY, CAPACITY, Duration.ofSeconds(1));
+
+    private LeaseRequest lease(int i) {
+        return new LeaseRequest("key-" + (i % KEYS), POLICY, 1, 1);
+    }
+
+    @Test
+    @DisplayName("Concurrent leases should share round trips with unchanged accuracy")
+    void concurrentLeasesShouldBeBatched() {
+        RedisStandIn standIn = new RedisStandIn();
+        LeaseBatcher batcher = new LeaseBatcher(executor(standIn), 32,
+                Duration.ofNanos(200_000), Schedulers.parallel());
+
+        int requests = KEYS * CAPACITY * 3 / 2;
+        List<Long> results = Flux.range(0, requests)
+                .flatMap(i -> batcher.submit(lease(i)), 256)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertThat(results).hasSize(requests);
+        // Exactly the global budget is granted, as with one call per request
+        assertThat(results.stream().mapToLong(Long::longValue).sum()).isEqualTo((long) KEYS * CAPACITY);
+        assertThat(standIn.roundTrips.get()).isLessThan(requests / 16);
+    }
+
+    @Test
+    @DisplayName("Full batch should be evaluated without waiting for the window")
+    void fullBatchShouldFlushImmediately() {
+        RedisStandIn standIn = new RedisStandIn();
+        LeaseBatcher batcher = new LeaseBatcher(executor(standIn), 4,
+                Duration.ofHours(1), Schedulers.parallel());
+
+        StepVerifier.create(Flux.range(0, 4).flatMap(i -> batcher.submit(lease(i))).collectList())
+                .assertNext(granted -> assertThat(granted).containsOnly(1L))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(standIn.roundTrips.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Leases of different partitions should never share a call")
+    void partitionsShouldBeEvaluatedSeparately() {
+        List<List<String>> calls = new CopyOnWriteArrayList<>();
+        LeaseBatcher batcher = new LeaseBatcher(requests -> {
+            calls.add(requests.stream().map(LeaseRequest::getKey).collect(Collectors.toList()));
+            return Mono.just(requests.stream().map(LeaseRequest::getWanted).collect(Collectors.toList()));
+        }, request -> request.getKey().hashCode() % 2, 4, Duration.ofHours(1), Schedulers.parallel());
+
+        StepVerifier.create(Flux.range(0, 4).flatMap(i -> batcher.submit(lease(i))).collectList())
+                .assertNext(granted -> assertThat(granted).containsOnly(1L))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(calls).containsExactlyInAnyOrder(
+                Arrays.asList("key-0", "key-2"), Arrays.asList("key-1", "key-3"));
+    }
+
+    @Test
+    @DisplayName("Failed batch should fail every lease in it")
+    void failedBatchShouldFailAllLeases() {
+        LeaseBatcher batcher = new LeaseBatcher(
+                requests -> Mono.error(new IllegalStateException("connection reset")),
+                2, Duration.ofHours(1), Schedulers.parallel());
+
+        StepVerifier.create(batcher.submit(lease(0)).zipWith(batcher.submit(lease(1))))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+}
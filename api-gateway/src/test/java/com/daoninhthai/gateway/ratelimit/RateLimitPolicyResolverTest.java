@@ -0,0 +1,101 @@
+package com.daoninhthai.gateway.ratelimit;
+
+import com.daoninhthai.gateway.config.RateLimitConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for RateLimitPolicyResolver.
+ * Verifies policy lookup order, tier and cost resolution, and hot reload.
+ */
+class RateLimitPolicyResolverTest {
+
+    private RateLimitConfig properties;
+    private RateLimitPolicyResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimitConfig();
+        properties.setReplenishRate(10);
+        properties.setBurstCapacity(20);
+        properties.getTiers().put("premium", Arrays.asList("plan:premium", "role:ROLE_PREMIUM"));
+
+        RateLimitConfig.Policy premium = new RateLimitConfig.Policy();
+        premium.setTier("premium");
+        premium.setReplenishRate(50);
+        RateLimitConfig.Policy premiumOrders = new RateLimitConfig.Policy();
+        premiumOrders.setRoute("order-service");
+        premiumOrders.setTier("premium");
+        premiumOrders.setAlgorithm(RateLimitAlgorithm.SLIDING_WINDOW);
+        premiumOrders.setReplenishRate(30);
+        properties.getPolicies().addAll(Arrays.asList(premium, premiumOrders));
+
+        RateLimitConfig.Cost reports = new RateLimitConfig.Cost();
+        reports.setPath("/api/orders/reports/**");
+        reports.setTokens(10);
+        properties.getCosts().add(reports);
+
+        resolver = new RateLimitPolicyResolver(properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("Most specific policy should win and inherit unset values")
+    void shouldResolveMostSpecificPolicy() {
+        RateLimitPolicy orders = resolver.resolve("order-service", "premium");
+        assertThat(orders.getAlgorithm()).isEqualTo(RateLimitAlgorithm.SLIDING_WINDOW);
+        assertThat(orders.getReplenishRate()).isEqualTo(30);
+        assertThat(orders.getBurstCapacity()).isEqualTo(20);
+
+        RateLimitPolicy products = resolver.resolve("product-service", "premium");
+        assertThat(products.getAlgorithm()).isEqualTo(RateLimitAlgorithm.GCRA);
+        assertThat(products.getReplenishRate()).isEqualTo(50);
+
+        assertThat(resolver.resolve("product-service", RateLimitPolicyResolver.DEFAULT_TIER).getReplenishRate())
+                .isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Tier should be resolved from plan or roles")
+    void shouldResolveTier() {
+        MockServerHttpRequest byPlan = MockServerHttpRequest.get("/api/products")
+                .header(RateLimitPolicyResolver.PLAN_HEADER, "premium").build();
+        MockServerHttpRequest byRole = MockServerHttpRequest.get("/api/products")
+                .header(RateLimitPolicyResolver.ROLES_HEADER, "ROLE_USER,ROLE_PREMIUM").build();
+        MockServerHttpRequest anonymous = MockServerHttpRequest.get("/api/products").build();
+
+        assertThat(resolver.resolveTier(byPlan)).isEqualTo("premium");
+        assertThat(resolver.resolveTier(byRole)).isEqualTo("premium");
+        assertThat(resolver.resolveTier(anonymous)).isEqualTo(RateLimitPolicyResolver.DEFAULT_TIER);
+    }
+
+    @Test
+    @DisplayName("Report endpoints should cost more tokens")
+    void shouldResolveCost() {
+        assertThat(resolver.resolveCost(MockServerHttpRequest.get("/api/orders/reports/monthly").build()))
+                .isEqualTo(10);
+        assertThat(resolver.resolveCost(MockServerHttpRequest.get("/api/orders/42").build()))
+                .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Reload should apply new policies and reject invalid ones")
+    void shouldReloadPolicies() {
+        properties.setReplenishRate(100);
+        resolver.reload();
+        assertThat(resolver.resolve("product-service", RateLimitPolicyResolver.DEFAULT_TIER).getReplenishRate())
+                .isEqualTo(100);
+
+        properties.setPolicies(Collections.singletonList(new RateLimitConfig.Policy()));
+        resolver.reload();
+        assertThat(resolver.resolve("order-service", "premium").getReplenishRate()).isEqualTo(30);
+    }
+
+}
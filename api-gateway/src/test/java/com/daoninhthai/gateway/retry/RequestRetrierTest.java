@@ -0,0 +1,121 @@
+package com.daoninhthai.gateway.retry;
+
+import com.daoninhthai.gateway.config.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.ConnectTimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for RequestRetrier.
+ * Verifies retry policies, jittered backoff, the retry budget and deadlines.
+ */
+class RequestRetrierTest {
+
+    private static final String ROUTE = "product-service";
+    private static final Duration BACKOFF = Duration.ofMillis(10);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RetryConfig properties;
+    private RetryConfig.Policy policy;
+    private RequestRetrier retrier;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RetryConfig();
+        properties.setBudgetRatio(0.1);
+        properties.setBudgetCapacity(1);
+        policy = new RetryConfig.Policy();
+        properties.getRoutes().put(ROUTE, policy);
+        retrier = new RequestRetrier(properties, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Only idempotent methods of routes with a policy should be retried")
+    void shouldSelectPolicy() {
+        assertThat(retrier.getPolicy(ROUTE, HttpMethod.GET)).isSameAs(policy);
+        assertThat(retrier.getPolicy(ROUTE, HttpMethod.POST)).isNull();
+        assertThat(retrier.getPolicy("order-service", HttpMethod.GET)).isNull();
+
+        policy.getMethods().add(HttpMethod.POST);
+        policy.getMethods().add(HttpMethod.PUT);
+        assertThat(retrier.getPolicy(ROUTE, HttpMethod.PUT)).isSameAs(policy);
+        assertThat(retrier.getPolicy(ROUTE, HttpMethod.POST)).isNull();
+    }
+
+    @Test
+    @DisplayName("Errors should be matched by type along the cause chain")
+    void shouldMatchRetryableErrors() {
+        assertThat(retrier.isRetryable(policy, new ConnectException("Connection refused"))).isTrue();
+        assertThat(retrier.isRetryable(policy, new IllegalStateException(new ConnectTimeoutException()))).isTrue();
+        assertThat(retrier.isRetryable(policy, new TimeoutException())).isFalse();
+
+        assertThat(retrier.isRetryable(policy, 503)).isTrue();
+        assertThat(retrier.isRetryable(policy, 500)).isFalse();
+        assertThat(retrier.isRetryable(policy, (Integer) null)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Backoff should grow exponentially up to the max, with full jitter")
+    void shouldBackOffExponentiallyWithJitter() {
+        policy.setFirstBackoff(Duration.ofMillis(25));
+        policy.setMaxBackoff(Duration.ofMillis(150));
+
+        assertThat(RequestRetrier.backoff(policy, 1, 1.0)).isEqualTo(Duration.ofMillis(25));
+        assertThat(RequestRetrier.backoff(policy, 2, 1.0)).isEqualTo(Duration.ofMillis(50));
+        assertThat(RequestRetrier.backoff(policy, 3, 1.0)).isEqualTo(Duration.ofMillis(100));
+        assertThat(RequestRetrier.backoff(policy, 4, 1.0)).isEqualTo(Duration.ofMillis(150));
+        assertThat(RequestRetrier.backoff(policy, 40, 1.0)).isEqualTo(Duration.ofMillis(150));
+        assertThat(RequestRetrier.backoff(policy, 2, 0.5)).isEqualTo(Duration.ofMillis(25));
+        assertThat(RequestRetrier.backoff(policy, 2, 0.0)).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    @DisplayName("Retries should stop at the policy's max attempts")
+    void shouldStopAtMaxAttempts() {
+        policy.setMaxAttempts(2);
+
+        assertThat(retrier.tryRetry(ROUTE, policy, 1, BACKOFF, null)).isTrue();
+        assertThat(retrier.tryRetry(ROUTE, policy, 2, BACKOFF, null)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Requests past or near their deadline should not be retried")
+    void shouldNotRetryPastDeadline() {
+        assertThat(retrier.tryRetry(ROUTE, policy, 1, BACKOFF, Duration.ofMillis(-1))).isFalse();
+        assertThat(retrier.tryRetry(ROUTE, policy, 1, BACKOFF, Duration.ofMillis(5))).isFalse();
+        assertThat(meterRegistry.counter("gateway_retries_skipped_total", "route", ROUTE, "reason", "deadline").count())
+                .isEqualTo(2);
+
+        assertThat(retrier.tryRetry(ROUTE, policy, 1, BACKOFF, Duration.ofMillis(50))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Retries should be limited to the budget ratio of the requests")
+    void shouldLimitRetriesToBudget() {
+        assertThat(retrier.tryRetry(ROUTE, policy, 1, BACKOFF, null)).isTrue();
+        assertThat(retrier.tryRetry(ROUTE, policy, 1, BACKOFF, null)).isFalse();
+
+        int retries = 0;
+        for (int i = 0; i < 100; i++) {
+            retrier.onRequest(ROUTE);
+            if (retrier.tryRetry(ROUTE, policy, 1, BACKOFF, null)) {
+                retries++;
+            }
+        }
+
+        assertThat(retries).isEqualTo(10);
+        assertThat(meterRegistry.counter("gateway_retries_total", "route", ROUTE).count()).isEqualTo(11);
+        assertThat(retrier.getState(ROUTE).getBudget()).isEqualTo(0.0);
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.daoninhthai.gateway.routing;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration test for the dynamic route table.
+ * Verifies that routes loaded from the route file are served by the primary RouteLocator
+ * and listed by the gateway actuator endpoint, without a route refresh.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class DynamicRouteLocatorIntegrationTest {
+
+    private static final Path ROUTE_FILE = createRouteFile();
+
+    @Autowired
+    private RouteLocator routeLocator;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private static Path createRouteFile() {
+        try {
+            Path file = Files.createTempFile("dynamic-routes", ".json");
+            Files.write(file, ("[{\"id\":\"inventory-service\",\"uri\":\"lb://inventory-service\","
+                    + "\"predicates\":[\"Path=/api/inventory/**\"]}]").getBytes(StandardCharsets.UTF_8));
+            return file;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dynamicRoutes(DynamicPropertyRegistry registry) {
+        registry.add("gateway.dynamic-routes.enabled", () -> "true");
+        registry.add("gateway.dynamic-routes.file", ROUTE_FILE::toString);
+        registry.add("gateway.dynamic-routes.poll-interval-ms", () -> "100");
+    }
+
+    @AfterAll
+    static void deleteRouteFile() throws IOException {
+        Files.deleteIfExists(ROUTE_FILE);
+    }
+
+    @Test
+    @DisplayName("Dynamic routes should be served by the RouteLocator and listed by the actuator")
+    void shouldExposeDynamicRoutes() {
+        String id = Flux.defer(routeLocator::getRoutes)
+                .map(Route::getId)
+                .filter("inventory-service"::equals)
+                .next()
+                .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(100)))
+                .block(Duration.ofSeconds(10));
+
+        assertThat(id).isEqualTo("inventory-service");
+        assertThat(routeLocator.getRoutes().map(Route::getId).collectList().block())
+                .contains("auth-service", "product-service")
+                .containsOnlyOnce("inventory-service");
+        webTestClient.get().uri("/actuator/gateway/routes")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$[?(@.route_id == 'inventory-service')].uri")
+                .isEqualTo("lb://inventory-service");
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.daoninhthai.gateway.routing;
+
+import com.daoninhthai.gateway.config.DynamicRouteConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.filter.factory.StripPrefixGatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for DynamicRouteTable.
+ * Verifies validation and compiling of route files and merging with the static routes.
+ */
+class DynamicRouteTableTest {
+
+    private SimpleMeterRegistry registry;
+    private ApplicationEventPublisher eventPublisher;
+    private DynamicRouteTable table;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        table = new DynamicRouteTable(new DynamicRouteConfig(),
+                Collections.singletonList(new PathRoutePredicateFactory()),
+                Collections.singletonList(new StripPrefixGatewayFilterFactory()),
+                new GatewayProperties(), mock(ConfigurationService.class), new ObjectMapper(),
+                eventPublisher, registry);
+    }
+
+    private static RouteDefinition definition(String text) {
+        return new RouteDefinition(text);
+    }
+
+    @Test
+    @DisplayName("Valid definitions should pass validation")
+    void shouldAcceptValidDefinitions() {
+        table.validate(Arrays.asList(
+                definition("inventory-service=lb://inventory-service,Path=/api/inventory/**"),
+                definition("search-service=lb://search-service,Path=/api/search/**")));
+    }
+
+    @Test
+    @DisplayName("Unknown predicates and duplicate ids should be rejected")
+    void shouldRejectInvalidDefinitions() {
+        assertThatThrownBy(() -> table.validate(Collections.singletonList(
+                definition("inventory-service=lb://inventory-service,Host=inventory.example.com"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unknown predicate Host");
+
+        assertThatThrownBy(() -> table.validate(Arrays.asList(
+                definition("inventory-service=lb://inventory-service,Path=/api/inventory/**"),
+                definition("inventory-service=lb://inventory-v2,Path=/api/v2/inventory/**"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Duplicate route id");
+    }
+
+    @Test
+    @DisplayName("A rejected file should keep the previous table")
+    void shouldKeepPreviousTableOnFailure() {
+        String unknownFilter = "[{\"id\":\"inventory-service\",\"uri\":\"lb://inventory-service\","
+                + "\"predicates\":[\"Path=/api/inventory/**\"],\"filters\":[\"RewritePath=/a,/b\"]}]";
+
+        assertThat(table.reload(unknownFilter.getBytes(StandardCharsets.UTF_8)).block()).isNull();
+        assertThat(table.reload("not json".getBytes(StandardCharsets.UTF_8)).block()).isNull();
+
+        assertThat(table.getRoutes()).isEmpty();
+        assertThat(registry.get("gateway_dynamic_routes_reload").tag("outcome", "failure").timer().count())
+                .isEqualTo(2);
+        verify(eventPublisher, never()).publishEvent(any(DynamicRoutesChangedEvent.class));
+    }
+
+    @Test
+    @DisplayName("A reloaded table should be served through the route locator next to the static routes")
+    void shouldServeReloadedRoutes() {
+        table = new DynamicRouteTable(new DynamicRouteConfig(),
+                Collections.singletonList(new PathRoutePredicateFactory()),
+                Collections.singletonList(new StripPrefixGatewayFilterFactory()),
+                new GatewayProperties(),
+                new ConfigurationService(new DefaultListableBeanFactory(), DefaultConversionService::new, () -> null),
+                new ObjectMapper(), eventPublisher, registry);
+        DynamicRouteLocator locator = new DynamicRouteLocator(() -> Flux.just(route("auth-service", 0)), table);
+        String routes = "[{\"id\":\"inventory-service\",\"uri\":\"lb://inventory-service\",\"order\":1,"
+                + "\"predicates\":[\"Path=/api/inventory/**\"],\"filters\":[\"StripPrefix=2\"]}]";
+
+        List<Route> compiled = table.reload(routes.getBytes(StandardCharsets.UTF_8)).block();
+
+        assertThat(compiled).extracting(Route::getId).containsExactly("inventory-service");
+        assertThat(compiled.get(0).getFilters()).hasSize(1);
+        assertThat(locator.getRoutes().map(Route::getId).collectList().block())
+                .containsExactly("auth-service", "inventory-service");
+        verify(eventPublisher).publishEvent(any(DynamicRoutesChangedEvent.class));
+    }
+
+    @Test
+    @DisplayName("A file that timed out compiling should be loaded on a later poll, a rejected one should not")
+    void shouldRetryOnlyTransientFailures(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("routes.json");
+        DynamicRouteConfig properties = new DynamicRouteConfig();
+        properties.setEnabled(true);
+        properties.setFile(file.toString());
+        properties.setCompileTimeout(Duration.ofMillis(50));
+        AtomicBoolean slow = new AtomicBoolean(true);
+        PathRoutePredicateFactory path = new PathRoutePredicateFactory() {
+            @Override
+            public String name() {
+                return "Path";
+            }
+
+            @Override
+            public Predicate<ServerWebExchange> apply(Config config) {
+                if (slow.getAndSet(false)) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(500));
+                }
+                return super.apply(config);
+            }
+        };
+        table = new DynamicRouteTable(properties, Collections.singletonList(path),
+                Collections.singletonList(new StripPrefixGatewayFilterFactory()), new GatewayProperties(),
+                new ConfigurationService(new DefaultListableBeanFactory(), DefaultConversionService::new, () -> null),
+                new ObjectMapper(), eventPublisher, registry);
+        Timer failures = registry.get("gateway_dynamic_routes_reload").tag("outcome", "failure").timer();
+
+        Files.write(file, "not json".getBytes(StandardCharsets.UTF_8));
+        pollUntil(() -> failures.count() == 1);
+        for (int i = 0; i < 5; i++) {
+            table.poll();
+            Thread.sleep(10);
+        }
+        assertThat(failures.count()).isEqualTo(1);
+
+        Files.write(file, ("[{\"id\":\"inventory-service\",\"uri\":\"lb://inventory-service\","
+                + "\"predicates\":[\"Path=/api/inventory/**\"]}]").getBytes(StandardCharsets.UTF_8));
+        pollUntil(() -> !table.getRoutes().isEmpty());
+
+        assertThat(failures.count()).isEqualTo(2);
+        assertThat(table.getRoutes()).extracting(Route::getId).containsExactly("inventory-service");
+    }
+
+    /**
+     * Poll the route file like the scheduler does until the condition holds.
+     */
+    private void pollUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            table.poll();
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    @DisplayName("Dynamic routes should replace static routes with the same id and keep route order")
+    void shouldMergeByOrder() {
+        List<Route> staticRoutes = Arrays.asList(route("auth-service", 0), route("user-service", 0));
+        List<Route> dynamicRoutes = Arrays.asList(route("user-service", 0), route("legacy", -1));
+
+        List<Route> merged = DynamicRouteLocator.merge(staticRoutes, dynamicRoutes);
+
+        assertThat(merged.stream().map(Route::getId).collect(Collectors.toList()))
+                .containsExactly("legacy", "auth-service", "user-service");
+        assertThat(merged.get(2)).isSameAs(dynamicRoutes.get(0));
+    }
+
+    private static Route route(String id, int order) {
+        return Route.async()
+                .id(id)
+                .uri(URI.create("lb://" + id))
+                .order(order)
+                .predicate(exchange -> true)
+                .build();
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.daoninhthai.gateway.routing;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.handler.predicate.MethodRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for RouteIndex.
+ * Verifies that the trie returns every matching route, in route order.
+ */
+class RouteIndexTest {
+
+    private static Route route(String id, String... patterns) {
+        PathRoutePredicateFactory.Config config = new PathRoutePredicateFactory.Config();
+        config.setPatterns(Arrays.asList(patterns));
+        return Route.async()
+                .id(id)
+                .uri(URI.create("lb://" + id))
+                .predicate(new PathRoutePredicateFactory().apply(config))
+                .build();
+    }
+
+    private static List<String> candidateIds(RouteIndex index, String path) {
+        return index.candidates(PathContainer.parsePath(path)).stream()
+                .map(Route::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> matchingIds(List<Route> routes, String path) {
+        List<String> ids = new ArrayList<>();
+        for (Route route : routes) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+            if (Boolean.TRUE.equals(Mono.from(route.getPredicate().apply(exchange)).block())) {
+                ids.add(route.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static int indexOf(List<Route> routes, String id) {
+        for (int i = 0; i < routes.size(); i++) {
+            if (routes.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    @DisplayName("Candidates should include every matching route in route order")
+    void candidatesShouldCoverMatchesInOrder() {
+        List<Route> routes = Arrays.asList(
+                route("user-service-v1", "/api/v1/users/**"),
+                route("versioned", "/api/{version}/users/{id}"),
+                route("user-service", "/api/users/**"),
+                route("exact", "/api/users"),
+                route("orders", "/api/orders/**", "/api/checkout/**"),
+                route("catch-all", "/**"));
+        RouteIndex index = RouteIndex.build(routes, RouteIndex::predicatePatterns);
+
+        for (String path : Arrays.asList("/api/v1/users/42", "/api/v2/users/42", "/api/users", "/api/users/",
+                "/api/users/42/orders", "/api/checkout/cart", "/api/products/1", "/")) {
+            List<String> candidates = candidateIds(index, path);
+            assertThat(candidates).as(path).containsSubsequence(matchingIds(routes, path));
+            assertThat(candidates).as(path).isSortedAccordingTo(
+                    (a, b) -> Integer.compare(indexOf(routes, a), indexOf(routes, b)));
+        }
+
+        assertThat(candidateIds(index, "/api/products/1")).containsExactly("catch-all");
+        assertThat(candidateIds(index, "/api/v2/users/42")).containsExactly("versioned", "catch-all");
+    }
+
+    @Test
+    @DisplayName("Routes without known path patterns should always be candidates")
+    void unindexedRoutesShouldAlwaysBeCandidates() {
+        Route hostOnly = Route.async()
+                .id("host-only")
+                .uri(URI.create("lb://legacy"))
+                .predicate(exchange -> true)
+                .build();
+        RouteIndex index = RouteIndex.build(Arrays.asList(route("orders", "/api/orders/**"), hostOnly),
+                RouteIndex::predicatePatterns);
+
+        assertThat(index.getUnindexedCount()).isEqualTo(1);
+        assertThat(candidateIds(index, "/anything")).containsExactly("host-only");
+        assertThat(candidateIds(index, "/api/orders/1")).containsExactly("orders", "host-only");
+    }
+
+    @Test
+    @DisplayName("Path patterns should be read from Path predicates only when the route has no other predicates")
+    void shouldReadPredicatePatterns() {
+        Route orders = route("orders", "/api/orders/**", "/api/checkout/**");
+        Route users = route("users", "/api/users/**");
+        Route either = Route.async().asyncPredicate(orders.getPredicate().or(users.getPredicate()))
+                .id("either")
+                .uri(URI.create("lb://either"))
+                .build();
+        Route withMethod = Route.async().asyncPredicate(orders.getPredicate().and(
+                        new MethodRoutePredicateFactory().applyAsync(method(HttpMethod.GET))))
+                .id("with-method")
+                .uri(URI.create("lb://with-method"))
+                .build();
+        Route negated = Route.async().asyncPredicate(orders.getPredicate().negate())
+                .id("negated")
+                .uri(URI.create("lb://negated"))
+                .build();
+
+        assertThat(RouteIndex.predicatePatterns(orders)).containsExactly("/api/orders/**", "/api/checkout/**");
+        assertThat(RouteIndex.predicatePatterns(either))
+                .containsExactly("/api/orders/**", "/api/checkout/**", "/api/users/**");
+        assertThat(RouteIndex.predicatePatterns(withMethod)).isEmpty();
+        assertThat(RouteIndex.predicatePatterns(negated)).isEmpty();
+    }
+
+    private static MethodRoutePredicateFactory.Config method(HttpMethod method) {
+        MethodRoutePredicateFactory.Config config = new MethodRoutePredicateFactory.Config();
+        config.setMethods(method);
+        return config;
+    }
+
+    @Test
+    @DisplayName("Path patterns should be read from route definitions")
+    void shouldReadDefinitionPatterns() {
+        RouteDefinition definition = new RouteDefinition("orders=lb://order-service,Path=/api/orders/**");
+        assertThat(IndexedRoutePredicateHandlerMapping.definitionPatterns(definition))
+                .containsExactly("/api/orders/**");
+
+        RouteDefinition noPath = new RouteDefinition();
+        noPath.setId("legacy");
+        assertThat(IndexedRoutePredicateHandlerMapping.definitionPatterns(noPath)).isEqualTo(Collections.emptyList());
+    }
+
+    @Test
+    @DisplayName("Large route tables should yield a single candidate")
+    void largeTableShouldYieldSingleCandidate() {
+        List<Route> routes = RouteMatchingBenchmark.createRoutes(1000);
+        RouteIndex index = RouteIndex.build(routes, RouteIndex::predicatePatterns);
+
+        assertThat(candidateIds(index, "/api/service-999/items/42")).containsExactly("service-999");
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.daoninhthai.gateway.routing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.server.PathContainer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of route matching: evaluating every route's predicate in turn, as the
+ * default RoutePredicateHandlerMapping does, against evaluating only the RouteIndex
+ * candidates. The request targets the last route, the worst case for the linear scan.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.daoninhthai.gateway.routing.RouteMatchingBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatchingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int routeCount;
+
+    private List<Route> routes;
+    private RouteIndex index;
+    private String path;
+
+    @Setup
+    public void setUp() {
+        routes = createRoutes(routeCount);
+        index = RouteIndex.build(routes, RouteIndex::predicatePatterns);
+        path = "/api/service-" + (routeCount - 1) + "/items/42";
+    }
+
+    static List<Route> createRoutes(int count) {
+        PathRoutePredicateFactory pathFactory = new PathRoutePredicateFactory();
+        List<Route> routes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String pattern = "/api/service-" + i + "/**";
+            PathRoutePredicateFactory.Config config = new PathRoutePredicateFactory.Config();
+            config.setPatterns(Collections.singletonList(pattern));
+            routes.add(Route.async()
+                    .id("service-" + i)
+                    .uri(URI.create("lb://service-" + i))
+                    .predicate(pathFactory.apply(config))
+                    .build());
+        }
+        return routes;
+    }
+
+    private ServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+    }
+
+    private static Route firstMatch(Iterable<Route> candidates, ServerWebExchange exchange) {
+        return Flux.fromIterable(candidates)
+                .concatMap(route -> Mono.from(route.getPredicate().apply(exchange))
+                        .filter(Boolean::booleanValue)
+                        .map(matched -> route))
+                .next()
+                .block();
+    }
+
+    @Benchmark
+    public Route linearScan() {
+        return firstMatch(routes, exchange());
+    }
+
+    @Benchmark
+    public Route indexedLookup() {
+        ServerWebExchange exchange = exchange();
+        PathContainer requestPath = exchange.getRequest().getPath().pathWithinApplication();
+        return firstMatch(index.candidates(requestPath), exchange);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RouteMatchingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.daoninhthai.gateway.service;
+
+import com.daoninhthai.gateway.config.OAuth2Config;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for LocalTokenValidator.
+ * Verifies which tokens are validated locally and how their claims are mapped.
+ */
+class LocalTokenValidatorTest {
+
+    private static final String ISSUER = "http://localhost:9000";
+
+    private LocalTokenValidator validator;
+    private IssuerKeyService issuerKeyService;
+    private KeyPair keyPair;
+
+    @BeforeEach
+    void setUp() {
+        keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        issuerKeyService = mock(IssuerKeyService.class);
+        when(issuerKeyService.getKey(any())).thenReturn(Mono.just(keyPair.getPublic()));
+
+        OAuth2Config oauth2Config = new OAuth2Config();
+        oauth2Config.setIssuerUri(ISSUER);
+
+        validator = new LocalTokenValidator(issuerKeyService, oauth2Config, new ObjectMapper());
+    }
+
+    private String createToken(String issuer) {
+        return Jwts.builder()
+                .setHeaderParam("kid", "key-1")
+                .setSubject("client-app")
+                .setIssuer(issuer)
+                .claim("client_id", "reporting-client")
+                .claim("scope", Arrays.asList("orders.read", "orders.write"))
+                .setExpiration(new Date(System.currentTimeMillis() + 3600000))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    @Test
+    @DisplayName("JWT from the trusted issuer should be validated locally")
+    void trustedJwtShouldBeValidatedLocally() {
+        StepVerifier.create(validator.validate(createToken(ISSUER)))
+                .assertNext(response -> {
+                    assertThat(response.isActive()).isTrue();
+                    assertThat(response.getSubject()).isEqualTo("client-app");
+                    assertThat(response.getClientId()).isEqualTo("reporting-client");
+                    assertThat(response.getScope()).isEqualTo("orders.read orders.write");
+                    assertThat(response.getExp()).isNotNull();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Opaque token should be left to introspection")
+    void opaqueTokenShouldCompleteEmpty() {
+        StepVerifier.create(validator.validate("2YotnFZFEjr1zCsicMWpAA"))
+                .verifyComplete();
+
+        verify(issuerKeyService, never()).getKey(any());
+    }
+
+    @Test
+    @DisplayName("JWT from an untrusted issuer should be left to introspection")
+    void untrustedIssuerShouldCompleteEmpty() {
+        StepVerifier.create(validator.validate(createToken("https://other-issuer.example.com")))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Tampered JWT from the trusted issuer should be rejected")
+    void tamperedTokenShouldFail() {
+        String token = createToken(ISSUER);
+        String tampered = token.substring(0, token.length() - 4) + "AAAA";
+
+        StepVerifier.create(validator.validate(tampered))
+                .expectError()
+                .verify();
+    }
+
+}
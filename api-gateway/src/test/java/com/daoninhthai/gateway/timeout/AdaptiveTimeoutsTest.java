@@ -0,0 +1,116 @@
+package com.daoninhthai.gateway.timeout;
+
+import com.daoninhthai.gateway.config.AdaptiveTimeoutConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.PathContainer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for AdaptiveTimeouts.
+ * Verifies timeouts derived from observed latencies, their bounds and path templates.
+ */
+class AdaptiveTimeoutsTest {
+
+    private static final String ROUTE = "order-service";
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AdaptiveTimeoutConfig properties;
+    private AdaptiveTimeouts timeouts;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AdaptiveTimeoutConfig();
+        properties.setMinSamples(100);
+        properties.setInitialTimeout(Duration.ofSeconds(4));
+        properties.setMaxTimeout(Duration.ofSeconds(5));
+        AdaptiveTimeoutConfig.Route route = new AdaptiveTimeoutConfig.Route();
+        route.setMaxTimeout(Duration.ofSeconds(10));
+        route.getPaths().add("/api/orders/{id}/report");
+        properties.getRoutes().put(ROUTE, route);
+        timeouts = new AdaptiveTimeouts(properties, meterRegistry, clock::get);
+    }
+
+    private void latencies(String route, String template, int requests, long latencyMillis) {
+        for (int i = 0; i < requests; i++) {
+            timeouts.record(route, template, TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    @DisplayName("Initial timeout should apply until enough latencies were observed")
+    void shouldUseInitialTimeoutWithoutSamples() {
+        latencies(ROUTE, AdaptiveTimeouts.ANY_PATH, 99, 100);
+
+        assertThat(timeouts.getTimeout(ROUTE, AdaptiveTimeouts.ANY_PATH)).isEqualTo(Duration.ofSeconds(4));
+    }
+
+    @Test
+    @DisplayName("Timeout should be a multiple of the observed latency percentile")
+    void shouldDeriveTimeoutFromLatency() {
+        latencies(ROUTE, AdaptiveTimeouts.ANY_PATH, 1000, 100);
+
+        Duration timeout = timeouts.getTimeout(ROUTE, AdaptiveTimeouts.ANY_PATH);
+
+        assertThat(timeout).isBetween(Duration.ofMillis(200), Duration.ofMillis(230));
+        assertThat(meterRegistry.get("gateway_adaptive_timeout_ms").tag("route", ROUTE).gauge().value())
+                .isEqualTo(timeout.toMillis());
+    }
+
+    @Test
+    @DisplayName("Timeout should stay within the global and per-route bounds")
+    void shouldClampTimeout() {
+        latencies("user-service", AdaptiveTimeouts.ANY_PATH, 1000, 1);
+        latencies("product-service", AdaptiveTimeouts.ANY_PATH, 1000, 4000);
+        latencies(ROUTE, AdaptiveTimeouts.ANY_PATH, 1000, 8000);
+
+        assertThat(timeouts.getTimeout("user-service", AdaptiveTimeouts.ANY_PATH)).isEqualTo(Duration.ofMillis(50));
+        assertThat(timeouts.getTimeout("product-service", AdaptiveTimeouts.ANY_PATH)).isEqualTo(Duration.ofSeconds(5));
+        assertThat(timeouts.getTimeout(ROUTE, AdaptiveTimeouts.ANY_PATH)).isEqualTo(Duration.ofSeconds(10));
+        assertThat(properties.getTimeLimit()).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("Configured path templates should get timeouts of their own")
+    void shouldKeepTimeoutsPerPathTemplate() {
+        String report = timeouts.getTemplate(ROUTE, PathContainer.parsePath("/api/orders/42/report"));
+        String other = timeouts.getTemplate(ROUTE, PathContainer.parsePath("/api/orders/42"));
+        latencies(ROUTE, report, 1000, 1000);
+        latencies(ROUTE, other, 1000, 100);
+
+        assertThat(report).isEqualTo("/api/orders/{id}/report");
+        assertThat(other).isEqualTo(AdaptiveTimeouts.ANY_PATH);
+        assertThat(timeouts.getTimeout(ROUTE, report)).isGreaterThan(Duration.ofSeconds(2));
+        assertThat(timeouts.getTimeout(ROUTE, other)).isLessThan(Duration.ofMillis(300));
+    }
+
+    @Test
+    @DisplayName("Timed out calls should raise the timeout once it is recomputed")
+    void shouldRaiseTimeoutAfterTimeouts() {
+        latencies(ROUTE, AdaptiveTimeouts.ANY_PATH, 1000, 100);
+        Duration before = timeouts.getTimeout(ROUTE, AdaptiveTimeouts.ANY_PATH);
+
+        for (int i = 0; i < 10; i++) {
+            timeouts.recordTimeout(ROUTE, AdaptiveTimeouts.ANY_PATH, before);
+        }
+        assertThat(timeouts.getTimeout(ROUTE, AdaptiveTimeouts.ANY_PATH)).isEqualTo(before);
+
+        advance(1000);
+        assertThat(timeouts.getTimeout(ROUTE, AdaptiveTimeouts.ANY_PATH)).isGreaterThan(before);
+        assertThat(meterRegistry.get("gateway_adaptive_timeouts_total").tag("route", ROUTE).counter().count())
+                .isEqualTo(10);
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.daoninhthai.gateway.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for RollingLatencyHistogram.
+ * Verifies bucket precision, percentiles and window expiry.
+ */
+class RollingLatencyHistogramTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final RollingLatencyHistogram histogram =
+            new RollingLatencyHistogram(Duration.ofSeconds(60), 6, clock::get);
+
+    @Test
+    @DisplayName("Buckets should bound each value within 12.5%")
+    void bucketsShouldBeLogLinear() {
+        for (long micros = 0; micros < 1_000_000; micros = micros * 3 / 2 + 1) {
+            long upper = RollingLatencyHistogram.upperBound(RollingLatencyHistogram.bucket(micros));
+            assertThat(upper).isGreaterThanOrEqualTo(micros).isLessThanOrEqualTo(micros + micros / 8);
+        }
+        assertThat(RollingLatencyHistogram.bucket(Long.MAX_VALUE)).isLessThan((64 - 3) * 8);
+    }
+
+    @Test
+    @DisplayName("Percentiles and failure rate should reflect the recorded requests")
+    void shouldComputePercentiles() {
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i), i > 95);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getFailureRate()).isEqualTo(0.05);
+        assertThat(histogram.getPercentile(0.5).toMillis()).isBetween(50L, 57L);
+        assertThat(histogram.getPercentile(0.99).toMillis()).isBetween(99L, 112L);
+    }
+
+    @Test
+    @DisplayName("Requests should drop out after the window")
+    void shouldExpireOldSlices() {
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(500), true);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10), false);
+
+        assertThat(histogram.getCount()).isEqualTo(2);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        assertThat(histogram.getCount()).isEqualTo(1);
+        assertThat(histogram.getFailureRate()).isZero();
+        assertThat(histogram.getPercentile(0.99).toMillis()).isBetween(10L, 12L);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getPercentile(0.99)).isEqualTo(Duration.ZERO);
+    }
+
+}